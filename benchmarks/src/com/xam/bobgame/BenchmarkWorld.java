@@ -0,0 +1,59 @@
+package com.xam.bobgame;
+
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.InputMultiplexer;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.xam.bobgame.components.PhysicsBodyComponent;
+import com.xam.bobgame.definitions.GameDefinitions;
+import com.xam.bobgame.entity.ComponentMappers;
+import com.xam.bobgame.entity.EntityFactory;
+
+/**
+ * Creates server engines populated with synthetic entities for benchmarks. Must be run with the assets directory as the
+ * working directory.
+ */
+public class BenchmarkWorld {
+
+    private static HeadlessApplication application = null;
+
+    public static GameEngine createEngine(int entityCount) {
+        if (application == null) {
+            application = new HeadlessApplication(new ApplicationAdapter() {});
+            Box2D.init();
+        }
+        BoBGame.headless = true;
+
+        BoBGame game = new BoBGame();
+        game.inputMultiplexer = new InputMultiplexer();
+        game.gameDefinitions = new GameDefinitions();
+        game.gameDefinitions.createDefinitions(false);
+
+        GameEngine engine = new GameEngine(game);
+        game.engine = engine;
+        engine.initialize();
+        engine.setMode(GameEngine.Mode.Server);
+        engine.start();
+
+        for (int i = 0; i < entityCount; ++i) {
+            Entity entity = EntityFactory.createStar(engine);
+            PhysicsBodyComponent physicsBody = ComponentMappers.physicsBody.get(entity);
+            physicsBody.bodyDef.position.set(MathUtils.random(1f, GameProperties.MAP_WIDTH - 1), MathUtils.random(1f, GameProperties.MAP_HEIGHT - 1));
+            physicsBody.bodyDef.linearVelocity.set(MathUtils.random(-2f, 2f), MathUtils.random(-2f, 2f));
+            engine.addEntity(entity);
+        }
+
+        for (int i = 0; i < 10; ++i) engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+
+        return engine;
+    }
+
+    /**
+     * Advances the simulation so that entities have moved since the last captured world state.
+     */
+    public static void step(GameEngine engine) {
+        engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+    }
+}
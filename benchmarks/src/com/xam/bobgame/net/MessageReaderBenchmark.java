@@ -0,0 +1,65 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.BenchmarkWorld;
+import com.xam.bobgame.GameEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes Update and Snapshot messages of synthetic worlds. The simulation is stepped before each invocation so
+ * that entities have changed since the previous update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageReaderBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int entityCount;
+
+    private GameEngine engine;
+    private MessageReader messageReader;
+
+    private final Message message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+    private final UpdateStream updateStream = new UpdateStream();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = BenchmarkWorld.createEngine(entityCount);
+        messageReader = engine.getSystem(NetDriver.class).messageReader;
+    }
+
+    @Setup(Level.Invocation)
+    public void step() {
+        BenchmarkWorld.step(engine);
+    }
+
+    @Benchmark
+    public int serializeUpdate() {
+        message.clear();
+        return messageReader.serialize(message, Message.MessageType.Update);
+    }
+
+    /**
+     * Serializes an Update against the baseline of a client that acknowledged every previous update, without a
+     * bandwidth limit.
+     */
+    @Benchmark
+    public int serializeUpdateDelta() {
+        WorldStateBuffer.WorldState state = messageReader.captureWorldState();
+        message.clear();
+        int stateId = messageReader.serializeUpdate(message, state, updateStream, Integer.MAX_VALUE, -1, -1);
+        updateStream.ack(stateId);
+        return stateId;
+    }
+
+    @Benchmark
+    public int serializeSnapshot() {
+        message.clear();
+        return messageReader.serialize(message, Message.MessageType.Snapshot);
+    }
+}
@@ -0,0 +1,140 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.esotericsoftware.kryonet.Connection;
+import com.xam.bobgame.BenchmarkWorld;
+import com.xam.bobgame.GameEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads Data packets through {@link NetDriver.NetSerialization} for a connection that only exists in the
+ * {@link ConnectionManager}. {@link #receive()} follows a datagram through the PacketBuffer and MessageBuffer to the
+ * message read by the engine; run with {@code -prof gc} for the allocations per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetSerializationBenchmark {
+
+    @Param({"1", "4", "7"})
+    public int messageCount;
+
+    @Param({"64", "512"})
+    public int messageLength;
+
+    private NetDriver netDriver;
+    private NetDriver.NetSerialization serialization;
+    private final Connection connection = new BenchmarkConnection();
+    private ConnectionManager.ConnectionSlot slot;
+
+    private final Packet template = new Packet(NetDriver.DATA_MAX_SIZE);
+    private final Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+    private final Packet syncPacket = new Packet(NetDriver.DATA_MAX_SIZE);
+    private final Message message = new Message(NetDriver.DATA_MAX_SIZE);
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * NetDriver.PACKET_MAX_MESSAGES * 2);
+    /**
+     * Datagrams with consecutive sequence numbers, so that reading them in order never discards a duplicate.
+     */
+    private final ByteBuffer[] datagrams = new ByteBuffer[NetDriver.PACKET_SEQUENCE_LIMIT];
+    private int datagramIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GameEngine engine = BenchmarkWorld.createEngine(0);
+        netDriver = engine.getSystem(NetDriver.class);
+        serialization = netDriver.serialization;
+        int clientId = netDriver.connectionManager.addConnection(connection, true);
+        slot = netDriver.connectionManager.getConnectionSlot(clientId);
+
+        template.type = Packet.PacketType.Data;
+        for (int i = 0; i < messageCount; ++i) {
+            message.clear();
+            ByteBuffer buffer = message.getByteBuffer();
+            for (int j = 0; j < messageLength; ++j) buffer.put((byte) MathUtils.random(0, 0xFF));
+            buffer.flip();
+            message.setLength(messageLength);
+            // Input messages are not delayed by the MessageBuffer
+            message.setType(Message.MessageType.Input);
+            template.addMessage(message);
+        }
+
+        int messageId = 0;
+        for (int i = 0; i < datagrams.length; ++i) {
+            template.copyTo(packet);
+            for (int j = 0; j < messageCount; ++j) packet.getMessage(j).messageId = messageId++;
+            datagrams[i] = ByteBuffer.allocate(writeBuffer.capacity());
+            serialization.write(connection, datagrams[i], packet);
+            datagrams[i].flip();
+        }
+        netDriver.transport.clearDropped();
+    }
+
+    @Benchmark
+    public int write() {
+        template.copyTo(packet);
+        writeBuffer.clear();
+        serialization.write(connection, writeBuffer, packet);
+        netDriver.transport.clearDropped();
+        return writeBuffer.position();
+    }
+
+    @Benchmark
+    public Object read() {
+        ByteBuffer datagram = nextDatagram();
+        Object o = serialization.read(connection, datagram);
+        netDriver.transport.clearAcked();
+        return o;
+    }
+
+    /**
+     * Reads a datagram and passes its messages through the connection's buffers, as the network and engine threads do.
+     */
+    @Benchmark
+    public int receive() {
+        ByteBuffer datagram = nextDatagram();
+        Object o = serialization.read(connection, datagram);
+        netDriver.transport.clearAcked();
+        if (o == null) return 0;
+
+        slot.packetBuffer.receive((Packet) o);
+        while (slot.packetBuffer.get(syncPacket)) {
+            for (int i = 0; i < syncPacket.getMessageCount(); ++i) {
+                slot.messageBuffer.receive(syncPacket.getMessage(i), syncPacket.frameNum);
+            }
+            syncPacket.clear();
+        }
+        int count = 0;
+        while (slot.messageBuffer.get(message)) count++;
+        return count;
+    }
+
+    private ByteBuffer nextDatagram() {
+        ByteBuffer datagram = datagrams[datagramIndex];
+        datagramIndex = (datagramIndex + 1) % datagrams.length;
+        datagram.rewind();
+        return datagram;
+    }
+
+    private static class BenchmarkConnection extends Connection {
+        private final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), NetDriver.PORT_TCP);
+
+        @Override
+        public InetSocketAddress getRemoteAddressTCP() {
+            return address;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddressUDP() {
+            return address;
+        }
+    }
+}
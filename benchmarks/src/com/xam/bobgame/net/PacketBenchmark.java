@@ -0,0 +1,84 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.xam.bobgame.utils.BitPacker;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes Data packets of random messages. Both include computing the packet checksum.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+    @Param({"1", "4", "7"})
+    public int messageCount;
+
+    @Param({"64", "512"})
+    public int messageLength;
+
+    @Param({"CRC32", "CRC32C", "Murmur3"})
+    public PacketChecksum checksum;
+
+    private final Packet template = new Packet(NetDriver.DATA_MAX_SIZE);
+    private final Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * NetDriver.PACKET_MAX_MESSAGES * 2);
+    private final ByteBuffer encoded = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * NetDriver.PACKET_MAX_MESSAGES * 2);
+    private final BitPacker packer = new BitPacker();
+
+    @Setup
+    public void setup() {
+        template.type = Packet.PacketType.Data;
+        template.localSeqNum = 1;
+        template.remoteSeqNum = 2;
+        template.ack = 0xFFFF;
+        template.salt = MathUtils.random.nextInt();
+        template.frameNum = 100;
+        template.checksumType = checksum;
+
+        Message message = new Message(NetDriver.DATA_MAX_SIZE);
+        for (int i = 0; i < messageCount; ++i) {
+            message.clear();
+            ByteBuffer buffer = message.getByteBuffer();
+            for (int j = 0; j < messageLength; ++j) buffer.put((byte) MathUtils.random(0, 0xFF));
+            buffer.flip();
+            message.setLength(messageLength);
+            message.setType(Message.MessageType.Update);
+            message.messageId = i;
+            message.frameNum = 100;
+            template.addMessage(message);
+        }
+
+        packer.setBuffer(encoded);
+        packer.setWriteMode();
+        template.copyTo(packet);
+        packet.encode(packer);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public int encode() {
+        template.copyTo(packet);
+        writeBuffer.clear();
+        packer.setBuffer(writeBuffer);
+        packer.setWriteMode();
+        packet.encode(packer);
+        return writeBuffer.position();
+    }
+
+    @Benchmark
+    public int decode() {
+        encoded.rewind();
+        packer.setBuffer(encoded);
+        packer.setReadMode();
+        return packet.decode(packer);
+    }
+}
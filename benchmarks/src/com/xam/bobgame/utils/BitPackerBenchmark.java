@@ -0,0 +1,99 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.xam.bobgame.net.NetDriver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs and unpacks {@link #VALUE_COUNT} values per invocation at different bit widths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitPackerBenchmark {
+
+    public static final int VALUE_COUNT = 128;
+    public static final float FLOAT_MIN = -64, FLOAT_MAX = 64;
+
+    @Param({"1", "7", "14", "24", "32"})
+    public int bits;
+
+    private int min, max;
+    private float res;
+
+    private final int[] ints = new int[VALUE_COUNT];
+    private final float[] floats = new float[VALUE_COUNT];
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+    private final ByteBuffer intBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+    private final ByteBuffer floatBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+    private final BitPacker packer = new BitPacker();
+
+    @Setup
+    public void setup() {
+        if (bits == 32) {
+            min = Integer.MIN_VALUE;
+            max = Integer.MAX_VALUE;
+        }
+        else {
+            min = 0;
+            max = (1 << bits) - 1;
+        }
+        res = (FLOAT_MAX - FLOAT_MIN) / (1 << Math.min(bits, 24));
+
+        for (int i = 0; i < VALUE_COUNT; ++i) {
+            ints[i] = bits == 32 ? MathUtils.random.nextInt() : MathUtils.random(min, max);
+            floats[i] = MathUtils.random(FLOAT_MIN, FLOAT_MAX);
+        }
+
+        packer.setBuffer(intBuffer);
+        packer.setWriteMode();
+        for (int i : ints) packer.packInt(i, min, max);
+        packer.flush(true);
+
+        packer.setBuffer(floatBuffer);
+        for (float f : floats) packer.packFloat(f, FLOAT_MIN, FLOAT_MAX, res);
+        packer.flush(true);
+    }
+
+    @Benchmark
+    public int packInt() {
+        writeBuffer.clear();
+        packer.setBuffer(writeBuffer);
+        packer.setWriteMode();
+        for (int i : ints) packer.packInt(i, min, max);
+        return packer.flush(true);
+    }
+
+    @Benchmark
+    public void unpackInt(Blackhole blackhole) {
+        intBuffer.rewind();
+        packer.setBuffer(intBuffer);
+        packer.setReadMode();
+        for (int i = 0; i < VALUE_COUNT; ++i) blackhole.consume(packer.unpackInt(min, max));
+    }
+
+    @Benchmark
+    public int packFloat() {
+        writeBuffer.clear();
+        packer.setBuffer(writeBuffer);
+        packer.setWriteMode();
+        for (float f : floats) packer.packFloat(f, FLOAT_MIN, FLOAT_MAX, res);
+        return packer.flush(true);
+    }
+
+    @Benchmark
+    public void readFloat(Blackhole blackhole) {
+        floatBuffer.rewind();
+        packer.setBuffer(floatBuffer);
+        packer.setReadMode();
+        for (int i = 0; i < VALUE_COUNT; ++i) blackhole.consume(packer.readFloat(0, FLOAT_MIN, FLOAT_MAX, res));
+    }
+}
@@ -0,0 +1,91 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.utils.Array;
+import com.xam.bobgame.net.Message;
+import com.xam.bobgame.net.NetDriver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands messages from a producer thread to a consumer thread, like the network thread passing packets to the engine
+ * thread. Compares the {@link SpscRingBuffer} with preallocated slots to an Array guarded by a monitor, the way
+ * PacketBuffer and EventsSystem used to do it. Each group runs one producer and one consumer at the same time, so
+ * the scores include the cost of contention.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueContentionBenchmark {
+
+    private static final int CAPACITY = 16;
+    private static final int MESSAGE_LENGTH = 64;
+
+    private SpscRingBuffer<Message> ringBuffer;
+
+    private final Message[] monitorBuffer = new Message[CAPACITY];
+    private final Array<Message> freeMessages = new Array<>(CAPACITY);
+    private final Array<Message> monitorQueue = new Array<>(CAPACITY);
+
+    @Setup
+    public void setup() {
+        Message[] slots = new Message[CAPACITY];
+        for (int i = 0; i < CAPACITY; ++i) slots[i] = new Message(NetDriver.DATA_MAX_SIZE);
+        ringBuffer = new SpscRingBuffer<>(slots);
+
+        for (int i = 0; i < CAPACITY; ++i) {
+            monitorBuffer[i] = new Message(NetDriver.DATA_MAX_SIZE);
+            freeMessages.add(monitorBuffer[i]);
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean spscProduce() {
+        Message slot = ringBuffer.claim();
+        if (slot == null) return false;
+        slot.setLength(MESSAGE_LENGTH);
+        ringBuffer.publish();
+        return true;
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscConsume(Blackhole blackhole) {
+        Message message = ringBuffer.peek();
+        if (message == null) return;
+        blackhole.consume(message.getLength());
+        ringBuffer.release();
+    }
+
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public boolean monitorProduce() {
+        synchronized (monitorQueue) {
+            if (freeMessages.size == 0) return false;
+            Message message = freeMessages.pop();
+            message.setLength(MESSAGE_LENGTH);
+            monitorQueue.add(message);
+            return true;
+        }
+    }
+
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public void monitorConsume(Blackhole blackhole) {
+        synchronized (monitorQueue) {
+            if (monitorQueue.size == 0) return;
+            Message message = monitorQueue.removeIndex(0);
+            blackhole.consume(message.getLength());
+            freeMessages.add(message);
+        }
+    }
+}
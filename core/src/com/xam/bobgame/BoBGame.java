@@ -11,9 +11,14 @@ import com.badlogic.gdx.utils.viewport.Viewport;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.definitions.GameDefinitions;
 import com.xam.bobgame.dev.DevTools;
+import com.xam.bobgame.entity.EntityFactory;
+import com.xam.bobgame.game.PhysicsSystem;
 import com.xam.bobgame.graphics.GraphicsRenderer;
+import com.xam.bobgame.graphics.TextureCache;
 import com.xam.bobgame.net.NetDriver;
+import com.xam.bobgame.net.PacketChecksum;
 import com.xam.bobgame.ui.UIStage;
+import com.xam.bobgame.utils.TickScheduler;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -26,14 +31,21 @@ public class BoBGame extends ApplicationAdapter {
 	static boolean devMode = false;
 	static boolean noProfile = false;
 	static boolean noUDP = false;
+	static boolean pipelined = false;
 	static int tcpPort = NetDriver.PORT_TCP;
 	static int udpPort = NetDriver.PORT_UDP;
+	static int clientBandwidth = NetDriver.DEFAULT_CLIENT_BANDWIDTH;
+	static PacketChecksum packetChecksum = PacketChecksum.CRC32;
+	static int matchCount = 1;
+	static int workerCount = 0;
+	static int syncWorkerCount = 0;
 
 	GameEngine engine;
 	GameDefinitions gameDefinitions;
 	InputMultiplexer inputMultiplexer;
 
 	SpriteBatch batch;
+	TextureCache textureCache;
 	GraphicsRenderer renderer;
 	Viewport viewport;
 
@@ -44,6 +56,12 @@ public class BoBGame extends ApplicationAdapter {
 
 	Thread headlessCommandThread;
 	Thread headlessEngineThread;
+	MatchHost matchHost;
+	/**
+	 * Rendered time not yet consumed by simulation updates
+	 */
+	float frameTimeAccumulator = 0;
+	final TickScheduler tickScheduler = new TickScheduler(GameProperties.SIMULATION_UPDATE_INTERVAL_NS, GameProperties.SIMULATION_MAX_CATCH_UP_TICKS);
 	BufferedReader commandReader = new BufferedReader(new InputStreamReader(System.in));
 
 	public BoBGame() {
@@ -56,6 +74,7 @@ public class BoBGame extends ApplicationAdapter {
 			devMode = runArgs.containsKey("devMode");
 			noProfile = runArgs.containsKey("noProfile");
 			noUDP = runArgs.containsKey("noUDP");
+			pipelined = runArgs.containsKey("pipelined");
 			if (runArgs.containsKey("tcpPort")) {
 				try {
 					tcpPort = Integer.parseInt(runArgs.get("tcpPort"));
@@ -72,6 +91,41 @@ public class BoBGame extends ApplicationAdapter {
 					Log.error("Invalid UDP Port " + runArgs.get("udpPort"));
 				}
 			}
+			if (runArgs.containsKey("bandwidth")) {
+				try {
+					clientBandwidth = Integer.parseInt(runArgs.get("bandwidth"));
+				}
+				catch (NumberFormatException e) {
+					Log.error("Invalid bandwidth " + runArgs.get("bandwidth"));
+				}
+			}
+			if (runArgs.containsKey("checksum")) {
+				packetChecksum = PacketChecksum.get(runArgs.get("checksum"));
+			}
+			if (runArgs.containsKey("matches")) {
+				try {
+					matchCount = Math.max(1, Integer.parseInt(runArgs.get("matches")));
+				}
+				catch (NumberFormatException e) {
+					Log.error("Invalid match count " + runArgs.get("matches"));
+				}
+			}
+			if (runArgs.containsKey("workers")) {
+				try {
+					workerCount = Integer.parseInt(runArgs.get("workers"));
+				}
+				catch (NumberFormatException e) {
+					Log.error("Invalid worker count " + runArgs.get("workers"));
+				}
+			}
+			if (runArgs.containsKey("syncWorkers")) {
+				try {
+					syncWorkerCount = Integer.parseInt(runArgs.get("syncWorkers"));
+				}
+				catch (NumberFormatException e) {
+					Log.error("Invalid sync worker count " + runArgs.get("syncWorkers"));
+				}
+			}
 		}
 		if (devMode) {
 			Log.set(Log.LEVEL_DEBUG);
@@ -87,9 +141,20 @@ public class BoBGame extends ApplicationAdapter {
 		inputMultiplexer = new InputMultiplexer();
 		Gdx.input.setInputProcessor(inputMultiplexer);
 
+		if (headless && matchCount > 1) {
+			Log.info("Starting in headless dedicated server mode with " + matchCount + " matches");
+			matchHost = new MatchHost(matchCount, workerCount);
+			matchHost.start();
+			return;
+		}
+
 		engine = new GameEngine(this);
 		gameDefinitions = new GameDefinitions();
 		gameDefinitions.createDefinitions(false);
+		if (!headless) {
+			textureCache = new TextureCache();
+			EntityFactory.loadTextures(textureCache);
+		}
 		engine.initialize();
 
 		if (!headless) {
@@ -116,21 +181,19 @@ public class BoBGame extends ApplicationAdapter {
 		else {
 			Log.info("Starting in headless dedicated server mode");
 			headlessEngineThread = new Thread(new Runnable() {
-				long nextTime = 0;
-
 				@Override
 				public void run() {
 					engine.netDriver.startServer();
 					engine.start();
-					nextTime = System.currentTimeMillis() + GameProperties.SIMULATION_UPDATE_INTERVAL_L;
-					long curTime;
+					tickScheduler.start();
 
 					while (true) {
-						engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
-						while ((curTime = System.currentTimeMillis()) < nextTime) {
-							// waiting
+						int ticks = tickScheduler.waitForTicks();
+						while (ticks-- > 0) {
+							tickScheduler.tickStarted();
+							engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+							tickScheduler.tickEnded();
 						}
-						nextTime = curTime + GameProperties.SIMULATION_UPDATE_INTERVAL_L;
 					}
 
 				}
@@ -142,18 +205,24 @@ public class BoBGame extends ApplicationAdapter {
 	@Override
 	public void render () {
 		if (!headless) {
-			engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
-			renderer.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+			// run the simulation at a fixed rate regardless of the display's refresh rate
+			float frameTime = Math.min(Gdx.graphics.getDeltaTime(), GameProperties.MAX_FRAME_TIME);
+			frameTimeAccumulator += frameTime;
+			while (frameTimeAccumulator >= GameProperties.SIMULATION_UPDATE_INTERVAL) {
+				engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+				frameTimeAccumulator -= GameProperties.SIMULATION_UPDATE_INTERVAL;
+			}
+			renderer.update(frameTime, frameTimeAccumulator / GameProperties.SIMULATION_UPDATE_INTERVAL);
 
 			ScreenUtils.clear(0, 0, 0, 1);
 			viewport.apply(true);
 			renderer.draw(batch);
 
-			uiStage.act(GameProperties.SIMULATION_UPDATE_INTERVAL);
+			uiStage.act(frameTime);
 			uiStage.getViewport().apply(true);
 			uiStage.draw();
 
-			if (devMode) devTools.render(GameProperties.SIMULATION_UPDATE_INTERVAL);
+			if (devMode) devTools.render(frameTime);
 		}
 		else {
 			try {
@@ -166,6 +235,10 @@ public class BoBGame extends ApplicationAdapter {
 	}
 
 	private void headlessCommand(String input) {
+		if (matchHost != null) {
+			matchHost.command(input);
+			return;
+		}
 		switch (input) {
 			case "start":
 				synchronized (engine.updateLock) {
@@ -199,6 +272,24 @@ public class BoBGame extends ApplicationAdapter {
 			case "":
 				Formatter f = new Formatter();
 				Log.info(f.format("Bitrate recv=%1.2f send=%1.2f", engine.netDriver.getAverageReceiveBitrate(), engine.netDriver.getAverageSendBitrate()).toString());
+				f = new Formatter();
+				Log.info(f.format("Ticks=%d overruns=%d skipped=%d duration avg=%1.3fms max=%1.3fms lateness=%1.3fms",
+						tickScheduler.getTickCount(), tickScheduler.getOverrunCount(), tickScheduler.getSkippedTicks(),
+						tickScheduler.getAverageTickDuration(), tickScheduler.getMaxTickDuration(), tickScheduler.getAverageLateness()).toString());
+				PhysicsSystem physicsSystem = engine.getSystem(PhysicsSystem.class);
+				f = new Formatter();
+				Log.info(f.format("Bodies=%d awake=%d quantized=%d", physicsSystem.getBodyCount(), physicsSystem.getAwakeBodyCount(),
+						physicsSystem.getWrittenBodyCount()).toString());
+				break;
+			case "profile":
+				StringBuilder report = new StringBuilder();
+				engine.getProfiler().appendReport(report);
+				Log.info("Tick profile\n" + report);
+				break;
+			case "profile reset":
+				synchronized (engine.updateLock) {
+					engine.getProfiler().reset();
+				}
 				break;
 		}
 	}
@@ -220,7 +311,9 @@ public class BoBGame extends ApplicationAdapter {
 		if (devMode) devTools.saveSettings();
 		batch.dispose();
 		uiStage.dispose();
-		engine.netDriver.stop();
+		if (textureCache != null) textureCache.dispose();
+		if (matchHost != null) matchHost.stop();
+		else engine.netDriver.stop();
 		if (headlessCommandThread != null) headlessCommandThread.interrupt();
 	}
 
@@ -234,6 +327,10 @@ public class BoBGame extends ApplicationAdapter {
 		return engine;
 	}
 
+	public TextureCache getTextureCache() {
+		return textureCache;
+	}
+
 	public Viewport getWorldViewport() {
 		return viewport;
 	}
@@ -246,6 +343,32 @@ public class BoBGame extends ApplicationAdapter {
 		return noUDP;
 	}
 
+	/**
+	 * Whether servers encode Update messages on a worker thread while the next frame is simulated
+	 */
+	public static boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Number of threads that build the packets of a server's clients, or 1 to build them on the engine thread. The
+	 * threads besides the engine thread are shared by all matches of the process.
+	 */
+	public static int getSyncWorkerCount() {
+		return syncWorkerCount > 0 ? syncWorkerCount : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Bandwidth budget of each client connection in bits per second.
+	 */
+	public static int getClientBandwidth() {
+		return clientBandwidth;
+	}
+
+	public static PacketChecksum getPacketChecksum() {
+		return packetChecksum;
+	}
+
 	public static int getTcpPort() {
 		return tcpPort;
 	}
@@ -15,9 +15,11 @@ import com.xam.bobgame.entity.EntityUtils;
 import com.xam.bobgame.events.*;
 import com.xam.bobgame.events.classes.*;
 import com.xam.bobgame.game.*;
+import com.xam.bobgame.graphics.TextureCache;
 import com.xam.bobgame.net.ConnectionManager;
 import com.xam.bobgame.net.NetDriver;
-import com.xam.bobgame.utils.OrderedIntMap;
+import com.xam.bobgame.utils.GenerationalIdMap;
+import com.xam.bobgame.utils.Pools;
 
 public class GameEngine extends PooledEngine {
     private static final Class<?>[] PAUSABLE_SYSTEMS = {
@@ -40,13 +42,18 @@ public class GameEngine extends PooledEngine {
 
     final Object updateLock = new Object();
 
+    private final TickProfiler profiler = new TickProfiler(GameProperties.SIMULATION_UPDATE_INTERVAL);
+
     private int currentFrame = 0;
     private float currentTime = 0;
 
     private boolean stopping = false;
     private boolean restarting = false;
 
-    private final OrderedIntMap<Entity> entityMap = new OrderedIntMap<>();
+    /**
+     * Entities by id. Ids are allocated per engine, so that engines hosted in the same process don't share an id space.
+     */
+    private final GenerationalIdMap<Entity> entityMap = new GenerationalIdMap<>(NetDriver.ENTITY_INDEX_BITS, NetDriver.ENTITY_GENERATION_BITS);
 
     private ObjectMap<Class<? extends GameEvent>, GameEventListener> listeners = new ObjectMap<>();
 
@@ -158,14 +165,31 @@ public class GameEngine extends PooledEngine {
                 }
                 return;
             }
+            profiler.beginTick();
             super.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+            profiler.endSystems();
             netDriver.update2(GameProperties.SIMULATION_UPDATE_INTERVAL);
+            profiler.endTick();
             currentFrame++;
             currentTime += deltaTime;
         }
     }
 
     private void stopInternal() {
+        // Ashley builds families with a static builder, so systems of engines on other threads can't be added at the same time
+        synchronized (Family.class) {
+            readdSystems();
+        }
+
+        currentTime = 0;
+        currentFrame = 0;
+        stopping = false;
+
+        eventsSystem.addListeners(listeners);
+        game.onEngineStarted();
+    }
+
+    private void readdSystems() {
         // remove systems
         Array<EntitySystem> systems = new Array<>();
         removeSystem(netDriver);
@@ -182,13 +206,6 @@ public class GameEngine extends PooledEngine {
         addSystem(netDriver);
         addSystem(refereeSystem);
         for (EntitySystem system : systems) addSystem(system);
-
-        currentTime = 0;
-        currentFrame = 0;
-        stopping = false;
-
-        eventsSystem.addListeners(listeners);
-        game.onEngineStarted();
     }
 
     public void stop() {
@@ -233,7 +250,8 @@ public class GameEngine extends PooledEngine {
     public void addEntity(Entity entity) {
         super.addEntity(entity);
         int entityID = EntityUtils.getId(entity);
-        entityMap.put(entityID, entity);
+        Entity old = entityMap.put(entityID, entity);
+        if (old != null && old != entity) Log.warn("Entity " + EntityUtils.getId(old) + " replaced by " + entityID);
         if (mode == Mode.Server) {
             EntityCreatedEvent netEvent = Pools.obtain(EntityCreatedEvent.class);
             netEvent.entityId = entityID;
@@ -284,6 +302,14 @@ public class GameEngine extends PooledEngine {
         return currentFrame;
     }
 
+    /**
+     * Reserves the id of an entity about to be added.
+     * @return The entity id, or -1 if all ids are in use
+     */
+    public int nextEntityId() {
+        return entityMap.allocate();
+    }
+
     public float getCurrentTime() {
         return currentTime;
     }
@@ -297,13 +323,13 @@ public class GameEngine extends PooledEngine {
     }
 
     public Entity getEntityById(int entityId) {
-        Entity entity = entityMap.get(entityId, null);
+        Entity entity = entityMap.get(entityId);
         if (entity == null) return null;
         if (!(EntityUtils.isAdded(entity))) return null;
         return entity;
     }
 
-    public OrderedIntMap<Entity> getEntityMap() {
+    public GenerationalIdMap<Entity> getEntityMap() {
         return entityMap;
     }
 
@@ -311,6 +337,17 @@ public class GameEngine extends PooledEngine {
         return game.gameDefinitions;
     }
 
+    /**
+     * Shared texture atlas, or null when headless.
+     */
+    public TextureCache getTextureCache() {
+        return game.getTextureCache();
+    }
+
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
+
     public Viewport getViewport() {
         return game.getWorldViewport();
     }
@@ -39,7 +39,15 @@ public class GameProperties {
     public static final float CHARGE_RATE = PLAYER_STAMINA_MAX / CHARGE_DURATION;
 
     public static final float SIMULATION_UPDATE_INTERVAL = 1f / 60f;
-    public static final long SIMULATION_UPDATE_INTERVAL_L = (long) (SIMULATION_UPDATE_INTERVAL * 1000);
+    public static final long SIMULATION_UPDATE_INTERVAL_NS = 1000000000L / 60;
+    /**
+     * Maximum number of simulation updates run back to back by the headless server after a stall.
+     */
+    public static final int SIMULATION_MAX_CATCH_UP_TICKS = 5;
+    /**
+     * Maximum frame time accumulated by the renderer, so that a long stall doesn't trigger a burst of updates.
+     */
+    public static final float MAX_FRAME_TIME = 0.25f;
 
     public static final int BITRATE_INDICATOR_UPDATE_INTERVAL = 3;
 
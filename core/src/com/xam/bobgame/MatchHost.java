@@ -0,0 +1,203 @@
+package com.xam.bobgame;
+
+import com.badlogic.ashley.core.Family;
+import com.badlogic.gdx.InputMultiplexer;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.definitions.GameDefinitions;
+import com.xam.bobgame.game.PhysicsSystem;
+import com.xam.bobgame.net.HostServer;
+import com.xam.bobgame.utils.TickScheduler;
+
+import java.util.Formatter;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs several independent matches in one dedicated server process. Every match has its own {@link GameEngine}, and
+ * with it its own physics world, referee and entity ids. Clients connect through a single {@link HostServer} that
+ * assigns each of them to a match.
+ * <p>
+ * Matches are spread over a fixed number of worker threads. A match is created and updated only on its worker thread,
+ * so the per-thread object pools it uses are never touched by another worker.
+ */
+public class MatchHost {
+
+    private final HostServer hostServer = new HostServer();
+    private final Worker[] workers;
+    private final GameEngine[] engines;
+
+    /**
+     * @param matchCount Number of matches to host
+     * @param workerCount Number of worker threads, or 0 to use one per available processor. Never more than the number
+     *                    of matches.
+     */
+    public MatchHost(int matchCount, int workerCount) {
+        if (workerCount <= 0) workerCount = Runtime.getRuntime().availableProcessors();
+        workerCount = Math.max(1, Math.min(workerCount, matchCount));
+
+        engines = new GameEngine[matchCount];
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; ++i) {
+            workers[i] = new Worker(i);
+        }
+        for (int i = 0; i < matchCount; ++i) {
+            workers[i % workerCount].matchIndices.add(i);
+        }
+    }
+
+    /**
+     * Starts the workers, waits for all of them to create their matches, then starts listening for clients.
+     */
+    public void start() {
+        CountDownLatch created = new CountDownLatch(workers.length);
+        for (Worker worker : workers) {
+            worker.created = created;
+            worker.thread.start();
+        }
+        try {
+            created.await();
+        } catch (InterruptedException e) {
+            Log.error("MatchHost", "Interrupted while creating matches");
+            return;
+        }
+
+        for (int i = 0; i < engines.length; ++i) {
+            if (engines[i] == null) {
+                Log.error("MatchHost", "Failed to create match " + i);
+                return;
+            }
+            hostServer.addNetDriver(engines[i].netDriver);
+        }
+        if (hostServer.bind()) {
+            hostServer.start();
+        }
+    }
+
+    public void stop() {
+        hostServer.stop();
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    private GameEngine createEngine() {
+        BoBGame game = new BoBGame();
+        game.inputMultiplexer = new InputMultiplexer();
+        game.gameDefinitions = new GameDefinitions();
+        game.gameDefinitions.createDefinitions(false);
+
+        GameEngine engine;
+        // Ashley builds families with a static builder
+        synchronized (Family.class) {
+            engine = new GameEngine(game);
+            game.engine = engine;
+            engine.initialize();
+        }
+        engine.netDriver.startHostedServer();
+        engine.start();
+        return engine;
+    }
+
+    public int getMatchCount() {
+        return engines.length;
+    }
+
+    public GameEngine getEngine(int match) {
+        return engines[match];
+    }
+
+    void command(String input) {
+        switch (input) {
+            case "start":
+                for (GameEngine engine : engines) {
+                    synchronized (engine.updateLock) {
+                        engine.refereeSystem.startMatch();
+                    }
+                }
+                break;
+            case "restart":
+                for (GameEngine engine : engines) {
+                    synchronized (engine.updateLock) {
+                        engine.refereeSystem.restartMatch();
+                    }
+                }
+                break;
+            case "":
+                for (int i = 0; i < engines.length; ++i) {
+                    GameEngine engine = engines[i];
+                    PhysicsSystem physicsSystem = engine.getSystem(PhysicsSystem.class);
+                    Log.info(new Formatter().format("Match %d clients=%d bitrate recv=%1.2f send=%1.2f bodies=%d awake=%d quantized=%d", i,
+                            engine.netDriver.getConnectionManager().getConnectedCount(),
+                            engine.netDriver.getAverageReceiveBitrate(), engine.netDriver.getAverageSendBitrate(),
+                            physicsSystem.getBodyCount(), physicsSystem.getAwakeBodyCount(), physicsSystem.getWrittenBodyCount()).toString());
+                }
+                for (Worker worker : workers) {
+                    TickScheduler tickScheduler = worker.tickScheduler;
+                    Log.info(new Formatter().format("Worker %d matches=%d ticks=%d overruns=%d skipped=%d duration avg=%1.3fms max=%1.3fms lateness=%1.3fms",
+                            worker.index, worker.matchIndices.size, tickScheduler.getTickCount(), tickScheduler.getOverrunCount(),
+                            tickScheduler.getSkippedTicks(), tickScheduler.getAverageTickDuration(), tickScheduler.getMaxTickDuration(),
+                            tickScheduler.getAverageLateness()).toString());
+                }
+                break;
+            case "profile":
+                for (int i = 0; i < engines.length; ++i) {
+                    StringBuilder report = new StringBuilder();
+                    engines[i].getProfiler().appendReport(report);
+                    Log.info("Match " + i + " tick profile\n" + report);
+                }
+                break;
+            case "profile reset":
+                for (GameEngine engine : engines) {
+                    synchronized (engine.updateLock) {
+                        engine.getProfiler().reset();
+                    }
+                }
+                break;
+            default:
+                Log.info("Command not supported when hosting multiple matches: " + input);
+        }
+    }
+
+    private class Worker implements Runnable {
+        final int index;
+        final Thread thread;
+        final IntArray matchIndices = new IntArray();
+        final TickScheduler tickScheduler = new TickScheduler(GameProperties.SIMULATION_UPDATE_INTERVAL_NS, GameProperties.SIMULATION_MAX_CATCH_UP_TICKS);
+        CountDownLatch created;
+
+        Worker(int index) {
+            this.index = index;
+            thread = new Thread(this, "Match Worker " + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Array<GameEngine> workerEngines = new Array<>(matchIndices.size);
+            try {
+                for (int i = 0; i < matchIndices.size; ++i) {
+                    GameEngine engine = createEngine();
+                    engines[matchIndices.get(i)] = engine;
+                    workerEngines.add(engine);
+                }
+            }
+            finally {
+                created.countDown();
+            }
+
+            // one tick runs every match of this worker, so their ticks stay in step
+            tickScheduler.start();
+            while (!Thread.currentThread().isInterrupted()) {
+                int ticks = tickScheduler.waitForTicks();
+                while (ticks-- > 0) {
+                    tickScheduler.tickStarted();
+                    for (GameEngine engine : workerEngines) {
+                        engine.update(GameProperties.SIMULATION_UPDATE_INTERVAL);
+                    }
+                    tickScheduler.tickEnded();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.xam.bobgame;
+
+import com.badlogic.ashley.core.Engine;
+import com.badlogic.ashley.core.EntitySystem;
+
+/**
+ * Base of systems whose updates are timed by the {@link TickProfiler} of a {@link GameEngine}. Ashley calls
+ * {@link #checkProcessing()} right before updating each system, so it marks where the system's part of the tick starts.
+ * The part ends where the next system's part starts, so entity operations that Ashley processes after the update are
+ * counted with the system that caused them.
+ */
+public abstract class ProfiledSystem extends EntitySystem {
+    /**
+     * Index of the system's section in the profiler, or -1 if it has none yet
+     */
+    int profilerSection = -1;
+
+    public ProfiledSystem(int priority) {
+        super(priority);
+    }
+
+    @Override
+    public boolean checkProcessing() {
+        boolean processing = super.checkProcessing();
+        Engine engine = getEngine();
+        if (engine instanceof GameEngine) ((GameEngine) engine).getProfiler().beginSystem(this, processing);
+        return processing;
+    }
+}
@@ -0,0 +1,157 @@
+package com.xam.bobgame;
+
+import com.badlogic.gdx.utils.Array;
+import com.xam.bobgame.utils.LatencyHistogram;
+
+import java.util.Formatter;
+
+/**
+ * Records how long each part of a {@link GameEngine} tick takes: every {@link ProfiledSystem}, the
+ * {@link com.xam.bobgame.net.NetDriver#update2} that follows them, and the whole tick. Only written by the engine
+ * thread; reading from another thread may see a tick half recorded.
+ */
+public class TickProfiler {
+    private final long budgetNanos;
+
+    private final Array<Section> systemSections = new Array<>();
+    private final Section update2Section = new Section("update2", null);
+    private final Section tickSection = new Section("Tick", null);
+
+    private boolean inTick = false;
+    private long tickStart = 0;
+    private long sectionStart = 0;
+    private Section currentSection = null;
+
+    private long tickCount = 0;
+    /**
+     * Number of ticks that took longer than the tick interval
+     */
+    private long overrunCount = 0;
+
+    /**
+     * @param tickInterval Time budget of a tick in seconds
+     */
+    public TickProfiler(float tickInterval) {
+        budgetNanos = (long) (tickInterval * 1e9);
+    }
+
+    void beginTick() {
+        tickStart = sectionStart = System.nanoTime();
+        currentSection = null;
+        inTick = true;
+    }
+
+    void beginSystem(ProfiledSystem system, boolean processing) {
+        if (!inTick) return;
+        // systems that don't run only close the previous section
+        beginSection(processing ? getSection(system) : null);
+    }
+
+    /**
+     * Called after all systems have updated, before {@link com.xam.bobgame.net.NetDriver#update2}.
+     */
+    void endSystems() {
+        if (!inTick) return;
+        beginSection(update2Section);
+    }
+
+    void endTick() {
+        if (!inTick) return;
+        beginSection(null);
+        long duration = sectionStart - tickStart;
+        tickSection.histogram.record(duration);
+        if (duration > budgetNanos) overrunCount++;
+        tickCount++;
+        inTick = false;
+    }
+
+    private void beginSection(Section section) {
+        long now = System.nanoTime();
+        if (currentSection != null) currentSection.histogram.record(now - sectionStart);
+        currentSection = section;
+        sectionStart = now;
+    }
+
+    private Section getSection(ProfiledSystem system) {
+        int index = system.profilerSection;
+        if (index >= 0 && index < systemSections.size && systemSections.get(index).systemClass == system.getClass()) {
+            return systemSections.get(index);
+        }
+        // a new instance of a system gets the section of the one it replaced
+        for (int i = 0; i < systemSections.size; ++i) {
+            if (systemSections.get(i).systemClass == system.getClass()) {
+                system.profilerSection = i;
+                return systemSections.get(i);
+            }
+        }
+        system.profilerSection = systemSections.size;
+        Section section = new Section(system.getClass().getSimpleName(), system.getClass());
+        systemSections.add(section);
+        return section;
+    }
+
+    public void reset() {
+        for (Section section : systemSections) section.histogram.reset();
+        update2Section.histogram.reset();
+        tickSection.histogram.reset();
+        tickCount = 0;
+        overrunCount = 0;
+    }
+
+    /**
+     * Sections of the systems, in the order they first ran
+     */
+    public Array<Section> getSystemSections() {
+        return systemSections;
+    }
+
+    public Section getUpdate2Section() {
+        return update2Section;
+    }
+
+    public Section getTickSection() {
+        return tickSection;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Appends a line for every section, then the tick and overrun counts.
+     */
+    public void appendReport(StringBuilder out) {
+        Formatter f = new Formatter(out);
+        for (Section section : systemSections) section.format(f);
+        update2Section.format(f);
+        tickSection.format(f);
+        f.format("Ticks=%d overruns=%d", tickCount, overrunCount);
+    }
+
+    public static class Section {
+        public final String name;
+        public final LatencyHistogram histogram = new LatencyHistogram();
+        final Class<?> systemClass;
+
+        Section(String name, Class<?> systemClass) {
+            this.name = name;
+            this.systemClass = systemClass;
+        }
+
+        void format(Formatter f) {
+            f.format("%-16s p50=%1.3fms p99=%1.3fms max=%1.3fms%n", name, histogram.getValueAtPercentile(50) / 1e6f,
+                    histogram.getValueAtPercentile(99) / 1e6f, histogram.getMax() / 1e6f);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            format(new Formatter(out));
+            return out.toString().trim();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.assets.loaders.resolvers.PrefixFileHandleResolver;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.ai.steering.AIArrive;
 import com.xam.bobgame.ai.trees.GameBehaviorTreeLibrary;
 import com.xam.bobgame.ai.trees.GameStateAdapters;
@@ -19,7 +20,7 @@ import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.components.SteerableComponent;
 import com.xam.bobgame.entity.ComponentMappers;
 
-public class AISystem extends EntitySystem {
+public class AISystem extends ProfiledSystem {
 
     public static final String BEHAVIOR_TREES_DIR = "trees";
 
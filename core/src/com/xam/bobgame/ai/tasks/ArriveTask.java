@@ -5,7 +5,7 @@ import com.badlogic.gdx.ai.btree.LeafTask;
 import com.badlogic.gdx.ai.btree.Task;
 import com.badlogic.gdx.ai.btree.annotation.TaskAttribute;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.xam.bobgame.ai.trees.GameStates;
 import com.xam.bobgame.ai.trees.tasks.LibraryTask;
 import com.xam.bobgame.components.AIComponent;
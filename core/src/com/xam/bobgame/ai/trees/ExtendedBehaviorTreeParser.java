@@ -21,6 +21,7 @@ import com.badlogic.gdx.utils.reflect.Annotation;
 import com.badlogic.gdx.utils.reflect.ClassReflection;
 import com.badlogic.gdx.utils.reflect.Field;
 import com.badlogic.gdx.utils.reflect.ReflectionException;
+import com.xam.bobgame.utils.Pools;
 
 import java.io.InputStream;
 import java.io.Reader;
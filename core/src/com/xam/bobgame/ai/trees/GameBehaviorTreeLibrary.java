@@ -9,6 +9,7 @@ import com.badlogic.gdx.utils.*;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.ai.tasks.ArriveTask;
 import com.xam.bobgame.ai.tasks.SetTargetPositionTask;
+import com.xam.bobgame.utils.Pools;
 import com.xam.bobgame.utils.SuffixFileHandleResolver;
 
 /**
@@ -3,7 +3,7 @@ package com.xam.bobgame.ai.trees;
 import com.badlogic.gdx.ai.btree.Task;
 import com.badlogic.gdx.utils.Null;
 import com.badlogic.gdx.utils.Pool;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 
 public abstract class GameState<E> implements Pool.Poolable {
     protected Task<E> task;
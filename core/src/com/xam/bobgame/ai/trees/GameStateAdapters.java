@@ -7,7 +7,7 @@ import com.badlogic.gdx.ai.utils.random.FloatDistribution;
 import com.badlogic.gdx.ai.utils.random.IntegerDistribution;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.Pool;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 
 import java.util.StringTokenizer;
 
@@ -11,7 +11,6 @@ import com.xam.bobgame.game.RefereeSystem;
 import com.xam.bobgame.components.AIComponent;
 import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.entity.ComponentMappers;
-import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.MathUtils2;
 
 /**
@@ -535,8 +534,10 @@ public class GameStates {
         float offset;
         int playerId;
 
-        static float[] lastPlayerX = new float[NetDriver.MAX_CLIENTS];
-        static float[] lastPlayerY = new float[NetDriver.MAX_CLIENTS];
+        /**
+         * Last known position of the player, used while the player has no entity
+         */
+        float lastPlayerX, lastPlayerY;
 
         public PlayerPositionState() {
             super();
@@ -554,10 +555,10 @@ public class GameStates {
             Entity entity;
             if (refereeSystem != null && (entity = refereeSystem.getPlayerEntity(playerId)) != null) {
                 Vector2 position = ComponentMappers.physicsBody.get(entity).body.getPosition();
-                lastPlayerX[playerId] = position.x;
-                lastPlayerY[playerId] = position.y;
+                lastPlayerX = position.x;
+                lastPlayerY = position.y;
             }
-            return (axis.equals("x") ? lastPlayerX[playerId] : lastPlayerY[playerId]) + offset;
+            return (axis.equals("x") ? lastPlayerX : lastPlayerY) + offset;
         }
 
         public String getAxis() {
@@ -574,6 +575,8 @@ public class GameStates {
             other.engine = engine;
             other.axis = axis;
             other.offset = offset;
+            other.lastPlayerX = lastPlayerX;
+            other.lastPlayerY = lastPlayerY;
             return gameState;
         }
 
@@ -582,6 +585,8 @@ public class GameStates {
             super.reset();
             engine = null;
             axis = null;
+            lastPlayerX = 0;
+            lastPlayerY = 0;
         }
     }
 }
@@ -18,6 +18,7 @@ import com.badlogic.gdx.utils.reflect.Field;
 import com.badlogic.gdx.utils.reflect.ReflectionException;
 import com.xam.bobgame.ai.trees.tasks.*;
 import com.xam.bobgame.ai.trees.tasks.Timer;
+import com.xam.bobgame.utils.Pools;
 
 @SuppressWarnings("rawtypes")
 public class TaskLibrary {
@@ -3,7 +3,7 @@ package com.xam.bobgame.ai.trees.tasks;
 import com.badlogic.gdx.ai.btree.LeafTask;
 import com.badlogic.gdx.ai.btree.Task;
 import com.badlogic.gdx.ai.btree.annotation.TaskAttribute;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.xam.bobgame.ai.trees.GameStates;
 
 public class CheckFloat<E> extends LeafTask<E> implements LibraryTask<E> {
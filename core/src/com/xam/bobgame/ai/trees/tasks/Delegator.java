@@ -4,10 +4,12 @@ import com.badlogic.gdx.ai.btree.LeafTask;
 import com.badlogic.gdx.ai.btree.Task;
 import com.badlogic.gdx.ai.btree.annotation.TaskConstraint;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 @TaskConstraint(minChildren = 0, maxChildren = 1)
 public abstract class Delegator<E> extends LeafTask<E> implements LibraryTask<E> {
 
-    private static int nextId = 0;
+    private static final AtomicInteger nextId = new AtomicInteger(0);
 
     private Task<E> delegate;
     private String delegateId;
@@ -24,7 +26,7 @@ public abstract class Delegator<E> extends LeafTask<E> implements LibraryTask<E>
     public void setDelegate(Task<E> task) {
         if (delegate != null) throw new IllegalStateException("Delegator can have only one child task");
         delegate = task;
-        delegateId = "Delegate." + nextId++;
+        delegateId = "Delegate." + nextId.getAndIncrement();
     }
 
     @Override
@@ -5,7 +5,7 @@ import com.badlogic.ashley.core.Entity;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Null;
 import com.badlogic.gdx.utils.Pool.Poolable;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.components.GraphicsComponent;
 import com.xam.bobgame.entity.ComponentMappers;
@@ -2,7 +2,7 @@ package com.xam.bobgame.buffs;
 
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.xam.bobgame.components.GraphicsComponent;
 import com.xam.bobgame.entity.ComponentMappers;
 import com.xam.bobgame.graphics.animators.BlinkAnimator;
@@ -4,14 +4,15 @@ import com.badlogic.ashley.core.*;
 import com.badlogic.ashley.utils.ImmutableArray;
 import com.badlogic.gdx.utils.Null;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.components.BuffableComponent;
 import com.xam.bobgame.entity.ComponentMappers;
 import com.xam.bobgame.events.*;
 
-public class BuffSystem extends EntitySystem {
+public class BuffSystem extends ProfiledSystem {
 
     private ImmutableArray<Entity> buffableEntities;
 
@@ -0,0 +1,20 @@
+package com.xam.bobgame.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a codec class named after the annotated class with the suffix "Codec", in the same package. The codec has
+ * static encode and decode methods that pack the fields annotated with {@link NetInt}, {@link NetFloat} and
+ * {@link NetBoolean} in declaration order, the same way {@link com.xam.bobgame.utils.BitPacker#readInt},
+ * {@link com.xam.bobgame.utils.BitPacker#readFloat} and {@link com.xam.bobgame.utils.BitPacker#readBoolean} do, and
+ * the bit width of each field.
+ * <p>
+ * Annotated fields must not be private, static or final.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface NetCodec {
+}
@@ -0,0 +1,17 @@
+package com.xam.bobgame.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A float field quantized to steps of res in the range [min, max].
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface NetFloat {
+    float min();
+    float max();
+    float res();
+}
@@ -0,0 +1,16 @@
+package com.xam.bobgame.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * An int field packed with the bits needed for the range [min, max].
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface NetInt {
+    int min();
+    int max();
+}
@@ -4,10 +4,11 @@ import com.badlogic.ashley.core.Component;
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.Sprite;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Pool.Poolable;
+import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.graphics.TextureCache;
 import com.xam.bobgame.graphics.TextureDef;
 import com.xam.bobgame.graphics.animators.Animated;
 import com.xam.bobgame.net.NetDriver;
@@ -56,8 +57,8 @@ public class GraphicsComponent implements Component, NetSerializable, Animated,
         if (packer.isReadMode()) {
             textureDef.color.set(textureDef_r, textureDef_g, textureDef_b, textureDef_a);
             baseTint.set(baseTint_r, baseTint_g, baseTint_b, baseTint_a);
-            // TODO: don't create texture region if no entity to add to
-            sprite.setRegion(new TextureRegion(textureDef.createTexture()));
+            TextureCache textureCache = ((GameEngine) engine).getTextureCache();
+            if (textureCache != null) sprite.setRegion(textureCache.get(textureDef));
             sprite.setSize(w, h);
             sprite.setOriginCenter();
         }
@@ -28,10 +28,16 @@ public class PhysicsBodyComponent implements Component, NetSerializable, Poolabl
     public int xJitterCount = 0;
     public int yJitterCount = 0;
 
+    /**
+     * Whether the body's mass data has to be quantized again, after its fixtures or mass data were set
+     */
+    public boolean massChanged = true;
+
     @Override
     public void reset() {
         xJitterCount = 0;
         yJitterCount = 0;
+        massChanged = true;
     }
 
     @Override
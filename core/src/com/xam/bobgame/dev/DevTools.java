@@ -24,6 +24,7 @@ import com.xam.bobgame.BoBGame;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.dev.tools.EntityInspector;
 import com.xam.bobgame.dev.tools.QuickCommands;
+import com.xam.bobgame.dev.tools.SystemProfiler;
 import com.xam.bobgame.dev.tools.WindowManager;
 import com.xam.bobgame.dev.utils.DevToolWindow;
 
@@ -97,6 +98,7 @@ public class DevTools {
 //            devToolWindows.add(new EntityInfo(this, skin));
             devToolWindows.add(new EntityInspector(this, skin));
             devToolWindows.add(new QuickCommands(this, skin));
+            devToolWindows.add(new SystemProfiler(this, skin));
             for (DevToolWindow devToolWindow : devToolWindows) {
                 devUIStage.addActor(devToolWindow);
             }
@@ -14,12 +14,13 @@ import com.badlogic.gdx.utils.Null;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.components.GraphicsComponent;
 import com.xam.bobgame.components.IdentityComponent;
 import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.game.PhysicsSystem;
 
-public class DevToolsSystem extends EntitySystem {
+public class DevToolsSystem extends ProfiledSystem {
     public DevTools devTools;
 
     public Viewport engineViewport;
@@ -0,0 +1,100 @@
+package com.xam.bobgame.dev.tools;
+
+import com.badlogic.gdx.scenes.scene2d.InputEvent;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Skin;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
+import com.badlogic.gdx.utils.Array;
+import com.xam.bobgame.TickProfiler;
+import com.xam.bobgame.dev.DevTools;
+import com.xam.bobgame.dev.utils.DevToolWindow;
+import com.xam.bobgame.utils.LatencyHistogram;
+
+/**
+ * Shows how long each system of the engine takes per tick, from the engine's {@link TickProfiler}.
+ */
+public class SystemProfiler extends DevToolWindow {
+    private static final float REFRESH_INTERVAL = 0.5f;
+
+    private final DevTools devTools;
+    private final Table sectionTable;
+    private final Array<Label[]> rows = new Array<>();
+    private final Label ticksLabel;
+    private float refreshTimer = 0;
+
+    public SystemProfiler(final DevTools devTools, Skin skin) {
+        super("SystemProfiler", skin);
+
+        this.devTools = devTools;
+
+        defaults().left().expandX().fillX();
+
+        sectionTable = new Table(skin);
+        sectionTable.defaults().left().padRight(8f);
+        add(sectionTable);
+        row();
+        ticksLabel = addLabelCell("", "small");
+        row();
+        addTextButton("Reset", new ClickListener() {
+            @Override
+            public void clicked(InputEvent event, float x, float y) {
+                devTools.engine.getProfiler().reset();
+            }
+        });
+
+        // load saved window settings, or use specified defaults
+        loadWindowSettings(devTools.getWindowSettingsXML(), 0f, 0f, 360f, 280f, false);
+    }
+
+    @Override
+    public void act(float delta) {
+        super.act(delta);
+        if (!isVisible()) return;
+        refreshTimer += delta;
+        if (refreshTimer < REFRESH_INTERVAL) return;
+        refreshTimer = 0;
+        updateInfo();
+    }
+
+    public void updateInfo() {
+        TickProfiler profiler = devTools.engine.getProfiler();
+        Array<TickProfiler.Section> sections = profiler.getSystemSections();
+        int count = sections.size + 2;
+        if (rows.size != count) buildRows(count);
+
+        for (int i = 0; i < sections.size; ++i) setRow(rows.get(i), sections.get(i));
+        setRow(rows.get(sections.size), profiler.getUpdate2Section());
+        setRow(rows.get(sections.size + 1), profiler.getTickSection());
+        ticksLabel.setText("Ticks " + profiler.getTickCount() + "  Overruns " + profiler.getOverrunCount());
+    }
+
+    private void buildRows(int count) {
+        sectionTable.clearChildren();
+        rows.clear();
+        String[] headers = {"", "p50", "p99", "max"};
+        for (String header : headers) sectionTable.add(new Label(header, getSkin(), "small"));
+        sectionTable.row();
+        for (int i = 0; i < count; ++i) {
+            Label[] row = new Label[headers.length];
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = new Label("", getSkin(), "small");
+                sectionTable.add(row[j]);
+            }
+            sectionTable.row();
+            rows.add(row);
+        }
+    }
+
+    private void setRow(Label[] row, TickProfiler.Section section) {
+        LatencyHistogram histogram = section.histogram;
+        row[0].setText(section.name);
+        row[1].setText(formatMillis(histogram.getValueAtPercentile(50)));
+        row[2].setText(formatMillis(histogram.getValueAtPercentile(99)));
+        row[3].setText(formatMillis(histogram.getMax()));
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%1.3fms", nanos / 1e6f);
+    }
+}
@@ -6,30 +6,82 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
 import com.xam.bobgame.components.*;
+import com.xam.bobgame.game.RefereeSystem;
+import com.xam.bobgame.graphics.TextureCache;
 import com.xam.bobgame.graphics.TextureDef;
 
 public class EntityFactory {
 
-    private static int nextId = 0;
-
+    /**
+     * @return The identity component with a newly reserved id, or null if all entity ids are in use
+     */
     private static IdentityComponent createIdentity(Engine engine, EntityType type) {
-        return ComponentFactory.identity(engine, nextId++, type);
+        int entityId = ((GameEngine) engine).nextEntityId();
+        if (entityId == -1) return null;
+        return ComponentFactory.identity(engine, entityId, type);
     }
 
-    public static Entity createPlayer(Engine engine, Color color) {
-        Entity entity = engine.createEntity();
-
-        IdentityComponent identity = createIdentity(engine, EntityType.Player);
-        PhysicsBodyComponent physicsBody = ComponentFactory.physicsBody(engine, BodyDef.BodyType.DynamicBody, GameProperties.START_X, GameProperties.START_Y, GameProperties.LINEAR_DAMPENING,
-                0, 0.5f, 0.5f, 0.1f, 0.8f, false);
+    public static TextureDef playerTextureDef(Color color) {
         TextureDef textureDef = new TextureDef();
         textureDef.type = TextureDef.TextureType.PlayerBall;
         textureDef.wh = 32;
         textureDef.textureVal1 = 16;
         textureDef.color.set(color);
-        GraphicsComponent graphics = ComponentFactory.graphics(engine, textureDef, 1, 1, 0);
+        return textureDef;
+    }
+
+    public static TextureDef starTextureDef() {
+        TextureDef textureDef = new TextureDef();
+        textureDef.type = TextureDef.TextureType.Star;
+        textureDef.wh = 32;
+        textureDef.textureVal1 = 16;
+        textureDef.textureVal2 = 4;
+        textureDef.color.set(Color.YELLOW);
+        return textureDef;
+    }
+
+    public static TextureDef holeTextureDef() {
+        TextureDef textureDef = new TextureDef();
+        textureDef.type = TextureDef.TextureType.HazardHole;
+        textureDef.wh = 128;
+        textureDef.textureVal1 = 64;
+        textureDef.color.set(Color.BLACK);
+        return textureDef;
+    }
+
+    public static TextureDef wallTextureDef() {
+        TextureDef textureDef = new TextureDef();
+        textureDef.type = TextureDef.TextureType.Wall;
+        textureDef.wh = 32;
+        textureDef.textureVal1 = 32;
+        textureDef.textureVal2 = 32;
+        textureDef.color.set(Color.LIGHT_GRAY);
+        return textureDef;
+    }
+
+    /**
+     * Packs the textures of all entity types into the atlas up front, so spawning doesn't upload textures.
+     */
+    public static void loadTextures(TextureCache textureCache) {
+        for (Color color : RefereeSystem.PLAYER_COLORS) {
+            textureCache.get(playerTextureDef(color));
+        }
+        textureCache.get(starTextureDef());
+        textureCache.get(holeTextureDef());
+        textureCache.get(wallTextureDef());
+    }
+
+    public static Entity createPlayer(Engine engine, Color color) {
+        IdentityComponent identity = createIdentity(engine, EntityType.Player);
+        if (identity == null) return null;
+        Entity entity = engine.createEntity();
+
+        PhysicsBodyComponent physicsBody = ComponentFactory.physicsBody(engine, BodyDef.BodyType.DynamicBody, GameProperties.START_X, GameProperties.START_Y, GameProperties.LINEAR_DAMPENING,
+                0, 0.5f, 0.5f, 0.1f, 0.8f, false);
+        GraphicsComponent graphics = ComponentFactory.graphics(engine, playerTextureDef(color), 1, 1, 0);
         BuffableComponent buffable = ComponentFactory.buffable(engine);
 
         entity.add(identity);
@@ -41,9 +93,10 @@ public class EntityFactory {
     }
 
     public static Entity createStar(Engine engine) {
+        IdentityComponent identity = createIdentity(engine, EntityType.Pickup);
+        if (identity == null) return null;
         Entity entity = engine.createEntity();
 
-        IdentityComponent identity = createIdentity(engine, EntityType.Pickup);
         PhysicsBodyComponent physicsBody = ComponentFactory.physicsBody(engine, BodyDef.BodyType.DynamicBody, GameProperties.START_X, GameProperties.START_Y, GameProperties.LINEAR_DAMPENING,
                 0, 0.2f, 2f, 0.1f, 0.2f, false);
         physicsBody.fixtureDef.filter.categoryBits = 2;
@@ -52,13 +105,7 @@ public class EntityFactory {
         physicsBody.bodyDef.angularDamping = 0.1f;
         physicsBody.bodyDef.fixedRotation = false;
 
-        TextureDef textureDef = new TextureDef();
-        textureDef.type = TextureDef.TextureType.Star;
-        textureDef.wh = 32;
-        textureDef.textureVal1 = 16;
-        textureDef.textureVal2 = 4;
-        textureDef.color.set(Color.YELLOW);
-        GraphicsComponent graphics = ComponentFactory.graphics(engine, textureDef, 0.4f, 0.4f, 0);
+        GraphicsComponent graphics = ComponentFactory.graphics(engine, starTextureDef(), 0.4f, 0.4f, 0);
 
         PickupComponent pickup = ComponentFactory.pickup(engine, 10f);
 
@@ -71,20 +118,16 @@ public class EntityFactory {
     }
 
     public static Entity createHoleHazard(Engine engine, float x, float y, float radius) {
+        IdentityComponent identity = createIdentity(engine, EntityType.Hazard);
+        if (identity == null) return null;
         Entity entity = engine.createEntity();
 
-        IdentityComponent identity = createIdentity(engine, EntityType.Hazard);
         PhysicsBodyComponent physicsBody = ComponentFactory.physicsBody(engine, BodyDef.BodyType.KinematicBody, x, y, 0,
                 0, 0.25f, 0, 0, 0, true);
         physicsBody.fixtureDef.filter.categoryBits = 2;
         physicsBody.fixtureDef.filter.maskBits = ~2;
 
-        TextureDef textureDef = new TextureDef();
-        textureDef.type = TextureDef.TextureType.HazardHole;
-        textureDef.wh = 128;
-        textureDef.textureVal1 = 64;
-        textureDef.color.set(Color.BLACK);
-        GraphicsComponent graphics = ComponentFactory.graphics(engine, textureDef, radius * 2, radius * 2, 3);
+        GraphicsComponent graphics = ComponentFactory.graphics(engine, holeTextureDef(), radius * 2, radius * 2, 3);
         HazardComponent hazard = ComponentFactory.hazard(engine);
         GravitationalFieldComponent gravField = ComponentFactory.gravField(engine, 40, 30);
 
@@ -0,0 +1,101 @@
+package com.xam.bobgame.events;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.xam.bobgame.events.classes.*;
+import com.xam.bobgame.net.NetDriver;
+
+/**
+ * Assigns every {@link GameEvent} class a dense type id, so that listeners and queues can be looked up by index. The
+ * network events are registered first, in a fixed order, and their ids are also their tags on the wire. Other classes
+ * get the next free id the first time one of them is created.
+ */
+public class EventTypes {
+
+    private static final Class<?>[] networkEventClasses = {
+            PlayerAssignEvent.class,
+            PlayerConnectedEvent.class,
+            PlayerJoinedEvent.class,
+            PlayerLeftEvent.class,
+            PlayerControlEvent.class,
+            PlayerScoreEvent.class,
+            PlayerDeathEvent.class,
+            EntityCreatedEvent.class,
+            EntityDespawnedEvent.class,
+            RequestJoinEvent.class,
+            RequestPlayerIdEvent.class,
+            MatchEndedEvent.class,
+            MatchRestartEvent.class,
+    };
+
+    private static final Class<?>[] localEventClasses = {
+            BuffEndedEvent.class,
+            BuffStartedEvent.class,
+            ButtonReleaseEvent.class,
+            ClientConnectedEvent.class,
+            ClientDisconnectedEvent.class,
+            ConnectionStateRefreshEvent.class,
+            HazardContactEvent.class,
+            PickupContactEvent.class,
+            PlayerBallSpawnedEvent.class,
+            ScoreBoardRefreshEvent.class,
+            ScoreBoardUpdateEvent.class,
+    };
+
+    /**
+     * Type ids below this are network events that can be sent.
+     */
+    public static final int NETWORK_EVENT_COUNT = networkEventClasses.length;
+
+    private static final ObjectIntMap<Class<?>> typeIds = new ObjectIntMap<>();
+    private static final Array<Class<? extends GameEvent>> types = new Array<>();
+    private static final Array<Class<? extends NetDriver.NetworkEvent>> networkTypes = new Array<>();
+
+    static {
+        for (Class<?> type : networkEventClasses) {
+            Class<? extends NetDriver.NetworkEvent> networkType = type.asSubclass(NetDriver.NetworkEvent.class);
+            networkTypes.add(networkType);
+            register(networkType);
+        }
+        for (Class<?> type : localEventClasses) register(type.asSubclass(GameEvent.class));
+    }
+
+    private EventTypes() {
+    }
+
+    private static int register(Class<? extends GameEvent> type) {
+        int id = types.size;
+        types.add(type);
+        typeIds.put(type, id);
+        return id;
+    }
+
+    /**
+     * @return Type id of the event class, registering it if needed
+     */
+    public static int getTypeId(Class<? extends GameEvent> type) {
+        synchronized (typeIds) {
+            int id = typeIds.get(type, -1);
+            return id == -1 ? register(type) : id;
+        }
+    }
+
+    public static Class<? extends GameEvent> getType(int typeId) {
+        synchronized (typeIds) {
+            return types.get(typeId);
+        }
+    }
+
+    /**
+     * @return Number of registered event classes. Ids are always less than this.
+     */
+    public static int getTypeCount() {
+        synchronized (typeIds) {
+            return types.size;
+        }
+    }
+
+    public static Class<? extends NetDriver.NetworkEvent> getNetworkType(int typeId) {
+        return networkTypes.get(typeId);
+    }
+}
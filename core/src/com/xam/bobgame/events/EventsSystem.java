@@ -1,15 +1,18 @@
 package com.xam.bobgame.events;
 
 import com.badlogic.ashley.core.Engine;
-import com.badlogic.ashley.core.EntitySystem;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.ObjectSet;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.events.classes.*;
+import com.xam.bobgame.utils.SpscRingBuffer;
 
-public class EventsSystem extends EntitySystem {
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class EventsSystem extends ProfiledSystem {
 
 //    private static final ObjectSet<Class<?>> registeredEvents = new ObjectSet<>();
 //    static {
@@ -21,12 +24,47 @@ public class EventsSystem extends EntitySystem {
 //        registeredEvents.add(ClientConnectedEvent.class);
 //    }
 
-    private final Array<GameEvent> eventQueue = new Array<>();
-    private ObjectMap<Class<? extends GameEvent>, Array<GameEventListener>> listenerMap = new ObjectMap<>();
+    private static final int THREAD_QUEUE_SIZE = 256;
+
+    /**
+     * Events queued by the engine thread.
+     */
+    private Array<GameEvent> eventQueue = new Array<>();
+    /**
+     * Events queued by other threads (network threads, or the main thread before the engine starts updating). Each
+     * thread gets its own queue so that every queue has a single producer and the engine thread is the only consumer.
+     */
+    private final CopyOnWriteArrayList<SpscRingBuffer<GameEvent>> threadQueues = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<SpscRingBuffer<GameEvent>> threadQueue = new ThreadLocal<SpscRingBuffer<GameEvent>>() {
+        @Override
+        protected SpscRingBuffer<GameEvent> initialValue() {
+            SpscRingBuffer<GameEvent> queue = new SpscRingBuffer<>(THREAD_QUEUE_SIZE);
+            threadQueues.add(queue);
+            return queue;
+        }
+    };
+    private volatile Thread engineThread = null;
+    /**
+     * Listeners of each event type, indexed by {@link EventTypes type id}
+     */
+    private final Array<Array<GameEventListener>> listenerTable = new Array<>();
     private Array<GameEventListener> globalListeners = new Array<>();
 
     public EventsSystem(int priority) {
         super(priority);
+        growListenerTable(EventTypes.getTypeCount());
+    }
+
+    private void growListenerTable(int size) {
+        while (listenerTable.size < size) listenerTable.add(new Array<GameEventListener>(false, 4));
+    }
+
+    /**
+     * @return Listeners of the event's type, or null if the type has been registered since the table was last grown
+     * and so has none
+     */
+    private Array<GameEventListener> getListeners(int typeId) {
+        return typeId < listenerTable.size ? listenerTable.get(typeId) : null;
     }
 
     @Override
@@ -37,71 +75,83 @@ public class EventsSystem extends EntitySystem {
     @Override
     public void removedFromEngine(Engine engine) {
         super.removedFromEngine(engine);
-        synchronized (eventQueue) {
-            for (GameEvent event : eventQueue) {
-                Pools.free(event);
-            }
-            eventQueue.clear();
+        pollThreadQueues();
+        for (GameEvent event : eventQueue) {
+            Pools.free(event);
         }
-        listenerMap.clear();
+        eventQueue.clear();
+        for (Array<GameEventListener> listeners : listenerTable) listeners.clear();
         globalListeners.clear();
     }
 
-    Array<GameEvent> currentQueue = new Array<>();
+    private Array<GameEvent> currentQueue = new Array<>();
     @Override
     public void update(float deltaTime) {
-        synchronized (eventQueue) {
-            currentQueue.addAll(eventQueue);
-            eventQueue.clear();
-        }
-
-        for (GameEvent event : currentQueue) {
-            Array<GameEventListener> listeners = listenerMap.get(event.getClass());
-            if (listeners != null) {
-                handleEvent(event, listeners);
-            }
-            for (GameEventListener listener : globalListeners) {
-                listener.handle(event);
-            }
+        engineThread = Thread.currentThread();
+        pollThreadQueues();
+        // events queued while handling these go to the next update
+        Array<GameEvent> events = eventQueue;
+        eventQueue = currentQueue;
+        currentQueue = events;
+
+        for (int i = 0; i < events.size; ++i) {
+            GameEvent event = events.get(i);
+            dispatch(event, getListeners(event.getTypeId()));
             Pools.free(event);
         }
 
-        currentQueue.clear();
+        events.clear();
+    }
+
+    /**
+     * Moves events queued by other threads to the engine thread's queue.
+     */
+    private void pollThreadQueues() {
+        for (int i = 0; i < threadQueues.size(); ++i) {
+            SpscRingBuffer<GameEvent> queue = threadQueues.get(i);
+            GameEvent event;
+            while ((event = queue.poll()) != null) eventQueue.add(event);
+        }
     }
 
-    private void handleEvent(GameEvent event, Array<GameEventListener> eventListeners) {
-        for (GameEventListener listener : eventListeners) {
-//            if (registeredEvents.contains(event.getClass())) {
-//                Log.debug("EventsSystem", event + " : handled by " + listener);
-//            }
-            listener.handle(event);
+    private void dispatch(GameEvent event, Array<GameEventListener> eventListeners) {
+        if (eventListeners != null) {
+            for (int i = 0; i < eventListeners.size; ++i) {
+//                Log.debug("EventsSystem", event + " : handled by " + eventListeners.get(i));
+                eventListeners.get(i).handle(event);
+            }
+        }
+        for (int i = 0; i < globalListeners.size; ++i) {
+            globalListeners.get(i).handle(event);
         }
     }
 
     public int queueEvent(GameEvent event) {
-        Array<GameEventListener> listeners = listenerMap.get(event.getClass());
+        Array<GameEventListener> listeners = getListeners(event.getTypeId());
         if ((listeners == null || listeners.isEmpty()) && globalListeners.isEmpty()) {
             Pools.free(event);
             return 0;
         }
-        synchronized (eventQueue) {
+        if (Thread.currentThread() == engineThread) {
             eventQueue.add(event);
         }
+        else if (!threadQueue.get().offer(event)) {
+            Log.error("EventsSystem", "Event queue of " + Thread.currentThread().getName() + " is full, dropping " + event.getClass().getSimpleName());
+            Pools.free(event);
+            return 0;
+        }
         return globalListeners.size + (listeners == null ? 0 : listeners.size);
     }
 
     // should be used sparingly (only for specific event types between tightly-coupled systems)
     public int triggerEvent(GameEvent event) {
-        Array<GameEventListener> listeners = listenerMap.get(event.getClass());
+        Array<GameEventListener> listeners = getListeners(event.getTypeId());
         if ((listeners == null || listeners.isEmpty()) && globalListeners.isEmpty()) {
             Pools.free(event);
             return 0;
         }
 
-        if (listeners != null) handleEvent(event, listeners);
-        for (GameEventListener listener : globalListeners) {
-            listener.handle(event);
-        }
+        dispatch(event, listeners);
         Pools.free(event);
         return globalListeners.size + (listeners == null ? 0 : listeners.size);
     }
@@ -111,11 +161,9 @@ public class EventsSystem extends EntitySystem {
     }
 
     public void addListener(Class<? extends GameEvent> type, GameEventListener listener) {
-        Array<GameEventListener> listeners = listenerMap.get(type);
-        if (listeners == null) {
-            listeners = new Array<>();
-            listenerMap.put(type, listeners);
-        }
+        int typeId = EventTypes.getTypeId(type);
+        if (typeId >= listenerTable.size) growListenerTable(EventTypes.getTypeCount());
+        Array<GameEventListener> listeners = listenerTable.get(typeId);
         if (listeners.contains(listener, true)) {
             Log.error("EventsSystem", "Attempted to register a duplicate listener");
             return;
@@ -134,7 +182,7 @@ public class EventsSystem extends EntitySystem {
     }
 
     public void removeListener(Class<? extends GameEvent> type, GameEventListener listener) {
-        Array<GameEventListener> listeners = listenerMap.get(type);
+        Array<GameEventListener> listeners = getListeners(EventTypes.getTypeId(type));
         if (listeners != null) {
             if (listeners.removeValue(listener, true)) {
                 return;
@@ -1,6 +1,30 @@
 package com.xam.bobgame.events;
 
 import com.badlogic.gdx.utils.Pool;
+import com.xam.bobgame.utils.Pools;
 
-public interface GameEvent extends Pool.Poolable {
+/**
+ * Events are queued from network threads and freed by the engine thread, so they go back to the pool they were obtained
+ * from (see {@link Pools.Shared}).
+ */
+public abstract class GameEvent implements Pool.Poolable, Pools.Shared {
+    /**
+     * Looked up once per instance; pooled events keep it across uses.
+     */
+    private final int typeId = EventTypes.getTypeId(getClass());
+    private Pool<?> ownerPool = null;
+
+    public final int getTypeId() {
+        return typeId;
+    }
+
+    @Override
+    public final Pool<?> getOwnerPool() {
+        return ownerPool;
+    }
+
+    @Override
+    public final void setOwnerPool(Pool<?> pool) {
+        ownerPool = pool;
+    }
 }
@@ -4,7 +4,7 @@ import com.badlogic.ashley.core.Entity;
 import com.xam.bobgame.buffs.Buff;
 import com.xam.bobgame.events.GameEvent;
 
-public class BuffEndedEvent implements GameEvent {
+public class BuffEndedEvent extends GameEvent {
 
     public Entity entity;
     public int entityId = -1;
@@ -4,7 +4,7 @@ import com.badlogic.ashley.core.Entity;
 import com.xam.bobgame.buffs.Buff;
 import com.xam.bobgame.events.GameEvent;
 
-public class BuffStartedEvent implements GameEvent {
+public class BuffStartedEvent extends GameEvent {
 
     public Entity entity;
     public int entityId = -1;
@@ -2,7 +2,7 @@ package com.xam.bobgame.events.classes;
 
 import com.xam.bobgame.events.GameEvent;
 
-public class ButtonReleaseEvent implements GameEvent {
+public class ButtonReleaseEvent extends GameEvent {
     public float x = 0;
     public float y = 0;
     public int playerId = -1;
@@ -2,7 +2,7 @@ package com.xam.bobgame.events.classes;
 
 import com.xam.bobgame.events.GameEvent;
 
-public class ClientConnectedEvent implements GameEvent {
+public class ClientConnectedEvent extends GameEvent {
 
     public int clientId = -1;
 
@@ -2,7 +2,7 @@ package com.xam.bobgame.events.classes;
 
 import com.xam.bobgame.events.GameEvent;
 
-public class ClientDisconnectedEvent implements GameEvent {
+public class ClientDisconnectedEvent extends GameEvent {
 
     public int clientId = -1;
     public int playerId = -1;
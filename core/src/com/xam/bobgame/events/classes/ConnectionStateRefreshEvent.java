@@ -2,7 +2,7 @@ package com.xam.bobgame.events.classes;
 
 import com.xam.bobgame.events.GameEvent;
 
-public class ConnectionStateRefreshEvent implements GameEvent {
+public class ConnectionStateRefreshEvent extends GameEvent {
 
     @Override
     public void reset() {
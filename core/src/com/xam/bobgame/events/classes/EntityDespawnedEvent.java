@@ -4,10 +4,14 @@ import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class EntityDespawnedEvent extends NetDriver.NetworkEvent {
+    @NetInt(min = 0, max = NetDriver.MAX_ENTITY_ID)
     public int entityId = -1;
 
     @Override
@@ -25,16 +29,18 @@ public class EntityDespawnedEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        entityId = packer.readInt(entityId, 0, NetDriver.MAX_ENTITY_ID);
+        if (packer.isWriteMode()) {
+            EntityDespawnedEventCodec.encode(this, packer);
+            return 0;
+        }
 
-        if (packer.isReadMode()) {
-            Entity entity = ((GameEngine) engine).getEntityById(entityId);
-            if (entity == null) {
-                Log.warn("EntityDespawnedEvent", "No entity found with id " + entityId);
-                return 0;
-            }
-            engine.removeEntity(entity);
+        EntityDespawnedEventCodec.decode(this, packer);
+        Entity entity = ((GameEngine) engine).getEntityById(entityId);
+        if (entity == null) {
+            Log.warn("EntityDespawnedEvent", "No entity found with id " + entityId);
+            return 0;
         }
+        engine.removeEntity(entity);
 
         return 0;
     }
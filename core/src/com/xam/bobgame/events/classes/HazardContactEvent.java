@@ -3,7 +3,7 @@ package com.xam.bobgame.events.classes;
 import com.badlogic.ashley.core.Entity;
 import com.xam.bobgame.events.GameEvent;
 
-public class HazardContactEvent implements GameEvent {
+public class HazardContactEvent extends GameEvent {
     public Entity entity = null;
     public Entity hazard = null;
 
@@ -1,11 +1,15 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.utils.BitPacker;
 import com.xam.bobgame.net.NetDriver;
 
+@NetCodec
 public class PlayerAssignEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
 
     @Override
@@ -16,7 +20,8 @@ public class PlayerAssignEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
+        if (packer.isWriteMode()) PlayerAssignEventCodec.encode(this, packer);
+        else PlayerAssignEventCodec.decode(this, packer);
         return 0;
     }
 
@@ -1,12 +1,17 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerBallSpawnedEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
+    @NetInt(min = 0, max = NetDriver.MAX_ENTITY_ID)
     public int entityId = -1;
 
     @Override
@@ -18,8 +23,8 @@ public class PlayerBallSpawnedEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
-        entityId = packer.readInt(entityId, 0, NetDriver.MAX_ENTITY_ID);
+        if (packer.isWriteMode()) PlayerBallSpawnedEventCodec.encode(this, packer);
+        else PlayerBallSpawnedEventCodec.decode(this, packer);
         return 0;
     }
 }
@@ -1,16 +1,21 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerConnectedEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
+        if (packer.isWriteMode()) PlayerConnectedEventCodec.encode(this, packer);
+        else PlayerConnectedEventCodec.decode(this, packer);
         return 0;
     }
 
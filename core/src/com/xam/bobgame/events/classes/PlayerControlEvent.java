@@ -2,31 +2,45 @@ package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.codec.NetBoolean;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetFloat;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.utils.BitPacker;
 import com.xam.bobgame.net.NetDriver;
 
+@NetCodec
 public class PlayerControlEvent extends NetDriver.NetworkEvent {
+    @NetInt(min = -1, max = 31)
     public int controlId = -1;
+    @NetInt(min = 0, max = NetDriver.MAX_ENTITY_ID)
     public int entityId = -1;
-    public float x, y;
+    @NetFloat(min = -3, max = GameProperties.MAP_WIDTH + 3, res = NetDriver.RES_POSITION)
+    public float x;
+    @NetFloat(min = -3, max = GameProperties.MAP_HEIGHT + 3, res = NetDriver.RES_POSITION)
+    public float y;
+    @NetInt(min = -1, max = 1)
     public int buttonId;
+    @NetBoolean
     public boolean buttonState;
+    /**
+     * Sequence number of the input, acknowledged by the server so that the client can replay later inputs
+     */
+    @NetInt(min = 0, max = NetDriver.INPUT_SEQ_LIMIT - 1)
+    public int inputSeq = -1;
 
     @Override
     public void reset() {
         super.reset();
         controlId = -1;
         entityId = -1;
+        inputSeq = -1;
     }
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        controlId = packer.readInt(controlId, -1, 31);
-        entityId = packer.readInt(entityId, 0, NetDriver.MAX_ENTITY_ID);
-        x = packer.readFloat(x, -3, GameProperties.MAP_WIDTH + 3, NetDriver.RES_POSITION);
-        y = packer.readFloat(y, -3,  GameProperties.MAP_HEIGHT + 3, NetDriver.RES_POSITION);
-        buttonId = packer.readInt(buttonId, -1, 1);
-        buttonState = packer.readInt(buttonState ? 1 : 0, 0, 1) > 0;
+        if (packer.isWriteMode()) PlayerControlEventCodec.encode(this, packer);
+        else PlayerControlEventCodec.decode(this, packer);
         return 0;
     }
 
@@ -39,11 +53,12 @@ public class PlayerControlEvent extends NetDriver.NetworkEvent {
         other.y = y;
         other.buttonId = buttonId;
         other.buttonState = buttonState;
+        other.inputSeq = inputSeq;
         return super.copyTo(event);
     }
 
     @Override
     public String toString() {
-        return "PlayerControlEvent controlId=" + controlId + " entityId=" + entityId + " x=" + x + " y=" + y + " buttonId=" + buttonId + " buttonState=" + buttonState;
+        return "PlayerControlEvent controlId=" + controlId + " entityId=" + entityId + " x=" + x + " y=" + y + " buttonId=" + buttonId + " buttonState=" + buttonState + " inputSeq=" + inputSeq;
     }
 }
@@ -1,11 +1,15 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerJoinedEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
 
     @Override
@@ -22,7 +26,8 @@ public class PlayerJoinedEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
+        if (packer.isWriteMode()) PlayerJoinedEventCodec.encode(this, packer);
+        else PlayerJoinedEventCodec.decode(this, packer);
         return 0;
     }
 
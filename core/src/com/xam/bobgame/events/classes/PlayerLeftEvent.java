@@ -1,12 +1,18 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetBoolean;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerLeftEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
+    @NetBoolean
     public boolean kicked = false;
 
     @Override
@@ -23,8 +29,8 @@ public class PlayerLeftEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
-        kicked = packer.readBoolean(kicked);
+        if (packer.isWriteMode()) PlayerLeftEventCodec.encode(this, packer);
+        else PlayerLeftEventCodec.decode(this, packer);
         return 0;
     }
 
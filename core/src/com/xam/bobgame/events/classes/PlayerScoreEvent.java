@@ -1,12 +1,17 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerScoreEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = 0, max = NetDriver.MAX_CLIENTS - 1)
     public int playerId = -1;
+    @NetInt(min = 0, max = NetDriver.MAX_SCORE_INCREMENT)
     public int scoreIncrement = 0;
 
     @Override
@@ -26,8 +31,8 @@ public class PlayerScoreEvent extends NetDriver.NetworkEvent {
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, 0, NetDriver.MAX_CLIENTS - 1);
-        scoreIncrement = packer.readInt(scoreIncrement, 0, NetDriver.MAX_SCORE_INCREMENT);
+        if (packer.isWriteMode()) PlayerScoreEventCodec.encode(this, packer);
+        else PlayerScoreEventCodec.decode(this, packer);
         return 0;
     }
 }
@@ -2,7 +2,7 @@ package com.xam.bobgame.events.classes;
 
 import com.xam.bobgame.events.GameEvent;
 
-public class ScoreBoardRefreshEvent implements GameEvent {
+public class ScoreBoardRefreshEvent extends GameEvent {
 
     @Override
     public void reset() {
@@ -1,16 +1,21 @@
 package com.xam.bobgame.events.classes;
 
 import com.badlogic.ashley.core.Engine;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetInt;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class ScoreBoardUpdateEvent extends NetDriver.NetworkEvent {
 
+    @NetInt(min = -1, max = 31)
     public int playerId = -1;
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        playerId = packer.readInt(playerId, -1, 31);
+        if (packer.isWriteMode()) ScoreBoardUpdateEventCodec.encode(this, packer);
+        else ScoreBoardUpdateEventCodec.decode(this, packer);
         return 0;
     }
 
@@ -2,13 +2,13 @@ package com.xam.bobgame.game;
 
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
-import com.badlogic.ashley.core.EntitySystem;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Transform;
 import com.badlogic.gdx.utils.*;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.entity.ComponentMappers;
 import com.xam.bobgame.events.*;
@@ -16,8 +16,9 @@ import com.xam.bobgame.events.classes.ButtonReleaseEvent;
 import com.xam.bobgame.events.classes.PlayerControlEvent;
 import com.xam.bobgame.events.classes.PlayerDeathEvent;
 import com.xam.bobgame.net.NetDriver;
+import com.xam.bobgame.utils.Pools;
 
-public class ControlSystem extends EntitySystem {
+public class ControlSystem extends ProfiledSystem {
 
     private PlayerControlInfo[] playerControlInfos = new PlayerControlInfo[NetDriver.MAX_CLIENTS];
 
@@ -33,13 +34,15 @@ public class ControlSystem extends EntitySystem {
     private boolean localButtonState = false;
     private int localButton = 0;
 
+    private final InputPrediction inputPrediction = new InputPrediction();
+
     public ControlSystem(int priority) {
         super(priority);
 
         listeners.put(PlayerControlEvent.class, new EventListenerAdapter<PlayerControlEvent>() {
             @Override
             public void handleEvent(PlayerControlEvent event) {
-                control(event.controlId, event.entityId, event.x, event.y, event.buttonId, event.buttonState);
+                control(event.controlId, event.entityId, event.x, event.y, event.buttonId, event.buttonState, event.inputSeq);
             }
         });
         listeners.put(PlayerDeathEvent.class, new EventListenerAdapter<PlayerDeathEvent>() {
@@ -58,6 +61,7 @@ public class ControlSystem extends EntitySystem {
         EventsSystem eventsSystem = engine.getSystem(EventsSystem.class);
         eventsSystem.addListeners(listeners);
         for (PlayerControlInfo playerControlInfo : playerControlInfos) playerControlInfo.reset();
+        inputPrediction.clear();
     }
 
     @Override
@@ -84,7 +88,8 @@ public class ControlSystem extends EntitySystem {
             EventsSystem eventsSystem = getEngine().getSystem(EventsSystem.class);
 
             if (((GameEngine) getEngine()).getMode() == GameEngine.Mode.Client) {
-                netDriver.queueClientEvent(-1, playerControlEvent);
+                playerControlEvent.inputSeq = inputPrediction.nextInput();
+                netDriver.queueInput(playerControlEvent);
             }
             eventsSystem.triggerEvent(playerControlEvent);
 
@@ -119,11 +124,12 @@ public class ControlSystem extends EntitySystem {
 
     private final Vector2 tempVec = new Vector2();
 
-    private void control(int playerId, int entityId, float x, float y, int buttonId, boolean buttonState) {
+    private void control(int playerId, int entityId, float x, float y, int buttonId, boolean buttonState, int inputSeq) {
         if (playerId < 0 || playerId >= NetDriver.MAX_CLIENTS) {
             Log.debug("ControlSystem", "Invalid playerId: " + playerId);
             return;
         }
+        if (inputSeq != -1) playerControlInfos[playerId].lastInputSeq = inputSeq;
         Entity entity = ((GameEngine) getEngine()).getEntityById(entityId);
         if (entity == null) {
 //            Log.debug("ControlSystem", "Invalid entityId: " + entityId);
@@ -159,4 +165,8 @@ public class ControlSystem extends EntitySystem {
     public PlayerControlInfo getPlayerControlInfo(int playerId) {
         return playerControlInfos[playerId];
     }
+
+    public InputPrediction getInputPrediction() {
+        return inputPrediction;
+    }
 }
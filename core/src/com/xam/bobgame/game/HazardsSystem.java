@@ -1,16 +1,16 @@
 package com.xam.bobgame.game;
 
 import com.badlogic.ashley.core.Engine;
-import com.badlogic.ashley.core.EntitySystem;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.xam.bobgame.GameEngine;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.buffs.BuffDefs;
 import com.xam.bobgame.buffs.BuffSystem;
 import com.xam.bobgame.entity.EntityUtils;
 import com.xam.bobgame.events.*;
 import com.xam.bobgame.events.classes.HazardContactEvent;
 
-public class HazardsSystem extends EntitySystem {
+public class HazardsSystem extends ProfiledSystem {
 
     private ObjectMap<Class<? extends GameEvent>, GameEventListener> listeners = new ObjectMap<>();
 
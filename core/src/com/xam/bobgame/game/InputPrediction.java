@@ -0,0 +1,107 @@
+package com.xam.bobgame.game;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.xam.bobgame.net.NetDriver;
+
+/**
+ * Client-side prediction for the local player. Every local input is numbered, and the force it applied to the
+ * player's ball is kept until the server acknowledges the input. When an authoritative state for the ball arrives, the
+ * inputs the server hasn't processed yet are replayed on top of it.
+ * <p>
+ * Replay integrates only the local ball, the same way Box2D does for a body without contacts. Collisions during the
+ * replayed frames are resolved by the next world step.
+ */
+public class InputPrediction {
+    /**
+     * Number of unacknowledged inputs kept. Older inputs are dropped.
+     */
+    public static final int HISTORY_SIZE = 64;
+
+    private final int[] inputSeqs = new int[HISTORY_SIZE];
+    private final float[] forceX = new float[HISTORY_SIZE];
+    private final float[] forceY = new float[HISTORY_SIZE];
+    private int head = 0;
+    private int count = 0;
+    private int nextInputSeq = 0;
+
+    /**
+     * Starts recording a new input, to be applied in the current frame.
+     * @return Sequence number of the input
+     */
+    public int nextInput() {
+        int inputSeq = nextInputSeq;
+        nextInputSeq = (nextInputSeq + 1) % NetDriver.INPUT_SEQ_LIMIT;
+        if (count == HISTORY_SIZE) {
+            head = (head + 1) % HISTORY_SIZE;
+            count--;
+        }
+        int i = (head + count) % HISTORY_SIZE;
+        inputSeqs[i] = inputSeq;
+        forceX[i] = 0;
+        forceY[i] = 0;
+        count++;
+        return inputSeq;
+    }
+
+    /**
+     * Records a force applied to the local player's ball by the current input.
+     */
+    public void addForce(float x, float y) {
+        if (count == 0) return;
+        int i = (head + count - 1) % HISTORY_SIZE;
+        forceX[i] += x;
+        forceY[i] += y;
+    }
+
+    /**
+     * Drops inputs up to and including the given one, which the server has already applied.
+     */
+    public void acknowledge(int inputSeq) {
+        while (count > 0 && !isNewer(inputSeqs[head], inputSeq)) {
+            head = (head + 1) % HISTORY_SIZE;
+            count--;
+        }
+    }
+
+    /**
+     * Re-simulates the unacknowledged inputs, one step each, starting from the body's current state.
+     */
+    public void replay(Body body, float step) {
+        float mass = body.getMass();
+        float invMass = mass > 0 ? 1f / mass : 0;
+        float damping = 1f / (1f + step * body.getLinearDamping());
+        Vector2 pos = body.getPosition();
+        float x = pos.x, y = pos.y;
+        Vector2 vel = body.getLinearVelocity();
+        float vx = vel.x, vy = vel.y;
+
+        for (int n = 0; n < count; ++n) {
+            int i = (head + n) % HISTORY_SIZE;
+            vx = (vx + step * invMass * forceX[i]) * damping;
+            vy = (vy + step * invMass * forceY[i]) * damping;
+            x += step * vx;
+            y += step * vy;
+        }
+
+        body.setTransform(x, y, body.getAngle());
+        body.setLinearVelocity(vx, vy);
+    }
+
+    public int getPendingCount() {
+        return count;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Whether input a comes after input b, allowing for sequence numbers wrapping around.
+     */
+    public static boolean isNewer(int a, int b) {
+        int d = (a - b + NetDriver.INPUT_SEQ_LIMIT) % NetDriver.INPUT_SEQ_LIMIT;
+        return d != 0 && d < NetDriver.INPUT_SEQ_LIMIT / 2;
+    }
+}
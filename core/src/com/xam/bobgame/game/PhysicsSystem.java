@@ -2,23 +2,22 @@ package com.xam.bobgame.game;
 
 import com.badlogic.ashley.core.*;
 import com.badlogic.ashley.utils.ImmutableArray;
-import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Sprite;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.BoBGame;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.components.GravitationalFieldComponent;
 import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.definitions.MapDefinition;
 import com.xam.bobgame.entity.ComponentMappers;
+import com.xam.bobgame.entity.EntityFactory;
 import com.xam.bobgame.entity.EntityType;
 import com.xam.bobgame.entity.EntityUtils;
 import com.xam.bobgame.events.*;
@@ -26,12 +25,11 @@ import com.xam.bobgame.events.classes.ButtonReleaseEvent;
 import com.xam.bobgame.events.classes.HazardContactEvent;
 import com.xam.bobgame.events.classes.PickupContactEvent;
 import com.xam.bobgame.events.classes.PlayerBallSpawnedEvent;
-import com.xam.bobgame.graphics.TextureDef;
+import com.xam.bobgame.graphics.InterpolationBuffer;
 import com.xam.bobgame.net.NetDriver;
-import com.xam.bobgame.utils.ExpoMovingAverage;
 import com.xam.bobgame.utils.MathUtils2;
 
-public class PhysicsSystem extends EntitySystem {
+public class PhysicsSystem extends ProfiledSystem {
     private ImmutableArray<Entity> entities;
     private ImmutableArray<Entity> gravFieldEntities;
 
@@ -48,6 +46,10 @@ public class PhysicsSystem extends EntitySystem {
 
     private Filter nullFilter = new Filter();
 
+    private TransformCache transformCache;
+    private int awakeBodyCount = 0;
+    private int writtenBodyCount = 0;
+
     public PhysicsSystem(int priority) {
         super(priority);
 
@@ -76,12 +78,15 @@ public class PhysicsSystem extends EntitySystem {
                 physicsBody.body = world.createBody(physicsBody.bodyDef);
                 PhysicsHistory physicsHistory = new PhysicsHistory(entity);
                 physicsBody.body.setUserData(physicsHistory);
+                physicsHistory.stepPos.set(physicsBody.bodyDef.position);
+                physicsHistory.prevStepPos.set(physicsBody.bodyDef.position);
                 Shape shape = physicsBody.shapeDef.createShape();
                 physicsBody.fixtureDef.shape = shape;
                 physicsBody.fixture = physicsBody.body.createFixture(physicsBody.fixtureDef);
                 physicsBody.fixture.setUserData(new FixtureData(entity, false));
                 physicsBody.body.setFixedRotation(true);
                 physicsBody.body.setAngularVelocity(physicsBody.bodyDef.angularVelocity);
+                physicsBody.massChanged = true;
 //                if (!enabled) physicsBody.fixture.setSensor(true);
                 shape.dispose();
 
@@ -113,6 +118,7 @@ public class PhysicsSystem extends EntitySystem {
     public void addedToEngine(Engine engine) {
         world = new World(new Vector2(0, 0), true);
         world.setContactListener(contactListener);
+        if (transformCache == null) transformCache = new TransformCache(((GameEngine) engine).getEntityMap());
 
         MapDefinition mapDefinition = ((GameEngine) engine).getGameDefinitions().getDefinition("0", MapDefinition.class);
         createWalls(mapDefinition);
@@ -149,7 +155,7 @@ public class PhysicsSystem extends EntitySystem {
 
         world.step(simUpdateStep, velIterations, posIterations);
         quantizePhysics();
-        if (((GameEngine) getEngine()).getMode() == GameEngine.Mode.Client) updateSmoothing(deltaTime);
+        recordSteps();
     }
 
     private void createWalls(MapDefinition mapDefinition) {
@@ -172,14 +178,7 @@ public class PhysicsSystem extends EntitySystem {
             wallBodies[i].createFixture(fixtureDef);
 
             if (!BoBGame.isHeadless()) {
-                TextureDef textureDef = new TextureDef();
-                textureDef.wh = 32;
-                textureDef.type = TextureDef.TextureType.Wall;
-                textureDef.color.set(Color.LIGHT_GRAY);
-                textureDef.textureVal1 = 32;
-                textureDef.textureVal2 = 32;
-                Texture texture = textureDef.createTexture();
-                Sprite sprite = new Sprite(new TextureRegion(texture));
+                Sprite sprite = new Sprite(((GameEngine) getEngine()).getTextureCache().get(EntityFactory.wallTextureDef()));
                 sprite.setSize(wall.w, wall.h);
                 sprite.setOriginCenter();
                 sprite.setOriginBasedPosition(wall.x, wall.y);
@@ -191,6 +190,31 @@ public class PhysicsSystem extends EntitySystem {
         shape.dispose();
     }
 
+    /**
+     * Number of bodies awake in the latest step.
+     */
+    public int getAwakeBodyCount() {
+        return awakeBodyCount;
+    }
+
+    /**
+     * Number of bodies that had values written back by quantization in the latest step.
+     */
+    public int getWrittenBodyCount() {
+        return writtenBodyCount;
+    }
+
+    public int getBodyCount() {
+        return entities == null ? 0 : entities.size();
+    }
+
+    /**
+     * Body states after the latest world step.
+     */
+    public TransformCache getTransformCache() {
+        return transformCache;
+    }
+
     public Sprite[] getWallSprites() {
         return wallSprites;
     }
@@ -203,23 +227,78 @@ public class PhysicsSystem extends EntitySystem {
     private final Vector2 tempVec2 = new Vector2();
     private final Vector2 tempVec3 = new Vector2();
 
+    /**
+     * Quantizes the state of all bodies, and copies it into the transform cache. Only values that are off the
+     * quantization grid are written back. Sleeping bodies have no velocity, and mass data only changes with fixtures, so
+     * neither is read when it can't have changed.
+     */
     private void quantizePhysics() {
+        TransformCache cache = transformCache;
+        cache.begin(((GameEngine) getEngine()).getCurrentFrame());
+        awakeBodyCount = 0;
+        writtenBodyCount = 0;
         for (Entity entity : entities) {
             PhysicsBodyComponent physicsBody = ComponentMappers.physicsBody.get(entity);
             Body body = physicsBody.body;
-            Transform tfm = body.getTransform();
-            Vector2 linearVel = body.getLinearVelocity();
+            boolean written = false;
 
+            // a sleeping body may still have been moved since the last step
+            Transform tfm = body.getTransform();
             float x = MathUtils2.quantize(tfm.vals[0], NetDriver.RES_POSITION);
             float y = MathUtils2.quantize(tfm.vals[1], NetDriver.RES_POSITION);
-            body.setTransform(x, y, MathUtils2.quantize(tfm.getRotation(), NetDriver.RES_ORIENTATION));
-            body.setLinearVelocity(MathUtils2.quantize(linearVel.x, NetDriver.RES_VELOCITY), MathUtils2.quantize(linearVel.y, NetDriver.RES_VELOCITY));
-            body.setAngularVelocity(MathUtils2.quantize(body.getAngularVelocity(), NetDriver.RES_ORIENTATION));
+            float rotation = tfm.getRotation();
+            float angle = MathUtils2.quantize(rotation, NetDriver.RES_ORIENTATION);
+            if (x != tfm.vals[0] || y != tfm.vals[1] || angle != rotation) {
+                body.setTransform(x, y, angle);
+                written = true;
+            }
+
+            float velX = 0, velY = 0, angularVel = 0;
+            if (body.isAwake()) {
+                awakeBodyCount++;
+                Vector2 linearVel = body.getLinearVelocity();
+                velX = MathUtils2.quantize(linearVel.x, NetDriver.RES_VELOCITY);
+                velY = MathUtils2.quantize(linearVel.y, NetDriver.RES_VELOCITY);
+                if (velX != linearVel.x || velY != linearVel.y) {
+                    body.setLinearVelocity(velX, velY);
+                    written = true;
+                }
+                float bodyAngularVel = body.getAngularVelocity();
+                angularVel = MathUtils2.quantize(bodyAngularVel, NetDriver.RES_ORIENTATION);
+                if (angularVel != bodyAngularVel) {
+                    body.setAngularVelocity(angularVel);
+                    written = true;
+                }
+            }
 
-            MassData md = body.getMassData();
-            md.mass = MathUtils2.quantize(md.mass, NetDriver.RES_MASS);
-            md.I = MathUtils2.quantize(md.I, NetDriver.RES_MASS);
-            body.setMassData(md);
+            MassData md = null;
+            if (physicsBody.massChanged) {
+                md = body.getMassData();
+                md.mass = MathUtils2.quantize(md.mass, NetDriver.RES_MASS);
+                md.I = MathUtils2.quantize(md.I, NetDriver.RES_MASS);
+                body.setMassData(md);
+                physicsBody.massChanged = false;
+                written = true;
+            }
+            if (written) writtenBodyCount++;
+
+            int entityId = EntityUtils.getId(entity);
+            if (entityId != -1) {
+                int i = cache.set(entityId);
+                cache.x[i] = x;
+                cache.y[i] = y;
+                cache.angle[i] = angle;
+                cache.velX[i] = velX;
+                cache.velY[i] = velY;
+                cache.angularVel[i] = angularVel;
+                // otherwise unchanged since the entity's last step
+                if (md != null) {
+                    cache.mass[i] = md.mass;
+                    cache.centerX[i] = md.center.x;
+                    cache.centerY[i] = md.center.y;
+                    cache.inertia[i] = md.I;
+                }
+            }
 
             tempVec.set(x, y).sub(physicsBody.prevPos);
             physicsBody.xJitterCount = tempVec.x * physicsBody.displacement.x < 0 ? Math.min(3, physicsBody.xJitterCount + 1) : Math.max(0, physicsBody.xJitterCount - 1);
@@ -229,17 +308,25 @@ public class PhysicsSystem extends EntitySystem {
         }
     }
 
-    private void updateSmoothing(float deltaTime) {
+    /**
+     * Keeps the states of the last two steps for the renderer to interpolate between.
+     */
+    private void recordSteps() {
         for (Entity entity : entities) {
-            PhysicsBodyComponent physicsBody = ComponentMappers.physicsBody.get(entity);
-            Body body = physicsBody.body;
+            Body body = ComponentMappers.physicsBody.get(entity).body;
             PhysicsHistory physicsHistory = (PhysicsHistory) body.getUserData();
-            if (physicsHistory == null || physicsHistory.velError <= 0) continue;
-
-            physicsHistory.posXError.update(physicsHistory.velXError.getAverage() * deltaTime * NetDriver.VEL_SMOOTHING_FACTOR);
-            physicsHistory.posYError.update(physicsHistory.velYError.getAverage() * deltaTime * NetDriver.VEL_SMOOTHING_FACTOR);
-            physicsHistory.velXError.update(0);
-            physicsHistory.velYError.update(0);
+            physicsHistory.prevStepPos.set(physicsHistory.stepPos);
+            physicsHistory.prevStepAngle = physicsHistory.stepAngle;
+            int i = transformCache.indexOf(EntityUtils.getId(entity));
+            if (i != -1) {
+                physicsHistory.stepPos.set(transformCache.x[i], transformCache.y[i]);
+                physicsHistory.stepAngle = transformCache.angle[i];
+            }
+            else {
+                physicsHistory.stepPos.set(body.getPosition());
+                physicsHistory.stepAngle = body.getAngle();
+            }
+            physicsHistory.correction.scl(NetDriver.CORRECTION_DECAY);
         }
     }
 
@@ -270,19 +357,10 @@ public class PhysicsSystem extends EntitySystem {
         // target accel perpendicular to movement direction
         tempVec3.add(tempVec2);
 
+        pb.body.applyForceToCenter(tempVec3, true);
         if (((GameEngine) getEngine()).getMode() == GameEngine.Mode.Client) {
-            PhysicsHistory physicsHistory = (PhysicsHistory) pb.body.getUserData();
-//            physicsHistory.posXError.reset();
-//            physicsHistory.posYError.reset();
-            physicsHistory.velXError.reset();
-            physicsHistory.velYError.reset();
-            physicsHistory.velXError.update(tempVec2.x - tempVec3.x);
-            physicsHistory.velYError.update(tempVec2.y - tempVec3.y);
-            physicsHistory.velError = 4;
-            pb.body.applyForceToCenter(tempVec3.scl(NetDriver.FORCE_FACTOR), true);
-        }
-        else {
-            pb.body.applyForceToCenter(tempVec3, true);
+            // only the local player's movement is simulated on clients
+            getEngine().getSystem(ControlSystem.class).getInputPrediction().addForce(tempVec3.x, tempVec3.y);
         }
 
         playerInfo.stamina = Math.max(GameProperties.PLAYER_STAMINA_MIN, playerInfo.stamina - chargeAmount * GameProperties.PLAYER_STAMINA_LOSS);
@@ -455,12 +533,24 @@ public class PhysicsSystem extends EntitySystem {
     }
 
     public static class PhysicsHistory {
-        public final ExpoMovingAverage posXError = new ExpoMovingAverage(0.1f);
-        public final ExpoMovingAverage posYError = new ExpoMovingAverage(0.1f);
-
-        public int velError = 0;
-        public final ExpoMovingAverage velXError = new ExpoMovingAverage(0.1f);
-        public final ExpoMovingAverage velYError = new ExpoMovingAverage(0.1f);
+        /**
+         * Position and angle after the previous and the latest simulation step
+         */
+        public final Vector2 prevStepPos = new Vector2();
+        public final Vector2 stepPos = new Vector2();
+        public float prevStepAngle = 0;
+        public float stepAngle = 0;
+
+        /**
+         * Offset from the simulated position at which a predicted body is drawn, so that corrections are blended in over
+         * a few frames instead of snapping.
+         */
+        public final Vector2 correction = new Vector2();
+
+        /**
+         * States received from the server, for rendering remote entities on clients
+         */
+        public final InterpolationBuffer serverStates = new InterpolationBuffer(NetDriver.INTERPOLATION_BUFFER_SIZE, NetDriver.EXTRAPOLATION_LIMIT);
 
         public final Entity entity;
 
@@ -468,24 +558,13 @@ public class PhysicsSystem extends EntitySystem {
             this.entity = entity;
         }
 
-        public void updatePosition(float newX, float newY, float oldX, float oldY) {
-            if (posXError.isInit()) {
-                posXError.update(newX - (oldX + posXError.getAverage()));
-                posYError.update(newY - (oldY + posYError.getAverage()));
-            }
-            else {
-                posXError.update(0);
-                posYError.update(0);
-            }
-        }
-
-        public void updateVel(float newX, float newY, float oldX, float oldY) {
-            if (velError == 0) return;
-            velError--;
-//            velXError.update(newX - (oldX + velXError.getAverage()));
-//            velYError.update(newY - (oldY + velYError.getAverage()));
-            velXError.update(newX);
-            velYError.update(newY);
+        /**
+         * Records that the body was moved by a correction. The drawn position stays where it was.
+         */
+        public void addCorrection(float dx, float dy) {
+            correction.add(dx, dy);
+            prevStepPos.sub(dx, dy);
+            stepPos.sub(dx, dy);
         }
     }
 
@@ -6,10 +6,11 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.components.IdentityComponent;
 import com.xam.bobgame.components.PhysicsBodyComponent;
 import com.xam.bobgame.components.PickupComponent;
@@ -19,7 +20,7 @@ import com.xam.bobgame.events.classes.PickupContactEvent;
 import com.xam.bobgame.events.classes.PlayerScoreEvent;
 import com.xam.bobgame.net.NetDriver;
 
-public class PickupsSystem extends EntitySystem {
+public class PickupsSystem extends ProfiledSystem {
 
     private ObjectMap<Class<? extends GameEvent>, GameEventListener> listeners = new ObjectMap<>();
     private ObjectMap<Family, EntityListener> entityListeners = new ObjectMap<>();
@@ -115,6 +116,10 @@ public class PickupsSystem extends EntitySystem {
         float y = MathUtils.random(1, GameProperties.MAP_HEIGHT - 1);
 
         Entity entity = EntityFactory.createStar(getEngine());
+        if (entity == null) {
+            Log.warn("PickupsSystem", "Out of entity ids, star not spawned");
+            return;
+        }
         PhysicsBodyComponent pb = ComponentMappers.physicsBody.get(entity);
         pb.bodyDef.position.x = x;
         pb.bodyDef.position.y = y;
@@ -3,26 +3,37 @@ package com.xam.bobgame.game;
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.gdx.math.Vector2;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.codec.NetBoolean;
+import com.xam.bobgame.codec.NetCodec;
+import com.xam.bobgame.codec.NetFloat;
 import com.xam.bobgame.net.NetDriver;
 import com.xam.bobgame.net.NetSerializable;
 import com.xam.bobgame.utils.BitPacker;
 
+@NetCodec
 public class PlayerControlInfo implements NetSerializable {
 
     public Vector2 cursorPosition = new Vector2(Vector2.Zero);
+    @NetBoolean
     public boolean buttonState = false;
+    @NetFloat(min = 0, max = GameProperties.CHARGE_DURATION_2, res = NetDriver.RES_HOLD_DURATION)
     public float holdDuration = 0;
+    /**
+     * Sequence number of the last input received from the player's client, or -1. Not replicated.
+     */
+    public int lastInputSeq = -1;
 
     public void reset() {
         cursorPosition.setZero();
         holdDuration = 0;
         buttonState = false;
+        lastInputSeq = -1;
     }
 
     @Override
     public int read(BitPacker packer, Engine engine) {
-        buttonState = packer.readBoolean(buttonState);
-        holdDuration = packer.readFloat(holdDuration, 0, GameProperties.CHARGE_DURATION_2, NetDriver.RES_HOLD_DURATION);
+        if (packer.isWriteMode()) PlayerControlInfoCodec.encode(this, packer);
+        else PlayerControlInfoCodec.decode(this, packer);
         return 0;
     }
 }
@@ -8,6 +8,7 @@ import com.badlogic.gdx.utils.*;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.buffs.BuffDefs;
 import com.xam.bobgame.buffs.BuffSystem;
 import com.xam.bobgame.components.PhysicsBodyComponent;
@@ -18,13 +19,14 @@ import com.xam.bobgame.events.*;
 import com.xam.bobgame.events.classes.*;
 import com.xam.bobgame.net.ConnectionManager;
 import com.xam.bobgame.net.NetDriver;
+import com.xam.bobgame.utils.Pools;
 
-public class RefereeSystem extends EntitySystem {
+public class RefereeSystem extends ProfiledSystem {
 
     private ObjectMap<Class<? extends GameEvent>, GameEventListener> listeners = new ObjectMap<>();
     private ObjectMap<Family, EntityListener> entityListeners = new ObjectMap<>();
 
-    private Color[] playerColor = {
+    public static final Color[] PLAYER_COLORS = {
             Color.CYAN, Color.BLUE, Color.YELLOW, Color.LIME, Color.GOLD, Color.SCARLET, Color.VIOLET,
     };
 
@@ -320,6 +322,10 @@ public class RefereeSystem extends EntitySystem {
 
     public void setupGame() {
         Entity entity = EntityFactory.createHoleHazard(getEngine(), MathUtils.random(2, GameProperties.MAP_WIDTH -2), MathUtils.random(2, GameProperties.MAP_HEIGHT -2), 2);
+        if (entity == null) {
+            Log.warn("RefereeSystem", "Out of entity ids, hazard not spawned");
+            return;
+        }
         getEngine().addEntity(entity);
     }
 
@@ -532,7 +538,11 @@ public class RefereeSystem extends EntitySystem {
 
     private Entity spawnPlayerBall(int playerId) {
         Engine engine = getEngine();
-        Entity entity = EntityFactory.createPlayer(engine, playerColor[playerId % playerColor.length]);
+        Entity entity = EntityFactory.createPlayer(engine, PLAYER_COLORS[playerId % PLAYER_COLORS.length]);
+        if (entity == null) {
+            Log.warn("RefereeSystem", "Out of entity ids, ball of player " + playerId + " not spawned");
+            return null;
+        }
         PhysicsBodyComponent physicsBody = ComponentMappers.physicsBody.get(entity);
         physicsBody.bodyDef.position.x = MathUtils.random(GameProperties.PLAYER_SPAWN_MARGIN, GameProperties.MAP_WIDTH - GameProperties.PLAYER_SPAWN_MARGIN);
         physicsBody.bodyDef.position.y = MathUtils.random(GameProperties.PLAYER_SPAWN_MARGIN, GameProperties.MAP_HEIGHT - GameProperties.PLAYER_SPAWN_MARGIN);
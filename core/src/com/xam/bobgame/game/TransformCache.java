@@ -0,0 +1,87 @@
+package com.xam.bobgame.game;
+
+import com.xam.bobgame.utils.GenerationalIdMap;
+
+import java.util.Arrays;
+
+/**
+ * Body states copied out of Box2D once after every world step, in arrays indexed by entity slot. Systems that only read
+ * bodies after the step use these instead of going through JNI for every value.
+ * <p>
+ * Values are only valid for the frame they were copied in, since bodies may be moved between steps.
+ */
+public class TransformCache {
+    private final GenerationalIdMap<?> entityMap;
+
+    private int frameNum = -1;
+    private int[] entityIds = new int[0];
+
+    public float[] x = new float[0];
+    public float[] y = new float[0];
+    public float[] angle = new float[0];
+    public float[] velX = new float[0];
+    public float[] velY = new float[0];
+    public float[] angularVel = new float[0];
+    public float[] mass = new float[0];
+    public float[] centerX = new float[0];
+    public float[] centerY = new float[0];
+    public float[] inertia = new float[0];
+
+    public TransformCache(GenerationalIdMap<?> entityMap) {
+        this.entityMap = entityMap;
+    }
+
+    /**
+     * Starts copying the states of a new step. Entries not set again are invalid from now on.
+     */
+    public void begin(int frameNum) {
+        this.frameNum = frameNum;
+        int slots = entityMap.getSlotCount();
+        if (entityIds.length < slots) {
+            int length = Math.max(slots, entityIds.length * 2);
+            int oldLength = entityIds.length;
+            entityIds = Arrays.copyOf(entityIds, length);
+            x = Arrays.copyOf(x, length);
+            y = Arrays.copyOf(y, length);
+            angle = Arrays.copyOf(angle, length);
+            velX = Arrays.copyOf(velX, length);
+            velY = Arrays.copyOf(velY, length);
+            angularVel = Arrays.copyOf(angularVel, length);
+            mass = Arrays.copyOf(mass, length);
+            centerX = Arrays.copyOf(centerX, length);
+            centerY = Arrays.copyOf(centerY, length);
+            inertia = Arrays.copyOf(inertia, length);
+            Arrays.fill(entityIds, oldLength, length, -1);
+        }
+        Arrays.fill(entityIds, 0, slots, -1);
+    }
+
+    /**
+     * @return Slot index of the entity's values
+     */
+    public int set(int entityId) {
+        int slot = entityMap.getSlot(entityId);
+        entityIds[slot] = entityId;
+        return slot;
+    }
+
+    /**
+     * @return Slot index of the entity's values copied in the given frame, or -1 if there are none
+     */
+    public int indexOf(int entityId, int frameNum) {
+        if (entityId < 0 || frameNum != this.frameNum) return -1;
+        int slot = entityMap.getSlot(entityId);
+        return slot < entityIds.length && entityIds[slot] == entityId ? slot : -1;
+    }
+
+    /**
+     * @return Slot index of the entity's values from the latest step, or -1 if there are none
+     */
+    public int indexOf(int entityId) {
+        return indexOf(entityId, frameNum);
+    }
+
+    public int getFrameNum() {
+        return frameNum;
+    }
+}
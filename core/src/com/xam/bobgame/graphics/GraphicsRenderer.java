@@ -8,16 +8,15 @@ import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.Sprite;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.physics.box2d.Transform;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.xam.bobgame.BoBGame;
 import com.xam.bobgame.buffs.Buff;
@@ -28,8 +27,10 @@ import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.GameProperties;
 import com.xam.bobgame.entity.ComponentMappers;
 import com.xam.bobgame.game.PhysicsSystem;
+import com.xam.bobgame.game.TransformCache;
 import com.xam.bobgame.graphics.animators.Animator;
 import com.xam.bobgame.graphics.animators.BlinkAnimator;
+import com.xam.bobgame.net.NetDriver;
 
 public class GraphicsRenderer {
     private GameEngine engine;
@@ -56,7 +57,7 @@ public class GraphicsRenderer {
         return -1;
     }
 
-    public GraphicsRenderer(GameEngine engine, Viewport viewport) {
+    public GraphicsRenderer(final GameEngine engine, Viewport viewport) {
         this.engine = engine;
         this.viewport = viewport;
 
@@ -69,7 +70,7 @@ public class GraphicsRenderer {
             @Override
             public void entityAdded(Entity entity) {
                 GraphicsComponent graphics = ComponentMappers.graphics.get(entity);
-                if (!BoBGame.isHeadless()) graphics.sprite.setRegion(new TextureRegion(graphics.textureDef.createTexture()));
+                if (!BoBGame.isHeadless()) graphics.sprite.setRegion(engine.getTextureCache().get(graphics.textureDef));
                 zSortedEntities[graphics.z].add(entity);
             }
 
@@ -91,9 +92,40 @@ public class GraphicsRenderer {
 
     private final Vector2 tempVec = new Vector2();
     private final Vector2 tempVec2 = new Vector2();
+    private final Vector3 tempVec3 = new Vector3();
+
+    /**
+     * Server time at which remote entities are drawn, or -1 if not yet synced
+     */
+    private float interpolationTime = -1;
+
+    /**
+     * @param deltaTime Time since the last rendered frame
+     * @param alpha Fraction of a simulation step that has passed since the latest step, used to interpolate between the
+     *              last two simulated states
+     */
+    public void update(float deltaTime, float alpha) {
+        updateInterpolationTime(deltaTime);
+        updateEntities(deltaTime, alpha);
+    }
 
-    public void update(float deltaTime) {
-        updateEntities(deltaTime);
+    /**
+     * Advances the time at which remote entities are drawn, steering it toward a fixed delay behind the latest server
+     * update. Jumps instead if it is too far off, such as after the server restarts.
+     */
+    private void updateInterpolationTime(float deltaTime) {
+        if (engine.getMode() != GameEngine.Mode.Client) {
+            interpolationTime = -1;
+            return;
+        }
+        float target = engine.getSystem(NetDriver.class).getLastUpdateTime() - NetDriver.INTERPOLATION_DELAY;
+        if (interpolationTime < 0 || Math.abs(target - interpolationTime) > NetDriver.INTERPOLATION_DELAY * 2) {
+            interpolationTime = target;
+        }
+        else {
+            interpolationTime += deltaTime;
+            interpolationTime += (target - interpolationTime) * 0.1f;
+        }
     }
 
     public void draw(Batch batch) {
@@ -122,7 +154,8 @@ public class GraphicsRenderer {
         batch.end();
     }
 
-    private void updateEntities(float deltaTime) {
+    private void updateEntities(float deltaTime, float alpha) {
+        int localEntityId = engine.getSystem(RefereeSystem.class).getLocalPlayerEntityId();
         for (Entity entity: entities) {
             PhysicsBodyComponent physicsBody = ComponentMappers.physicsBody.get(entity);
             GraphicsComponent graphics = ComponentMappers.graphics.get(entity);
@@ -150,17 +183,24 @@ public class GraphicsRenderer {
                 }
             }
 
-            Body body = physicsBody.body;
-            PhysicsSystem.PhysicsHistory physicsHistory = (PhysicsSystem.PhysicsHistory) body.getUserData();
-            Transform tfm = body.getTransform();
-            Vector2 pos = tfm.getPosition();
-            float x = pos.x + graphics.drawOffsets.x + physicsHistory.posXError.getAverage() - (physicsBody.xJitterCount > 1 ? physicsBody.displacement.x / 2 : 0);
-            float y = pos.y + graphics.drawOffsets.y + physicsHistory.posYError.getAverage() - (physicsBody.yJitterCount > 1 ? physicsBody.displacement.y / 2 : 0);
+            PhysicsSystem.PhysicsHistory physicsHistory = (PhysicsSystem.PhysicsHistory) physicsBody.body.getUserData();
+            float x, y, angle;
+            if (interpolationTime >= 0 && EntityUtils.getId(entity) != localEntityId && physicsHistory.serverStates.sample(interpolationTime, tempVec3)) {
+                // remote entities are drawn from received states
+                x = tempVec3.x;
+                y = tempVec3.y;
+                angle = tempVec3.z;
+            }
+            else {
+                x = MathUtils.lerp(physicsHistory.prevStepPos.x, physicsHistory.stepPos.x, alpha) + physicsHistory.correction.x
+                        - (physicsBody.xJitterCount > 1 ? physicsBody.displacement.x / 2 : 0);
+                y = MathUtils.lerp(physicsHistory.prevStepPos.y, physicsHistory.stepPos.y, alpha) + physicsHistory.correction.y
+                        - (physicsBody.yJitterCount > 1 ? physicsBody.displacement.y / 2 : 0);
+                angle = MathUtils.lerpAngle(physicsHistory.prevStepAngle, physicsHistory.stepAngle, alpha);
+            }
             graphics.sprite.setColor(graphics.drawTint);
-            graphics.sprite.setOriginBasedPosition(x, y);
-            graphics.sprite.setRotation(MathUtils.radiansToDegrees * tfm.getRotation() + graphics.drawOrientation + 90);
-
-//            Log.info("entity " + EntityUtils.getId(entity) + " posXError=" + physicsHistory.posXError.getAverage() + " posYError=" + physicsHistory.posYError.getAverage());
+            graphics.sprite.setOriginBasedPosition(x + graphics.drawOffsets.x, y + graphics.drawOffsets.y);
+            graphics.sprite.setRotation(MathUtils.radiansToDegrees * angle + graphics.drawOrientation + 90);
         }
     }
 
@@ -184,12 +224,18 @@ public class GraphicsRenderer {
         Entity entity = engine.getSystem(RefereeSystem.class).getLocalPlayerEntity();
         if (entity == null || !EntityUtils.isAdded(entity)) return;
 
-        PhysicsBodyComponent pb = ComponentMappers.physicsBody.get(entity);
-        Transform tfm = pb.body.getTransform();
-        PhysicsSystem.PhysicsHistory physicsHistory = (PhysicsSystem.PhysicsHistory) pb.body.getUserData();
+        TransformCache transformCache = engine.getSystem(PhysicsSystem.class).getTransformCache();
+        int i = transformCache.indexOf(EntityUtils.getId(entity));
+        if (i != -1) {
+            tempVec.set(MathUtils.cos(transformCache.angle[i]), MathUtils.sin(transformCache.angle[i])).scl(400).add(transformCache.x[i], transformCache.y[i]);
+        }
+        else {
+            Transform tfm = ComponentMappers.physicsBody.get(entity).body.getTransform();
+            tempVec.set(tfm.getOrientation()).scl(400).add(tfm.getPosition());
+        }
+        Sprite sprite = ComponentMappers.graphics.get(entity).sprite;
 
-        tempVec.set(tfm.getOrientation()).scl(400).add(tfm.getPosition());
-        tempVec2.set(tfm.getPosition()).add(physicsHistory.posXError.getAverage(), physicsHistory.posYError.getAverage());
+        tempVec2.set(sprite.getX() + sprite.getOriginX(), sprite.getY() + sprite.getOriginY());
 
         shapeRenderer.setProjectionMatrix(viewport.getCamera().combined);
         shapeRenderer.setColor(Color.GREEN);
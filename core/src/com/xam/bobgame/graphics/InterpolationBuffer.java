@@ -0,0 +1,101 @@
+package com.xam.bobgame.graphics;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Timestamped transforms of an entity received from the server, for rendering remote entities at a time slightly in
+ * the past, between two received states. Past the newest state, such as while the server leaves the entity out of its
+ * updates, the entity moves on with the newest state's velocity for a limited time.
+ */
+public class InterpolationBuffer {
+    private final float maxExtrapolation;
+    private final float[] times;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] angles;
+    private final float[] velXs;
+    private final float[] velYs;
+    private final float[] angularVels;
+    /**
+     * Index of the oldest sample
+     */
+    private int head = 0;
+    private int count = 0;
+
+    /**
+     * @param maxExtrapolation Longest time past the newest sample that the transform is extrapolated for
+     */
+    public InterpolationBuffer(int size, float maxExtrapolation) {
+        this.maxExtrapolation = maxExtrapolation;
+        times = new float[size];
+        xs = new float[size];
+        ys = new float[size];
+        angles = new float[size];
+        velXs = new float[size];
+        velYs = new float[size];
+        angularVels = new float[size];
+    }
+
+    /**
+     * Adds a sample. Samples must be added in order of time. A sample older than the newest one means the server's
+     * clock was reset, and the earlier samples are dropped.
+     */
+    public void add(float time, float x, float y, float angle, float velX, float velY, float angularVel) {
+        if (count > 0) {
+            float newest = times[(head + count - 1) % times.length];
+            if (time == newest) return;
+            if (time < newest) clear();
+        }
+        if (count == times.length) {
+            head = (head + 1) % times.length;
+            count--;
+        }
+        int i = (head + count) % times.length;
+        times[i] = time;
+        xs[i] = x;
+        ys[i] = y;
+        angles[i] = angle;
+        velXs[i] = velX;
+        velYs[i] = velY;
+        angularVels[i] = angularVel;
+        count++;
+    }
+
+    /**
+     * Interpolates the transform at the given time. Times before the oldest sample are clamped to it. Times after the
+     * newest sample are extrapolated from its velocity, up to the maximum extrapolation time.
+     * @param out Set to the position in x and y, and the angle in radians in z
+     * @return False if there are no samples
+     */
+    public boolean sample(float time, Vector3 out) {
+        if (count == 0) return false;
+        int n = times.length;
+        int i0 = head;
+        if (time <= times[i0]) {
+            out.set(xs[i0], ys[i0], angles[i0]);
+            return true;
+        }
+        for (int k = 1; k < count; ++k) {
+            int i1 = (head + k) % n;
+            if (time < times[i1]) {
+                float alpha = (time - times[i0]) / (times[i1] - times[i0]);
+                out.set(MathUtils.lerp(xs[i0], xs[i1], alpha), MathUtils.lerp(ys[i0], ys[i1], alpha), MathUtils.lerpAngle(angles[i0], angles[i1], alpha));
+                return true;
+            }
+            i0 = i1;
+        }
+        float dt = Math.min(time - times[i0], maxExtrapolation);
+        out.set(xs[i0] + velXs[i0] * dt, ys[i0] + velYs[i0] * dt, angles[i0] + angularVels[i0] * dt);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+}
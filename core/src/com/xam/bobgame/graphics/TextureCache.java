@@ -0,0 +1,50 @@
+package com.xam.bobgame.graphics;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Generated textures packed into shared atlas pages. Every distinct {@link TextureDef} is drawn and uploaded once;
+ * sprites using the same page are drawn in the same batch.
+ */
+public class TextureCache implements Disposable {
+    public static final int PAGE_SIZE = 1024;
+
+    private final PixmapPacker packer = new PixmapPacker(PAGE_SIZE, PAGE_SIZE, Pixmap.Format.RGBA8888, 2, false);
+    private final ObjectMap<TextureDef, TextureRegion> regions = new ObjectMap<>();
+
+    /**
+     * Returns the region for the given definition, packing it into the atlas if it isn't there yet.
+     */
+    public TextureRegion get(TextureDef textureDef) {
+        TextureRegion region = regions.get(textureDef);
+        if (region != null) return region;
+
+        String name = String.valueOf(regions.size);
+        Pixmap pixmap = textureDef.createPixmap();
+        Rectangle rect = packer.pack(name, pixmap);
+        pixmap.dispose();
+
+        PixmapPacker.Page page = packer.getPages().get(packer.getPageIndex(name));
+        page.updateTexture(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest, false);
+        region = new TextureRegion(page.getTexture(), (int) rect.x, (int) rect.y, (int) rect.width, (int) rect.height);
+        // key on a copy, the definition passed in may be modified later
+        regions.put(new TextureDef().set(textureDef), region);
+        return region;
+    }
+
+    public int getRegionCount() {
+        return regions.size;
+    }
+
+    @Override
+    public void dispose() {
+        regions.clear();
+        packer.dispose();
+    }
+}
@@ -2,60 +2,91 @@ package com.xam.bobgame.graphics;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.MathUtils;
 
 public class TextureDef {
 
-    // TODO: Create all textures on application start
     public TextureType type = TextureType.PlayerBall;
     public int wh;
     public int textureVal1;
     public int textureVal2;
     public Color color = new Color();
 
-    public Texture createTexture() {
-        return type.createTexture(this);
+    /**
+     * Draws the texture into a new Pixmap. The caller must dispose of it.
+     */
+    public Pixmap createPixmap() {
+        return type.createPixmap(this);
+    }
+
+    public TextureDef set(TextureDef other) {
+        type = other.type;
+        wh = other.wh;
+        textureVal1 = other.textureVal1;
+        textureVal2 = other.textureVal2;
+        color.set(other.color);
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TextureDef)) return false;
+        TextureDef other = (TextureDef) o;
+        return type == other.type && wh == other.wh && textureVal1 == other.textureVal1 && textureVal2 == other.textureVal2
+                && colorBits(color) == colorBits(other.color);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + wh;
+        result = 31 * result + textureVal1;
+        result = 31 * result + textureVal2;
+        result = 31 * result + colorBits(color);
+        return result;
+    }
+
+    /**
+     * Color rounded to 8 bits per channel, so that colors read back from the network match the original ones.
+     */
+    private static int colorBits(Color color) {
+        return MathUtils.round(color.r * 255) << 24 | MathUtils.round(color.g * 255) << 16 | MathUtils.round(color.b * 255) << 8 | MathUtils.round(color.a * 255);
     }
 
     public enum TextureType {
         PlayerBall(0) {
             @Override
-             Texture createTexture(TextureDef textureDef) {
+            Pixmap createPixmap(TextureDef textureDef) {
                 Pixmap pmap = new Pixmap(textureDef.wh, textureDef.wh, Pixmap.Format.RGBA8888);
                 pmap.setColor(textureDef.color);
                 pmap.fillCircle(textureDef.wh / 2, textureDef.wh / 2, textureDef.textureVal1);
                 pmap.setColor(Color.RED);
                 pmap.fillRectangle(textureDef.wh / 2 - 1, textureDef.wh / 2, 2, textureDef.wh / 2);
-                Texture tx = new Texture(pmap);
-                pmap.dispose();
-                return tx;
+                return pmap;
             }
         },
         HazardHole(1) {
             @Override
-            Texture createTexture(TextureDef textureDef) {
+            Pixmap createPixmap(TextureDef textureDef) {
                 Pixmap pmap = new Pixmap(textureDef.wh, textureDef.wh, Pixmap.Format.RGBA8888);
                 pmap.setColor(textureDef.color);
                 pmap.fillCircle(textureDef.wh / 2, textureDef.wh / 2, textureDef.textureVal1);
-                Texture tx = new Texture(pmap);
-                pmap.dispose();
-                return tx;
+                return pmap;
             }
         },
         Wall(2) {
             @Override
-            Texture createTexture(TextureDef textureDef) {
+            Pixmap createPixmap(TextureDef textureDef) {
                 Pixmap pmap = new Pixmap(textureDef.wh, textureDef.wh, Pixmap.Format.RGBA8888);
                 pmap.setColor(textureDef.color);
                 pmap.fillRectangle((textureDef.wh - textureDef.textureVal1) / 2, (textureDef.wh - textureDef.textureVal2) / 2, textureDef.textureVal1, textureDef.textureVal2);
-                Texture tx = new Texture(pmap);
-                pmap.dispose();
-                return tx;
+                return pmap;
             }
         },
         Star(3) {
             @Override
-            Texture createTexture(TextureDef textureDef) {
+            Pixmap createPixmap(TextureDef textureDef) {
                 Pixmap pmap = new Pixmap(textureDef.wh, textureDef.wh, Pixmap.Format.RGBA8888);
                 pmap.setColor(textureDef.color);
                 int cx = textureDef.wh / 2, cy = textureDef.wh / 2;
@@ -67,10 +98,7 @@ public class TextureDef {
                 pmap.fillTriangle(x2, y2, textureDef.textureVal1 * 2, cy, x2, y1);
                 pmap.fillTriangle(x2, y1, cx, 0, x1, y1);
 
-                pmap.setColor(Color.RED);
-                Texture tx = new Texture(pmap);
-                pmap.dispose();
-                return tx;
+                return pmap;
             }
         },
         ;
@@ -81,7 +109,7 @@ public class TextureDef {
             this.value = value;
         }
 
-        abstract Texture createTexture(TextureDef textureDef);
+        abstract Pixmap createPixmap(TextureDef textureDef);
         public int getValue() {
             return value;
         }
@@ -0,0 +1,140 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.Pools;
+
+/**
+ * Network events waiting to be sent to or acknowledged by clients. Events are kept in the order they were queued, so
+ * every connection numbers and sends its events in that order. An event is removed once all clients in its mask
+ * acknowledged it or gave up on it.
+ * <p>
+ * Events are only added and removed while holding the queue's lock. Connections synced in parallel only read the queue
+ * and write their own entries of the events.
+ */
+class ClientEventQueue {
+    private final Array<NetDriver.ClientEvent> events = new Array<>(true, 4);
+
+    synchronized void add(NetDriver.ClientEvent clientEvent) {
+        events.add(clientEvent);
+    }
+
+    int size() {
+        return events.size;
+    }
+
+    NetDriver.ClientEvent get(int index) {
+        return events.get(index);
+    }
+
+    /**
+     * Removes and frees an event.
+     */
+    synchronized void remove(int index) {
+        Pools.free(events.removeIndex(index));
+    }
+
+    /**
+     * Picks the events for the next Event message of a connection into {@link ConnectionManager.ConnectionSlot#eventBatch}:
+     * the events it hasn't acknowledged and that are due to be sent, in queue order, as many as fit in a message. Events
+     * sent to the connection for the first time are given its next sequence numbers.
+     * @param start Index of the first event to consider
+     * @param eventCount Number of queued events that can be sent
+     * @param frameNum Only events queued up to this frame are sent
+     * @return Index of the first event not considered, to start the next message from
+     */
+    int nextBatch(ConnectionManager.ConnectionSlot slot, int start, int eventCount, int frameNum, float currentTime) {
+        int clientId = slot.clientId;
+        IntArray batch = slot.eventBatch;
+        batch.clear();
+        int bits = MessageReader.EVENT_HEADER_BITS;
+        int prevSeq = -1;
+        int i = start;
+        for (; i < eventCount; ++i) {
+            NetDriver.ClientEvent clientEvent = events.get(i);
+            if (clientEvent.frameNum > frameNum || clientEvent.serializedBits == -1 || !clientEvent.clientMask.get(clientId)) continue;
+            if (clientEvent.messageIds[clientId] != -1) {
+                // events too old to resend are removed by expire
+                if (currentTime < clientEvent.resendTimes[clientId] || isExpired(clientEvent, slot, currentTime)) continue;
+            }
+            else if (clientEvent.eventSeqs[clientId] == -1) {
+                clientEvent.eventSeqs[clientId] = slot.eventSeqCounter++;
+            }
+            int eventBits = MessageReader.eventBits(clientEvent, clientId, prevSeq);
+            if (batch.size > 0 && bits + eventBits + BitPacker.varIntBits(batch.size + 1, NetDriver.EVENT_VARINT_GROUP_BITS) > NetDriver.DATA_MAX_SIZE * 8) break;
+            batch.add(i);
+            bits += eventBits;
+            prevSeq = clientEvent.eventSeqs[clientId];
+        }
+        return i;
+    }
+
+    /**
+     * Records that the events of a connection's batch were sent in a message.
+     */
+    void sent(ConnectionManager.ConnectionSlot slot, int messageId, float resendTime) {
+        IntArray batch = slot.eventBatch;
+        for (int i = 0; i < batch.size; ++i) {
+            NetDriver.ClientEvent clientEvent = events.get(batch.get(i));
+            clientEvent.messageIds[slot.clientId] = messageId;
+            clientEvent.resendTimes[slot.clientId] = resendTime;
+        }
+    }
+
+    /**
+     * Removes a client from the masks of the events last sent to it in a message, and removes events once all their
+     * clients acknowledged them.
+     */
+    synchronized void ack(int clientId, int messageId) {
+        for (int i = events.size - 1; i >= 0; --i) {
+            NetDriver.ClientEvent clientEvent = events.get(i);
+            if (clientEvent.messageIds[clientId] != messageId || !clientEvent.clientMask.get(clientId)) continue;
+            removeClient(i, clientId);
+        }
+    }
+
+    /**
+     * Gives up on the events that are due for a resend to a connection but were sent too long ago to be resent, see
+     * {@link NetDriver#EVENT_RESEND_LIMIT}.
+     * @return Number of events given up on
+     */
+    synchronized int expire(ConnectionManager.ConnectionSlot slot, float currentTime) {
+        int count = 0;
+        for (int i = events.size - 1; i >= 0; --i) {
+            NetDriver.ClientEvent clientEvent = events.get(i);
+            if (!clientEvent.clientMask.get(slot.clientId) || !isExpired(clientEvent, slot, currentTime)) continue;
+            removeClient(i, slot.clientId);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Removes a client from the masks of all events.
+     */
+    synchronized void removeClient(int clientId) {
+        for (int i = events.size - 1; i >= 0; --i) {
+            removeClient(i, clientId);
+        }
+    }
+
+    private void removeClient(int index, int clientId) {
+        NetDriver.ClientEvent clientEvent = events.get(index);
+        clientEvent.clientMask.unset(clientId);
+        clientEvent.eventSeqs[clientId] = -1;
+        clientEvent.messageIds[clientId] = -1;
+        if (!clientEvent.clientMask.anySet()) remove(index);
+    }
+
+    synchronized void clear() {
+        for (NetDriver.ClientEvent clientEvent : events) Pools.free(clientEvent);
+        events.clear();
+    }
+
+    static boolean isExpired(NetDriver.ClientEvent clientEvent, ConnectionManager.ConnectionSlot slot, float currentTime) {
+        int clientId = slot.clientId;
+        return clientEvent.messageIds[clientId] != -1 && currentTime >= clientEvent.resendTimes[clientId]
+                && slot.eventSeqCounter - clientEvent.eventSeqs[clientId] >= NetDriver.EVENT_RESEND_LIMIT;
+    }
+}
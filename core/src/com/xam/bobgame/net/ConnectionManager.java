@@ -1,11 +1,18 @@
 package com.xam.bobgame.net;
 
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.Null;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.BoBGame;
+import com.xam.bobgame.utils.BitPacker;
 import com.xam.bobgame.utils.Bits2;
+import com.xam.bobgame.utils.ExpoMovingAverage;
 import com.xam.bobgame.utils.SequenceNumChecker;
 
+import java.nio.ByteBuffer;
+
 public class ConnectionManager {
 
     private final NetDriver netDriver;
@@ -23,6 +30,14 @@ public class ConnectionManager {
         return false;
     }
 
+    public int getConnectedCount() {
+        int count = 0;
+        for (ConnectionSlot connectionSlot : connectionSlots) {
+            if (connectionSlot != null && connectionSlot.isConnected()) count++;
+        }
+        return count;
+    }
+
     public void update(float deltaTime) {
         synchronized (connectionSlots) {
             for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) {
@@ -64,6 +79,7 @@ public class ConnectionManager {
                     connectionSlot.messageBuffer.setFrameDelay(isServer ? 0 : NetDriver.JITTER_BUFFER_SIZE);
                     connectionSlot.clientId = i;
                     connectionSlot.connection = connection;
+                    connectionSlot.packetChecksum = netDriver.packetChecksum;
                     try {
                         connection.getRemoteAddressUDP();
                         connectionSlot.hasUDP = true;
@@ -130,16 +146,7 @@ public class ConnectionManager {
         connectionSlots[clientId] = null;
         activeConnectionsMask.unset(clientId);
         netDriver.transport.removeTransportConnection(clientId);
-        synchronized (netDriver.clientEvents) {
-            for (int i = 0; i < netDriver.clientEvents.size; ++i) {
-                NetDriver.ClientEvent clientEvent = netDriver.clientEvents.get(i);
-                clientEvent.clientMask.unset(clientId);
-                if (!clientEvent.clientMask.anySet()) {
-                    netDriver.clientEvents.removeIndex(i);
-                    i--;
-                }
-            }
-        }
+        netDriver.clientEvents.removeClient(clientId);
     }
 
     public void setNeedsSnapshots() {
@@ -205,23 +212,67 @@ public class ConnectionManager {
         ConnectionState state = null;
         float accumulator = 0;
         int salt = 0;
+        /**
+         * Checksum used for packets sent through this connection. Clients use the one chosen by the server.
+         */
+        PacketChecksum packetChecksum = PacketChecksum.CRC32;
         float lastReconnect = -1;
 
         Packet sendPacket = new Packet(NetDriver.DATA_MAX_SIZE);
         Packet syncPacket = new Packet(NetDriver.DATA_MAX_SIZE);
+        /**
+         * Data packet built for this connection by {@link NetServer#syncClients()}
+         */
+        final Packet dataPacket = new Packet(NetDriver.DATA_MAX_SIZE);
+        private final ByteBuffer encodedPacket = ByteBuffer.allocate(8192);
+        private final BitPacker encodePacker = new BitPacker();
 
         PacketBuffer packetBuffer;
         MessageBuffer messageBuffer;
 
         public boolean needsSnapshot = true;
         int lastSnapshotFrame = -1;
+        /**
+         * Sequence number of the last input received through this connection, or -1. Inputs up to it are dropped
+         * when they are received again.
+         */
+        int lastInputSeq = -1;
+        final UpdateStream updateStream = new UpdateStream();
+        final FragmentSender fragmentSender = new FragmentSender();
+        final FragmentReceiver fragmentReceiver = new FragmentReceiver();
+
+        int sentBytes = 0;
+        /**
+         * Bits that can be sent through this connection without exceeding its bandwidth. Negative when over budget.
+         */
+        float bandwidthBudget = 0;
+        final ExpoMovingAverage sendBitrateAverage = new ExpoMovingAverage(0.1f);
+
+        /**
+         * Info of messages sent through this connection, indexed by message id.
+         */
+        private final MessageReader.MessageInfo[] messageInfos = new MessageReader.MessageInfo[NetDriver.MAX_MESSAGE_HISTORY];
+        private int messageIdCounter = 0;
         Message message = new Message(NetDriver.DATA_MAX_SIZE);
 
         final SequenceNumChecker messageNumChecker = new SequenceNumChecker(256);
+        final SequenceNumChecker eventSeqChecker = new SequenceNumChecker(NetDriver.EVENT_SEQ_LIMIT);
+        /**
+         * Sequence number of the next event sent through this connection
+         */
+        int eventSeqCounter = 0;
+        /**
+         * Indices of the client events in the Event message being built for this connection
+         */
+        final IntArray eventBatch = new IntArray();
+        final Message eventMessage = new Message(NetDriver.DATA_MAX_SIZE);
 
         public void initialize(NetDriver netDriver) {
             this.netDriver = netDriver;
-            packetBuffer = new PacketBuffer(netDriver, 16, NetDriver.BUFFER_TIME_LIMIT);
+            for (int i = 0; i < messageInfos.length; ++i) {
+                messageInfos[i] = new MessageReader.MessageInfo();
+            }
+            packetBuffer = new PacketBuffer(netDriver, this, 16, NetDriver.BUFFER_TIME_LIMIT);
             messageBuffer = new MessageBuffer(16);
         }
 
@@ -271,6 +322,20 @@ public class ConnectionManager {
             }
         }
 
+        /**
+         * Sets the headers of a data packet and encodes it, so that sending it only copies its bytes. Only touches the
+         * state of this connection, so packets of different connections can be encoded in parallel.
+         */
+        void encodeDataPacket(Packet packet) {
+            packet.type = Packet.PacketType.Data;
+            netDriver.transport.setHeaders(packet, clientId);
+            encodedPacket.clear();
+            encodePacker.setBuffer(encodedPacket);
+            packet.encode(encodePacker);
+            encodedPacket.flip();
+            packet.encoded = encodedPacket;
+        }
+
         public void sendTransportPacket(Packet packet) {
             if (hasUDP) {
                 connection.sendUDP(packet);
@@ -284,10 +349,77 @@ public class ConnectionManager {
             return salt = (salt << 15) | MathUtils.random(1, 1 << 15);
         }
 
+        void updateBitRate(float deltaTime) {
+            int sentBits = sentBytes * 8;
+            sentBytes = 0;
+            if (deltaTime > 0) sendBitrateAverage.update(sentBits / deltaTime);
+            float bandwidth = BoBGame.getClientBandwidth();
+            float burst = bandwidth * NetDriver.BANDWIDTH_BURST_TIME;
+            bandwidthBudget = MathUtils.clamp(bandwidthBudget + bandwidth * deltaTime - sentBits, -burst, burst);
+        }
+
+        /**
+         * @return Number of bits that can be used by the next Update message
+         */
+        int getUpdateBitBudget() {
+            return Math.max(0, (int) bandwidthBudget);
+        }
+
+        public float getAverageSendBitrate() {
+            return sendBitrateAverage.getAverage();
+        }
+
+        /**
+         * Adds a message to a packet to be sent through this connection, giving the copy a message id from this
+         * connection's sequence.
+         */
+        public boolean addMessage(Packet packet, Message message) {
+            return addMessage(packet, message, -1);
+        }
+
+        /**
+         * @param stateId Id of the {@link UpdateStream} state sent in the message, or -1
+         */
+        public boolean addMessage(Packet packet, Message message, int stateId) {
+            if (!packet.addMessage(message)) return false;
+            Message copy = packet.getMessage(packet.getMessageCount() - 1);
+            copy.messageId = messageIdCounter++;
+            MessageReader.MessageInfo messageInfo = messageInfos[copy.messageId % messageInfos.length];
+            messageInfo.set(copy);
+            messageInfo.stateId = stateId;
+            return true;
+        }
+
+        /**
+         * Time after which an unacknowledged message is resent: one and a half round trips, and at least
+         * {@link NetDriver#FRAGMENT_MIN_RESEND_TIME}.
+         */
+        float getResendTime() {
+            PacketTransport.EndPointInfo endPointInfo = netDriver.transport.endPointInfos[clientId];
+            float resendTime = NetDriver.FRAGMENT_MIN_RESEND_TIME;
+            if (endPointInfo != null) resendTime = Math.max(resendTime, 1.5f * endPointInfo.roundTripTime.getAverage());
+            return resendTime;
+        }
+
+        /**
+         * @return Info of a message sent through this connection, or null if it is no longer in the history
+         */
+        public @Null MessageReader.MessageInfo getMessageInfo(int messageId) {
+            MessageReader.MessageInfo messageInfo = messageInfos[messageId % messageInfos.length];
+            return messageInfo.messageId == messageId ? messageInfo : null;
+        }
+
         synchronized public boolean checkMessageNum(int messageId) {
             return messageNumChecker.getAndSet(messageId);
         }
 
+        /**
+         * @return Whether an event with the sequence number was already received through this connection
+         */
+        public boolean checkEventSeq(int eventSeq) {
+            return eventSeqChecker.getAndSet(eventSeq);
+        }
+
 //        @Override
 //        public void reset() {
 //            netDriver = null;
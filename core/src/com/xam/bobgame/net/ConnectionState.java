@@ -1,6 +1,6 @@
 package com.xam.bobgame.net;
 
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.events.classes.ClientConnectedEvent;
@@ -82,6 +82,8 @@ public enum ConnectionState {
             event.clientId = slot.clientId;
             slot.netDriver.getEngine().getSystem(EventsSystem.class).queueEvent(event);
             slot.needsSnapshot = true;
+            slot.updateStream.reset();
+            slot.fragmentSender.clear();
             return 0;
         }
 
@@ -93,13 +95,19 @@ public enum ConnectionState {
 
         @Override
         int receiveData(ConnectionManager.ConnectionSlot slot, Packet in) {
-            if (in.requestSnapshot) slot.needsSnapshot = true;
+            if (in.requestSnapshot) {
+                slot.needsSnapshot = true;
+                slot.updateStream.reset();
+            }
             return super.receiveData(slot, in);
         }
 
         @Override
         int read(ConnectionManager.ConnectionSlot slot, Packet in) {
-            if (in.requestSnapshot) slot.needsSnapshot = true;
+            if (in.requestSnapshot) {
+                slot.needsSnapshot = true;
+                slot.updateStream.reset();
+            }
             switch (in.type) {
                 case Disconnect:
                     Log.info("Client " + slot.clientId + " (" + slot.getAddress() + ") disconnected");
@@ -140,7 +148,7 @@ public enum ConnectionState {
 
         @Override
         int update2(ConnectionManager.ConnectionSlot slot) {
-            slot.netDriver.server.syncClient(slot);
+            slot.netDriver.server.queueSync(slot);
             return 0;
         }
     },
@@ -206,6 +214,7 @@ public enum ConnectionState {
         int read(ConnectionManager.ConnectionSlot slot, Packet in) {
             if (in.type == Packet.PacketType.ConnectionChallenge) {
                 slot.salt = in.salt;
+                slot.packetChecksum = in.checksumType;
                 slot.generateSalt();
                 slot.transitionState(ClientPending2);
             }
@@ -224,6 +233,7 @@ public enum ConnectionState {
             slot.sendPacket.type = Packet.PacketType.ConnectionChallengeResponse;
             slot.sendTransportPacket(slot.sendPacket);
             slot.sendPacket.clear();
+            slot.fragmentReceiver.clear();
             return 0;
         }
 
@@ -253,6 +263,7 @@ public enum ConnectionState {
         int start(ConnectionManager.ConnectionSlot slot) {
             Log.info("Connected to " + slot.getAddress());
             slot.netDriver.client.reconnectSalt = slot.salt;
+            slot.netDriver.inputChannel.clear();
             ClientConnectedEvent event = Pools.obtain(ClientConnectedEvent.class);
             event.clientId = slot.clientId;
             slot.netDriver.getEngine().getSystem(EventsSystem.class).queueEvent(event);
@@ -290,33 +301,39 @@ public enum ConnectionState {
 
             if (((GameEngine) slot.netDriver.getEngine()).getCurrentFrame() % NetDriver.CLIENT_UPDATE_FREQUENCY == 0) {
                 boolean sent = false;
-                // send events
-                for (NetDriver.ClientEvent clientEvent : slot.netDriver.clientEvents) {
+                // send inputs
+                InputChannel inputChannel = slot.netDriver.inputChannel;
+                if (inputChannel.hasPending()) {
+                    Message inputMessage = slot.netDriver.inputMessage;
+                    inputMessage.clear();
+                    slot.netDriver.messageReader.serializeInput(inputMessage, inputChannel);
+                    slot.addMessage(slot.sendPacket, inputMessage);
+                }
+                // send unacknowledged events, in the same packet as the inputs while there is room
+                ClientEventQueue clientEvents = slot.netDriver.clientEvents;
+                for (int i = clientEvents.size() - 1; i >= 0; --i) {
+                    NetDriver.ClientEvent clientEvent = clientEvents.get(i);
     //                Log.info("Send event " + clientEvent.event);
-                    if (clientEvent.serializedMessage.messageId == -1) {
-                        if (slot.netDriver.messageReader.serializeEvent(clientEvent.serializedMessage, clientEvent.event) == -1) {
-                            Log.error("Error serializing event " + clientEvent.event);
-                            Pools.free(clientEvent);
-                            continue;
-                        }
-                    }
-                    if (!slot.sendPacket.isFull()) {
-                        slot.sendPacket.addMessage(clientEvent.serializedMessage);
-                        slot.sendPacket.requestSnapshot = slot.needsSnapshot;
-                        slot.needsSnapshot = false;
-                        if (slot.sendPacket.requestSnapshot) {
-                            Log.debug("ClientConnected", "Requesting snapshot from server");
-                        }
-                        slot.sendDataPacket(slot.sendPacket);
-                        slot.sendPacket.clear();
-                        sent = true;
-                        Pools.free(clientEvent);
-                    }
-                    else {
-                        Log.debug("ClientConnected", "Delaying sending event " + clientEvent.event);
+                    if (clientEvent.serializedBits != -1) continue;
+                    clientEvent.serializedBits = slot.netDriver.messageReader.serializeEvent(clientEvent.serializedMessage, clientEvent.event);
+                    if (clientEvent.serializedBits == -1) {
+                        Log.error("Error serializing event " + clientEvent.event);
+                        clientEvents.remove(i);
                     }
                 }
-                slot.netDriver.clientEvents.clear();
+                float currentTime = ((GameEngine) slot.netDriver.getEngine()).getCurrentTime();
+                float resendTime = slot.getResendTime();
+                if (!slot.netDriver.sendClientEvents(slot, slot.sendPacket, slot.netDriver.messageReader, clientEvents.size(),
+                        Integer.MAX_VALUE, currentTime, resendTime) && slot.sendPacket.getMessageCount() > 0) {
+                    sendClientPacket(slot);
+                    sent = true;
+                    slot.netDriver.sendClientEvents(slot, slot.sendPacket, slot.netDriver.messageReader, clientEvents.size(),
+                            Integer.MAX_VALUE, currentTime, resendTime);
+                }
+                if (slot.sendPacket.getMessageCount() > 0) {
+                    sendClientPacket(slot);
+                    sent = true;
+                }
 
                 // send heartbeat if needed
                 if (!sent) {
@@ -464,4 +481,17 @@ public enum ConnectionState {
     int update2(ConnectionManager.ConnectionSlot slot) {
         return 0;
     }
+
+    /**
+     * Sends the client's data packet to the server, with a snapshot request if one is needed.
+     */
+    private static void sendClientPacket(ConnectionManager.ConnectionSlot slot) {
+        slot.sendPacket.requestSnapshot = slot.needsSnapshot;
+        slot.needsSnapshot = false;
+        if (slot.sendPacket.requestSnapshot) {
+            Log.debug("ClientConnected", "Requesting snapshot from server");
+        }
+        slot.sendDataPacket(slot.sendPacket);
+        slot.sendPacket.clear();
+    }
 }
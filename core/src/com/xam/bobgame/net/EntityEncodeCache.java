@@ -0,0 +1,103 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Caches the encoded bits of each entity of a captured world state, keyed by the world state the entity was
+ * delta-compressed against. Clients that share a source state for an entity share its encoding.
+ * <p>
+ * Readers that sync clients in parallel share one cache, so all methods hold the cache's lock. Entities are encoded by
+ * each reader into its own buffer and then added with {@link #put}.
+ */
+class EntityEncodeCache {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * 16);
+    private ByteBuffer readBuffer = buffer.duplicate();
+
+    private int stateId = -1;
+
+    /**
+     * First cache entry of each entity index, or -1.
+     */
+    private int[] heads = new int[16];
+
+    private int entryCount = 0;
+    private int[] entrySourceIds = new int[64];
+    private int[] entryOffsets = new int[64];
+    private int[] entryBits = new int[64];
+    private int[] entryNext = new int[64];
+
+    /**
+     * Clears the cache if it was not filled for the specified world state.
+     */
+    synchronized void reset(int stateId, int entityCount) {
+        if (this.stateId == stateId) return;
+        this.stateId = stateId;
+        if (heads.length < entityCount) heads = new int[Math.max(entityCount, heads.length * 2)];
+        Arrays.fill(heads, -1);
+        entryCount = 0;
+        buffer.clear();
+    }
+
+    /**
+     * @return Cache entry for an entity index encoded against the specified source state, or -1
+     */
+    synchronized int find(int index, int sourceStateId) {
+        for (int entry = heads[index]; entry != -1; entry = entryNext[entry]) {
+            if (entrySourceIds[entry] == sourceStateId) return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an entry for an entity index encoded against the specified source state. If another reader added the entry
+     * first, its entry is kept.
+     * @param encoded Buffer the entity was packed and flushed into, from position 0 up to its current position
+     * @param bits Number of packed bits
+     * @return The cache entry
+     */
+    synchronized int put(int index, int sourceStateId, ByteBuffer encoded, int bits) {
+        int entry = find(index, sourceStateId);
+        if (entry != -1) return entry;
+
+        if (buffer.remaining() < encoded.position()) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + encoded.position()));
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+            readBuffer = buffer.duplicate();
+        }
+        int entryStart = buffer.position();
+        encoded.flip();
+        buffer.put(encoded);
+        encoded.clear();
+
+        if (entryCount == entryOffsets.length) {
+            int length = entryCount * 2;
+            entrySourceIds = Arrays.copyOf(entrySourceIds, length);
+            entryOffsets = Arrays.copyOf(entryOffsets, length);
+            entryBits = Arrays.copyOf(entryBits, length);
+            entryNext = Arrays.copyOf(entryNext, length);
+        }
+        entry = entryCount++;
+        entrySourceIds[entry] = sourceStateId;
+        entryOffsets[entry] = entryStart;
+        entryBits[entry] = bits;
+        entryNext[entry] = heads[index];
+        heads[index] = entry;
+        return entry;
+    }
+
+    synchronized int getBits(int entry) {
+        return entryBits[entry];
+    }
+
+    synchronized void copyTo(int entry, BitPacker out) {
+        readBuffer.limit(buffer.capacity());
+        readBuffer.position(entryOffsets[entry]);
+        out.packBits(readBuffer, entryBits[entry]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.Null;
+import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.SequenceNumChecker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reassembles messages sent in fragments by a {@link FragmentSender}.
+ */
+public class FragmentReceiver {
+
+    private final FragmentGroup[] groups = new FragmentGroup[NetDriver.FRAGMENT_GROUP_LIMIT];
+
+    public FragmentReceiver() {
+        for (int i = 0; i < groups.length; ++i) groups[i] = new FragmentGroup();
+    }
+
+    /**
+     * Reads a fragment from a message. The BitPacker must be set to read the message's buffer.
+     * @return The reassembled message if all of its fragments have been received, otherwise null
+     */
+    public @Null Message receive(Message fragment, BitPacker packer) {
+        int groupId = packer.unpackInt(0, NetDriver.FRAGMENT_GROUP_ID_LIMIT - 1);
+        int index = packer.unpackInt(0, NetDriver.FRAGMENT_MAX_COUNT - 1);
+        int fragmentCount = packer.unpackInt(0, NetDriver.FRAGMENT_MAX_COUNT - 1) + 1;
+        Message.MessageType type = Message.MessageType.values()[packer.unpackInt(0, Message.MessageType.values().length - 1)];
+        packer.skipToWord();
+
+        if (index >= fragmentCount) {
+            Log.error("FragmentReceiver", "Invalid fragment index " + index + " (" + fragmentCount + ")");
+            return null;
+        }
+
+        FragmentGroup group = groups[groupId % groups.length];
+        if (group.groupId != groupId) {
+            // a newer message replaces the message using the same slot
+            if (group.groupId != -1 && !isNewer(groupId, group.groupId)) return null;
+            group.set(groupId, fragmentCount, type, fragment.frameNum);
+        }
+        else if (group.complete || group.received.get(index)) {
+            return null;
+        }
+
+        int length = fragment.getLength() - 4;
+        if (length > NetDriver.FRAGMENT_DATA_SIZE || (index < fragmentCount - 1 && length != NetDriver.FRAGMENT_DATA_SIZE)) {
+            Log.error("FragmentReceiver", "Invalid fragment length " + length);
+            return null;
+        }
+
+        ByteBuffer data = group.message.getByteBuffer();
+        data.clear();
+        data.position(index * NetDriver.FRAGMENT_DATA_SIZE);
+        packer.unpackBytes(data, length);
+        data.rewind();
+        group.received.set(index);
+        if (index == fragmentCount - 1) group.length = index * NetDriver.FRAGMENT_DATA_SIZE + length;
+
+        if (++group.receivedCount < group.fragmentCount) return null;
+
+        group.complete = true;
+        group.message.setLength(group.length);
+        return group.message;
+    }
+
+    private static boolean isNewer(int groupId, int otherGroupId) {
+        int d = (groupId - otherGroupId + NetDriver.FRAGMENT_GROUP_ID_LIMIT) % NetDriver.FRAGMENT_GROUP_ID_LIMIT;
+        return d != 0 && d < NetDriver.FRAGMENT_GROUP_ID_LIMIT / 2;
+    }
+
+    public void clear() {
+        for (FragmentGroup group : groups) group.groupId = -1;
+    }
+
+    private static class FragmentGroup {
+        int groupId = -1;
+        int fragmentCount = 0;
+        int receivedCount = 0;
+        int length = 0;
+        boolean complete = false;
+        Message message = null;
+
+        final SequenceNumChecker received = new SequenceNumChecker(NetDriver.FRAGMENT_MAX_COUNT * 2);
+
+        void set(int groupId, int fragmentCount, Message.MessageType type, int frameNum) {
+            if (message == null) message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+            message.clear();
+            message.setType(type);
+            message.frameNum = frameNum;
+            this.groupId = groupId;
+            this.fragmentCount = fragmentCount;
+            receivedCount = 0;
+            length = 0;
+            complete = false;
+            received.reset();
+        }
+    }
+}
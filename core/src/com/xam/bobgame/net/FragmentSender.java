@@ -0,0 +1,234 @@
+package com.xam.bobgame.net;
+
+import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.SequenceNumChecker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits messages that don't fit in a single Packet message into fragments and keeps track of which fragments were
+ * acknowledged. Lost fragments of reliable messages are re-sent until all fragments are acknowledged. Unreliable
+ * messages are sent once, and wait for their acknowledgements until a fragment is lost or a newer message replaces
+ * them. See {@link FragmentReceiver}.
+ */
+public class FragmentSender {
+
+    private final FragmentGroup[] groups = new FragmentGroup[NetDriver.FRAGMENT_GROUP_LIMIT];
+
+    private final BitPacker packer = new BitPacker();
+    private final Message fragment = new Message(NetDriver.DATA_MAX_SIZE);
+    private int sequenceCounter = 0;
+
+    public FragmentSender() {
+        for (int i = 0; i < groups.length; ++i) groups[i] = new FragmentGroup(i);
+    }
+
+    /**
+     * Starts sending a message in fragments. A reliable message replaces any reliable message of the same type that is
+     * still being sent. If too many messages are being sent, the oldest unreliable message is dropped.
+     * @param stateId Id of the {@link UpdateStream} state sent in the message, or -1
+     * @return False if the message is too large, or too many messages are being sent
+     */
+    public boolean send(Message message, boolean reliable, int stateId) {
+        int fragmentCount = (message.getLength() + NetDriver.FRAGMENT_DATA_SIZE - 1) / NetDriver.FRAGMENT_DATA_SIZE;
+        if (fragmentCount > NetDriver.FRAGMENT_MAX_COUNT) {
+            Log.error("FragmentSender", "Message too large: " + message.getLength());
+            return false;
+        }
+
+        FragmentGroup group = null;
+        for (FragmentGroup g : groups) {
+            if (g.active && reliable && g.reliable && g.message.getType() == message.getType()) {
+                group = g;
+                break;
+            }
+            if (!g.active && group == null) group = g;
+        }
+        if (group == null) {
+            for (FragmentGroup g : groups) {
+                if (!g.reliable && (group == null || g.sequence < group.sequence)) group = g;
+            }
+        }
+        if (group == null) {
+            Log.debug("FragmentSender", "Too many fragmented messages");
+            return false;
+        }
+
+        group.set(message, fragmentCount, reliable, stateId, sequenceCounter++);
+        return true;
+    }
+
+    /**
+     * Returns true if a reliable message of the specified type is still being sent.
+     */
+    public boolean isSending(Message.MessageType type) {
+        for (FragmentGroup group : groups) {
+            if (group.active && group.reliable && group.message.getType() == type) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queues fragments of reliable messages that were sent but not acknowledged within the resend time.
+     */
+    public void update(float currentTime, float resendTime) {
+        for (FragmentGroup group : groups) {
+            if (!group.active || !group.reliable) continue;
+            for (int i = 0; i < group.fragmentCount; ++i) {
+                if (!group.pending[i] && !group.acked.get(i) && currentTime - group.timeSent[i] > resendTime) {
+                    group.pending[i] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds pending fragments to a Packet, up to {@link NetDriver#PACKET_MAX_FRAGMENTS}.
+     * @return Number of fragments added
+     */
+    public int addFragments(ConnectionManager.ConnectionSlot slot, Packet packet, float currentTime) {
+        int count = 0;
+        for (FragmentGroup group : groups) {
+            if (!group.active) continue;
+            for (int i = 0; i < group.fragmentCount; ++i) {
+                if (count >= NetDriver.PACKET_MAX_FRAGMENTS || packet.isFull()) return count;
+                if (!group.pending[i]) continue;
+                writeFragment(group, i);
+                if (!slot.addMessage(packet, fragment)) return count;
+                group.messageIds[i] = packet.getMessage(packet.getMessageCount() - 1).messageId;
+                group.timeSent[i] = currentTime;
+                group.pending[i] = false;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void writeFragment(FragmentGroup group, int index) {
+        fragment.clear();
+        packer.setBuffer(fragment.getByteBuffer());
+        packer.setWriteMode();
+
+        packer.packInt(group.groupId, 0, NetDriver.FRAGMENT_GROUP_ID_LIMIT - 1);
+        packer.packInt(index, 0, NetDriver.FRAGMENT_MAX_COUNT - 1);
+        packer.packInt(group.fragmentCount - 1, 0, NetDriver.FRAGMENT_MAX_COUNT - 1);
+        packer.packInt(group.message.getType().getValue(), 0, Message.MessageType.values().length - 1);
+        packer.padToWord();
+
+        int offset = index * NetDriver.FRAGMENT_DATA_SIZE;
+        ByteBuffer data = group.message.getByteBuffer();
+        data.limit(group.message.getLength());
+        data.position(offset);
+        packer.packBytes(data, Math.min(NetDriver.FRAGMENT_DATA_SIZE, group.message.getLength() - offset));
+        data.rewind();
+        packer.flush(true);
+
+        fragment.setType(Message.MessageType.Fragment);
+        fragment.setLength(packer.getTotalBytes());
+        fragment.frameNum = group.message.frameNum;
+    }
+
+    /**
+     * Marks the fragment sent in a message as acknowledged. When all fragments of a message containing an
+     * {@link UpdateStream} state are acknowledged, the state is acknowledged, and older unreliable messages of the same
+     * type are dropped.
+     */
+    public void ack(int messageId, UpdateStream updateStream) {
+        for (FragmentGroup group : groups) {
+            if (!group.active) continue;
+            int i = group.indexOf(messageId);
+            if (i == -1) continue;
+            if (!group.acked.get(i)) {
+                group.acked.set(i);
+                group.pending[i] = false;
+                if (++group.ackedCount == group.fragmentCount) {
+                    if (group.stateId != -1) updateStream.ack(group.stateId);
+                    group.active = false;
+                    if (!group.reliable) dropOlder(group);
+                }
+            }
+            return;
+        }
+    }
+
+    private void dropOlder(FragmentGroup newer) {
+        for (FragmentGroup group : groups) {
+            if (group.active && !group.reliable && group.sequence < newer.sequence
+                    && group.message.getType() == newer.message.getType()) {
+                group.active = false;
+            }
+        }
+    }
+
+    /**
+     * Queues the fragment sent in a lost message to be sent again if it belongs to a reliable message. An unreliable
+     * message with a lost fragment can't be reassembled, so it is dropped.
+     */
+    public void lost(int messageId) {
+        for (FragmentGroup group : groups) {
+            if (!group.active) continue;
+            int i = group.indexOf(messageId);
+            if (i == -1) continue;
+            if (!group.reliable) group.active = false;
+            else if (!group.acked.get(i)) group.pending[i] = true;
+            return;
+        }
+    }
+
+    public void clear() {
+        for (FragmentGroup group : groups) group.active = false;
+    }
+
+    private static class FragmentGroup {
+        boolean active = false;
+        boolean reliable = false;
+        int groupId = -1;
+        /**
+         * Group ids of a slot are congruent to the slot index, so that the receiver uses the same slot.
+         */
+        int nextGroupId;
+        int stateId = -1;
+        /**
+         * Order in which groups were set, to find the oldest
+         */
+        int sequence = 0;
+        int fragmentCount = 0;
+        int ackedCount = 0;
+        Message message = null;
+
+        final SequenceNumChecker acked = new SequenceNumChecker(NetDriver.FRAGMENT_MAX_COUNT * 2);
+        final boolean[] pending = new boolean[NetDriver.FRAGMENT_MAX_COUNT];
+        final int[] messageIds = new int[NetDriver.FRAGMENT_MAX_COUNT];
+        final float[] timeSent = new float[NetDriver.FRAGMENT_MAX_COUNT];
+
+        FragmentGroup(int index) {
+            nextGroupId = index;
+        }
+
+        void set(Message in, int fragmentCount, boolean reliable, int stateId, int sequence) {
+            if (message == null) message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+            in.copyTo(message);
+            groupId = nextGroupId;
+            nextGroupId = (nextGroupId + NetDriver.FRAGMENT_GROUP_LIMIT) % NetDriver.FRAGMENT_GROUP_ID_LIMIT;
+            this.fragmentCount = fragmentCount;
+            this.reliable = reliable;
+            this.stateId = stateId;
+            this.sequence = sequence;
+            active = true;
+            ackedCount = 0;
+            acked.reset();
+            for (int i = 0; i < NetDriver.FRAGMENT_MAX_COUNT; ++i) {
+                pending[i] = i < fragmentCount;
+                messageIds[i] = -1;
+            }
+        }
+
+        int indexOf(int messageId) {
+            for (int i = 0; i < fragmentCount; ++i) {
+                if (messageIds[i] == messageId) return i;
+            }
+            return -1;
+        }
+    }
+}
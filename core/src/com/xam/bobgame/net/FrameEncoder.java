@@ -0,0 +1,130 @@
+package com.xam.bobgame.net;
+
+import com.esotericsoftware.minlog.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Encodes the Update messages of a frame on a worker thread while the engine simulates the next frame. The engine
+ * thread captures the frame into a {@link FrameImage}, adds a job for each client and starts the worker; the encoded
+ * messages are committed to the clients after {@link #await()} in the next frame.
+ * <p>
+ * The encoder has its own {@link MessageReader}, so the captured world states and the entity encode cache are only
+ * used by one thread at a time. UpdateStreams of the clients must not be touched by the engine between
+ * {@link #start()} and {@link #await()}.
+ */
+class FrameEncoder {
+
+    private final MessageReader messageReader;
+    private final FrameImage image = new FrameImage();
+    private final ExecutorService executor;
+    private Future<?> future = null;
+
+    private int encodedFrame = -1;
+
+    private final ConnectionManager.ConnectionSlot[] slots = new ConnectionManager.ConnectionSlot[NetDriver.MAX_CLIENTS];
+    private final int[] budgets = new int[NetDriver.MAX_CLIENTS];
+    private final int[] focusEntityIds = new int[NetDriver.MAX_CLIENTS];
+    private final int[] inputAcks = new int[NetDriver.MAX_CLIENTS];
+    private final int[] stateIds = new int[NetDriver.MAX_CLIENTS];
+    private final Message[] messages = new Message[NetDriver.MAX_CLIENTS];
+
+    private final Runnable encodeTask = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) {
+                ConnectionManager.ConnectionSlot slot = slots[i];
+                if (slot == null) continue;
+                messages[i].clear();
+                stateIds[i] = messageReader.serializeUpdate(messages[i], image, slot.updateStream, budgets[i], focusEntityIds[i], inputAcks[i]);
+            }
+        }
+    };
+
+    FrameEncoder(NetDriver netDriver) {
+        messageReader = new MessageReader(netDriver);
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FrameEncoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Captures the current frame and clears the jobs of the previous one. Must be called after {@link #await()}.
+     */
+    void capture(int frameNum) {
+        for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) slots[i] = null;
+        messageReader.captureFrame(image);
+        encodedFrame = frameNum;
+    }
+
+    void addJob(ConnectionManager.ConnectionSlot slot, int bitBudget, int focusEntityId, int inputAck) {
+        int i = slot.clientId;
+        if (messages[i] == null) messages[i] = new Message(NetDriver.MESSAGE_MAX_SIZE);
+        slots[i] = slot;
+        budgets[i] = bitBudget;
+        focusEntityIds[i] = focusEntityId;
+        inputAcks[i] = inputAck;
+        stateIds[i] = -1;
+    }
+
+    void start() {
+        future = executor.submit(encodeTask);
+    }
+
+    /**
+     * Waits for the worker to finish encoding the current jobs.
+     */
+    void await() {
+        if (future == null) return;
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            Log.error("FrameEncoder", "Failed to encode frame " + encodedFrame + ": " + e.getCause());
+            for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) slots[i] = null;
+        }
+        future = null;
+    }
+
+    /**
+     * @return Encoded Update message for the connection, or null if it has none
+     */
+    Message getMessage(ConnectionManager.ConnectionSlot slot) {
+        return slots[slot.clientId] == slot ? messages[slot.clientId] : null;
+    }
+
+    int getStateId(ConnectionManager.ConnectionSlot slot) {
+        return slots[slot.clientId] == slot ? stateIds[slot.clientId] : -1;
+    }
+
+    /**
+     * Frame of the latest capture
+     */
+    int getEncodedFrame() {
+        return encodedFrame;
+    }
+
+    void clear() {
+        await();
+        for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) slots[i] = null;
+        messageReader.clearWorldStates();
+        encodedFrame = -1;
+    }
+
+    void dispose() {
+        clear();
+        executor.shutdown();
+    }
+}
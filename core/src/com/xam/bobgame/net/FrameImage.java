@@ -0,0 +1,84 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.GenerationalIdMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Everything a System Update message reads from the engine in one frame: the captured world state, and the encoded
+ * bits of the parts read from systems and components. Update messages can be encoded from an image on other threads,
+ * several at a time, while the engine moves on to the next frame.
+ */
+class FrameImage {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * 4);
+    private int sectionStart = 0;
+
+    WorldStateBuffer.WorldState state;
+    /**
+     * Entity map of the engine, only used for the layout of entity ids
+     */
+    GenerationalIdMap<?> entityMap;
+
+    /**
+     * Game info and control states
+     */
+    int systemOffset, systemBits;
+    int playerInfoOffset, playerInfoBits;
+    /**
+     * Encoded BuffableComponent of each entity index, or -1 bits if the entity has none
+     */
+    int[] buffOffsets = new int[16];
+    int[] buffBits = new int[16];
+
+    void clear(WorldStateBuffer.WorldState state) {
+        this.state = state;
+        buffer.clear();
+        if (buffBits.length < state.entityCount) {
+            int length = Math.max(state.entityCount, buffBits.length * 2);
+            buffOffsets = new int[length];
+            buffBits = new int[length];
+        }
+        Arrays.fill(buffBits, 0, state.entityCount, -1);
+    }
+
+    /**
+     * Points the packer at the start of a new section. Must be followed by {@link #end(BitPacker)}.
+     * @return Offset of the section
+     */
+    int begin(BitPacker packer) {
+        if (buffer.remaining() < NetDriver.DATA_MAX_SIZE) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        }
+        sectionStart = buffer.position();
+        packer.setBuffer(buffer);
+        packer.setWriteMode();
+        return sectionStart;
+    }
+
+    /**
+     * @return Number of bits in the section
+     */
+    int end(BitPacker packer) {
+        int bits = packer.getTotalBits();
+        packer.flush(false);
+        return bits;
+    }
+
+    /**
+     * Packs the bits of a section. Only uses absolute reads, so several threads can copy from the image at once.
+     */
+    void copyTo(int offset, int bits, BitPacker out) {
+        while (bits >= 32) {
+            out.packBits(buffer.getInt(offset) & 0xFFFFFFFFL, 32, 0);
+            offset += 4;
+            bits -= 32;
+        }
+        if (bits > 0) out.packBits((buffer.getInt(offset) >>> (32 - bits)) & 0xFFFFFFFFL, bits, 0);
+    }
+}
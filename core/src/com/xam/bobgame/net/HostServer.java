@@ -0,0 +1,138 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.BoBGame;
+import com.xam.bobgame.events.EventsSystem;
+import com.xam.bobgame.events.classes.ConnectionStateRefreshEvent;
+import com.xam.bobgame.utils.Pools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Listens on a single pair of ports for several engines hosted in the same process. Each new connection is assigned to
+ * the engine with the fewest connections and is handled by that engine's {@link NetDriver} from then on.
+ */
+public class HostServer extends Server {
+
+    private final Array<NetDriver> netDrivers = new Array<>();
+
+    public HostServer() {
+        this(new HostSerialization());
+    }
+
+    private HostServer(HostSerialization serialization) {
+        super(8192, 8192, serialization);
+        serialization.hostServer = this;
+
+        addListener(listener);
+    }
+
+    /**
+     * Adds an engine to receive connections. All engines must be added before the server is bound.
+     */
+    public void addNetDriver(NetDriver netDriver) {
+        netDrivers.add(netDriver);
+    }
+
+    public boolean bind() {
+        try {
+            if (BoBGame.isNoUDP()) {
+                bind(BoBGame.getTcpPort());
+                Log.info("Host server listening on " + BoBGame.getTcpPort() + " for " + netDrivers.size + " matches");
+            }
+            else {
+                bind(BoBGame.getTcpPort(), BoBGame.getUdpPort());
+                Log.info("Host server listening on " + BoBGame.getTcpPort() + "/" + BoBGame.getUdpPort() + " for " + netDrivers.size + " matches");
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    protected Connection newConnection() {
+        MatchConnection connection = new MatchConnection();
+        connection.netDriver = getLeastLoaded(netDrivers, getConnections());
+        return connection;
+    }
+
+    /**
+     * @return The engine with the fewest connections, the first one on ties
+     */
+    static NetDriver getLeastLoaded(Array<NetDriver> netDrivers, Connection[] connections) {
+        NetDriver best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (NetDriver netDriver : netDrivers) {
+            int count = 0;
+            for (Connection connection : connections) {
+                if (((MatchConnection) connection).netDriver == netDriver) count++;
+            }
+            if (count < bestCount) {
+                best = netDriver;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private final Listener listener = new Listener() {
+        @Override
+        public void connected(Connection connection) {
+            ((MatchConnection) connection).netDriver.connectionManager.addConnection(connection, true);
+        }
+
+        @Override
+        public void received(Connection connection, Object o) {
+            if (!(o instanceof Packet)) return;
+            Packet packet = (Packet) o;
+            ConnectionManager.ConnectionSlot slot = ((MatchConnection) connection).netDriver.connectionManager.getConnectionSlot(connection);
+            if (slot != null) slot.packetBuffer.receive(packet);
+        }
+
+        @Override
+        public void disconnected(Connection connection) {
+            NetDriver netDriver = ((MatchConnection) connection).netDriver;
+            ConnectionStateRefreshEvent event = Pools.obtain(ConnectionStateRefreshEvent.class);
+            netDriver.getEngine().getSystem(EventsSystem.class).queueEvent(event);
+        }
+    };
+
+    /**
+     * Connection that remembers which engine it belongs to.
+     */
+    static class MatchConnection extends Connection {
+        NetDriver netDriver;
+    }
+
+    /**
+     * Hands reads and writes to the serialization of the connection's engine. Datagrams from addresses that aren't
+     * registered yet have no connection and are read by the first engine's serialization, which only needs to
+     * recognize the UDP registration message.
+     */
+    static class HostSerialization extends KryoSerialization {
+        HostServer hostServer;
+
+        @Override
+        public void write(Connection connection, ByteBuffer buffer, Object object) {
+            getSerialization(connection).write(connection, buffer, object);
+        }
+
+        @Override
+        public Object read(Connection connection, ByteBuffer buffer) {
+            return getSerialization(connection).read(connection, buffer);
+        }
+
+        private KryoSerialization getSerialization(Connection connection) {
+            if (connection instanceof MatchConnection) return ((MatchConnection) connection).netDriver.serialization;
+            return hostServer.netDrivers.first().serialization;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.events.classes.PlayerControlEvent;
+import com.xam.bobgame.utils.BitPacker;
+
+/**
+ * The latest inputs of the local player, sent by the client in a single Input message each frame. Every message repeats
+ * the last {@link NetDriver#INPUT_REDUNDANCY} inputs, so a lost packet loses no input as long as one of the following
+ * packets arrives. The server applies only inputs newer than the last one it received from the connection (see
+ * {@link ConnectionManager.ConnectionSlot#lastInputSeq}).
+ * <p>
+ * Inputs are numbered consecutively, so only the sequence number of the newest input is sent. The newest input is
+ * written in full, and every older input as the changes from the input after it. Hold durations aren't sent; the
+ * server derives them from the button states.
+ */
+class InputChannel {
+    private static final float CURSOR_MIN = -3;
+    private static final float CURSOR_MAX_X = GameProperties.MAP_WIDTH + 3;
+    private static final float CURSOR_MAX_Y = GameProperties.MAP_HEIGHT + 3;
+    private static final int CURSOR_X_STEPS = BitPacker.floatRange(CURSOR_MIN, CURSOR_MAX_X, NetDriver.RES_POSITION);
+    private static final int CURSOR_Y_STEPS = BitPacker.floatRange(CURSOR_MIN, CURSOR_MAX_Y, NetDriver.RES_POSITION);
+
+    private final int[] cursorXs = new int[NetDriver.INPUT_REDUNDANCY];
+    private final int[] cursorYs = new int[NetDriver.INPUT_REDUNDANCY];
+    private final int[] buttonIds = new int[NetDriver.INPUT_REDUNDANCY];
+    private final boolean[] buttonStates = new boolean[NetDriver.INPUT_REDUNDANCY];
+
+    /**
+     * Index of the newest input
+     */
+    private int newest = 0;
+    /**
+     * Number of inputs held, up to {@link NetDriver#INPUT_REDUNDANCY}
+     */
+    int count = 0;
+    /**
+     * Sequence number of the newest input
+     */
+    int newestSeq = -1;
+    int controlId = -1;
+    int entityId = -1;
+
+    /**
+     * Whether an input was added since the channel was last written
+     */
+    private boolean pending = false;
+
+    /**
+     * Adds an input as the newest. The older inputs are dropped if they can't be sent with it: if the player or its
+     * entity changed, or the sequence numbers aren't consecutive.
+     */
+    void add(PlayerControlEvent event) {
+        if (count > 0 && (event.controlId != controlId || event.entityId != entityId
+                || event.inputSeq != (newestSeq + 1) % NetDriver.INPUT_SEQ_LIMIT)) {
+            count = 0;
+        }
+        newest = (newest + 1) % NetDriver.INPUT_REDUNDANCY;
+        count = Math.min(count + 1, NetDriver.INPUT_REDUNDANCY);
+        newestSeq = event.inputSeq;
+        controlId = event.controlId;
+        entityId = event.entityId;
+        cursorXs[newest] = BitPacker.quantizeFloatSteps(event.x, CURSOR_MIN, CURSOR_MAX_X, CURSOR_X_STEPS);
+        cursorYs[newest] = BitPacker.quantizeFloatSteps(event.y, CURSOR_MIN, CURSOR_MAX_Y, CURSOR_Y_STEPS);
+        buttonIds[newest] = event.buttonId;
+        buttonStates[newest] = event.buttonState;
+        pending = true;
+    }
+
+    boolean hasPending() {
+        return pending;
+    }
+
+    /**
+     * @param age 0 for the newest input, 1 for the one before it, and so on
+     */
+    private int index(int age) {
+        return (newest - age + NetDriver.INPUT_REDUNDANCY) % NetDriver.INPUT_REDUNDANCY;
+    }
+
+    /**
+     * Sequence number of an input
+     * @param age 0 for the newest input, 1 for the one before it, and so on
+     */
+    int getInputSeq(int age) {
+        return (newestSeq - age + NetDriver.INPUT_SEQ_LIMIT) % NetDriver.INPUT_SEQ_LIMIT;
+    }
+
+    /**
+     * Copies an input into an event.
+     * @param age 0 for the newest input, 1 for the one before it, and so on
+     */
+    void get(int age, PlayerControlEvent event) {
+        int i = index(age);
+        event.controlId = controlId;
+        event.entityId = entityId;
+        event.x = BitPacker.dequantizeFloatSteps(cursorXs[i], CURSOR_MIN, CURSOR_MAX_X, CURSOR_X_STEPS);
+        event.y = BitPacker.dequantizeFloatSteps(cursorYs[i], CURSOR_MIN, CURSOR_MAX_Y, CURSOR_Y_STEPS);
+        event.buttonId = buttonIds[i];
+        event.buttonState = buttonStates[i];
+        event.inputSeq = getInputSeq(age);
+    }
+
+    /**
+     * Writes all held inputs, newest first. Must have at least one input.
+     */
+    void write(BitPacker packer) {
+        packer.packInt(controlId, -1, NetDriver.MAX_CLIENTS - 1);
+        packer.packInt(entityId, 0, NetDriver.MAX_ENTITY_ID);
+        packer.packInt(count, 1, NetDriver.INPUT_REDUNDANCY);
+        packer.packInt(newestSeq, 0, NetDriver.INPUT_SEQ_LIMIT - 1);
+        int i = index(0);
+        writeCursor(packer, i);
+        writeButton(packer, i);
+        for (int age = 1; age < count; ++age) {
+            int next = i;
+            i = index(age);
+            boolean cursorChanged = cursorXs[i] != cursorXs[next] || cursorYs[i] != cursorYs[next];
+            packer.readBoolean(cursorChanged);
+            if (cursorChanged) writeCursor(packer, i);
+            boolean buttonChanged = buttonIds[i] != buttonIds[next] || buttonStates[i] != buttonStates[next];
+            packer.readBoolean(buttonChanged);
+            if (buttonChanged) writeButton(packer, i);
+        }
+        pending = false;
+    }
+
+    /**
+     * Replaces the held inputs with the ones written by {@link #write(BitPacker)}.
+     */
+    void read(BitPacker packer) {
+        controlId = packer.unpackInt(-1, NetDriver.MAX_CLIENTS - 1);
+        entityId = packer.unpackInt(0, NetDriver.MAX_ENTITY_ID);
+        count = Math.min(packer.unpackInt(1, NetDriver.INPUT_REDUNDANCY), NetDriver.INPUT_REDUNDANCY);
+        newestSeq = packer.unpackInt(0, NetDriver.INPUT_SEQ_LIMIT - 1);
+        newest = 0;
+        int i = index(0);
+        readCursor(packer, i);
+        readButton(packer, i);
+        for (int age = 1; age < count; ++age) {
+            int next = i;
+            i = index(age);
+            if (packer.readBoolean(false)) {
+                readCursor(packer, i);
+            }
+            else {
+                cursorXs[i] = cursorXs[next];
+                cursorYs[i] = cursorYs[next];
+            }
+            if (packer.readBoolean(false)) {
+                readButton(packer, i);
+            }
+            else {
+                buttonIds[i] = buttonIds[next];
+                buttonStates[i] = buttonStates[next];
+            }
+        }
+    }
+
+    private void writeCursor(BitPacker packer, int i) {
+        packer.packInt(cursorXs[i], 0, CURSOR_X_STEPS);
+        packer.packInt(cursorYs[i], 0, CURSOR_Y_STEPS);
+    }
+
+    private void readCursor(BitPacker packer, int i) {
+        cursorXs[i] = packer.unpackInt(0, CURSOR_X_STEPS);
+        cursorYs[i] = packer.unpackInt(0, CURSOR_Y_STEPS);
+    }
+
+    private void writeButton(BitPacker packer, int i) {
+        packer.packInt(buttonIds[i], -1, 1);
+        packer.readBoolean(buttonStates[i]);
+    }
+
+    private void readButton(BitPacker packer, int i) {
+        buttonIds[i] = packer.unpackInt(-1, 1);
+        buttonStates[i] = packer.readBoolean(false);
+    }
+
+    void clear() {
+        newest = 0;
+        count = 0;
+        newestSeq = -1;
+        controlId = -1;
+        entityId = -1;
+        pending = false;
+    }
+}
@@ -70,10 +70,7 @@ public class Message {
     }
 
     public void copyTo(ByteBuffer out) {
-        int i = length;
-        while (i-- > 0) {
-            out.put(byteBuffer.get());
-        }
+        BitPacker.copyBytes(byteBuffer, out, length);
         byteBuffer.rewind();
     }
 
@@ -82,27 +79,52 @@ public class Message {
         byteBuffer.rewind();
     }
 
+    /**
+     * Copies this message without touching its buffer's position, so the same message can be copied by several threads.
+     */
     public void copyTo(Message out) {
-        out.set(byteBuffer, length);
+        out.byteBuffer.clear();
+        out.length = length;
+        out.byteBuffer.put(byteBuffer.array(), byteBuffer.arrayOffset(), length);
+        out.byteBuffer.flip();
         out.type = type;
         out.messageId = messageId;
         out.frameNum = frameNum;
         out.eventTypes.clear();
         out.eventTypes.addAll(eventTypes);
-        byteBuffer.rewind();
+    }
+
+    /**
+     * Moves the contents of this message to another message without copying, by exchanging their buffers. This message
+     * is left with the other message's former contents. Falls back to copying if the buffers differ in capacity.
+     */
+    public void moveTo(Message out) {
+        if (byteBuffer.capacity() != out.byteBuffer.capacity()) {
+            copyTo(out);
+            return;
+        }
+        ByteBuffer b = out.byteBuffer;
+        out.byteBuffer = byteBuffer;
+        byteBuffer = b;
+        int l = out.length;
+        out.length = length;
+        length = l;
+        Array<Class<? extends NetDriver.NetworkEvent>> e = out.eventTypes;
+        out.eventTypes = eventTypes;
+        eventTypes = e;
+        out.type = type;
+        out.messageId = messageId;
+        out.frameNum = frameNum;
     }
 
     /**
      * Appends the contents of another message to this message, adding its entries into this message.
      */
     public void append(Message in) {
-        int count = in.length;
         ByteBuffer bufferIn = in.getByteBuffer();
         byteBuffer.limit(length + in.length);
         byteBuffer.position(length);
-        while (count-- > 0) {
-            byteBuffer.put(bufferIn.get());
-        }
+        BitPacker.copyBytes(bufferIn, byteBuffer, in.length);
         bufferIn.rewind();
         byteBuffer.rewind();
         length += in.length;
@@ -118,9 +140,7 @@ public class Message {
     public void set(ByteBuffer in, int length) {
         byteBuffer.clear();
         this.length = length;
-        while (length-- > 0) {
-            byteBuffer.put(in.get());
-        }
+        BitPacker.copyBytes(in, byteBuffer, length);
         byteBuffer.flip();
     }
 
@@ -159,7 +179,7 @@ public class Message {
     }
 
     public enum MessageType {
-        Update(0), Snapshot(1), Input(2), Empty(3);
+        Update(0), Snapshot(1), Input(2), Empty(3), Fragment(4);
 
         private final int value;
 
@@ -3,7 +3,8 @@ package com.xam.bobgame.net;
 import com.esotericsoftware.minlog.Log;
 
 /**
- * A buffer for Messages. Keeps Messages for a number of frames before they can be retrieved.
+ * A buffer for Messages. Keeps Messages for a number of frames before they can be retrieved. Only accessed by the
+ * engine thread; messages from the network thread arrive through the {@link PacketBuffer}.
  */
 public class MessageBuffer {
 
@@ -41,14 +42,12 @@ public class MessageBuffer {
 
     /**
      * Adds a message to the buffer and updates the frame numbers.
-     * @param message Message to put in the buffer
+     * @param message Message to put in the buffer. Its contents are moved into the buffer, see {@link Message#moveTo(Message)}.
      * @param packetFrameNum Frame number of the packet that contained the message
      */
     public void receive(Message message, int packetFrameNum) {
-        synchronized (messages) {
-            message.copyTo(messages[putIndex]);
-            putIndex = (putIndex + 1) % messages.length;
-        }
+        message.moveTo(messages[putIndex]);
+        putIndex = (putIndex + 1) % messages.length;
         remoteFrameNum = Math.max(remoteFrameNum, packetFrameNum);
         syncFrameNum = Math.max(syncFrameNum, remoteFrameNum - frameDelay);
     }
@@ -57,15 +56,13 @@ public class MessageBuffer {
      * Attempts to retrieve a message from the buffer, returning true if successful.
      */
     public boolean get(Message out) {
-        synchronized (messages) {
-            if (messages[getIndex].messageId == -1) return false;
-            if (messages[getIndex].getType() == Message.MessageType.Update && messages[getIndex].frameNum > syncFrameNum) {
-                return false;
-            }
-            messages[getIndex].copyTo(out);
-            messages[getIndex].clear();
-            getIndex = (getIndex + 1) % messages.length;
+        if (messages[getIndex].messageId == -1) return false;
+        if (messages[getIndex].getType() == Message.MessageType.Update && messages[getIndex].frameNum > syncFrameNum) {
+            return false;
         }
+        messages[getIndex].moveTo(out);
+        messages[getIndex].clear();
+        getIndex = (getIndex + 1) % messages.length;
         return true;
     }
 }
@@ -6,8 +6,10 @@ import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntArray;
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.Null;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.buffs.Buff;
 import com.xam.bobgame.events.*;
 import com.xam.bobgame.events.classes.*;
 import com.xam.bobgame.game.*;
@@ -17,42 +19,117 @@ import com.xam.bobgame.components.*;
 import com.xam.bobgame.entity.ComponentMappers;
 import com.xam.bobgame.entity.EntityUtils;
 import com.xam.bobgame.utils.BitPacker;
-import com.xam.bobgame.utils.OrderedIntMap;
+import com.xam.bobgame.utils.GenerationalIdMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
- * Message Serializer/Deserializer. Also keeps {@link MessageInfo} of sent messages.
+ * Message Serializer/Deserializer. Also keeps the world states used for delta-compressed Update messages.
  */
 @SuppressWarnings("UnusedReturnValue")
 public class MessageReader {
+    /**
+     * Bits of an Event message before its event count
+     */
+    static final int EVENT_HEADER_BITS = BitPacker.rangeBits(0, Message.UpdateType.values().length - 1);
+    /**
+     * Bits of the sequence number of the first event of an Event message
+     */
+    static final int EVENT_SEQ_BITS = BitPacker.rangeBits(0, NetDriver.EVENT_SEQ_LIMIT - 1);
 
     private final NetDriver netDriver;
     private final BitPacker packer = new BitPacker();
+    /**
+     * Serialized event being copied into an Event message
+     */
+    private final ByteBuffer eventBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
 
-    private final MessageInfo[] messageInfos = new MessageInfo[NetDriver.MAX_MESSAGE_HISTORY];
     private int messageIdCounter = 0;
 
     private final IntArray nonExistent = new IntArray(false, 4);
     private final IntArray notUpdated = new IntArray(false, 4);
+    /**
+     * Inputs of the last Input message read
+     */
+    private final InputChannel readInputs = new InputChannel();
+
+    /**
+     * World states sent by the server, indexed by state id.
+     */
+    private final WorldStateBuffer sentStates;
+    /**
+     * World states decoded by the client, indexed by state id modulo {@link NetDriver#DELTA_STATE_ID_LIMIT}.
+     */
+    private final WorldStateBuffer receivedStates = new WorldStateBuffer(NetDriver.DELTA_STATE_HISTORY);
+    private int stateIdCounter = 0;
+    private boolean baselineMissing = false;
+    private final EntityEncodeCache encodeCache;
+    /**
+     * Entity encoded for the encode cache
+     */
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+    private final BitPacker encodePacker = new BitPacker();
+
+    private WorldStateBuffer.WorldState writeState = null;
+    /**
+     * Frame image the current Update message is encoded from, instead of reading the engine
+     */
+    private FrameImage writeImage = null;
+    private UpdateStream.StreamState writeStreamState = null;
+    private UpdateStream.StreamState writeBaseline = null;
+    private UpdateStream writeStream = null;
+    private int writeBitBudget = Integer.MAX_VALUE;
+    private int writeFocusEntityId = -1;
+    private int writeInputAck = -1;
+    private int readFrameNum = -1;
+    /**
+     * Server frame of the latest System Update message read by the client
+     */
+    private int lastUpdateFrameNum = 0;
+    /**
+     * Last input of the local player applied by the server, read from the current System Update message, or -1.
+     */
+    private int readInputAck = -1;
+    private final PlayerControlInfo dummyControlInfo = new PlayerControlInfo();
 
     public MessageReader(NetDriver netDriver) {
+        this(netDriver, null);
+    }
+
+    /**
+     * @param stateSource Reader whose captured world states and entity encode cache are used to encode updates, or null
+     *                    to use its own. Readers sharing world states may encode updates at the same time, but not while
+     *                    states are captured.
+     */
+    MessageReader(NetDriver netDriver, @Null MessageReader stateSource) {
         this.netDriver = netDriver;
-        for (int i = 0; i < messageInfos.length; ++i) {
-            messageInfos[i] = new MessageInfo();
-        }
+        sentStates = stateSource == null ? new WorldStateBuffer(NetDriver.DELTA_STATE_HISTORY) : stateSource.sentStates;
+        encodeCache = stateSource == null ? new EntityEncodeCache() : stateSource.encodeCache;
     }
 
-    public void setMessageInfo(Message message) {
-        message.messageId = messageIdCounter;
+    /**
+     * Sets the message id and frame number of a newly serialized message. The message id is replaced with a
+     * per-connection id when the message is sent (see {@link ConnectionManager.ConnectionSlot#addMessage}).
+     */
+    public void initMessage(Message message) {
+        message.messageId = messageIdCounter++;
         message.frameNum = ((GameEngine) netDriver.getEngine()).getCurrentFrame();
-        messageInfos[messageIdCounter % messageInfos.length].set(message);
-        messageIdCounter++;
     }
 
-    public MessageInfo getMessageInfo(int messageId) {
-        return messageInfos[messageId % messageInfos.length];
+    public void clearWorldStates() {
+        sentStates.clear();
+        receivedStates.clear();
+        baselineMissing = false;
     }
 
     public void consistencyCheck() {
+        if (baselineMissing) {
+            Log.warn("Received update with missing baseline");
+            baselineMissing = false;
+            netDriver.client.requestSnapshot();
+        }
+
         if (nonExistent.notEmpty()) {
             for (int i = 0; i < nonExistent.size; ++i) {
                 int entityId = nonExistent.get(i);
@@ -78,9 +155,14 @@ public class MessageReader {
         }
     }
 
+    public int getLastUpdateFrameNum() {
+        return lastUpdateFrameNum;
+    }
+
     public int deserialize(Message message, int clientId) {
         packer.setBuffer(message.getByteBuffer());
         packer.setReadMode();
+        readFrameNum = message.frameNum;
 
         switch (message.getType()) {
             case Update:
@@ -90,7 +172,7 @@ public class MessageReader {
                         readSystemUpdate();
                         break;
                     case Event:
-                        readEvent(clientId);
+                        readEvents(clientId);
                         break;
                 }
                 break;
@@ -99,11 +181,16 @@ public class MessageReader {
                 readSystemSnapshot();
                 break;
             case Input:
-                readEvent(clientId);
+                readInput(clientId);
                 break;
             case Empty:
                 // empty
                 break;
+            case Fragment:
+                ConnectionManager.ConnectionSlot slot = netDriver.getConnectionManager().getConnectionSlot(clientId);
+                if (slot == null) return -1;
+                Message reassembled = slot.fragmentReceiver.receive(message, packer);
+                return reassembled == null ? 0 : deserialize(reassembled, clientId);
             default:
                 return -1;
         }
@@ -121,9 +208,14 @@ public class MessageReader {
         packer.setWriteMode();
 
         message.setType(type);
-        setMessageInfo(message);
+        initMessage(message);
         switch (type) {
             case Update:
+                writeState = captureWorldState();
+                writeStream = null;
+                writeStreamState = null;
+                writeBaseline = null;
+                writeInputAck = -1;
                 packer.packInt(Message.UpdateType.System.getValue(), 0, Message.UpdateType.values().length - 1);
                 if (readSystemUpdate() == -1) return -1;
                 break;
@@ -141,48 +233,283 @@ public class MessageReader {
         return 0;
     }
 
+    /**
+     * Serializes a System Update message of a captured world state for a single client, delta-compressed against the
+     * latest state of the client's stream that it has acknowledged. Changed entities that don't fit the bit budget
+     * are left out in order of accumulated priority, and are sent as unchanged.
+     * @param bitBudget Maximum number of bits for the message, not counting entities that must be sent
+     * @param focusEntityId Id of the entity controlled by the client, or -1
+     * @param inputAck Sequence number of the client's last input applied by the server, or -1
+     * @return Id of the new stream state, or -1 on error
+     */
+    public int serializeUpdate(Message message, WorldStateBuffer.WorldState state, UpdateStream stream, int bitBudget, int focusEntityId, int inputAck) {
+        writeImage = null;
+        return serializeStreamUpdate(message, state, stream, bitBudget, focusEntityId, inputAck);
+    }
+
+    /**
+     * Same as {@link #serializeUpdate(Message, WorldStateBuffer.WorldState, UpdateStream, int, int, int)}, but only
+     * reads the frame image, so it doesn't have to run on the engine thread. The other method reads components of the
+     * engine, so it may only be used on the engine thread.
+     */
+    int serializeUpdate(Message message, FrameImage image, UpdateStream stream, int bitBudget, int focusEntityId, int inputAck) {
+        writeImage = image;
+        int stateId = serializeStreamUpdate(message, image.state, stream, bitBudget, focusEntityId, inputAck);
+        writeImage = null;
+        return stateId;
+    }
+
+    private int serializeStreamUpdate(Message message, WorldStateBuffer.WorldState state, UpdateStream stream, int bitBudget, int focusEntityId, int inputAck) {
+        packer.setBuffer(message.getByteBuffer());
+        packer.setWriteMode();
+
+        message.setType(Message.MessageType.Update);
+        message.messageId = messageIdCounter++;
+        // the frame of the captured state, not the engine's current frame
+        message.frameNum = state.frameNum;
+        writeState = state;
+        writeStream = stream;
+        writeBitBudget = bitBudget;
+        writeFocusEntityId = focusEntityId;
+        writeInputAck = inputAck;
+        writeBaseline = stream.getBaseline();
+        writeStreamState = stream.obtain();
+        packer.packInt(Message.UpdateType.System.getValue(), 0, Message.UpdateType.values().length - 1);
+        if (readSystemUpdate() == -1) return -1;
+        packer.flush(true);
+        message.setLength(packer.getTotalBytes());
+
+        return writeStreamState.getStateId();
+    }
+
+    /**
+     * Captures the replicated state of the current frame, and encodes the parts of Update messages that are the same
+     * for every client.
+     */
+    void captureFrame(FrameImage image) {
+        WorldStateBuffer.WorldState state = captureWorldState();
+        image.clear(state);
+        image.entityMap = ((GameEngine) netDriver.getEngine()).getEntityMap();
+
+        image.systemOffset = image.begin(packer);
+        readGameInfo();
+        readControlStates();
+        image.systemBits = image.end(packer);
+
+        image.playerInfoOffset = image.begin(packer);
+        readPlayerInfos(false);
+        image.playerInfoBits = image.end(packer);
+
+        GameEngine engine = (GameEngine) netDriver.getEngine();
+        for (int i = 0; i < state.entityCount; ++i) {
+            if (state.buffCounts[i] == -1) continue;
+            Entity entity = engine.getEntityById(state.entityIds[i]);
+            BuffableComponent buffable = entity == null ? null : ComponentMappers.buffables.get(entity);
+            if (buffable == null) continue;
+            image.buffOffsets[i] = image.begin(packer);
+            buffable.read(packer, engine);
+            image.buffBits[i] = image.end(packer);
+        }
+    }
+
+    /**
+     * Quantizes the replicated state of all entities into a new world state.
+     */
+    public WorldStateBuffer.WorldState captureWorldState() {
+        GameEngine engine = (GameEngine) netDriver.getEngine();
+        GenerationalIdMap<Entity> entityMap = engine.getEntityMap();
+        TransformCache transformCache = engine.getSystem(PhysicsSystem.class).getTransformCache();
+
+        WorldStateBuffer.WorldState state = sentStates.obtain(stateIdCounter++);
+        state.frameNum = engine.getCurrentFrame();
+        for (int slot = 0; slot < entityMap.getSlotCount(); ++slot) {
+            int entityId = entityMap.getIdAt(slot);
+            if (entityId == -1) continue;
+            Entity entity = entityMap.getAt(slot);
+            int index = state.addEntity(entityId);
+            int cacheIndex = transformCache.indexOf(entityId, state.frameNum);
+            if (cacheIndex != -1) {
+                captureTransform(transformCache, cacheIndex, state, index);
+            }
+            else {
+                capturePhysicsBody(ComponentMappers.physicsBody.get(entity), state, index);
+            }
+            if (ComponentMappers.gravFields.has(entity)) state.flags[index] |= WorldStateBuffer.FLAG_GRAVITATIONAL_FIELD;
+            BuffableComponent buffable = ComponentMappers.buffables.get(entity);
+            state.buffCounts[index] = buffable == null ? -1 : buffable.buffs.size;
+        }
+        return state;
+    }
+
+    /**
+     * Serializes the type and fields of an event, to be copied into the Event messages of every connection by
+     * {@link #serializeEvents}.
+     * @return Number of bits written, or -1 if the event can't be sent
+     */
     public int serializeEvent(Message message, NetDriver.NetworkEvent event) {
         packer.setBuffer(message.getByteBuffer());
         packer.setWriteMode();
 
-        int typeIndex = NetDriver.getNetworkEventIndex(event.getClass());
-        if (typeIndex == -1) {
+        int typeIndex = event.getTypeId();
+        if (typeIndex >= EventTypes.NETWORK_EVENT_COUNT) {
             Log.error("Unknown typeIndex for " + event.getClass());
             return -1;
         }
 
-        if (event instanceof PlayerControlEvent) {
-            packer.packInt(typeIndex, 0, NetDriver.networkEventClasses.length - 1);
-            event.read(packer, netDriver.getEngine());
-//            packer.padToWord();
-            packer.flush(true);
-            message.setType(Message.MessageType.Input);
+        packer.packInt(typeIndex, 0, EventTypes.NETWORK_EVENT_COUNT - 1);
+        event.read(packer, netDriver.getEngine());
+        int bits = packer.getTotalBits();
+        packer.flush(true);
+        message.eventTypes.add(event.getClass());
+        message.setLength(packer.getTotalBytes());
+
+//        Log.debug("MessagerReader.serializeEvent", "" + event + " : " + message);
+
+        return bits;
+    }
+
+    /**
+     * Serializes events sent through a connection into one Event message: the number of events and the sequence number
+     * of the first event, then for each event the distance of its sequence number from the previous event's, whether it
+     * is a resend, and its type and fields. Resent events also have their length, so receivers can skip the ones they
+     * already received; reading an event applies it.
+     * @param batch Indices of the events, which must have been serialized with {@link #serializeEvent} and given
+     *              sequence numbers for the connection
+     */
+    void serializeEvents(Message message, ClientEventQueue clientEvents, IntArray batch, int clientId) {
+        message.clear();
+        packer.setBuffer(message.getByteBuffer());
+        packer.setWriteMode();
+
+        packer.packInt(Message.UpdateType.Event.getValue(), 0, Message.UpdateType.values().length - 1);
+        packer.packVarInt(batch.size, NetDriver.EVENT_VARINT_GROUP_BITS);
+        int prevSeq = -1;
+        for (int i = 0; i < batch.size; ++i) {
+            NetDriver.ClientEvent clientEvent = clientEvents.get(batch.get(i));
+            int eventSeq = clientEvent.eventSeqs[clientId];
+            if (i == 0) {
+                packer.packInt(eventSeq % NetDriver.EVENT_SEQ_LIMIT, 0, NetDriver.EVENT_SEQ_LIMIT - 1);
+            }
+            else {
+                packer.packVarInt(eventSeqDelta(prevSeq, eventSeq), NetDriver.EVENT_VARINT_GROUP_BITS);
+            }
+            prevSeq = eventSeq;
+            int bits = clientEvent.serializedBits;
+            boolean resend = clientEvent.messageIds[clientId] != -1;
+            packer.readBoolean(resend);
+            if (resend) packer.packVarInt(bits, NetDriver.EVENT_VARINT_GROUP_BITS);
+            // copied through a buffer of this reader, as other threads may be copying the same event
+            System.arraycopy(clientEvent.serializedMessage.getBytes(), 0, eventBuffer.array(), 0, (bits + 31) / 32 * 4);
+            eventBuffer.clear();
+            packer.packBits(eventBuffer, bits);
+            message.eventTypes.add(clientEvent.event.getClass());
+        }
+        packer.flush(true);
+        message.setType(Message.MessageType.Update);
+        message.setLength(packer.getTotalBytes());
+        initMessage(message);
+    }
+
+    /**
+     * Number of bits an event takes in an Event message
+     * @param prevSeq Sequence number of the previous event in the message, or -1 if the event is the first
+     */
+    static int eventBits(NetDriver.ClientEvent clientEvent, int clientId, int prevSeq) {
+        int bits = 1 + clientEvent.serializedBits;
+        if (prevSeq == -1) {
+            bits += EVENT_SEQ_BITS;
         }
         else {
-            packer.packInt(Message.UpdateType.Event.getValue(), 0, Message.UpdateType.values().length - 1);
-            packer.packInt(typeIndex, 0, NetDriver.networkEventClasses.length - 1);
-            event.read(packer, netDriver.getEngine());
-//            packer.padToWord();
-            packer.flush(true);
-            message.setType(Message.MessageType.Update);
+            bits += BitPacker.varIntBits(eventSeqDelta(prevSeq, clientEvent.eventSeqs[clientId]), NetDriver.EVENT_VARINT_GROUP_BITS);
         }
-        message.eventTypes.add(event.getClass());
+        if (clientEvent.messageIds[clientId] != -1) {
+            bits += BitPacker.varIntBits(clientEvent.serializedBits, NetDriver.EVENT_VARINT_GROUP_BITS);
+        }
+        return bits;
+    }
+
+    /**
+     * Distance between the sequence numbers of consecutive events in an Event message, minus one. Events sent for the
+     * first time have consecutive sequence numbers, so the distance is usually 0.
+     */
+    static int eventSeqDelta(int prevSeq, int eventSeq) {
+        int delta = (eventSeq - prevSeq - 1) % NetDriver.EVENT_SEQ_LIMIT;
+        return delta < 0 ? delta + NetDriver.EVENT_SEQ_LIMIT : delta;
+    }
+
+    /**
+     * Serializes the inputs held by the channel into an Input message.
+     */
+    int serializeInput(Message message, InputChannel inputChannel) {
+        packer.setBuffer(message.getByteBuffer());
+        packer.setWriteMode();
+
+        inputChannel.write(packer);
+        packer.flush(true);
+        message.setType(Message.MessageType.Input);
         message.setLength(packer.getTotalBytes());
-        setMessageInfo(message);
+        initMessage(message);
 
-//        Log.debug("MessagerReader.serializeEvent", "" + event + " : " + message);
+        return 0;
+    }
+
+    /**
+     * Reads the inputs of an Input message and queues the ones the connection hasn't received yet, oldest first.
+     */
+    private int readInput(int clientId) {
+        ConnectionManager.ConnectionSlot slot = netDriver.getConnectionManager().getConnectionSlot(clientId);
+        if (slot == null) return -1;
+
+        readInputs.read(packer);
+        EventsSystem eventsSystem = netDriver.getEngine().getSystem(EventsSystem.class);
+        for (int age = readInputs.count - 1; age >= 0; --age) {
+            int inputSeq = readInputs.getInputSeq(age);
+            if (slot.lastInputSeq != -1 && !InputPrediction.isNewer(inputSeq, slot.lastInputSeq)) continue;
+            PlayerControlEvent event = Pools.obtain(PlayerControlEvent.class);
+            readInputs.get(age, event);
+            event.clientId = clientId;
+            eventsSystem.queueEvent(event);
+            slot.lastInputSeq = inputSeq;
+        }
 
         return 0;
     }
 
+    /**
+     * Reads the events of an Event message. Resent events that were already received through the connection are
+     * skipped.
+     */
+    private int readEvents(int clientId) {
+        ConnectionManager.ConnectionSlot slot = netDriver.getConnectionManager().getConnectionSlot(clientId);
+        int count = packer.unpackVarInt(NetDriver.EVENT_VARINT_GROUP_BITS);
+        int eventSeq = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i == 0) {
+                eventSeq = packer.unpackInt(0, NetDriver.EVENT_SEQ_LIMIT - 1);
+            }
+            else {
+                eventSeq = (eventSeq + 1 + packer.unpackVarInt(NetDriver.EVENT_VARINT_GROUP_BITS)) % NetDriver.EVENT_SEQ_LIMIT;
+            }
+            boolean duplicate = slot != null && slot.checkEventSeq(eventSeq);
+            if (packer.readBoolean(false)) {
+                int bits = packer.unpackVarInt(NetDriver.EVENT_VARINT_GROUP_BITS);
+                if (duplicate) {
+                    packer.skipBits(bits);
+                    continue;
+                }
+            }
+            if (readEvent(clientId) == -1) return -1;
+        }
+        return 0;
+    }
+
     private int readEvent(int clientId) {
-        int type = packer.unpackInt(0, NetDriver.networkEventClasses.length - 1);
-        if (type >= NetDriver.networkEventClasses.length) {
+        int type = packer.unpackInt(0, EventTypes.NETWORK_EVENT_COUNT - 1);
+        if (type >= EventTypes.NETWORK_EVENT_COUNT) {
             Log.error("MessageReader", "Invalid network event id " + type + " from client " + clientId);
             return -1;
         }
-        //noinspection unchecked
-        NetDriver.NetworkEvent event = Pools.obtain((Class<? extends NetDriver.NetworkEvent>) NetDriver.networkEventClasses[type]);
+        NetDriver.NetworkEvent event = Pools.obtain(EventTypes.getNetworkType(type));
         event.read(packer, netDriver.getEngine());
 
         if (event instanceof EntityDespawnedEvent) {
@@ -209,10 +536,20 @@ public class MessageReader {
     }
 
     private int readSystemUpdate() {
+        if (packer.isReadMode()) lastUpdateFrameNum = readFrameNum;
+        if (writeImage != null) {
+            writeImage.copyTo(writeImage.systemOffset, writeImage.systemBits, packer);
+            readInputAck();
+            writeImage.copyTo(writeImage.playerInfoOffset, writeImage.playerInfoBits, packer);
+            readEntityUpdates();
+            return 0;
+        }
         readGameInfo();
-        readEntityUpdates();
         readControlStates();
+        readInputAck();
         readPlayerInfos(false);
+        // last, so that it can use the remaining space
+        readEntityUpdates();
 
         return 0;
     }
@@ -270,101 +607,326 @@ public class MessageReader {
     private final BuffableComponent dummyBuffable = new BuffableComponent();
 
     private int readEntityUpdates() {
-        OrderedIntMap<Entity> entityMap = ((GameEngine) netDriver.getEngine()).getEntityMap();
+        WorldStateBuffer.WorldState state, baseline = null;
 
         if (packer.isWriteMode()) {
-            packer.packInt(entityMap.size, 0, NetDriver.MAX_ENTITY_ID);
-            for (int i = 0; i < entityMap.size; ++i) {
-                int entityId = entityMap.getKey(i);
-                Entity entity = entityMap.get(entityId, null);
-                if (entity != null) {
-                    packer.packInt(entityId, -1, NetDriver.MAX_ENTITY_ID);
-                    PhysicsBodyComponent pb = ComponentMappers.physicsBody.get(entity);
-                    readPhysicsBody(pb);
-                    BuffableComponent buffable = ComponentMappers.buffables.get(entity);
-                    if (buffable != null) {
-                        packer.readBoolean(true);
-                        buffable.read(packer, netDriver.getEngine());
-                    }
-                    else {
-                        packer.readBoolean(false);
-                    }
+            state = writeState;
+            int stateId = writeStreamState == null ? state.stateId : writeStreamState.stateId;
+            packer.packInt(stateId % NetDriver.DELTA_STATE_ID_LIMIT, 0, NetDriver.DELTA_STATE_ID_LIMIT - 1);
+            packer.packInt(writeBaseline == null ? 0 : stateId - writeBaseline.stateId, 0, NetDriver.DELTA_STATE_HISTORY - 1);
+            packer.packInt(state.entityCount, 0, NetDriver.MAX_ENTITY_ID);
+            writeEntityDeltas(state, writeStreamState, writeBaseline);
+        }
+        else {
+            int stateId = packer.unpackInt(0, NetDriver.DELTA_STATE_ID_LIMIT - 1);
+            int baselineOffset = packer.unpackInt(0, NetDriver.DELTA_STATE_HISTORY - 1);
+            boolean missing = false;
+            if (baselineOffset != 0) {
+                baseline = receivedStates.get((stateId - baselineOffset + NetDriver.DELTA_STATE_ID_LIMIT) % NetDriver.DELTA_STATE_ID_LIMIT);
+                if (baseline == null || baseline.frameNum >= readFrameNum || readFrameNum - baseline.frameNum > NetDriver.DELTA_STATE_HISTORY * NetDriver.SERVER_UPDATE_FREQUENCY) {
+                    baseline = null;
+                    missing = true;
                 }
-                else {
-                    Log.warn("No entity with id " + entityId + " exists");
-                    packer.packInt(-1, -1, NetDriver.MAX_ENTITY_ID);
+            }
+            state = receivedStates.obtain(stateId);
+            state.frameNum = readFrameNum;
+            int cnt = packer.unpackInt(0, NetDriver.MAX_ENTITY_ID);
+            missing |= readEntityDeltas(state, baseline, missing, cnt);
+            if (missing) {
+                // don't use as a baseline
+                state.clear();
+                baselineMissing = true;
+            }
+        }
+        return 0;
+    }
+
+    private static final int ENTITY_ID_BITS = 32 - Integer.numberOfLeadingZeros(NetDriver.MAX_ENTITY_ID);
+    private static final int ENTITY_GENERATION_BITS = 32 - Integer.numberOfLeadingZeros(NetDriver.MAX_ENTITY_GENERATION);
+
+    private int[] entityEntries = new int[16];
+    private int[] carrySourceIds = new int[16];
+    private boolean[] entityIncluded = new boolean[16];
+    private long[] priorityKeys = new long[16];
+
+    private void writeEntityDeltas(WorldStateBuffer.WorldState state, @Null UpdateStream.StreamState streamState, @Null UpdateStream.StreamState baseline) {
+        encodeCache.reset(state.stateId, state.entityCount);
+        if (entityEntries.length < state.entityCount) {
+            int length = Math.max(state.entityCount, entityEntries.length * 2);
+            entityEntries = new int[length];
+            carrySourceIds = new int[length];
+            entityIncluded = new boolean[length];
+            priorityKeys = new long[length];
+        }
+
+        GenerationalIdMap<?> entityMap = writeImage != null ? writeImage.entityMap : ((GameEngine) netDriver.getEngine()).getEntityMap();
+        int prevSlot = -1, requiredBits = 0, candidateCount = 0;
+        int focusIndex = writeFocusEntityId == -1 ? -1 : state.indexOf(writeFocusEntityId);
+
+        for (int i = 0; i < state.entityCount; ++i) {
+            int entityId = state.entityIds[i];
+            int slot = entityMap.getSlot(entityId);
+            requiredBits += 1 + (slot == prevSlot + 1 ? ENTITY_GENERATION_BITS : ENTITY_ID_BITS);
+            prevSlot = slot;
+
+            // find the values the client has for this entity
+            int sourceStateId = -1, sourceIndex = -1;
+            WorldStateBuffer.WorldState source = null;
+            if (baseline != null) {
+                int baseIndex = baseline.indexOf(entityId);
+                if (baseIndex >= 0) {
+                    source = sentStates.get(baseline.sourceStateIds[baseIndex]);
+                    if (source != null) sourceIndex = source.indexOf(entityId);
+                    if (sourceIndex >= 0) sourceStateId = source.stateId;
                 }
             }
+            carrySourceIds[i] = sourceStateId;
+
+            int entry = encodeCache.find(i, sourceStateId);
+            if (entry == -1) {
+                encodeBuffer.clear();
+                encodePacker.setBuffer(encodeBuffer);
+                encodePacker.setWriteMode();
+                encodeEntity(encodePacker, state, i, sourceIndex < 0 ? null : source, sourceIndex);
+                int bits = encodePacker.getTotalBits();
+                encodePacker.flush(false);
+                entry = encodeCache.put(i, sourceStateId, encodeBuffer, bits);
+            }
+            entityEntries[i] = entry;
+
+            int bits = encodeCache.getBits(entry);
+            if (writeStream == null || sourceStateId == -1 || bits == 1) {
+                // new to the client, or no changes to send
+                entityIncluded[i] = true;
+                requiredBits += bits;
+                if (writeStream != null) writeStream.resetPriority(entityId);
+            }
+            else {
+                entityIncluded[i] = false;
+                requiredBits += 1;
+                float p = writeStream.accumulatePriority(entityId, getPriority(state, i, focusIndex, source, sourceIndex));
+                priorityKeys[candidateCount++] = ((long) Float.floatToIntBits(p) << 32) | i;
+            }
         }
-        else {
-            int cnt = packer.unpackInt(0, NetDriver.MAX_ENTITY_ID);
-            int j = 0;
-            for (int i = 0; i < cnt; ++i) {
-                int entityId = packer.unpackInt(-1, NetDriver.MAX_ENTITY_ID);
-                if (entityId == -1) continue;
-                while (j < entityMap.size && entityId > entityMap.getKey(j)) {
-//                    Log.debug("Entity " + sortedEntityIds.get(j) + " skipped during update");
-                    notUpdated.add(entityMap.getKey(j));
-                    j++;
+
+        if (candidateCount > 0) {
+            int budget = Math.min(writeBitBudget, NetDriver.DATA_MAX_SIZE * 8 - 32) - packer.getTotalBits() - requiredBits;
+            // highest priority first
+            Arrays.sort(priorityKeys, 0, candidateCount);
+            for (int k = candidateCount - 1; k >= 0 && budget > 0; --k) {
+                int i = (int) priorityKeys[k];
+                int extraBits = encodeCache.getBits(entityEntries[i]) - 1;
+                if (extraBits <= budget) {
+                    budget -= extraBits;
+                    entityIncluded[i] = true;
+                    writeStream.resetPriority(state.entityIds[i]);
                 }
-                if (j < entityMap.size && entityId == entityMap.getKey(j)) {
-                    j++;
+            }
+            writeStream.prunePriorities(state);
+        }
+
+        prevSlot = -1;
+        for (int i = 0; i < state.entityCount; ++i) {
+            int entityId = state.entityIds[i];
+            int slot = entityMap.getSlot(entityId);
+            // entities in consecutive slots only need the generation
+            if (packer.readBoolean(slot == prevSlot + 1)) {
+                packer.packInt(entityMap.getGeneration(entityId), 0, NetDriver.MAX_ENTITY_GENERATION);
+            }
+            else {
+                packer.packInt(entityId, 0, NetDriver.MAX_ENTITY_ID);
+            }
+            prevSlot = slot;
+
+            if (entityIncluded[i]) {
+                encodeCache.copyTo(entityEntries[i], packer);
+                if (streamState != null) streamState.addEntity(entityId, state.stateId);
+            }
+            else {
+                // client keeps the values from its baseline
+                packer.readBoolean(false);
+                streamState.addEntity(entityId, carrySourceIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Priority accumulated per update by an entity with unsent changes.
+     */
+    private float getPriority(WorldStateBuffer.WorldState state, int i, int focusIndex, WorldStateBuffer.WorldState source, int sourceIndex) {
+        float priority = NetDriver.PRIORITY_BASE + NetDriver.PRIORITY_CHANGED_GROUP * state.changedGroupCount(i, source, sourceIndex);
+        if (focusIndex == -1) return priority;
+        if (i == focusIndex) return priority + NetDriver.PRIORITY_FOCUS;
+        if ((state.flags[i] & WorldStateBuffer.FLAG_GRAVITATIONAL_FIELD) != 0) {
+            float dx = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_X, state.getField(i, WorldStateBuffer.FIELD_POS_X))
+                    - WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_X, state.getField(focusIndex, WorldStateBuffer.FIELD_POS_X));
+            float dy = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_Y, state.getField(i, WorldStateBuffer.FIELD_POS_Y))
+                    - WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_Y, state.getField(focusIndex, WorldStateBuffer.FIELD_POS_Y));
+            float d = (float) Math.sqrt(dx * dx + dy * dy);
+            if (d < NetDriver.PRIORITY_NEAR_DISTANCE) priority += NetDriver.PRIORITY_NEAR_FIELD * (1 - d / NetDriver.PRIORITY_NEAR_DISTANCE);
+        }
+        return priority;
+    }
+
+    /**
+     * Encodes the changes in an entity since a source world state.
+     */
+    private void encodeEntity(BitPacker packer, WorldStateBuffer.WorldState state, int i, @Null WorldStateBuffer.WorldState source, int sourceIndex) {
+        int changedGroups = 0;
+        for (int g = 0; g < WorldStateBuffer.GROUP_START.length; ++g) {
+            if (source == null || !state.groupEquals(i, source, sourceIndex, g)) changedGroups |= 1 << g;
+        }
+        int buffCount = state.buffCounts[i];
+        boolean buffsChanged = buffCount > 0 || buffCount != (source == null ? -1 : source.buffCounts[sourceIndex]);
+
+        if (!packer.readBoolean(changedGroups != 0 || buffsChanged)) return;
+
+        for (int g = 0; g < WorldStateBuffer.GROUP_START.length; ++g) {
+            if (!packer.readBoolean((changedGroups & (1 << g)) != 0)) continue;
+            for (int f = WorldStateBuffer.GROUP_START[g]; f < WorldStateBuffer.GROUP_END[g]; ++f) {
+                int value = state.getField(i, f);
+                if (WorldStateBuffer.FIELD_ZERO_FLAG[f] && !packer.readBoolean(value != WorldStateBuffer.FIELD_ZERO[f])) continue;
+                packer.packIntBits(value, WorldStateBuffer.FIELD_BITS[f], 0);
+            }
+        }
+
+        if (packer.readBoolean(buffsChanged)) {
+            if (writeImage != null) {
+                int bits = writeImage.buffBits[i];
+                if (packer.readBoolean(bits != -1)) writeImage.copyTo(writeImage.buffOffsets[i], bits, packer);
+                return;
+            }
+            Entity entity = ((GameEngine) netDriver.getEngine()).getEntityById(state.entityIds[i]);
+            BuffableComponent buffable = buffCount == -1 || entity == null ? null : ComponentMappers.buffables.get(entity);
+            if (packer.readBoolean(buffable != null)) {
+                buffable.read(packer, netDriver.getEngine());
+            }
+        }
+    }
+
+    /**
+     * Decodes entity updates into a world state and applies them.
+     * @return Whether an entity referenced a missing baseline
+     */
+    private boolean readEntityDeltas(WorldStateBuffer.WorldState state, @Null WorldStateBuffer.WorldState baseline, boolean missing, int cnt) {
+        GenerationalIdMap<Entity> entityMap = ((GameEngine) netDriver.getEngine()).getEntityMap();
+        int predictedEntityId = readInputAck == -1 ? -1 : netDriver.getEngine().getSystem(RefereeSystem.class).getLocalPlayerEntityId();
+        int prevSlot = -1;
+        int j = 0;
+
+        for (int i = 0; i < cnt; ++i) {
+            int entityId = packer.readBoolean(false) ? entityMap.toId(prevSlot + 1, packer.unpackInt(0, NetDriver.MAX_ENTITY_GENERATION)) : packer.unpackInt(0, NetDriver.MAX_ENTITY_ID);
+            int slot = entityMap.getSlot(entityId);
+            prevSlot = slot;
+
+            int baseIndex = baseline == null ? -1 : baseline.indexOf(entityId);
+            int index = state.addEntity(entityId);
+            state.buffCounts[index] = baseIndex >= 0 ? baseline.buffCounts[baseIndex] : -1;
+
+            boolean changed = packer.readBoolean(false);
+            for (int g = 0; g < WorldStateBuffer.GROUP_START.length; ++g) {
+                if (changed && packer.readBoolean(false)) {
+                    for (int f = WorldStateBuffer.GROUP_START[g]; f < WorldStateBuffer.GROUP_END[g]; ++f) {
+                        int value = WorldStateBuffer.FIELD_ZERO_FLAG[f] && !packer.readBoolean(false) ? WorldStateBuffer.FIELD_ZERO[f] : packer.unpackIntBits(WorldStateBuffer.FIELD_BITS[f], 0);
+                        state.setField(index, f, value);
+                    }
+                }
+                else if (baseIndex >= 0) {
+                    state.copyGroup(index, baseline, baseIndex, g);
                 }
                 else {
-                    nonExistent.add(entityId);
+                    missing = true;
                 }
-                Entity entity = entityMap.get(entityId, null);
+            }
+            boolean buffsChanged = changed && packer.readBoolean(false);
+            boolean hasBuffable = buffsChanged && packer.readBoolean(false);
 
-                // PhysicsBody Component
-                PhysicsBodyComponent pb = null;
-                if (entity != null) {
-                    pb = ComponentMappers.physicsBody.get(entity);
-                    if (pb == null) {
-                        Log.warn("Entity " + entityId + "has no PhysicsBody Component");
-                    }
+            // slots are in the same order as on the server
+            while (j < slot && j < entityMap.getSlotCount()) {
+                if (entityMap.getIdAt(j) != -1) notUpdated.add(entityMap.getIdAt(j));
+                j++;
+            }
+            Entity entity = entityMap.get(entityId);
+            if (entity == null) {
+                // also covers a stale generation, which the server has already removed
+                int staleId = slot < entityMap.getSlotCount() ? entityMap.getIdAt(slot) : -1;
+                if (staleId != -1) notUpdated.add(staleId);
+                nonExistent.add(entityId);
+            }
+            j = slot + 1;
+
+            // PhysicsBody Component
+            PhysicsBodyComponent pb = null;
+            if (entity != null) {
+                pb = ComponentMappers.physicsBody.get(entity);
+                if (pb == null) {
+                    Log.warn("Entity " + entityId + "has no PhysicsBody Component");
                 }
-                int ret = readPhysicsBody(pb);
+            }
+            // entities sent as unchanged may have been left out by the server, so keep their current values
+            if (!missing && changed) {
+                int ret = applyPhysicsBody(pb, state, index, entityId == predictedEntityId);
                 if (ret != 0) {
                     if ((ret & 1) != 0 && EntityUtils.isAdded(entity)) {
                         Log.warn("MessageReader.readEntityUpdates", "Body for Entity " + entityId + " has no UserData");
                     }
                 }
+            }
 
-                // Buffable Component
-                if (packer.readBoolean(false)) {
-                    BuffableComponent buffable = dummyBuffable;
-                    if (entity != null) {
-                        buffable = ComponentMappers.buffables.get(entity);
-                        if (buffable == null) {
-                            Log.warn("Entity " + entityId + "is missing a Buffable Component");
-                            buffable = dummyBuffable;
-                        }
-                    }
-                    ret = buffable.read(packer, netDriver.getEngine());
-                    if (ret != 0) {
-                        if (EntityUtils.isAdded(entity)) {
-                            Log.warn("MessageReader.readEntityUpdates", "Error unpacking Buffable for Entity " + entityId);
-                        }
+            // Buffable Component
+            BuffableComponent buffable = dummyBuffable;
+            if (entity != null && (hasBuffable || state.buffCounts[index] == 0)) {
+                buffable = ComponentMappers.buffables.get(entity);
+                if (buffable == null) {
+                    Log.warn("Entity " + entityId + "is missing a Buffable Component");
+                    buffable = dummyBuffable;
+                }
+            }
+            if (hasBuffable) {
+                int ret = buffable.read(packer, netDriver.getEngine());
+                if (ret != 0) {
+                    if (EntityUtils.isAdded(entity)) {
+                        Log.warn("MessageReader.readEntityUpdates", "Error unpacking Buffable for Entity " + entityId);
                     }
                 }
+                state.buffCounts[index] = buffable.buffs.size;
+            }
+            else if (buffsChanged) {
+                state.buffCounts[index] = -1;
+            }
+            else if (state.buffCounts[index] == 0 && buffable.buffs.size > 0) {
+                // buffs expired since the baseline
+                for (Buff buff : buffable.buffs) Pools.free(buff);
+                buffable.buffs.clear();
             }
         }
-        return 0;
+        return missing;
     }
 
     private static final MassData tempMassData = new MassData();
     private final Vector2 tempVec = new Vector2();
     private final Transform tempTfm = new Transform();
 
-    private int readPhysicsBody(PhysicsBodyComponent pb) {
-        int r = 0;
-
-        boolean zero;
+    private void captureTransform(TransformCache cache, int i, WorldStateBuffer.WorldState state, int index) {
+        state.setField(index, WorldStateBuffer.FIELD_POS_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_POS_X, cache.x[i]));
+        state.setField(index, WorldStateBuffer.FIELD_POS_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_POS_Y, cache.y[i]));
+        state.setField(index, WorldStateBuffer.FIELD_ROTATION, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_ROTATION, cache.angle[i]));
+        state.setField(index, WorldStateBuffer.FIELD_VEL_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_VEL_X, cache.velX[i]));
+        state.setField(index, WorldStateBuffer.FIELD_VEL_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_VEL_Y, cache.velY[i]));
+        state.setField(index, WorldStateBuffer.FIELD_ANGULAR_VEL, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_ANGULAR_VEL, cache.angularVel[i]));
+        state.setField(index, WorldStateBuffer.FIELD_MASS, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_MASS, cache.mass[i]));
+        state.setField(index, WorldStateBuffer.FIELD_CENTER_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_CENTER_X, cache.centerX[i]));
+        state.setField(index, WorldStateBuffer.FIELD_CENTER_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_CENTER_Y, cache.centerY[i]));
+        state.setField(index, WorldStateBuffer.FIELD_INERTIA, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_INERTIA, cache.inertia[i]));
+    }
 
+    /**
+     * Reads the state of a body that wasn't stepped this frame straight from Box2D.
+     */
+    private void capturePhysicsBody(PhysicsBodyComponent pb, WorldStateBuffer.WorldState state, int index) {
         Transform tfm;
         Body body = null;
         if (pb == null || pb.body == null) {
-//            Log.debug("MessageReader.readPhysicsBody", "Invalid PhysicsBodyComponent");
             tfm = tempTfm;
         }
         else {
@@ -372,60 +934,89 @@ public class MessageReader {
             body = pb.body;
         }
 
-        float t1 = packer.readFloat(tfm.vals[0], -3, GameProperties.MAP_WIDTH + 3, NetDriver.RES_POSITION);
-        float t2 = packer.readFloat(tfm.vals[1], -3, GameProperties.MAP_HEIGHT + 3, NetDriver.RES_POSITION);
-        float t3 = packer.readFloat(tfm.getRotation(), NetDriver.MIN_ORIENTATION, NetDriver.MAX_ORIENTATION, NetDriver.RES_ORIENTATION);
+        state.setField(index, WorldStateBuffer.FIELD_POS_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_POS_X, tfm.vals[0]));
+        state.setField(index, WorldStateBuffer.FIELD_POS_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_POS_Y, tfm.vals[1]));
+        state.setField(index, WorldStateBuffer.FIELD_ROTATION, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_ROTATION, tfm.getRotation()));
 
-        Vector2 vel = body == null ? tempVec : body.getLinearVelocity();
-        zero = packer.readInt(vel.x == 0 ? 0 : 1, 0, 1) == 0;
-        float v1 = zero ? 0 : packer.readFloat(vel.x, -64, 64 - NetDriver.RES_VELOCITY, NetDriver.RES_VELOCITY);
-        zero = packer.readInt(vel.y == 0 ? 0 : 1, 0, 1) == 0;
-        float v2 = zero ? 0 : packer.readFloat(vel.y, -64, 64 - NetDriver.RES_VELOCITY, NetDriver.RES_VELOCITY);
-
-        float angularVel = body == null ? 0 : body.getAngularVelocity();
-        zero = packer.readInt(angularVel == 0 ? 0 : 1, 0, 1) == 0;
-        float v3 = zero ? 0 : packer.readFloat(angularVel, -64, 64 - NetDriver.RES_VELOCITY, NetDriver.RES_VELOCITY);
+        Vector2 vel = body == null ? tempVec.setZero() : body.getLinearVelocity();
+        state.setField(index, WorldStateBuffer.FIELD_VEL_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_VEL_X, vel.x));
+        state.setField(index, WorldStateBuffer.FIELD_VEL_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_VEL_Y, vel.y));
+        state.setField(index, WorldStateBuffer.FIELD_ANGULAR_VEL, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_ANGULAR_VEL, body == null ? 0 : body.getAngularVelocity()));
 
         MassData md = body == null ? tempMassData : body.getMassData();
-        zero = packer.readInt(md.mass == 0 ? 0 : 1, 0, 1) == 0;
-        float m = zero ? 0 : packer.readFloat(md.mass, 0, 10, NetDriver.RES_MASS);
-        float c1 = packer.readFloat(md.center.x, -3, 13 - NetDriver.RES_POSITION, NetDriver.RES_POSITION);
-        float c2 = packer.readFloat(md.center.y, -3, 13 - NetDriver.RES_POSITION, NetDriver.RES_POSITION);
-        zero = packer.readInt(md.I == 0 ? 0 : 1, 0, 1) == 0;
-        float i = zero ? 0 : packer.readFloat(md.I, 0, 10, NetDriver.RES_MASS);
-
-        if (packer.isReadMode() && body != null) {
-            PhysicsSystem.PhysicsHistory physicsHistory = (PhysicsSystem.PhysicsHistory) body.getUserData();
-            if (physicsHistory == null) {
-                r = 1;
-            }
-            else {
-                physicsHistory.updatePosition(t1, t2, tfm.vals[0], tfm.vals[1]);
-                physicsHistory.updateVel(v1, v2, vel.x, vel.y);
-                tempVec.set(t1 - tfm.vals[0], t2 - tfm.vals[1]);
-                body.setTransform(t1, t2, t3);
-                body.setLinearVelocity(v1, v2);
-                body.setAngularVelocity(v3);
-                tempMassData.mass = m;
-                tempMassData.center.set(c1, c2);
-                tempMassData.I = i;
-                body.setMassData(tempMassData);
-            }
+        state.setField(index, WorldStateBuffer.FIELD_MASS, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_MASS, md.mass));
+        state.setField(index, WorldStateBuffer.FIELD_CENTER_X, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_CENTER_X, md.center.x));
+        state.setField(index, WorldStateBuffer.FIELD_CENTER_Y, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_CENTER_Y, md.center.y));
+        state.setField(index, WorldStateBuffer.FIELD_INERTIA, WorldStateBuffer.quantize(WorldStateBuffer.FIELD_INERTIA, md.I));
+    }
+
+    /**
+     * @param predicted Whether the body is the local player's, in which case the local inputs that the server hasn't
+     *                  applied yet are replayed on top of the received state
+     */
+    private int applyPhysicsBody(PhysicsBodyComponent pb, WorldStateBuffer.WorldState state, int index, boolean predicted) {
+        if (pb == null || pb.body == null) return 0;
+        Body body = pb.body;
+
+        PhysicsSystem.PhysicsHistory physicsHistory = (PhysicsSystem.PhysicsHistory) body.getUserData();
+        if (physicsHistory == null) return 1;
+
+        Transform tfm = body.getTransform();
+        float oldX = tfm.vals[0], oldY = tfm.vals[1];
+        float t1 = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_X, state.getField(index, WorldStateBuffer.FIELD_POS_X));
+        float t2 = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_POS_Y, state.getField(index, WorldStateBuffer.FIELD_POS_Y));
+        float t3 = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_ROTATION, state.getField(index, WorldStateBuffer.FIELD_ROTATION));
+        float v1 = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_VEL_X, state.getField(index, WorldStateBuffer.FIELD_VEL_X));
+        float v2 = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_VEL_Y, state.getField(index, WorldStateBuffer.FIELD_VEL_Y));
+        float av = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_ANGULAR_VEL, state.getField(index, WorldStateBuffer.FIELD_ANGULAR_VEL));
+
+        if (!predicted) physicsHistory.serverStates.add(readFrameNum * GameProperties.SIMULATION_UPDATE_INTERVAL, t1, t2, t3, v1, v2, av);
+        body.setTransform(t1, t2, t3);
+        body.setLinearVelocity(v1, v2);
+        body.setAngularVelocity(av);
+        tempMassData.mass = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_MASS, state.getField(index, WorldStateBuffer.FIELD_MASS));
+        tempMassData.center.set(WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_CENTER_X, state.getField(index, WorldStateBuffer.FIELD_CENTER_X)),
+                WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_CENTER_Y, state.getField(index, WorldStateBuffer.FIELD_CENTER_Y)));
+        tempMassData.I = WorldStateBuffer.dequantize(WorldStateBuffer.FIELD_INERTIA, state.getField(index, WorldStateBuffer.FIELD_INERTIA));
+        body.setMassData(tempMassData);
+        pb.massChanged = true;
+
+        if (predicted) {
+            InputPrediction inputPrediction = netDriver.getEngine().getSystem(ControlSystem.class).getInputPrediction();
+            inputPrediction.acknowledge(readInputAck);
+            inputPrediction.replay(body, netDriver.getEngine().getSystem(PhysicsSystem.class).getSimUpdateStep());
+            Vector2 pos = body.getPosition();
+            physicsHistory.addCorrection(oldX - pos.x, oldY - pos.y);
         }
 
-        return r;
+        return 0;
     }
 
     private int readControlStates() {
         ControlSystem controlSystem = netDriver.getEngine().getSystem(ControlSystem.class);
+        // the client's own control state is ahead of the server's
+        int localPlayerId = packer.isReadMode() ? netDriver.getEngine().getSystem(RefereeSystem.class).getLocalPlayerId() : -1;
         for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) {
-            PlayerControlInfo playerControlInfo = controlSystem.getPlayerControlInfo(i);
+            PlayerControlInfo playerControlInfo = i == localPlayerId ? dummyControlInfo : controlSystem.getPlayerControlInfo(i);
             playerControlInfo.read(packer, netDriver.getEngine());
         }
 
         return 0;
     }
 
+    private int readInputAck() {
+        if (packer.isWriteMode()) {
+            if (packer.readBoolean(writeInputAck != -1)) {
+                packer.readInt(writeInputAck, 0, NetDriver.INPUT_SEQ_LIMIT - 1);
+            }
+        }
+        else {
+            readInputAck = packer.readBoolean(false) ? packer.readInt(-1, 0, NetDriver.INPUT_SEQ_LIMIT - 1) : -1;
+        }
+
+        return 0;
+    }
+
     private int readPlayerInfos(boolean refresh) {
         RefereeSystem refereeSystem = netDriver.getEngine().getSystem(RefereeSystem.class);
 
@@ -458,10 +1049,15 @@ public class MessageReader {
         public int messageId = -1;
         public Message.MessageType type = null;
         public Array<Class<? extends NetDriver.NetworkEvent>> eventTypes = new Array<>();
+        /**
+         * Id of the world state sent in a System Update message, or -1.
+         */
+        public int stateId = -1;
 
         public void set(Message message) {
             messageId = message.messageId;
             type = message.getType();
+            stateId = -1;
             eventTypes.clear();
             eventTypes.addAll(eventTypes);
         }
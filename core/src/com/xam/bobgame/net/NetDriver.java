@@ -1,7 +1,6 @@
 package com.xam.bobgame.net;
 
 import com.badlogic.ashley.core.Engine;
-import com.badlogic.ashley.core.EntitySystem;
 import com.badlogic.gdx.utils.*;
 import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryonet.Connection;
@@ -9,7 +8,9 @@ import com.esotericsoftware.kryonet.KryoSerialization;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.BoBGame;
 import com.xam.bobgame.GameEngine;
+import com.xam.bobgame.GameProperties;
 import com.xam.bobgame.GameProfile;
+import com.xam.bobgame.ProfiledSystem;
 import com.xam.bobgame.events.*;
 import com.xam.bobgame.events.classes.*;
 import com.xam.bobgame.game.PlayerInfo;
@@ -17,10 +18,12 @@ import com.xam.bobgame.game.RefereeSystem;
 import com.xam.bobgame.utils.BitPacker;
 import com.xam.bobgame.utils.Bits2;
 import com.xam.bobgame.utils.ExpoMovingAverage;
+import com.xam.bobgame.utils.Pools;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-public class NetDriver extends EntitySystem {
+public class NetDriver extends ProfiledSystem {
     public static final int DATA_MAX_WORDS = 256;
     public static final int DATA_MAX_SIZE = DATA_MAX_WORDS * 4;
     public static final float BUFFER_TIME_LIMIT = 0.15f;
@@ -33,23 +36,97 @@ public class NetDriver extends EntitySystem {
     public static final int PACKET_SEQUENCE_LIMIT = 128;
     public static final int JITTER_BUFFER_SIZE = 2;
     public static final int PACKET_MAX_MESSAGES = 7;
+    /**
+     * Maximum number of fragments of a message that doesn't fit in a single Packet message.
+     */
+    public static final int FRAGMENT_MAX_COUNT = 64;
+    public static final int FRAGMENT_DATA_SIZE = DATA_MAX_SIZE - 4;
+    public static final int MESSAGE_MAX_SIZE = FRAGMENT_DATA_SIZE * FRAGMENT_MAX_COUNT;
+    /**
+     * Maximum number of fragmented messages being sent at the same time through a connection.
+     */
+    public static final int FRAGMENT_GROUP_LIMIT = 4;
+    public static final int FRAGMENT_GROUP_ID_LIMIT = 4096;
+    public static final int PACKET_MAX_FRAGMENTS = 2;
+    public static final float FRAGMENT_MIN_RESEND_TIME = 0.1f;
+    /**
+     * Sequence numbers of the events sent through a connection wrap around at this value.
+     */
+    public static final int EVENT_SEQ_LIMIT = 1024;
+    /**
+     * Client events are only resent while fewer events than this were sent through the connection after them. Older
+     * copies could fall outside the window in which receivers recognize duplicate events.
+     */
+    public static final int EVENT_RESEND_LIMIT = 256;
+    /**
+     * Size of the groups of the varints in Event messages. Event counts and sequence number distances are usually small.
+     */
+    public static final int EVENT_VARINT_GROUP_BITS = 3;
+    public static final int DELTA_STATE_HISTORY = 32;
+    public static final int DELTA_STATE_ID_LIMIT = 1024;
+    /**
+     * Sequence numbers of client inputs wrap around at this value.
+     */
+    public static final int INPUT_SEQ_LIMIT = 1024;
+    /**
+     * Number of the latest inputs repeated in every Input message sent by clients.
+     */
+    public static final int INPUT_REDUNDANCY = 8;
+    /**
+     * How far behind the latest server update remote entities are rendered, so that there are usually two received
+     * states to interpolate between.
+     */
+    public static final float INTERPOLATION_DELAY = 2f * SERVER_UPDATE_FREQUENCY * GameProperties.SIMULATION_UPDATE_INTERVAL;
+    public static final int INTERPOLATION_BUFFER_SIZE = 8;
+    /**
+     * How long a remote entity keeps moving with its last received velocity when no newer state arrives, such as when the
+     * server leaves it out of updates to fit the bandwidth budget
+     */
+    public static final float EXTRAPOLATION_LIMIT = 0.25f;
+    /**
+     * Fraction of the local player's prediction error that remains after each frame.
+     */
+    public static final float CORRECTION_DECAY = 0.85f;
+    /**
+     * Default bandwidth budget of each client connection in bits per second.
+     */
+    public static final int DEFAULT_CLIENT_BANDWIDTH = 128000;
+    /**
+     * Maximum time worth of unused bandwidth that a connection can save up, and of excess it can owe.
+     */
+    public static final float BANDWIDTH_BURST_TIME = 0.25f;
+    /**
+     * Fewest synced clients for which the server builds their packets in parallel.
+     */
+    public static final int PARALLEL_SYNC_MIN_CLIENTS = 4;
+    public static final float PRIORITY_BASE = 1f;
+    public static final float PRIORITY_CHANGED_GROUP = 1f;
+    public static final float PRIORITY_FOCUS = 1000f;
+    public static final float PRIORITY_NEAR_FIELD = 8f;
+    public static final float PRIORITY_NEAR_DISTANCE = 6f;
 
     public static final int SNAPSHOT_FRAME_INTERVAL = 60;
     public static final float RECONNECT_FREQUENCY_LIMIT = 1f;
 
     public static final float INACTIVITY_DISCONNECT_TIMEOUT = 15;
 
-    public static final float RES_POSITION = (float) Math.pow(2d, -12d);
+    public static final float RES_POSITION = 1f / (1 << 12);
     public static final float RES_ORIENTATION = 1e-4f;
-    public static final float RES_VELOCITY = (float) Math.pow(2d, -12d);
-    public static final float RES_HOLD_DURATION = (float) Math.pow(2d, -8d);
+    public static final float RES_VELOCITY = 1f / (1 << 12);
+    public static final float RES_HOLD_DURATION = 1f / (1 << 8);
     public static final float RES_MASS = 1e-4f;
     public static final float RES_COLOR = 1e-4f;
     public static final float MIN_ORIENTATION = -3.14159f;
     public static final float MAX_ORIENTATION = 3.14159f;
-    public static final int MAX_ENTITY_ID = (int) Math.pow(2d, 14) - 1;
+    /**
+     * Entity ids are a slot index followed by the slot's generation, see {@link com.xam.bobgame.utils.GenerationalIdMap}
+     */
+    public static final int ENTITY_INDEX_BITS = 10;
+    public static final int ENTITY_GENERATION_BITS = 4;
+    public static final int MAX_ENTITY_ID = (1 << (ENTITY_INDEX_BITS + ENTITY_GENERATION_BITS)) - 1;
+    public static final int MAX_ENTITY_GENERATION = (1 << ENTITY_GENERATION_BITS) - 1;
     public static final float MAX_LATENCY = 2048;
-    public static final float RES_LATENCY = (float) Math.pow(2d, -5d);
+    public static final float RES_LATENCY = 1f / (1 << 5);
 
     public static final float MAX_GRAVITY_STRENGTH = 128;
     public static final float RES_GRAVITY_STRENGTH = 1e-2f;
@@ -65,16 +142,13 @@ public class NetDriver extends EntitySystem {
 
     public static final int MAX_BUFF_COUNT = 15;
     public static final float MAX_BUFF_DURATION = 16f;
-    public static final float RES_BUFF_DURATION = (float) Math.pow(2d, -5d);
+    public static final float RES_BUFF_DURATION = 1f / (1 << 5);
     public static final int GRAPHICS_MAX_ANIMATORS = 7;
-    public static final float RES_GRAPHICS_BLINK_FREQ = (float) Math.pow(2d, -5d);
-
-    public static final float VEL_SMOOTHING_FACTOR = 1.2f;
+    public static final float RES_GRAPHICS_BLINK_FREQ = 1f / (1 << 5);
 
     public static final float FRICTION_FACTOR = 2f;
     public static final float RESTITUTION_FACTOR = 0f;
     public static final float DAMPING_FACTOR = 10f;
-    public static final float FORCE_FACTOR = 0.4f;
 
 //    private final ExpoMovingAverage simUpdateStepError = new ExpoMovingAverage(0.1f);
 
@@ -86,9 +160,20 @@ public class NetDriver extends EntitySystem {
     final NetClient client = new NetClient(this, serialization);
 
     /**
-     * Events pending to be sent to connected clients. Not guaranteed to be sent in order.
+     * Checksum of packets sent to new connections. Set when the server starts.
+     */
+    PacketChecksum packetChecksum = PacketChecksum.CRC32;
+
+    /**
+     * Events pending to be sent to or acknowledged by connected clients
      */
-    final Array<ClientEvent> clientEvents = new Array<>(false, 4);
+    final ClientEventQueue clientEvents = new ClientEventQueue();
+
+    /**
+     * Latest inputs of the local player, sent to the server by the client
+     */
+    final InputChannel inputChannel = new InputChannel();
+    final Message inputMessage = new Message(DATA_MAX_SIZE);
 
     private final ExpoMovingAverage sendBitrateAverage = new ExpoMovingAverage(0.1f);
     private final ExpoMovingAverage receiveBitrateAverage = new ExpoMovingAverage(0.1f);
@@ -97,31 +182,6 @@ public class NetDriver extends EntitySystem {
     private int sentBytes = 0;
     private int receivedBytes = 0;
 
-    public static final Class<?>[] networkEventClasses = {
-            PlayerAssignEvent.class,
-            PlayerConnectedEvent.class,
-            PlayerJoinedEvent.class,
-            PlayerLeftEvent.class,
-            PlayerControlEvent.class,
-            PlayerScoreEvent.class,
-            PlayerDeathEvent.class,
-            EntityCreatedEvent.class,
-            EntityDespawnedEvent.class,
-            RequestJoinEvent.class,
-            RequestPlayerIdEvent.class,
-            MatchEndedEvent.class,
-            MatchRestartEvent.class,
-    };
-
-    public static int getNetworkEventIndex(Class<? extends NetworkEvent> clazz) {
-        for (int i = 0; i < NetDriver.networkEventClasses.length; ++i) {
-            if (NetDriver.networkEventClasses[i] == clazz) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     private ObjectMap<Class<? extends GameEvent>, GameEventListener> listeners = new ObjectMap<>();
 
     public NetDriver(int priority) {
@@ -142,17 +202,21 @@ public class NetDriver extends EntitySystem {
             eventsSystem.removeListeners(listeners);
             eventsSystem.removeListeners(client.listeners);
         }
-        for (ClientEvent clientEvent : clientEvents) Pools.free(clientEvent);
         clientEvents.clear();
+        inputChannel.clear();
         sendBitrateAverage.reset();
         receiveBitrateAverage.reset();
 //        connectionManager.clear();
         transport.clearDropped();
+        transport.clearAcked();
+        messageReader.clearWorldStates();
+        server.clearEncoding();
     }
 
     @Override
     public void update(float deltaTime) {
-        connectionManager.update(deltaTime);
+        // when pipelined, packets are read at the end of the previous frame, after the worker is done with the UpdateStreams
+        if (!server.isPipelined()) connectionManager.update(deltaTime);
 
         RefereeSystem refereeSystem = getEngine().getSystem(RefereeSystem.class);
         for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) {
@@ -170,8 +234,16 @@ public class NetDriver extends EntitySystem {
      * Called in {@link Engine} update cycle after all other systems have finished updating.
      */
     public void update2(float deltaTime) {
+        if (server.isPipelined()) {
+            server.awaitEncoding();
+            connectionManager.update(deltaTime);
+        }
         updateDropped();
+        updateAcked();
+        expireClientEvents();
         connectionManager.update2();
+        server.syncClients();
+        server.startEncoding();
         updateBitRate(deltaTime);
     }
 
@@ -206,10 +278,18 @@ public class NetDriver extends EntitySystem {
             netEvent = event;
         }
         clientEvent.event = netEvent;
+        clientEvent.frameNum = ((GameEngine) getEngine()).getCurrentFrame();
         clientMask.copyTo(clientEvent.clientMask);
-        synchronized (clientEvents) {
-            clientEvents.add(clientEvent);
-        }
+        clientEvents.add(clientEvent);
+    }
+
+    /**
+     * Queues an input of the local player to be sent to the server. Unlike {@link #queueClientEvent}, the event isn't
+     * kept and can be freed after the call.
+     */
+    public void queueInput(PlayerControlEvent event) {
+        if (!connectionManager.hasConnections()) return;
+        inputChannel.add(event);
     }
 
     private void updateBitRate(float deltaTime) {
@@ -220,19 +300,28 @@ public class NetDriver extends EntitySystem {
         receiveBitrate = received * 8 / deltaTime;
         sendBitrateAverage.update(Float.isNaN(sendBitrate) ? 0 : sendBitrate);
         receiveBitrateAverage.update(Float.isNaN(receiveBitrate) ? 0 : receiveBitrate);
+        for (int i = 0; i < MAX_CLIENTS; ++i) {
+            ConnectionManager.ConnectionSlot slot = connectionManager.getConnectionSlot(i);
+            if (slot != null) slot.updateBitRate(deltaTime);
+        }
     }
 
     private void updateDropped() {
         for (PacketTransport.PacketInfo packetInfo : transport.getDroppedPackets()) {
+            ConnectionManager.ConnectionSlot slot = connectionManager.getConnectionSlot(packetInfo.clientId);
+            if (slot == null) continue;
             if (packetInfo.messageCount > 0) {
                 for (int i = 0; i < packetInfo.messageCount; ++i) {
-                    MessageReader.MessageInfo messageInfo = messageReader.getMessageInfo(packetInfo.messageIds[i]);
+                    MessageReader.MessageInfo messageInfo = slot.getMessageInfo(packetInfo.messageIds[i]);
                     if (messageInfo == null) continue;
                     switch (messageInfo.type) {
                         case Snapshot:
-                            connectionManager.getConnectionSlot(packetInfo.clientId).needsSnapshot = true;
+                            slot.needsSnapshot = true;
                             Log.warn("Dropped message: " + messageInfo.type + " (Client " + packetInfo.clientId + ")");
                             break;
+                        case Fragment:
+                            slot.fragmentSender.lost(messageInfo.messageId);
+                            break;
                     }
                 }
             }
@@ -240,6 +329,70 @@ public class NetDriver extends EntitySystem {
         transport.clearDropped();
     }
 
+    /**
+     * Advances the delta compression baselines of clients that acknowledged Update messages or all fragments of
+     * fragmented Update messages, and removes acknowledged events from the clients' queues.
+     */
+    private void updateAcked() {
+        Array<PacketTransport.PacketInfo> ackedPackets = transport.getAckedPackets();
+        for (PacketTransport.PacketInfo packetInfo : ackedPackets) {
+            ConnectionManager.ConnectionSlot slot = connectionManager.getConnectionSlot(packetInfo.clientId);
+            if (slot == null) continue;
+            for (int i = 0; i < packetInfo.messageCount; ++i) {
+                if (packetInfo.messageTypes[i] == Message.MessageType.Fragment) {
+                    slot.fragmentSender.ack(packetInfo.messageIds[i], slot.updateStream);
+                    continue;
+                }
+                if (packetInfo.messageTypes[i] != Message.MessageType.Update) continue;
+                MessageReader.MessageInfo messageInfo = slot.getMessageInfo(packetInfo.messageIds[i]);
+                if (messageInfo != null && messageInfo.stateId != -1) {
+                    slot.updateStream.ack(messageInfo.stateId);
+                }
+                else {
+                    clientEvents.ack(slot.clientId, packetInfo.messageIds[i]);
+                }
+            }
+        }
+        transport.clearAcked();
+    }
+
+    /**
+     * Adds the events a connection hasn't acknowledged to a packet, batched into as few Event messages as fit. Events
+     * sent before are resent once their resend time passes; events stay queued until acknowledged by all their clients.
+     * Only the connection's entries of the events are written, so connections can be synced in parallel.
+     * @param eventCount Number of queued events that can be sent
+     * @param frameNum Only events queued up to this frame are sent
+     * @param resendTime Time after which an unacknowledged event is resent
+     * @return false if the packet ran out of room
+     */
+    boolean sendClientEvents(ConnectionManager.ConnectionSlot slot, Packet packet, MessageReader messageReader,
+                             int eventCount, int frameNum, float currentTime, float resendTime) {
+        int i = 0;
+        while (true) {
+            i = clientEvents.nextBatch(slot, i, eventCount, frameNum, currentTime);
+            if (slot.eventBatch.size == 0) return true;
+            messageReader.serializeEvents(slot.eventMessage, clientEvents, slot.eventBatch, slot.clientId);
+            if (!slot.addMessage(packet, slot.eventMessage)) return false;
+            clientEvents.sent(slot, packet.getMessage(packet.getMessageCount() - 1).messageId, currentTime + resendTime);
+        }
+    }
+
+    /**
+     * Gives up on events that were sent to a client too long ago to be resent. Clients of the server are sent a
+     * snapshot instead.
+     */
+    private void expireClientEvents() {
+        float currentTime = ((GameEngine) getEngine()).getCurrentTime();
+        for (int clientId = 0; clientId < MAX_CLIENTS; ++clientId) {
+            ConnectionManager.ConnectionSlot slot = connectionManager.getConnectionSlot(clientId);
+            if (slot == null) continue;
+            int count = clientEvents.expire(slot, currentTime);
+            if (count == 0) continue;
+            Log.warn("Dropped " + count + " events (Client " + clientId + ")");
+            if (isServerRunning()) slot.needsSnapshot = true;
+        }
+    }
+
     public void stop() {
         client.stop();
         server.stop();
@@ -253,11 +406,19 @@ public class NetDriver extends EntitySystem {
         return sendBitrateAverage.getAverage();
     }
 
+    /**
+     * Server time of the latest System Update message applied by the client, in seconds
+     */
+    public float getLastUpdateTime() {
+        return messageReader.getLastUpdateFrameNum() * GameProperties.SIMULATION_UPDATE_INTERVAL;
+    }
+
     public float getAverageReceiveBitrate() {
         return receiveBitrateAverage.getAverage();
     }
 
     public boolean startServer() {
+        packetChecksum = BoBGame.getPacketChecksum();
         server.start();
         // TODO: store flag in class property
         if (!BoBGame.isHeadless()) {
@@ -268,6 +429,15 @@ public class NetDriver extends EntitySystem {
         return server.isRunning();
     }
 
+    /**
+     * Starts the server for clients routed to this engine by a {@link HostServer}.
+     */
+    public boolean startHostedServer() {
+        packetChecksum = BoBGame.getPacketChecksum();
+        server.startHosted();
+        return server.isRunning();
+    }
+
     public void stopServer() {
         server.stop();
         connectionManager.clear();
@@ -316,19 +486,55 @@ public class NetDriver extends EntitySystem {
 
     static class ClientEvent implements Pool.Poolable {
         NetworkEvent event;
+        /**
+         * Frame the event was queued in
+         */
+        int frameNum = -1;
+        /**
+         * Clients that haven't acknowledged the event yet
+         */
         Bits2 clientMask = new Bits2(NetDriver.MAX_CLIENTS);
+        /**
+         * Type and fields of the event, copied into the Event messages of every client
+         */
         Message serializedMessage = new Message(DATA_MAX_SIZE);
+        /**
+         * Length of the serialized event, or -1 if it wasn't serialized yet
+         */
+        int serializedBits = -1;
+        /**
+         * Sequence number of the event in each client's connection, or -1 if it has none yet
+         */
+        final int[] eventSeqs = new int[NetDriver.MAX_CLIENTS];
+        /**
+         * Id of the message the event was last sent in to each client, or -1 if it wasn't sent to the client
+         */
+        final int[] messageIds = new int[NetDriver.MAX_CLIENTS];
+        /**
+         * Time the event is resent to each client if it wasn't acknowledged
+         */
+        final float[] resendTimes = new float[NetDriver.MAX_CLIENTS];
+
+        public ClientEvent() {
+            Arrays.fill(eventSeqs, -1);
+            Arrays.fill(messageIds, -1);
+        }
 
         @Override
         public void reset() {
             Pools.free(event);
             event = null;
+            frameNum = -1;
             clientMask.clear();
             serializedMessage.clear();
+            serializedBits = -1;
+            Arrays.fill(eventSeqs, -1);
+            Arrays.fill(messageIds, -1);
+            Arrays.fill(resendTimes, 0);
         }
     }
 
-    public static abstract class NetworkEvent implements GameEvent, NetSerializable {
+    public static abstract class NetworkEvent extends GameEvent implements NetSerializable {
 
         public int clientId = -1;
 
@@ -343,7 +549,7 @@ public class NetDriver extends EntitySystem {
         }
     }
 
-    private class NetSerialization extends KryoSerialization {
+    class NetSerialization extends KryoSerialization {
         Packet returnPacket = new Packet(DATA_MAX_SIZE);
         BitPacker writeBitPacker = new BitPacker();
         BitPacker readBitPacker = new BitPacker();
@@ -360,8 +566,14 @@ public class NetDriver extends EntitySystem {
                 }
                 else {
                     byteBuffer.put((byte) 0xF1);
-                    PacketTransport.PacketInfo dropped = transport.setHeaders(packet, connection);
-                    packet.encode(writeBitPacker);
+                    if (packet.encoded != null) {
+                        // headers were set when the packet was encoded
+                        byteBuffer.put(packet.encoded.array(), 0, packet.encoded.limit());
+                    }
+                    else {
+                        transport.setHeaders(packet, connection);
+                        packet.encode(writeBitPacker);
+                    }
 //                    if (dropped != null) {
 //                        Log.info("Packet dropped: " + dropped.packetSeqNum + " (" + dropped.messageSeqNum + ")");
 //                    }
@@ -372,7 +584,12 @@ public class NetDriver extends EntitySystem {
                 super.write(connection, byteBuffer, o);
             }
 
-            sentBytes += byteBuffer.position() - i;
+            int bytes = byteBuffer.position() - i;
+            sentBytes += bytes;
+            if (o instanceof Packet) {
+                ConnectionManager.ConnectionSlot slot = connectionManager.getConnectionSlot(connection);
+                if (slot != null) slot.sentBytes += bytes;
+            }
         }
 
         @Override
@@ -386,13 +603,10 @@ public class NetDriver extends EntitySystem {
             if (b == (byte) 0xF1) {
                 int clientId = connectionManager.getClientId(connection);
                 if (clientId != -1) {
+                    // acks and duplicates are handled by the engine thread when the packet leaves the PacketBuffer
                     if (returnPacket.decode(readBitPacker) != -1) {
 //                        Log.debug("Received Packet " + returnPacket);
-                        synchronized (transport) {
-                            if (!transport.updateReceived(returnPacket, clientId)) {
-                                r = returnPacket;
-                            }
-                        }
+                        r = returnPacket;
                     }
 //                    else {
 //                        Log.debug("Error decoding Packet: " + DebugUtils.bytesHex(byteBuffer, i, byteBuffer.limit() - i));
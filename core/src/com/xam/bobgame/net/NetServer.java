@@ -1,6 +1,7 @@
 package com.xam.bobgame.net;
 
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.Array;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Serialization;
@@ -10,22 +11,73 @@ import com.xam.bobgame.BoBGame;
 import com.xam.bobgame.GameEngine;
 import com.xam.bobgame.events.EventsSystem;
 import com.xam.bobgame.events.classes.ConnectionStateRefreshEvent;
+import com.xam.bobgame.game.ControlSystem;
+import com.xam.bobgame.game.PlayerControlInfo;
+import com.xam.bobgame.game.PlayerInfo;
 import com.xam.bobgame.game.RefereeSystem;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NetServer extends Server {
 
     private NetDriver netDriver;
     private boolean running = false;
 
-    private Packet updatePacket = new Packet(NetDriver.DATA_MAX_SIZE);
-    private Packet snapshotPacket = new Packet(NetDriver.DATA_MAX_SIZE);
+    /**
+     * Snapshot sent in the current frame. Snapshots larger than a Packet message are sent in fragments.
+     */
+    private final Message snapshotMessage = new Message(NetDriver.MESSAGE_MAX_SIZE);
 //    private Packet eventPacket = new Packet(NetDriver.DATA_MAX_SIZE);
-    private Packet sendPacket = new Packet(NetDriver.DATA_MAX_SIZE);
 
-    private boolean hasUpdatePacket = false;
-    private boolean hasSnapshotPacket = false;
+    private boolean hasSnapshotMessage = false;
+
+    /**
+     * Frame sent in Update messages in the current frame, captured on the engine thread so that clients synced on
+     * other threads never read the engine's components.
+     */
+    private final FrameImage updateImage = new FrameImage();
+    private final Message updateMessage = new Message(NetDriver.MESSAGE_MAX_SIZE);
+
+    /**
+     * Encodes Update messages on a worker thread when the server is pipelined, or null.
+     */
+    private FrameEncoder frameEncoder = null;
+
+    /**
+     * Threads that build packets of clients in parallel. They are shared by all servers of the process, so that hosting
+     * several matches doesn't multiply them; created on the first parallel sync and shut down when the last server using
+     * them stops. Engine threads build packets too, so there is one thread less than
+     * {@link BoBGame#getSyncWorkerCount()}.
+     */
+    private static ExecutorService sharedSyncExecutor = null;
+    private static int syncExecutorUsers = 0;
+
+    /**
+     * Shared sync executor if this server uses it, or null
+     */
+    private ExecutorService syncExecutor = null;
+
+    /**
+     * Clients to sync in the current frame
+     */
+    private final Array<ConnectionManager.ConnectionSlot> syncSlots = new Array<>(false, NetDriver.MAX_CLIENTS);
+    /**
+     * Frame whose Update messages and events are sent in the current sync, or -1 if none are sent
+     */
+    private int syncFrame = -1;
+    /**
+     * Number of client events that can be sent in the current sync. Events queued later wait for the next one.
+     */
+    private int syncEventCount = 0;
+
+    private SyncTask[] syncTasks = new SyncTask[0];
+    private Future<?>[] syncFutures = new Future<?>[0];
 
     public NetServer(NetDriver netDriver, Serialization serialization) {
         super(8192, 8192, serialization);
@@ -49,6 +101,7 @@ public class NetServer extends Server {
                 Log.info("Server listening on " + BoBGame.getTcpPort() + "/" + BoBGame.getUdpPort());
             }
             running = true;
+            if (BoBGame.isPipelined()) frameEncoder = new FrameEncoder(netDriver);
             ConnectionStateRefreshEvent event = Pools.obtain(ConnectionStateRefreshEvent.class);
             netDriver.getEngine().getSystem(EventsSystem.class).queueEvent(event);
             return;
@@ -59,6 +112,19 @@ public class NetServer extends Server {
         ((GameEngine) netDriver.getEngine()).setMode(GameEngine.Mode.None);
     }
 
+    /**
+     * Starts serving clients that connect through a {@link HostServer} shared by several engines, without binding
+     * ports of its own.
+     */
+    public void startHosted() {
+        if (isRunning()) return;
+        ((GameEngine) netDriver.getEngine()).setMode(GameEngine.Mode.Server);
+        running = true;
+        if (BoBGame.isPipelined()) frameEncoder = new FrameEncoder(netDriver);
+        ConnectionStateRefreshEvent event = Pools.obtain(ConnectionStateRefreshEvent.class);
+        netDriver.getEngine().getSystem(EventsSystem.class).queueEvent(event);
+    }
+
     private Listener listener = new Listener() {
         @Override
         public void connected(Connection connection) {
@@ -85,6 +151,14 @@ public class NetServer extends Server {
         if (!running) return;
         super.stop();
         running = false;
+        if (frameEncoder != null) {
+            frameEncoder.dispose();
+            frameEncoder = null;
+        }
+        if (syncExecutor != null) {
+            releaseSyncExecutor();
+            syncExecutor = null;
+        }
         ConnectionStateRefreshEvent event = Pools.obtain(ConnectionStateRefreshEvent.class);
         netDriver.getEngine().getSystem(EventsSystem.class).triggerEvent(event);
         RefereeSystem refereeSystem = netDriver.getEngine().getSystem(RefereeSystem.class);
@@ -92,96 +166,300 @@ public class NetServer extends Server {
         ((GameEngine) netDriver.getEngine()).stop();
     }
 
-    private int lastSyncFrame = -1;
+    /**
+     * Adds a client to be synced at the end of the frame.
+     */
+    void queueSync(ConnectionManager.ConnectionSlot connectionSlot) {
+        syncSlots.add(connectionSlot);
+    }
 
-    public void syncClient(ConnectionManager.ConnectionSlot connectionSlot) {
+    /**
+     * Builds and sends the packets of the clients queued by {@link #queueSync}. Work shared by all clients (the snapshot,
+     * the captured world state and the serialized events) is done first on the engine thread, and only read while the
+     * packets are built. With enough clients, packets are built and encoded on several threads; they are then sent in
+     * order on the engine thread.
+     */
+    void syncClients() {
+        if (syncSlots.size == 0) return;
         int currentFrame = ((GameEngine) netDriver.getEngine()).getCurrentFrame();
+        prepareSync(currentFrame);
 
-        if (lastSyncFrame != currentFrame) {
-            lastSyncFrame = currentFrame;
-            updatePacket.clear();
-            snapshotPacket.clear();
-            hasUpdatePacket = false;
-            hasSnapshotPacket = false;
+        int taskCount = syncSlots.size < NetDriver.PARALLEL_SYNC_MIN_CLIENTS ? 1 : Math.min(BoBGame.getSyncWorkerCount(), syncSlots.size);
+        if (taskCount <= 1) {
+            for (ConnectionManager.ConnectionSlot connectionSlot : syncSlots) {
+                syncClient(connectionSlot, netDriver.messageReader, updateMessage, currentFrame);
+            }
+        }
+        else {
+            runSyncTasks(taskCount, currentFrame);
         }
 
-        if (connectionSlot.needsSnapshot && (connectionSlot.lastSnapshotFrame == -1 || currentFrame - connectionSlot.lastSnapshotFrame >= NetDriver.SNAPSHOT_FRAME_INTERVAL)) {
-            if (!hasSnapshotPacket) {
-                if (snapshotPacket.createMessage() != null) {
-                    netDriver.messageReader.serialize(snapshotPacket.getMessage(0), Message.MessageType.Snapshot);
-                    hasSnapshotPacket = true;
-                }
-                else {
-                    Log.warn("NetServer", "Failed to send Snapshot Message");
+        syncEventCount = 0;
+        for (ConnectionManager.ConnectionSlot connectionSlot : syncSlots) {
+            Packet packet = connectionSlot.dataPacket;
+            if (packet.getMessageCount() > 0) connectionSlot.sendDataPacket(packet);
+            packet.clear();
+        }
+        syncSlots.clear();
+    }
+
+    private boolean shouldSendSnapshot(ConnectionManager.ConnectionSlot connectionSlot, int currentFrame) {
+        return connectionSlot.needsSnapshot && !connectionSlot.fragmentSender.isSending(Message.MessageType.Snapshot)
+                && (connectionSlot.lastSnapshotFrame == -1 || currentFrame - connectionSlot.lastSnapshotFrame >= NetDriver.SNAPSHOT_FRAME_INTERVAL);
+    }
+
+    private void prepareSync(int currentFrame) {
+        snapshotMessage.clear();
+        hasSnapshotMessage = false;
+
+        boolean needsUpdate = false;
+        for (ConnectionManager.ConnectionSlot connectionSlot : syncSlots) {
+            if (!shouldSendSnapshot(connectionSlot, currentFrame)) {
+                needsUpdate = true;
+            }
+            else if (!hasSnapshotMessage) {
+                netDriver.messageReader.serialize(snapshotMessage, Message.MessageType.Snapshot);
+                hasSnapshotMessage = true;
+            }
+        }
+
+        syncFrame = -1;
+        if (frameEncoder != null) {
+            // updates of the previous frame, encoded while this frame was simulated
+            int encodedFrame = frameEncoder.getEncodedFrame();
+            if (encodedFrame == currentFrame - 1 && encodedFrame % NetDriver.SERVER_UPDATE_FREQUENCY == 0) syncFrame = encodedFrame;
+        }
+        else if (currentFrame % NetDriver.SERVER_UPDATE_FREQUENCY == 0) {
+            syncFrame = currentFrame;
+            if (needsUpdate) netDriver.messageReader.captureFrame(updateImage);
+        }
+
+        syncEventCount = 0;
+        if (syncFrame == -1) return;
+        synchronized (netDriver.clientEvents) {
+            syncEventCount = netDriver.clientEvents.size();
+            for (int i = 0; i < syncEventCount; ++i) {
+                NetDriver.ClientEvent clientEvent = netDriver.clientEvents.get(i);
+                if (clientEvent.frameNum <= syncFrame && clientEvent.serializedBits == -1) {
+                    clientEvent.serializedBits = netDriver.messageReader.serializeEvent(clientEvent.serializedMessage, clientEvent.event);
                 }
             }
-            if (snapshotPacket.messageCount > 0) {
-                if (!sendPacket.isFull()) {
+        }
+    }
+
+    private void runSyncTasks(int taskCount, int currentFrame) {
+        if (syncTasks.length < taskCount) {
+            SyncTask[] tasks = new SyncTask[taskCount];
+            System.arraycopy(syncTasks, 0, tasks, 0, syncTasks.length);
+            for (int i = syncTasks.length; i < taskCount; ++i) tasks[i] = new SyncTask(i);
+            syncTasks = tasks;
+            syncFutures = new Future<?>[taskCount];
+        }
+        ExecutorService executor = getSyncExecutor();
+        for (int i = 0; i < taskCount; ++i) {
+            syncTasks[i].taskCount = taskCount;
+            syncTasks[i].currentFrame = currentFrame;
+            if (i > 0) syncFutures[i] = executor.submit(syncTasks[i]);
+        }
+        syncTasks[0].run();
+        for (int i = 1; i < taskCount; ++i) {
+            try {
+                syncFutures[i].get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                Log.error("NetServer", "Failed to sync clients: " + e.getCause());
+            }
+            syncFutures[i] = null;
+        }
+    }
+
+    private ExecutorService getSyncExecutor() {
+        if (syncExecutor == null) syncExecutor = acquireSyncExecutor();
+        return syncExecutor;
+    }
+
+    private static synchronized ExecutorService acquireSyncExecutor() {
+        if (sharedSyncExecutor == null) {
+            sharedSyncExecutor = Executors.newFixedThreadPool(Math.max(1, BoBGame.getSyncWorkerCount() - 1), new ThreadFactory() {
+                // servers of several matches may start threads at the same time
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Sync Worker " + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        syncExecutorUsers++;
+        return sharedSyncExecutor;
+    }
+
+    private static synchronized void releaseSyncExecutor() {
+        if (--syncExecutorUsers == 0) {
+            sharedSyncExecutor.shutdown();
+            sharedSyncExecutor = null;
+        }
+    }
+
+    /**
+     * Builds and encodes the packet of one client into its {@link ConnectionManager.ConnectionSlot#dataPacket}. Only
+     * touches the client's own state, and reads what {@link #prepareSync} set up for all clients, so it can run for
+     * several clients at the same time.
+     * @param messageReader Reader used to serialize the client's Update message
+     * @param updateMessage Scratch message for the client's Update message
+     */
+    private void syncClient(ConnectionManager.ConnectionSlot connectionSlot, MessageReader messageReader, Message updateMessage, int currentFrame) {
+        Packet sendPacket = connectionSlot.dataPacket;
+        float currentTime = ((GameEngine) netDriver.getEngine()).getCurrentTime();
+        float resendTime = connectionSlot.getResendTime();
+
+        if (shouldSendSnapshot(connectionSlot, currentFrame)) {
+            if (snapshotMessage.getLength() > NetDriver.DATA_MAX_SIZE) {
+                if (connectionSlot.fragmentSender.send(snapshotMessage, true, -1)) {
                     connectionSlot.lastSnapshotFrame = currentFrame;
                     connectionSlot.needsSnapshot = false;
-                    sendPacket.addMessage(snapshotPacket.getMessage(0));
-                    Log.debug("Sending snapshot to Client " + connectionSlot.clientId + " (" + connectionSlot.playerId + ")");
+                    Log.debug("Sending fragmented snapshot to Client " + connectionSlot.clientId + " (" + connectionSlot.playerId + ")");
                 }
                 else {
-                    Log.debug("NetServer", "Delaying send snapshot to Client " + connectionSlot.clientId);
+                    Log.warn("NetServer", "Failed to send Snapshot Message");
                 }
             }
+            else if (!sendPacket.isFull()) {
+                connectionSlot.lastSnapshotFrame = currentFrame;
+                connectionSlot.needsSnapshot = false;
+                connectionSlot.addMessage(sendPacket, snapshotMessage);
+                Log.debug("Sending snapshot to Client " + connectionSlot.clientId + " (" + connectionSlot.playerId + ")");
+            }
             else {
-                Log.warn("NetServer", "Snapshot packet is empty");
+                Log.debug("NetServer", "Delaying send snapshot to Client " + connectionSlot.clientId);
             }
         }
-        else {
-            if (((GameEngine) netDriver.getEngine()).getCurrentFrame() % NetDriver.SERVER_UPDATE_FREQUENCY == 0) {
-                if (!hasUpdatePacket) {
-                    if (updatePacket.createMessage() != null) {
-                        netDriver.messageReader.serialize(updatePacket.getMessage(0), Message.MessageType.Update);
-                        hasUpdatePacket = true;
-                    }
-                    else {
-                        Log.warn("NetServer", "Failed to send Update Message");
-                    }
-                }
-                if (updatePacket.messageCount > 0) {
+        else if (syncFrame != -1) {
+            if (frameEncoder != null) {
+                Message message = frameEncoder.getMessage(connectionSlot);
+                int stateId = frameEncoder.getStateId(connectionSlot);
+                // skip updates encoded before the client's stream was reset
+                if (message != null && stateId >= connectionSlot.updateStream.minBaselineStateId) {
                     if (!sendPacket.isFull()) {
-                        sendPacket.addMessage(updatePacket.getMessage(0));
+                        sendUpdate(connectionSlot, message, stateId);
                     }
                     else {
                         Log.debug("NetServer", "Delaying send update to Client " + connectionSlot.clientId);
                     }
                 }
+            }
+            else {
+                if (!sendPacket.isFull()) {
+                    updateMessage.clear();
+                    int stateId = messageReader.serializeUpdate(updateMessage, updateImage, connectionSlot.updateStream,
+                            connectionSlot.getUpdateBitBudget(), getControlledEntityId(connectionSlot), getInputAck(connectionSlot));
+                    sendUpdate(connectionSlot, updateMessage, stateId);
+                }
                 else {
-                    Log.warn("NetServer", "Update packet is empty");
+                    Log.debug("NetServer", "Delaying send update to Client " + connectionSlot.clientId);
                 }
+            }
 
-                for (int i = 0; i < netDriver.clientEvents.size; ++i) {
-                    NetDriver.ClientEvent clientEvent = netDriver.clientEvents.get(i);
-                    if (clientEvent.clientMask.get(connectionSlot.clientId)) {
-                        if (clientEvent.serializedMessage.messageId == -1) {
-                            netDriver.messageReader.serializeEvent(clientEvent.serializedMessage, clientEvent.event);
-                        }
-
-                        if (sendPacket.addMessage(clientEvent.serializedMessage)) {
-                            clientEvent.clientMask.unset(connectionSlot.clientId);
-                            if (!clientEvent.clientMask.anySet()) {
-            //                    Log.info("Removing event " + clientEvent.event + " from queue");
-                                Pools.free(clientEvent);
-                                netDriver.clientEvents.removeIndex(i);
-                                i--;
-                            }
-                        }
-                        else {
-                            Log.debug("NetServer", "Failed to send Event Message: " + clientEvent.event);
-                        }
-                    }
-                }
+            if (!netDriver.sendClientEvents(connectionSlot, sendPacket, messageReader, syncEventCount, syncFrame, currentTime, resendTime)) {
+                Log.debug("NetServer", "Delaying send events to Client " + connectionSlot.clientId);
             }
         }
 
+        connectionSlot.fragmentSender.update(currentTime, resendTime);
+        connectionSlot.fragmentSender.addFragments(connectionSlot, sendPacket, currentTime);
+
         if (sendPacket.getMessageCount() > 0) {
-            connectionSlot.sendDataPacket(sendPacket);
+            connectionSlot.encodeDataPacket(sendPacket);
+        }
+    }
+
+    private void sendUpdate(ConnectionManager.ConnectionSlot connectionSlot, Message message, int stateId) {
+        if (stateId != -1) {
+            if (message.getLength() > NetDriver.DATA_MAX_SIZE) {
+                connectionSlot.fragmentSender.send(message, false, stateId);
+            }
+            else {
+                connectionSlot.addMessage(connectionSlot.dataPacket, message, stateId);
+            }
+        }
+        else {
+            Log.warn("NetServer", "Failed to serialize Update Message");
         }
+    }
+
+    /**
+     * Captures the current frame and starts encoding its Update messages on the worker, if the server is pipelined
+     * and this is an update frame. Called at the end of the frame, after all clients are synced.
+     */
+    void startEncoding() {
+        if (frameEncoder == null) return;
+        int currentFrame = ((GameEngine) netDriver.getEngine()).getCurrentFrame();
+        if (currentFrame % NetDriver.SERVER_UPDATE_FREQUENCY != 0) return;
+
+        frameEncoder.capture(currentFrame);
+        for (int i = 0; i < NetDriver.MAX_CLIENTS; ++i) {
+            ConnectionManager.ConnectionSlot slot = netDriver.connectionManager.getConnectionSlot(i);
+            if (slot == null || slot.state != ConnectionState.ServerConnected || slot.needsSnapshot) continue;
+            frameEncoder.addJob(slot, slot.getUpdateBitBudget(), getControlledEntityId(slot), getInputAck(slot));
+        }
+        frameEncoder.start();
+    }
+
+    /**
+     * Waits for the Update messages of the previous frame to finish encoding.
+     */
+    void awaitEncoding() {
+        if (frameEncoder != null) frameEncoder.await();
+    }
+
+    void clearEncoding() {
+        if (frameEncoder != null) frameEncoder.clear();
+    }
+
+    public boolean isPipelined() {
+        return frameEncoder != null;
+    }
+
+    /**
+     * Syncs every {@code taskCount}th client, starting from the task's index.
+     */
+    private class SyncTask implements Runnable {
+        final int index;
+        final MessageReader messageReader;
+        final Message updateMessage;
+        int taskCount = 1;
+        int currentFrame = -1;
+
+        SyncTask(int index) {
+            this.index = index;
+            // the first task runs on the engine thread; the others share its world states and encode cache
+            messageReader = index == 0 ? netDriver.messageReader : new MessageReader(netDriver, netDriver.messageReader);
+            updateMessage = index == 0 ? NetServer.this.updateMessage : new Message(NetDriver.MESSAGE_MAX_SIZE);
+        }
+
+        @Override
+        public void run() {
+            for (int i = index; i < syncSlots.size; i += taskCount) {
+                syncClient(syncSlots.get(i), messageReader, updateMessage, currentFrame);
+            }
+        }
+    }
+
+    private int getControlledEntityId(ConnectionManager.ConnectionSlot connectionSlot) {
+        if (connectionSlot.playerId == -1) return -1;
+        PlayerInfo playerInfo = netDriver.getEngine().getSystem(RefereeSystem.class).getPlayerInfo(connectionSlot.playerId);
+        return playerInfo == null ? -1 : playerInfo.controlledEntityId;
+    }
 
-        sendPacket.clear();
+    private int getInputAck(ConnectionManager.ConnectionSlot connectionSlot) {
+        if (connectionSlot.playerId == -1) return -1;
+        PlayerControlInfo controlInfo = netDriver.getEngine().getSystem(ControlSystem.class).getPlayerControlInfo(connectionSlot.playerId);
+        return controlInfo == null ? -1 : controlInfo.lastInputSeq;
     }
 
     public boolean isRunning() {
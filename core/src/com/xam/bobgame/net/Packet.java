@@ -4,14 +4,18 @@ import com.badlogic.gdx.utils.Null;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.utils.BitPacker;
 
-import java.util.zip.CRC32;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
 
 public class Packet {
     PacketType type;
 
     private Message[] messages = new Message[NetDriver.PACKET_MAX_MESSAGES];
-    private CRC32 crc32 = new CRC32();
-    private long crc = -1;
+    /**
+     * Checksum instances, indexed by {@link PacketChecksum} value. Created when first used.
+     */
+    private final Checksum[] checksums = new Checksum[PacketChecksum.values().length];
+    PacketChecksum checksumType = PacketChecksum.CRC32;
 
     int localSeqNum = -1;
 
@@ -27,6 +31,12 @@ public class Packet {
 
     boolean requestSnapshot = false;
 
+    /**
+     * Bytes of the packet if it was encoded before being sent (see {@link ConnectionManager.ConnectionSlot#encodeDataPacket}),
+     * or null to encode it when it is written.
+     */
+    @Null ByteBuffer encoded = null;
+
     public Packet(int size) {
         for (int i = 0; i < messages.length; ++i) messages[i] = new Message(size);
     }
@@ -35,36 +45,27 @@ public class Packet {
         return type;
     }
 
-    public long getCrc() {
-        if (crc < 0) {
-            crc32.reset();
-            crc32.update(localSeqNum);
-            crc32.update(remoteSeqNum);
-            crc32.update(ack);
-            crc32.update(type.getValue());
-            crc32.update(salt);
-            crc32.update(requestSnapshot ? 1 : 0);
-
-            for (int i = 0; i < messageCount; ++i) {
-                Message message = messages[i];
-                crc32.update(message.messageId);
-                crc32.update(message.getType().getValue());
-                crc32.update(message.getLength());
-                crc32.update(message.getBytes(), 0, message.getLength());
-            }
-
-            crc = crc32.getValue();
-        }
-        return crc;
+    private @Null Checksum getChecksum(PacketChecksum type) {
+        Checksum checksum = checksums[type.getValue()];
+        if (checksum == null) checksum = checksums[type.getValue()] = type.create();
+        return checksum;
     }
 
+    /**
+     * Encodes the packet. The checksum is computed while the bits are written, starting after the salt (which seeds it)
+     * and the checksum type, and is written in the last word of the packet.
+     */
     public void encode(BitPacker bitPacker) {
-        bitPacker.packInt((int) getCrc());
+        Checksum checksum = getChecksum(checksumType);
+        checksumType.reset(checksum, salt);
+
+        bitPacker.packInt(salt);
+        bitPacker.packIntBits(checksumType.getValue(), 8, 0);
+        bitPacker.beginChecksum(checksum, 0);
         bitPacker.packInt(localSeqNum, 0, NetDriver.PACKET_SEQUENCE_LIMIT - 1);
         bitPacker.packInt(remoteSeqNum, 0, NetDriver.PACKET_SEQUENCE_LIMIT - 1);
         bitPacker.packInt(ack);
         bitPacker.packInt(type.getValue(), 0, PacketType.values().length-1);
-        bitPacker.packInt(salt);
         bitPacker.packInt(requestSnapshot ? 1 : 0, 0, 1);
         bitPacker.packInt(frameNum);
 
@@ -81,6 +82,7 @@ public class Packet {
         bitPacker.padToWord();
 
         bitPacker.packInt(0xFFFFFFFF);
+        bitPacker.packInt(bitPacker.endChecksum());
         bitPacker.flush(false);
     }
 
@@ -88,12 +90,26 @@ public class Packet {
         int totalLength = 0;
         clear();
 
-        float packetCRC = bitPacker.unpackInt();
+        salt = bitPacker.unpackInt();
+        int checksumValue = bitPacker.unpackIntBits(8, 0);
+        if (checksumValue >= PacketChecksum.values().length) {
+            Log.error("Packet", "Unknown checksum " + checksumValue);
+            return -1;
+        }
+        checksumType = PacketChecksum.values()[checksumValue];
+        Checksum checksum = getChecksum(checksumType);
+        if (checksum == null) {
+            Log.error("Packet", "Checksum " + checksumType + " is not available");
+            return -1;
+        }
+        checksumType.reset(checksum, salt);
+        // the checksum is in the last word of the buffer
+        bitPacker.beginChecksum(checksum, 4);
+
         localSeqNum = bitPacker.unpackInt(0, NetDriver.PACKET_SEQUENCE_LIMIT - 1);
         remoteSeqNum = bitPacker.unpackInt(0, NetDriver.PACKET_SEQUENCE_LIMIT - 1);
         ack = bitPacker.unpackInt();
         type = PacketType.values()[bitPacker.unpackInt(0, PacketType.values().length-1)];
-        salt = bitPacker.unpackInt();
         requestSnapshot = bitPacker.unpackInt(0, 1) == 1;
         frameNum = bitPacker.unpackInt();
 
@@ -115,8 +131,9 @@ public class Packet {
             return -1;
         }
 
-        if (packetCRC != ((int) getCrc())) {
-            Log.error("Packet", "Bad CRC [" + totalLength + "] (" + messageCount + ")");
+        int computed = bitPacker.endChecksum();
+        if (bitPacker.unpackInt() != computed) {
+            Log.error("Packet", "Bad " + checksumType + " [" + totalLength + "] (" + messageCount + ")");
             return -1;
         }
         return 0;
@@ -161,7 +178,26 @@ public class Packet {
         packet.remoteSeqNum = remoteSeqNum;
         packet.ack = ack;
         packet.salt = salt;
-        packet.crc = crc;
+        packet.checksumType = checksumType;
+        packet.requestSnapshot = requestSnapshot;
+        packet.frameNum = frameNum;
+    }
+
+    /**
+     * Moves the contents of this packet to another packet without copying message bytes, by exchanging their messages.
+     * This packet is left with the other packet's former messages. Both packets must have the same message size.
+     */
+    public void moveTo(Packet packet) {
+        Message[] m = packet.messages;
+        packet.messages = messages;
+        messages = m;
+        packet.type = type;
+        packet.messageCount = messageCount;
+        packet.localSeqNum = localSeqNum;
+        packet.remoteSeqNum = remoteSeqNum;
+        packet.ack = ack;
+        packet.salt = salt;
+        packet.checksumType = checksumType;
         packet.requestSnapshot = requestSnapshot;
         packet.frameNum = frameNum;
     }
@@ -179,9 +215,9 @@ public class Packet {
         remoteSeqNum = -1;
         ack = 0;
         salt = 0;
-        crc = -1;
         requestSnapshot = false;
         frameNum = -1;
+        encoded = null;
     }
 
     @Override
@@ -2,13 +2,23 @@ package com.xam.bobgame.net;
 
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
+import com.xam.bobgame.utils.SpscRingBuffer;
 
 /**
  * A buffer for Packets. Packets are kept for a time period before they can be retrieved. Retrieved packets are
  * guaranteed to be in order, but some packets may be skipped.
+ * <p>
+ * Packets are received on the network thread and retrieved on the engine thread. Received packets go through a
+ * lock-free queue, and are only ordered and checked for duplicates by the engine thread when it retrieves packets.
  */
 public class PacketBuffer{
     private final NetDriver netDriver;
+    private final ConnectionManager.ConnectionSlot slot;
+
+    /**
+     * Packets received by the network thread that haven't been added to the buffer yet.
+     */
+    private final SpscRingBuffer<ReceivedPacket> receiveQueue;
 
     private int oldestReceivedIndex = 0;
 
@@ -22,8 +32,9 @@ public class PacketBuffer{
 
     private float timeLimit;
 
-    public PacketBuffer(NetDriver netDriver, int bufferLength, float timeLimit) {
+    public PacketBuffer(NetDriver netDriver, ConnectionManager.ConnectionSlot slot, int bufferLength, float timeLimit) {
         this.netDriver = netDriver;
+        this.slot = slot;
         this.bufferLength = bufferLength;
         this.timeLimit = timeLimit;
 
@@ -34,6 +45,10 @@ public class PacketBuffer{
         bufferFlag = new boolean[bufferLength];
         receiveTime = new float[bufferLength];
         halfBufferLength = bufferLength / 2;
+
+        ReceivedPacket[] received = new ReceivedPacket[bufferLength];
+        for (int i = 0; i < bufferLength; ++i) received[i] = new ReceivedPacket();
+        receiveQueue = new SpscRingBuffer<>(received);
     }
 
     private boolean gtWrapped(int i, int j) {
@@ -41,63 +56,85 @@ public class PacketBuffer{
     }
 
     /**
-     * Adds a packet to the buffer.
+     * Adds a packet to the buffer. The packet's messages are moved into the buffer, see {@link Packet#moveTo(Packet)}.
+     * Called by the network thread. The packet is dropped if the engine thread has fallen behind by a whole buffer.
      */
     public void receive(Packet packet) {
-        synchronized (buffer) {
-            int i = packet.localSeqNum % bufferLength;
+        ReceivedPacket received = receiveQueue.claim();
+        if (received == null) {
+            Log.warn("PacketBuffer.receive", "Receive queue full, dropping packet " + packet.localSeqNum);
+            return;
+        }
+        packet.moveTo(received.packet);
+        received.time = netDriver == null ? 0 : ((GameEngine) netDriver.getEngine()).getCurrentTime();
+        receiveQueue.publish();
+    }
+
+    /**
+     * Moves packets received by the network thread into the buffer, discarding duplicates.
+     */
+    private void drainReceived() {
+        ReceivedPacket received;
+        while ((received = receiveQueue.peek()) != null) {
+            if (netDriver == null || !netDriver.transport.updateReceived(received.packet, slot.clientId)) {
+                put(received.packet, received.time);
+            }
+            receiveQueue.release();
+        }
+    }
+
+    private void put(Packet packet, float time) {
+        int i = packet.localSeqNum % bufferLength;
 //            Log.info("Receive: [" + packet.getMessage().getLength() + "] " + packet.getMessage());
-            packet.copyTo(buffer[i]);
-            bufferFlag[i] = true;
-            receiveTime[i] = ((GameEngine) netDriver.getEngine()).getCurrentTime();
-            boolean b = false;
-            if (i == putIndex || gtWrapped(i, putIndex)) {
-                while (putIndex != i) {
-                    bufferFlag[putIndex] = false;
-                    if (putIndex == getIndex) b = true;
-                    putIndex = (putIndex + 1) % bufferLength;
-                }
+        packet.moveTo(buffer[i]);
+        bufferFlag[i] = true;
+        receiveTime[i] = time;
+        boolean b = false;
+        if (i == putIndex || gtWrapped(i, putIndex)) {
+            while (putIndex != i) {
+                bufferFlag[putIndex] = false;
+                if (putIndex == getIndex) b = true;
                 putIndex = (putIndex + 1) % bufferLength;
-                if (b) {
-                    Log.debug("PacketBuffer.receive", "Skipping packets " + getIndex + "-" + putIndex);
-                    getIndex = oldestReceivedIndex = (putIndex + 1) % bufferLength;
-                }
-                while (!bufferFlag[oldestReceivedIndex] && oldestReceivedIndex != putIndex) {
-                    oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
-                }
             }
-            else {
-                if (i < oldestReceivedIndex) {
-                    oldestReceivedIndex = i;
-                }
+            putIndex = (putIndex + 1) % bufferLength;
+            if (b) {
+                Log.debug("PacketBuffer.receive", "Skipping packets " + getIndex + "-" + putIndex);
+                getIndex = oldestReceivedIndex = (putIndex + 1) % bufferLength;
+            }
+            while (!bufferFlag[oldestReceivedIndex] && oldestReceivedIndex != putIndex) {
+                oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
+            }
+        }
+        else {
+            if (i < oldestReceivedIndex) {
+                oldestReceivedIndex = i;
             }
         }
     }
 
     /**
-     * Attempts to retrieve a Packet from the buffer, returning true if successful.
+     * Attempts to retrieve a Packet from the buffer, returning true if successful. Called by the engine thread.
      */
     public boolean get(Packet out) {
         boolean retrieved = false;
 
-        synchronized (buffer) {
-            if (getIndex == putIndex) return false;
-            if (bufferFlag[getIndex]) {
-                buffer[getIndex].copyTo(out);
-                bufferFlag[getIndex] = false;
-                getIndex = (getIndex + 1) % bufferLength;
-                retrieved = true;
-            }
-            else if (bufferFlag[oldestReceivedIndex] && ((GameEngine) netDriver.getEngine()).getCurrentTime() - receiveTime[oldestReceivedIndex] > timeLimit) {
-                buffer[oldestReceivedIndex].copyTo(out);
-                bufferFlag[oldestReceivedIndex] = false;
-                Log.debug("PacketBuffer.get", "Skipping packets " + getIndex + "-" + oldestReceivedIndex);
-                getIndex = oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
-                retrieved = true;
-            }
-            while (!bufferFlag[oldestReceivedIndex] && oldestReceivedIndex != putIndex) {
-                oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
-            }
+        drainReceived();
+        if (getIndex == putIndex) return false;
+        if (bufferFlag[getIndex]) {
+            buffer[getIndex].moveTo(out);
+            bufferFlag[getIndex] = false;
+            getIndex = (getIndex + 1) % bufferLength;
+            retrieved = true;
+        }
+        else if (bufferFlag[oldestReceivedIndex] && ((GameEngine) netDriver.getEngine()).getCurrentTime() - receiveTime[oldestReceivedIndex] > timeLimit) {
+            buffer[oldestReceivedIndex].moveTo(out);
+            bufferFlag[oldestReceivedIndex] = false;
+            Log.debug("PacketBuffer.get", "Skipping packets " + getIndex + "-" + oldestReceivedIndex);
+            getIndex = oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
+            retrieved = true;
+        }
+        while (!bufferFlag[oldestReceivedIndex] && oldestReceivedIndex != putIndex) {
+            oldestReceivedIndex = (oldestReceivedIndex + 1) % bufferLength;
         }
 
         return retrieved;
@@ -108,6 +145,11 @@ public class PacketBuffer{
         getIndex = 0;
     }
 
+    private static class ReceivedPacket {
+        final Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+        float time;
+    }
+
     public void debug(String tag) {
         Log.info(tag + ": putIndex=" + putIndex + " getIndex=" + getIndex + " oldestReceivedIndex" + oldestReceivedIndex);
     }
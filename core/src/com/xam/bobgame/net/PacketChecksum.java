@@ -0,0 +1,87 @@
+package com.xam.bobgame.net;
+
+import com.esotericsoftware.minlog.Log;
+import com.xam.bobgame.utils.Murmur3Hash;
+
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Integrity checks that can be used for packets. The checksum of a packet is seeded with the packet's salt.
+ */
+public enum PacketChecksum {
+    CRC32(0) {
+        @Override
+        public Checksum create() {
+            return new CRC32();
+        }
+    },
+    /**
+     * Only available on Java 9 and above.
+     */
+    CRC32C(1) {
+        @Override
+        public Checksum create() {
+            try {
+                return (Checksum) Class.forName("java.util.zip.CRC32C").newInstance();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    },
+    Murmur3(2) {
+        @Override
+        public Checksum create() {
+            return new Murmur3Hash();
+        }
+
+        @Override
+        public void reset(Checksum checksum, int seed) {
+            ((Murmur3Hash) checksum).reset(seed);
+        }
+    },
+    ;
+
+    private final int value;
+
+    PacketChecksum(int value) {
+        this.value = value;
+    }
+
+    int getValue() {
+        return value;
+    }
+
+    /**
+     * Creates an instance of the checksum, or returns null if it is not supported by this JVM.
+     */
+    public abstract Checksum create();
+
+    public void reset(Checksum checksum, int seed) {
+        checksum.reset();
+        checksum.update(seed >>> 24);
+        checksum.update(seed >>> 16);
+        checksum.update(seed >>> 8);
+        checksum.update(seed);
+    }
+
+    public boolean isAvailable() {
+        return create() != null;
+    }
+
+    /**
+     * Returns the checksum with the specified name, falling back to CRC32 if the name is unknown or the checksum is
+     * not available.
+     */
+    public static PacketChecksum get(String name) {
+        for (PacketChecksum c : values()) {
+            if (c.name().equalsIgnoreCase(name)) {
+                if (c.isAvailable()) return c;
+                Log.warn("PacketChecksum", c + " is not available, using " + CRC32);
+                return CRC32;
+            }
+        }
+        Log.error("PacketChecksum", "Unknown checksum " + name);
+        return CRC32;
+    }
+}
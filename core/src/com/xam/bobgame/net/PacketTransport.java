@@ -2,7 +2,7 @@ package com.xam.bobgame.net;
 
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Pool;
-import com.badlogic.gdx.utils.Pools;
+import com.xam.bobgame.utils.Pools;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.minlog.Log;
 import com.xam.bobgame.GameEngine;
@@ -19,6 +19,7 @@ public class PacketTransport {
     private final NetDriver netDriver;
     final EndPointInfo[] endPointInfos = new EndPointInfo[NetDriver.MAX_CLIENTS];
     private final Array<PacketInfo> droppedPackets = new Array<>();
+    private final Array<PacketInfo> ackedPackets = new Array<>();
 
     public PacketTransport(NetDriver netDriver) {
         this.netDriver = netDriver;
@@ -31,6 +32,13 @@ public class PacketTransport {
             Log.error("PacketTransport", "No connection with " + connection.getRemoteAddressTCP().getAddress().getHostAddress() + " (" + connection.getID() + ")");
             return null;
         }
+        return setHeaders(packet, clientId);
+    }
+
+    /**
+     * Only touches the state of the given client, so packets of different clients can be set up in parallel.
+     */
+    public PacketInfo setHeaders(Packet packet, int clientId) {
         PacketInfo dropped = endPointInfos[clientId].setHeaders(packet, clientId);
         if (dropped != null) {
             synchronized (droppedPackets) {
@@ -58,8 +66,22 @@ public class PacketTransport {
         }
     }
 
+    /**
+     * Packets containing Update or Fragment messages that were acknowledged since the last call to {@link #clearAcked()}.
+     * Only accessed by the engine thread, see {@link PacketBuffer}.
+     */
+    public Array<PacketInfo> getAckedPackets() {
+        return ackedPackets;
+    }
+
+    public void clearAcked() {
+        Pools.freeAll(ackedPackets);
+        ackedPackets.clear();
+    }
+
     public void clear() {
         droppedPackets.clear();
+        clearAcked();
         Arrays.fill(endPointInfos, null);
     }
 
@@ -105,7 +127,9 @@ public class PacketTransport {
                 }
                 // new packet, add to history
                 packet.localSeqNum = localSeqNum;
-                packet.salt = netDriver.getConnectionManager().getConnectionSlot(clientId).salt;
+                ConnectionManager.ConnectionSlot slot = netDriver.getConnectionManager().getConnectionSlot(clientId);
+                packet.salt = slot.salt;
+                packet.checksumType = slot.packetChecksum;
                 packetInfos[localSeqNum].set(packet, clientId, ((GameEngine) netDriver.getEngine()).getCurrentTime());
                 acks.unset(localSeqNum);
                 localSeqNum = (localSeqNum + 1) % NetDriver.PACKET_SEQUENCE_LIMIT;
@@ -135,6 +159,12 @@ public class PacketTransport {
                     int seqNum = (offset + i) % NetDriver.PACKET_SEQUENCE_LIMIT;
                     packetInfos[seqNum].timeAcked = currentTime;
                     roundTripTime.update(currentTime - packetInfos[seqNum].timeSent);
+                    if (packetInfos[seqNum].hasMessageType(Message.MessageType.Update)
+                            || packetInfos[seqNum].hasMessageType(Message.MessageType.Fragment)) {
+                        PacketInfo acked = Pools.obtain(PacketInfo.class);
+                        packetInfos[seqNum].copyTo(acked);
+                        ackedPackets.add(acked);
+                    }
                 }
                 bits >>>= 1;
             }
@@ -191,6 +221,13 @@ public class PacketTransport {
             System.arraycopy(messageTypes, 0, other.messageTypes, 0, messageTypes.length);
         }
 
+        boolean hasMessageType(Message.MessageType type) {
+            for (int i = 0; i < messageCount; ++i) {
+                if (messageTypes[i] == type) return true;
+            }
+            return false;
+        }
+
         boolean matches(Packet packet) {
             if (messageCount != packet.messageCount) return false;
             for (int i = 0; i < messageCount; ++i) {
@@ -0,0 +1,124 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.IntFloatMap;
+import com.badlogic.gdx.utils.Null;
+
+import java.util.Arrays;
+
+/**
+ * Server-side record of the Update messages sent to a single client. Each sent update is a {@link StreamState} that
+ * records, for every entity, which captured world state the client's copy of that entity came from. The latest
+ * acknowledged stream state is the baseline for delta compression.
+ */
+public class UpdateStream {
+
+    private final StreamState[] states = new StreamState[NetDriver.DELTA_STATE_HISTORY];
+    private int stateIdCounter = 0;
+
+    int baselineStateId = -1;
+    /**
+     * Acknowledged states older than this are not accepted as baselines.
+     */
+    int minBaselineStateId = 0;
+
+    /**
+     * Accumulated priority of each entity, reset when the entity's changes are sent.
+     */
+    final IntFloatMap priorities = new IntFloatMap();
+
+    public UpdateStream() {
+        for (int i = 0; i < states.length; ++i) states[i] = new StreamState();
+    }
+
+    /**
+     * Returns the baseline for the next stream state, or null if the client has no usable baseline.
+     */
+    public @Null StreamState getBaseline() {
+        if (baselineStateId < 0 || stateIdCounter - baselineStateId >= states.length) return null;
+        StreamState state = states[baselineStateId % states.length];
+        return state.stateId == baselineStateId ? state : null;
+    }
+
+    /**
+     * Clears and returns the next stream state, overwriting the oldest state.
+     */
+    public StreamState obtain() {
+        StreamState state = states[stateIdCounter % states.length];
+        state.clear();
+        state.stateId = stateIdCounter++;
+        return state;
+    }
+
+    public void ack(int stateId) {
+        if (stateId >= minBaselineStateId && stateId > baselineStateId) baselineStateId = stateId;
+    }
+
+    /**
+     * Stops using the current baseline, e.g. when the client may have lost its copy of it.
+     */
+    public void reset() {
+        baselineStateId = -1;
+        minBaselineStateId = stateIdCounter;
+    }
+
+    /**
+     * Adds to the priority of an entity and returns the accumulated priority.
+     */
+    float accumulatePriority(int entityId, float priority) {
+        float p = priorities.get(entityId, 0) + priority;
+        priorities.put(entityId, p);
+        return p;
+    }
+
+    void resetPriority(int entityId) {
+        priorities.remove(entityId, 0);
+    }
+
+    /**
+     * Removes priorities of entities that no longer exist.
+     */
+    void prunePriorities(WorldStateBuffer.WorldState state) {
+        if (priorities.size <= state.getEntityCount()) return;
+        IntFloatMap.Keys keys = priorities.keys();
+        while (keys.hasNext) {
+            if (state.indexOf(keys.next()) < 0) keys.remove();
+        }
+    }
+
+    public static class StreamState {
+        int stateId = -1;
+
+        int entityCount = 0;
+        int[] entityIds = new int[16];
+        /**
+         * Id of the captured world state from which the values of each entity were sent.
+         */
+        int[] sourceStateIds = new int[16];
+
+        /**
+         * Appends an entity. Entities must be added in order of increasing id.
+         */
+        void addEntity(int entityId, int sourceStateId) {
+            if (entityCount == entityIds.length) {
+                entityIds = Arrays.copyOf(entityIds, entityCount * 2);
+                sourceStateIds = Arrays.copyOf(sourceStateIds, entityCount * 2);
+            }
+            entityIds[entityCount] = entityId;
+            sourceStateIds[entityCount] = sourceStateId;
+            entityCount++;
+        }
+
+        int indexOf(int entityId) {
+            return Arrays.binarySearch(entityIds, 0, entityCount, entityId);
+        }
+
+        public int getStateId() {
+            return stateId;
+        }
+
+        void clear() {
+            stateId = -1;
+            entityCount = 0;
+        }
+    }
+}
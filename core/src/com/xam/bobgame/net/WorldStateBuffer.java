@@ -0,0 +1,210 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.Null;
+import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.utils.BitPacker;
+
+import java.util.Arrays;
+
+/**
+ * A ring of recent quantized world states, used as baselines for delta-compressed Update messages. The server keeps
+ * the states it has sent, and the client keeps the states it has decoded.
+ */
+public class WorldStateBuffer {
+
+    public static final int FIELD_POS_X = 0;
+    public static final int FIELD_POS_Y = 1;
+    public static final int FIELD_ROTATION = 2;
+    public static final int FIELD_VEL_X = 3;
+    public static final int FIELD_VEL_Y = 4;
+    public static final int FIELD_ANGULAR_VEL = 5;
+    public static final int FIELD_MASS = 6;
+    public static final int FIELD_CENTER_X = 7;
+    public static final int FIELD_CENTER_Y = 8;
+    public static final int FIELD_INERTIA = 9;
+    public static final int FIELD_COUNT = 10;
+
+    public static final int FLAG_GRAVITATIONAL_FIELD = 1;
+
+    /**
+     * Fields are sent in groups. Each group has a single "changed" bit in a delta-compressed update.
+     */
+    public static final int[] GROUP_START = {FIELD_POS_X, FIELD_VEL_X, FIELD_MASS};
+    public static final int[] GROUP_END = {FIELD_VEL_X, FIELD_MASS, FIELD_COUNT};
+
+    static final float[] FIELD_MIN = {
+            -3, -3, NetDriver.MIN_ORIENTATION,
+            -64, -64, -64,
+            0, -3, -3, 0,
+    };
+    static final float[] FIELD_MAX = {
+            GameProperties.MAP_WIDTH + 3, GameProperties.MAP_HEIGHT + 3, NetDriver.MAX_ORIENTATION,
+            64 - NetDriver.RES_VELOCITY, 64 - NetDriver.RES_VELOCITY, 64 - NetDriver.RES_VELOCITY,
+            10, 13 - NetDriver.RES_POSITION, 13 - NetDriver.RES_POSITION, 10,
+    };
+    static final float[] FIELD_RES = {
+            NetDriver.RES_POSITION, NetDriver.RES_POSITION, NetDriver.RES_ORIENTATION,
+            NetDriver.RES_VELOCITY, NetDriver.RES_VELOCITY, NetDriver.RES_VELOCITY,
+            NetDriver.RES_MASS, NetDriver.RES_POSITION, NetDriver.RES_POSITION, NetDriver.RES_MASS,
+    };
+    /**
+     * Whether a field is preceded by a flag bit that marks it as exactly zero.
+     */
+    static final boolean[] FIELD_ZERO_FLAG = {
+            false, false, false,
+            true, true, true,
+            true, false, false, true,
+    };
+    static final int[] FIELD_RANGE = new int[FIELD_COUNT];
+    /**
+     * Number of bits used to pack each field.
+     */
+    static final int[] FIELD_BITS = new int[FIELD_COUNT];
+    static final int[] FIELD_ZERO = new int[FIELD_COUNT];
+    static {
+        for (int i = 0; i < FIELD_COUNT; ++i) {
+            FIELD_RANGE[i] = BitPacker.floatRange(FIELD_MIN[i], FIELD_MAX[i], FIELD_RES[i]);
+            FIELD_BITS[i] = BitPacker.rangeBits(0, FIELD_RANGE[i]);
+            FIELD_ZERO[i] = BitPacker.quantizeFloat(0, FIELD_MIN[i], FIELD_MAX[i], FIELD_RES[i]);
+        }
+    }
+
+    public static int quantize(int field, float f) {
+        return BitPacker.quantizeFloatSteps(f, FIELD_MIN[field], FIELD_MAX[field], FIELD_RANGE[field]);
+    }
+
+    public static float dequantize(int field, int i) {
+        if (FIELD_ZERO_FLAG[field] && i == FIELD_ZERO[field]) return 0;
+        return BitPacker.dequantizeFloatSteps(i, FIELD_MIN[field], FIELD_MAX[field], FIELD_RANGE[field]);
+    }
+
+    private final WorldState[] states;
+
+    public WorldStateBuffer(int length) {
+        states = new WorldState[length];
+        for (int i = 0; i < length; ++i) states[i] = new WorldState();
+    }
+
+    /**
+     * Clears and returns the slot for the specified state id, overwriting the oldest state in the buffer.
+     */
+    public WorldState obtain(int stateId) {
+        WorldState state = states[stateId % states.length];
+        state.clear();
+        state.stateId = stateId;
+        return state;
+    }
+
+    /**
+     * Returns the state with the specified id, or null if it is not in the buffer anymore.
+     */
+    public @Null WorldState get(int stateId) {
+        if (stateId < 0) return null;
+        WorldState state = states[stateId % states.length];
+        return state.stateId == stateId ? state : null;
+    }
+
+    public int getLength() {
+        return states.length;
+    }
+
+    public void clear() {
+        for (WorldState state : states) state.clear();
+    }
+
+    /**
+     * Quantized replicated state of all entities at a particular frame. Entities are kept sorted by id.
+     */
+    public static class WorldState {
+        int stateId = -1;
+        int frameNum = -1;
+
+        int entityCount = 0;
+        int[] entityIds = new int[16];
+        int[] fields = new int[16 * FIELD_COUNT];
+        /**
+         * Number of buffs on each entity, or -1 if the entity is not buffable.
+         */
+        int[] buffCounts = new int[16];
+        int[] flags = new int[16];
+
+        /**
+         * Appends an entity, returning its index. Entities must be added in order of increasing id.
+         */
+        int addEntity(int entityId) {
+            if (entityCount == entityIds.length) {
+                int[] newIds = new int[entityCount * 2];
+                System.arraycopy(entityIds, 0, newIds, 0, entityCount);
+                entityIds = newIds;
+                int[] newFields = new int[entityCount * 2 * FIELD_COUNT];
+                System.arraycopy(fields, 0, newFields, 0, entityCount * FIELD_COUNT);
+                fields = newFields;
+                int[] newBuffCounts = new int[entityCount * 2];
+                System.arraycopy(buffCounts, 0, newBuffCounts, 0, entityCount);
+                buffCounts = newBuffCounts;
+                int[] newFlags = new int[entityCount * 2];
+                System.arraycopy(flags, 0, newFlags, 0, entityCount);
+                flags = newFlags;
+            }
+            entityIds[entityCount] = entityId;
+            buffCounts[entityCount] = -1;
+            flags[entityCount] = 0;
+            return entityCount++;
+        }
+
+        int indexOf(int entityId) {
+            return Arrays.binarySearch(entityIds, 0, entityCount, entityId);
+        }
+
+        int getField(int index, int field) {
+            return fields[index * FIELD_COUNT + field];
+        }
+
+        void setField(int index, int field, int value) {
+            fields[index * FIELD_COUNT + field] = value;
+        }
+
+        /**
+         * Number of field groups of an entity that differ from those of an entity in another state.
+         */
+        int changedGroupCount(int index, WorldState other, int otherIndex) {
+            int count = 0;
+            for (int g = 0; g < GROUP_START.length; ++g) {
+                if (!groupEquals(index, other, otherIndex, g)) count++;
+            }
+            return count;
+        }
+
+        /**
+         * Returns true if all fields in a group are equal to those of an entity in another state.
+         */
+        boolean groupEquals(int index, WorldState other, int otherIndex, int group) {
+            int a = index * FIELD_COUNT, b = otherIndex * FIELD_COUNT;
+            for (int f = GROUP_START[group]; f < GROUP_END[group]; ++f) {
+                if (fields[a + f] != other.fields[b + f]) return false;
+            }
+            return true;
+        }
+
+        void copyGroup(int index, WorldState other, int otherIndex, int group) {
+            int a = index * FIELD_COUNT, b = otherIndex * FIELD_COUNT;
+            for (int f = GROUP_START[group]; f < GROUP_END[group]; ++f) {
+                fields[a + f] = other.fields[b + f];
+            }
+        }
+
+        public int getStateId() {
+            return stateId;
+        }
+
+        public int getEntityCount() {
+            return entityCount;
+        }
+
+        void clear() {
+            stateId = -1;
+            frameNum = -1;
+            entityCount = 0;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.esotericsoftware.minlog.Log;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.zip.Checksum;
 
 /**
  * A bit packer (or bit stuffer) that packs bits into a ByteBuffer. Has functions for packing int, long, float,
@@ -31,6 +32,19 @@ public class BitPacker {
      */
     private boolean write = false;
 
+    /**
+     * Checksum updated with the bytes written to or read from the buffer, if any
+     */
+    private Checksum checksum = null;
+    /**
+     * Buffer position of the next byte to add to the checksum
+     */
+    private int checksumPosition = 0;
+    /**
+     * Buffer position after the last byte to add to the checksum when reading
+     */
+    private int checksumLimit = 0;
+
     public BitPacker() {
 
     }
@@ -128,6 +142,20 @@ public class BitPacker {
         }
     }
 
+    /**
+     * In write mode, packs the specified int with {@link #packVarInt} and returns it. In read mode, ignores the specified
+     * int and unpacks an int from the buffer, returning it.
+     */
+    public int readVarInt(int i, int groupBits) {
+        if (write) {
+            packVarInt(i, groupBits);
+            return i;
+        }
+        else {
+            return unpackVarInt(groupBits);
+        }
+    }
+
     public byte unpackByte() {
         totalBits += 8;
         return (byte) unpackIntBits(8, 0);
@@ -139,30 +167,38 @@ public class BitPacker {
     }
 
     /**
-     * Gets additional bits from the buffer. Big Endian.
+     * Gets additional bits from the buffer. Big Endian. Reads a whole word at a time while the scratch has room for it,
+     * which never reads past the end of the word containing the last requested bit.
      */
     private void getBitsB(int bits) {
-        int byteCount = (bits - scratchBits + 7) / 8;
-        scratchBits += byteCount * 8;
-        if (scratchBits > 64) {
-            Log.error("PacketBuilder", "getBitsB: Tried to get too many bits");
-            return;
-        }
-        while (byteCount-- > 0) {
-            if (!buffer.hasRemaining()) {
-                Log.warn("PacketBuilder", "Buffer underflow (" + byteCount + ")");
-                int r = 8 * (byteCount + 1);
+        while (scratchBits < bits) {
+            if (scratchBits <= 32 && buffer.remaining() >= 4) {
+                scratch = (scratch << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+                scratchBits += 32;
+            }
+            else if (scratchBits > 56) {
+                Log.error("PacketBuilder", "getBitsB: Tried to get too many bits");
+                return;
+            }
+            else if (buffer.hasRemaining()) {
+                scratch = (scratch << 8) | (buffer.get() & 0xFFL);
+                scratchBits += 8;
+            }
+            else {
+                int byteCount = (bits - scratchBits + 7) / 8;
+                Log.warn("PacketBuilder", "Buffer underflow (" + (byteCount - 1) + ")");
+                int r = 8 * byteCount;
                 if (r >= 64) {
                     scratch = 0;
                 }
                 else {
                     scratch <<= r;
                 }
+                scratchBits += r;
                 break;
-            } else {
-                scratch = (scratch << 8) | (buffer.get() & 0xFFL);
             }
         }
+        if (checksum != null) updateChecksum();
     }
 
     /**
@@ -180,6 +216,7 @@ public class BitPacker {
             p += 8;
             scratch = scratch | ((buffer.get() & 0xFFL) << p);
         }
+        if (checksum != null) updateChecksum();
     }
 
     private void putLong(long l) {
@@ -215,9 +252,11 @@ public class BitPacker {
 
         if (buffer.order() == ByteOrder.BIG_ENDIAN) {
             scratch <<= (64 - scratchBits) % 32;
-            while (byteCount-- > 0) {
-                p -= 8;
-                buffer.put((byte) ((scratch >> p) & 0xFF));
+            if (byteCount == 8) {
+                putLong(scratch);
+            }
+            else if (byteCount == 4) {
+                putInt((int) scratch);
             }
             scratch = 0;
         } else {
@@ -227,6 +266,7 @@ public class BitPacker {
             }
         }
         scratchBits = 0;
+        if (checksum != null) updateChecksum();
 
         if (rewind) buffer.rewind();
 
@@ -241,6 +281,49 @@ public class BitPacker {
         scratch = 0;
         scratchBits = 0;
         totalBits = 0;
+        checksum = null;
+    }
+
+    /**
+     * Starts adding the bytes after the current bit position to a checksum as they are written to or read from the
+     * buffer, so that packing and checksumming take a single pass. The current bit position must be byte aligned.
+     * @param trailerBytes In read mode, number of bytes at the end of the buffer that are not added to the checksum
+     */
+    public void beginChecksum(Checksum checksum, int trailerBytes) {
+        if (scratchBits % 8 != 0) Log.error("BitPacker", "Checksum must begin at a byte boundary");
+        this.checksum = checksum;
+        if (write) {
+            checksumPosition = buffer.position() + scratchBits / 8;
+            checksumLimit = Integer.MAX_VALUE;
+        }
+        else {
+            checksumPosition = buffer.position() - scratchBits / 8;
+            checksumLimit = buffer.limit() - trailerBytes;
+            updateChecksum();
+        }
+    }
+
+    /**
+     * Stops updating the checksum started by {@link #beginChecksum(Checksum, int)} and returns its value. In write
+     * mode, the scratch is flushed so that all packed bits are included; pad to a word first to avoid adding padding.
+     */
+    public int endChecksum() {
+        if (write) flush(false);
+        int value = (int) checksum.getValue();
+        checksum = null;
+        return value;
+    }
+
+    private void updateChecksum() {
+        int end = Math.min(buffer.position(), checksumLimit);
+        if (end <= checksumPosition) return;
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + checksumPosition, end - checksumPosition);
+        }
+        else {
+            for (int i = checksumPosition; i < end; ++i) checksum.update(buffer.get(i));
+        }
+        checksumPosition = end;
     }
 
     public int padToWord() {
@@ -320,9 +403,7 @@ public class BitPacker {
     }
 
     public int unpackInt(int min, int max) {
-        int r = max - min;
-        int packBits = r < 0 ? 32 : calcBits(r);
-        return unpackIntBits(packBits, min);
+        return unpackIntBits(rangeBits(min, max), min);
     }
 
     public int unpackInt() {
@@ -346,6 +427,7 @@ public class BitPacker {
                 scratchBits = bitCount - p;
                 putLong((scratch << p) | (i >> scratchBits));
                 scratch = i & masks[scratchBits];
+                if (checksum != null) updateChecksum();
             }
         } else {
             if (scratchBits + bitCount <= 64) {
@@ -355,20 +437,35 @@ public class BitPacker {
                 putLong(scratch | ((i & 0xFFFFFFFFL) << scratchBits));
                 scratchBits += bitCount - 64;
                 scratch = i >> scratchBits;
+                if (checksum != null) updateChecksum();
             }
         }
 
         totalBits += bitCount;
     }
 
+    /**
+     * Packs bits that were packed into another buffer by a Big Endian BitPacker and flushed, starting at the
+     * buffer's current position. The bits need not be byte aligned in this packer.
+     * @param bitCount Number of bits to copy
+     */
+    public void packBits(ByteBuffer in, int bitCount) {
+        while (bitCount >= 32) {
+            packBits(in.getInt() & 0xFFFFFFFFL, 32, 0);
+            bitCount -= 32;
+        }
+        if (bitCount > 0) {
+            packBits((in.getInt() >>> (32 - bitCount)) & 0xFFFFFFFFL, bitCount, 0);
+        }
+    }
+
     public int packBytes(ByteBuffer in, int l) {
         int count = l;
         if (scratchBits % 8 == 0) {
             flush(false);
-            while (count-- > 0) {
-                putByte(in.get());
-                totalBits += 8;
-            }
+            copyBytes(in, buffer, l);
+            totalBits += 8 * l;
+            if (checksum != null) updateChecksum();
         }
         else {
             while (count-- > 0) {
@@ -387,29 +484,39 @@ public class BitPacker {
                 out.put(unpackByte());
                 l--;
             }
-            while (l > 0) {
-                if (!buffer.hasRemaining()) {
-                    Log.error("BitPacker", "Buffer underflow (" + l + ")");
-                    return;
-                }
-                out.put(buffer.get());
-                l--;
+            int count = Math.min(l, buffer.remaining());
+            copyBytes(buffer, out, count);
+            if (checksum != null) updateChecksum();
+            if (count < l) {
+                Log.error("BitPacker", "Buffer underflow (" + (l - count) + ")");
             }
         }
     }
 
+    /**
+     * Copies bytes from one buffer to another in bulk, advancing the positions of both buffers.
+     */
+    public static void copyBytes(ByteBuffer in, ByteBuffer out, int length) {
+        int limit = in.limit();
+        in.limit(in.position() + length);
+        out.put(in);
+        in.limit(limit);
+    }
+
     private static int calcBits(long l) {
-        int r = 0;
-        while (l > 0) {
-            l >>= 1;
-            r++;
-        }
-        return r;
+        return l > 0 ? 64 - Long.numberOfLeadingZeros(l) : 0;
     }
 
-    public int packInt(int i, int min, int max) {
+    /**
+     * Number of bits used by {@link #packInt(int, int, int)} for values in the range [min, max].
+     */
+    public static int rangeBits(int min, int max) {
         int r = max - min;
-        int bitCount = r < 0 ? 32 : calcBits(r);
+        return r < 0 ? 32 : calcBits(r);
+    }
+
+    public int packInt(int i, int min, int max) {
+        int bitCount = rangeBits(min, max);
         packIntBits(i, bitCount, min);
         return bitCount;
     }
@@ -419,21 +526,99 @@ public class BitPacker {
         return 32;
     }
 
+    /**
+     * Packs a non-negative int in groups of groupBits bits, lowest first, each followed by a bit that tells whether
+     * another group follows. Values below 2^groupBits take groupBits + 1 bits.
+     * @return Number of bits packed
+     */
+    public int packVarInt(int i, int groupBits) {
+        int bitCount = 0;
+        int mask = (1 << groupBits) - 1;
+        do {
+            packIntBits(i & mask, groupBits, 0);
+            i >>>= groupBits;
+            packIntBits(i != 0 ? 1 : 0, 1, 0);
+            bitCount += groupBits + 1;
+        } while (i != 0);
+        return bitCount;
+    }
+
+    /**
+     * Unpacks and discards bits.
+     */
+    public void skipBits(int bitCount) {
+        while (bitCount > 0) {
+            int n = Math.min(bitCount, 32);
+            unpackBits(n, 0);
+            bitCount -= n;
+        }
+    }
+
+    public int unpackVarInt(int groupBits) {
+        int i = 0;
+        int shift = 0;
+        do {
+            i |= unpackIntBits(groupBits, 0) << shift;
+            shift += groupBits;
+        } while (unpackIntBits(1, 0) == 1 && shift < 32);
+        return i;
+    }
+
+    /**
+     * Number of bits used by {@link #packVarInt(int, int)} for a value.
+     */
+    public static int varIntBits(int i, int groupBits) {
+        int groups = 1;
+        while ((i >>>= groupBits) != 0) groups++;
+        return groups * (groupBits + 1);
+    }
+
     public int packFloat(float f, float min, float max, float res) {
-        float rf = max - min;
-        int ri = MathUtils.ceil(rf / res);
-        if (f == min) return packInt(0, 0, ri);
-        if (f == max) return packInt(ri, 0, ri);
-        float fn = MathUtils.clamp((f - min) / rf, 0f, 1f);
-        int i = MathUtils.floor(fn * ri + 0.5f);
-        return packInt(i, 0, ri);
+        int steps = floatRange(min, max, res);
+        return packInt(quantizeFloatSteps(f, min, max, steps), 0, steps);
     }
 
     public float unpackFloat(float min, float max, float res) {
-        float rf = max - min;
-        int ri = MathUtils.ceil(rf / res);
-        int i = unpackInt(0, ri);
-        return min + ((rf * (float) i) / (float) ri);
+        int steps = floatRange(min, max, res);
+        return dequantizeFloatSteps(unpackInt(0, steps), min, max, steps);
+    }
+
+    /**
+     * Number of steps used to represent floats in the range [min, max] with the specified resolution.
+     */
+    public static int floatRange(float min, float max, float res) {
+        return MathUtils.ceil((max - min) / res);
+    }
+
+    /**
+     * Converts a float to the integer step that {@link #packFloat(float, float, float, float)} would pack for it.
+     */
+    public static int quantizeFloat(float f, float min, float max, float res) {
+        return quantizeFloatSteps(f, min, max, floatRange(min, max, res));
+    }
+
+    /**
+     * @param steps Number of steps, see {@link #floatRange(float, float, float)}
+     */
+    public static int quantizeFloatSteps(float f, float min, float max, int steps) {
+        if (f == min) return 0;
+        if (f == max) return steps;
+        float fn = MathUtils.clamp((f - min) / (max - min), 0f, 1f);
+        return MathUtils.floor(fn * steps + 0.5f);
+    }
+
+    /**
+     * Converts an integer step back to a float. Inverse of {@link #quantizeFloat(float, float, float, float)}.
+     */
+    public static float dequantizeFloat(int i, float min, float max, float res) {
+        return dequantizeFloatSteps(i, min, max, floatRange(min, max, res));
+    }
+
+    /**
+     * @param steps Number of steps, see {@link #floatRange(float, float, float)}
+     */
+    public static float dequantizeFloatSteps(int i, float min, float max, int steps) {
+        return min + (((max - min) * (float) i) / (float) steps);
     }
 
     public int packFloat(float f) {
@@ -0,0 +1,189 @@
+package com.xam.bobgame.utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from ids to values, where ids are allocated by the map itself. An id is a slot index in the high bits and the
+ * slot's generation in the low bits. A slot's generation is incremented when its value is removed, so a stale id doesn't
+ * find the value that reuses the slot. Freed slots are reused in the order they were freed, to make it unlikely that a
+ * generation wraps around while the old id is still in use.
+ * <p>
+ * Lookups are a single array access. Iterating slots from 0 to {@link #getSlotCount()} visits ids in ascending order.
+ */
+public class GenerationalIdMap<V> {
+    private final int generationBits;
+    private final int generationMask;
+    private final int slotLimit;
+
+    private int[] generations;
+    private Object[] values;
+    private boolean[] used;
+    private int slotCount = 0;
+    public int size = 0;
+
+    private int[] freeSlots;
+    private int freeHead = 0;
+    private int freeCount = 0;
+
+    /**
+     * @param indexBits Bits of an id used for the slot index, limiting the number of values in the map
+     * @param generationBits Bits of an id used for the generation
+     */
+    public GenerationalIdMap(int indexBits, int generationBits) {
+        this.generationBits = generationBits;
+        generationMask = (1 << generationBits) - 1;
+        slotLimit = 1 << indexBits;
+
+        int capacity = Math.min(16, slotLimit);
+        generations = new int[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    /**
+     * Reserves a slot for a new value.
+     * @return Id of the slot, or -1 if all slots are in use
+     */
+    public int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[freeHead];
+            freeHead = (freeHead + 1) % freeSlots.length;
+            freeCount--;
+        }
+        else if (slotCount < slotLimit) {
+            slot = slotCount++;
+            ensureCapacity(slotCount);
+        }
+        else {
+            return -1;
+        }
+        used[slot] = true;
+        return toId(slot, generations[slot]);
+    }
+
+    /**
+     * Sets the value of an id, which doesn't have to be allocated by this map. A value with a different generation in the
+     * same slot is replaced.
+     * @return The value previously in the slot
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int id, V value) {
+        int slot = getSlot(id);
+        if (slot >= slotLimit) throw new IllegalArgumentException("Id out of range: " + id);
+        if (slot >= slotCount) {
+            ensureCapacity(slot + 1);
+            // slots skipped over can still be allocated
+            for (int i = slotCount; i < slot; ++i) addFreeSlot(i);
+            slotCount = slot + 1;
+        }
+        else if (!used[slot]) {
+            removeFreeSlot(slot);
+        }
+        V old = (V) values[slot];
+        if (old == null) size++;
+        used[slot] = true;
+        generations[slot] = getGeneration(id);
+        values[slot] = value;
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        int slot = getSlot(id);
+        if (id < 0 || slot >= slotCount || generations[slot] != getGeneration(id)) return null;
+        return (V) values[slot];
+    }
+
+    /**
+     * Removes the value of the id and frees its slot. Does nothing if the slot holds a different generation.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int id) {
+        int slot = getSlot(id);
+        if (id < 0 || slot >= slotCount || !used[slot] || generations[slot] != getGeneration(id)) return null;
+        V old = (V) values[slot];
+        if (old != null) size--;
+        freeSlot(slot);
+        return old;
+    }
+
+    /**
+     * Removes all values. Generations are kept, so ids in use before aren't reused right away.
+     */
+    public void clear() {
+        for (int slot = 0; slot < slotCount; ++slot) {
+            if (used[slot]) freeSlot(slot);
+        }
+        size = 0;
+    }
+
+    /**
+     * Slots below this number may be in use.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return Id of the value in the slot, or -1 if the slot has no value
+     */
+    public int getIdAt(int slot) {
+        return values[slot] == null ? -1 : toId(slot, generations[slot]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getAt(int slot) {
+        return (V) values[slot];
+    }
+
+    public int getSlot(int id) {
+        return id >>> generationBits;
+    }
+
+    public int getGeneration(int id) {
+        return id & generationMask;
+    }
+
+    public int toId(int slot, int generation) {
+        return slot << generationBits | generation;
+    }
+
+    private void freeSlot(int slot) {
+        values[slot] = null;
+        used[slot] = false;
+        generations[slot] = (generations[slot] + 1) & generationMask;
+        addFreeSlot(slot);
+    }
+
+    private void addFreeSlot(int slot) {
+        freeSlots[(freeHead + freeCount) % freeSlots.length] = slot;
+        freeCount++;
+    }
+
+    private void removeFreeSlot(int slot) {
+        for (int i = 0; i < freeCount; ++i) {
+            int k = (freeHead + i) % freeSlots.length;
+            if (freeSlots[k] != slot) continue;
+            for (int j = i; j < freeCount - 1; ++j) {
+                freeSlots[(freeHead + j) % freeSlots.length] = freeSlots[(freeHead + j + 1) % freeSlots.length];
+            }
+            freeCount--;
+            return;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= values.length) return;
+        int length = Math.min(slotLimit, Math.max(capacity, values.length * 2));
+        generations = Arrays.copyOf(generations, length);
+        values = Arrays.copyOf(values, length);
+        used = Arrays.copyOf(used, length);
+
+        int[] newFreeSlots = new int[length];
+        for (int i = 0; i < freeCount; ++i) newFreeSlots[i] = freeSlots[(freeHead + i) % freeSlots.length];
+        freeSlots = newFreeSlots;
+        freeHead = 0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.xam.bobgame.utils;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, like HdrHistogram: values below
+ * 2 * {@link #SUB_BUCKET_COUNT} have a bucket each, and every power of two above that is split into
+ * {@link #SUB_BUCKET_COUNT} buckets, so percentiles are accurate to about 3%. Recording doesn't allocate.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values from 2^36 ns (about 69 s) up are counted in the last bucket.
+     */
+    private static final long MAX_TRACKABLE_VALUE = (1L << 36) - 1;
+
+    private final long[] counts = new long[bucketIndex(MAX_TRACKABLE_VALUE) + 1];
+    private long totalCount = 0;
+    private long maxValue = 0;
+    private long sum = 0;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucketIndex(Math.min(value, MAX_TRACKABLE_VALUE))]++;
+        totalCount++;
+        sum += value;
+        if (value > maxValue) maxValue = value;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Highest value of the bucket the percentile falls in, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            count += counts[i];
+            if (count >= target) return Math.min(bucketValue(i), maxValue);
+        }
+        return maxValue;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; ++i) counts[i] = 0;
+        totalCount = 0;
+        maxValue = 0;
+        sum = 0;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) return (int) value;
+        // shift so the highest bit lands in the top half of the sub-buckets
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * @return Highest value counted in the bucket
+     */
+    static long bucketValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
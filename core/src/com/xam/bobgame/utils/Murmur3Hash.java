@@ -0,0 +1,96 @@
+package com.xam.bobgame.utils;
+
+import java.util.zip.Checksum;
+
+/**
+ * Incremental 32-bit MurmurHash3 (x86_32 variant). Bytes can be fed in chunks of any length; the result is the same as
+ * hashing them all at once.
+ */
+public class Murmur3Hash implements Checksum {
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private int seed = 0;
+    private int h = 0;
+    private int length = 0;
+
+    /**
+     * Bytes of an incomplete block, little endian
+     */
+    private int tail = 0;
+    private int tailBytes = 0;
+
+    public Murmur3Hash() {
+
+    }
+
+    public Murmur3Hash(int seed) {
+        reset(seed);
+    }
+
+    public void reset(int seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        h = seed;
+        length = 0;
+        tail = 0;
+        tailBytes = 0;
+    }
+
+    @Override
+    public void update(int b) {
+        tail |= (b & 0xFF) << (8 * tailBytes);
+        length++;
+        if (++tailBytes == 4) {
+            mix(tail);
+            tail = 0;
+            tailBytes = 0;
+        }
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int end = off + len;
+        while (tailBytes != 0 && off < end) update(b[off++]);
+        while (end - off >= 4) {
+            mix((b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24);
+            off += 4;
+            length += 4;
+        }
+        while (off < end) update(b[off++]);
+    }
+
+    private void mix(int k) {
+        k *= C1;
+        k = Integer.rotateLeft(k, 15);
+        k *= C2;
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        h = h * 5 + 0xe6546b64;
+    }
+
+    /**
+     * Returns the hash of the bytes so far as an unsigned int. Does not change the state, so more bytes can be added
+     * afterwards.
+     */
+    @Override
+    public long getValue() {
+        int r = h;
+        if (tailBytes > 0) {
+            int k = tail * C1;
+            k = Integer.rotateLeft(k, 15);
+            r ^= k * C2;
+        }
+        r ^= length;
+        r ^= r >>> 16;
+        r *= 0x85ebca6b;
+        r ^= r >>> 13;
+        r *= 0xc2b2ae35;
+        r ^= r >>> 16;
+        return r & 0xFFFFFFFFL;
+    }
+}
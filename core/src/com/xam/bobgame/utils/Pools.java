@@ -0,0 +1,136 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.ReflectionPool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Same API as libGDX's {@link com.badlogic.gdx.utils.Pools}, but every thread gets its own set of pools. libGDX's pools
+ * are global and not thread-safe, which breaks as soon as more than one engine is updated on different threads.
+ * <p>
+ * Objects that are handed to other threads (such as events queued by network threads) implement {@link Shared}: they
+ * remember the pool they were obtained from and go back to it when freed on another thread, so the producing thread
+ * keeps reusing them. Other objects are pooled by the thread that frees them. Unlike libGDX, freeing an object whose
+ * type has no pool on this thread creates one, so the object is always reset.
+ */
+public class Pools {
+    private static final ThreadLocal<ObjectMap<Class<?>, Pool<?>>> typePools = new ThreadLocal<ObjectMap<Class<?>, Pool<?>>>() {
+        @Override
+        protected ObjectMap<Class<?>, Pool<?>> initialValue() {
+            return new ObjectMap<>();
+        }
+    };
+
+    private Pools() {
+    }
+
+    /**
+     * Returns this thread's pool for the given type, creating it if necessary.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Pool<T> get(Class<T> type, int max) {
+        ObjectMap<Class<?>, Pool<?>> pools = typePools.get();
+        Pool<T> pool = (Pool<T>) pools.get(type);
+        if (pool == null) {
+            pool = new ThreadPool<>(type, 4, max);
+            pools.put(type, pool);
+        }
+        return pool;
+    }
+
+    public static <T> Pool<T> get(Class<T> type) {
+        return get(type, 100);
+    }
+
+    public static <T> T obtain(Class<T> type) {
+        return get(type).obtain();
+    }
+
+    public static void free(Object object) {
+        if (object == null) throw new IllegalArgumentException("object cannot be null.");
+        if (object instanceof Shared) {
+            ThreadPool<Object> owner = ownerPool((Shared) object);
+            if (owner != null) {
+                owner.freeFromAnyThread(object);
+                return;
+            }
+        }
+        poolOf(object).free(object);
+    }
+
+    public static void freeAll(Array<?> objects) {
+        freeAll(objects, false);
+    }
+
+    public static void freeAll(Array<?> objects, boolean samePool) {
+        if (objects == null) throw new IllegalArgumentException("objects cannot be null.");
+        Pool<Object> pool = null;
+        for (int i = 0, n = objects.size; i < n; i++) {
+            Object object = objects.get(i);
+            if (object == null) continue;
+            if (object instanceof Shared) {
+                free(object);
+                continue;
+            }
+            if (pool == null) pool = poolOf(object);
+            pool.free(object);
+            if (!samePool) pool = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Pool<Object> poolOf(Object object) {
+        return (Pool<Object>) get(object.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ThreadPool<Object> ownerPool(Shared object) {
+        return (ThreadPool<Object>) object.getOwnerPool();
+    }
+
+    /**
+     * Pooled object that may be freed on another thread than the one that obtained it.
+     */
+    public interface Shared {
+        /**
+         * @return The pool the object was last obtained from, or null
+         */
+        Pool<?> getOwnerPool();
+
+        void setOwnerPool(Pool<?> pool);
+    }
+
+    /**
+     * Pool of one thread. Objects freed by other threads are reset by the freeing thread and queued, and handed out again
+     * before the pool's own free objects.
+     */
+    private static class ThreadPool<T> extends ReflectionPool<T> {
+        private final Thread thread = Thread.currentThread();
+        private final ConcurrentLinkedQueue<T> returned = new ConcurrentLinkedQueue<>();
+
+        ThreadPool(Class<T> type, int initialCapacity, int max) {
+            super(type, initialCapacity, max);
+        }
+
+        @Override
+        public T obtain() {
+            T object = returned.poll();
+            if (object == null) object = super.obtain();
+            if (object instanceof Shared) ((Shared) object).setOwnerPool(this);
+            return object;
+        }
+
+        void freeFromAnyThread(T object) {
+            if (Thread.currentThread() == thread) {
+                free(object);
+            }
+            else {
+                reset(object);
+                returned.offer(object);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.utils.Null;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded lock-free queue for passing objects from exactly one producer thread to exactly one consumer thread.
+ * Neither thread ever blocks: {@link #offer(Object)} and {@link #claim()} fail when the queue is full, and
+ * {@link #poll()} and {@link #peek()} return null when it is empty.
+ * <p>
+ * The queue can either hold references ({@link #offer(Object)}/{@link #poll()}), or have its slots preallocated so that
+ * the producer fills a slot in place ({@link #claim()}/{@link #publish()}) and the consumer reads it in place
+ * ({@link #peek()}/{@link #release()}) without allocating.
+ */
+public class SpscRingBuffer<T> {
+    private final Object[] items;
+    private final int mask;
+    private final boolean preallocated;
+
+    /**
+     * Index of the next item to be consumed. Written only by the consumer.
+     */
+    private final AtomicInteger head = new AtomicInteger(0);
+    /**
+     * Index of the next slot to be produced. Written only by the producer.
+     */
+    private final AtomicInteger tail = new AtomicInteger(0);
+
+    /**
+     * Producer's last read of head, so that it reads the consumer's index only when the queue looks full.
+     */
+    private int headCache = 0;
+    /**
+     * Consumer's last read of tail, so that it reads the producer's index only when the queue looks empty.
+     */
+    private int tailCache = 0;
+
+    /**
+     * Creates a queue of references.
+     * @param capacity Minimum capacity, rounded up to a power of two
+     */
+    public SpscRingBuffer(int capacity) {
+        items = new Object[nextPowerOfTwo(capacity)];
+        mask = items.length - 1;
+        preallocated = false;
+    }
+
+    /**
+     * Creates a queue with preallocated slots.
+     * @param slots Slot objects. The length must be a power of two.
+     */
+    public SpscRingBuffer(T[] slots) {
+        if (Integer.bitCount(slots.length) != 1) throw new IllegalArgumentException("Length must be a power of two: " + slots.length);
+        items = slots;
+        mask = items.length - 1;
+        preallocated = true;
+    }
+
+    private static int nextPowerOfTwo(int i) {
+        return i <= 1 ? 1 : Integer.highestOneBit(i - 1) << 1;
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    /**
+     * Producer only. Adds a reference to the queue, returning false if the queue is full.
+     */
+    public boolean offer(T item) {
+        int t = tail.get();
+        if (t - headCache >= items.length) {
+            headCache = head.get();
+            if (t - headCache >= items.length) return false;
+        }
+        items[t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Producer only. Returns the next free preallocated slot to be filled, or null if the queue is full. The slot is
+     * not visible to the consumer until {@link #publish()} is called.
+     */
+    @SuppressWarnings("unchecked")
+    public @Null T claim() {
+        int t = tail.get();
+        if (t - headCache >= items.length) {
+            headCache = head.get();
+            if (t - headCache >= items.length) return null;
+        }
+        return (T) items[t & mask];
+    }
+
+    /**
+     * Producer only. Makes the slot returned by the last {@link #claim()} visible to the consumer.
+     */
+    public void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Consumer only. Returns the next item without removing it, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public @Null T peek() {
+        int h = head.get();
+        if (h == tailCache) {
+            tailCache = tail.get();
+            if (h == tailCache) return null;
+        }
+        return (T) items[h & mask];
+    }
+
+    /**
+     * Consumer only. Removes the item returned by the last {@link #peek()}, handing its slot back to the producer.
+     */
+    public void release() {
+        int h = head.get();
+        if (!preallocated) items[h & mask] = null;
+        head.lazySet(h + 1);
+    }
+
+    /**
+     * Consumer only. Removes and returns the next item, or null if the queue is empty. For queues with preallocated
+     * slots, use {@link #peek()} and {@link #release()} instead, since the slot may be refilled after it is released.
+     */
+    public @Null T poll() {
+        T item = peek();
+        if (item != null) release();
+        return item;
+    }
+
+    /**
+     * Number of items in the queue. Only an estimate when called while the other thread is active.
+     */
+    public int size() {
+        return tail.get() - head.get();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.xam.bobgame.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Schedules fixed-timestep ticks using {@link System#nanoTime()}. Tick times are accumulated from the start time, so
+ * the tick rate doesn't drift. The calling thread sleeps until shortly before each tick and only spins for the last
+ * part of the wait.
+ */
+public class TickScheduler {
+    /**
+     * Time before a tick at which waiting switches from parking to spinning. Parking usually oversleeps by tens of
+     * microseconds up to about a millisecond, depending on the OS timer.
+     */
+    public static final long DEFAULT_SPIN_NANOS = 1000000L;
+
+    private final long intervalNanos;
+    private final int maxCatchUpTicks;
+    private final long spinNanos;
+
+    /**
+     * Time at which the next tick is due
+     */
+    private long nextTickTime;
+    private long tickStartTime;
+
+    private long tickCount = 0;
+    /**
+     * Number of ticks that took longer than the interval to run
+     */
+    private long overrunCount = 0;
+    /**
+     * Number of ticks that were dropped after a stall instead of being caught up
+     */
+    private long skippedTicks = 0;
+    private final ExpoMovingAverage tickDuration = new ExpoMovingAverage(0.05f);
+    private final ExpoMovingAverage tickLateness = new ExpoMovingAverage(0.05f);
+    private long maxTickDuration = 0;
+
+    /**
+     * @param intervalNanos Time between ticks
+     * @param maxCatchUpTicks Maximum number of ticks to run back to back after falling behind. Ticks beyond this are
+     *                        skipped.
+     */
+    public TickScheduler(long intervalNanos, int maxCatchUpTicks) {
+        this(intervalNanos, maxCatchUpTicks, DEFAULT_SPIN_NANOS);
+    }
+
+    public TickScheduler(long intervalNanos, int maxCatchUpTicks, long spinNanos) {
+        this.intervalNanos = intervalNanos;
+        this.maxCatchUpTicks = maxCatchUpTicks;
+        this.spinNanos = spinNanos;
+        start();
+    }
+
+    /**
+     * Schedules the first tick to be run immediately.
+     */
+    public void start() {
+        nextTickTime = System.nanoTime();
+    }
+
+    /**
+     * Waits until the next tick is due and returns the number of ticks that should be run now. More than one tick is
+     * returned when the caller has fallen behind, up to the catch-up limit. Call {@link #tickStarted()} and
+     * {@link #tickEnded()} around each tick to record metrics.
+     */
+    public int waitForTicks() {
+        long now = System.nanoTime();
+        long remaining = nextTickTime - now;
+        while (remaining > 0) {
+            if (remaining > spinNanos) {
+                LockSupport.parkNanos(remaining - spinNanos);
+            }
+            now = System.nanoTime();
+            remaining = nextTickTime - now;
+        }
+
+        tickLateness.update(-remaining / 1e6f);
+        long due = -remaining / intervalNanos + 1;
+        if (due > maxCatchUpTicks) {
+            skippedTicks += due - maxCatchUpTicks;
+            nextTickTime += (due - maxCatchUpTicks) * intervalNanos;
+            due = maxCatchUpTicks;
+        }
+        nextTickTime += due * intervalNanos;
+        return (int) due;
+    }
+
+    public void tickStarted() {
+        tickStartTime = System.nanoTime();
+    }
+
+    public void tickEnded() {
+        long duration = System.nanoTime() - tickStartTime;
+        tickCount++;
+        if (duration > intervalNanos) overrunCount++;
+        if (duration > maxTickDuration) maxTickDuration = duration;
+        tickDuration.update(duration / 1e6f);
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Average time taken to run a tick, in milliseconds
+     */
+    public float getAverageTickDuration() {
+        return tickDuration.getAverage();
+    }
+
+    /**
+     * Longest time taken to run a tick, in milliseconds
+     */
+    public float getMaxTickDuration() {
+        return maxTickDuration / 1e6f;
+    }
+
+    /**
+     * Average time between when ticks were due and when they were started, in milliseconds
+     */
+    public float getAverageLateness() {
+        return tickLateness.getAverage();
+    }
+
+    public void resetMetrics() {
+        tickCount = 0;
+        overrunCount = 0;
+        skippedTicks = 0;
+        maxTickDuration = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.xam.bobgame.events.classes;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.xam.bobgame.GameProperties;
+import com.xam.bobgame.net.NetDriver;
+import com.xam.bobgame.utils.BitPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class NetCodecTest {
+
+    /**
+     * The generated codec must write the same bits as the hand-written read() it replaced.
+     */
+    @Test
+    public void testPlayerControlEvent() {
+        ByteBuffer expected = ByteBuffer.allocate(256);
+        ByteBuffer actual = ByteBuffer.allocate(256);
+        BitPacker packer = new BitPacker();
+
+        for (int i = 0; i < 100; ++i) {
+            PlayerControlEvent event = new PlayerControlEvent();
+            event.controlId = MathUtils.random(-1, 31);
+            event.entityId = MathUtils.random(0, NetDriver.MAX_ENTITY_ID);
+            event.x = MathUtils.random(-3f, GameProperties.MAP_WIDTH + 3);
+            event.y = MathUtils.random(-3f, GameProperties.MAP_HEIGHT + 3);
+            event.buttonId = MathUtils.random(-1, 1);
+            event.buttonState = MathUtils.randomBoolean();
+            event.inputSeq = MathUtils.random(0, NetDriver.INPUT_SEQ_LIMIT - 1);
+
+            expected.clear();
+            packer.setBuffer(expected);
+            packer.setWriteMode();
+            packer.readInt(event.controlId, -1, 31);
+            packer.readInt(event.entityId, 0, NetDriver.MAX_ENTITY_ID);
+            packer.readFloat(event.x, -3, GameProperties.MAP_WIDTH + 3, NetDriver.RES_POSITION);
+            packer.readFloat(event.y, -3,  GameProperties.MAP_HEIGHT + 3, NetDriver.RES_POSITION);
+            packer.readInt(event.buttonId, -1, 1);
+            packer.readInt(event.buttonState ? 1 : 0, 0, 1);
+            packer.readInt(event.inputSeq, 0, NetDriver.INPUT_SEQ_LIMIT - 1);
+            packer.flush(true);
+
+            actual.clear();
+            packer.setBuffer(actual);
+            packer.setWriteMode();
+            event.read(packer, null);
+            Assertions.assertEquals(PlayerControlEventCodec.BITS, packer.getTotalBits());
+            packer.flush(true);
+
+            Assertions.assertEquals(expected, actual);
+
+            PlayerControlEvent decoded = new PlayerControlEvent();
+            packer.setBuffer(actual);
+            packer.setReadMode();
+            decoded.read(packer, null);
+            Assertions.assertEquals(event.controlId, decoded.controlId);
+            Assertions.assertEquals(event.entityId, decoded.entityId);
+            Assertions.assertEquals(event.x, decoded.x, NetDriver.RES_POSITION);
+            Assertions.assertEquals(event.y, decoded.y, NetDriver.RES_POSITION);
+            Assertions.assertEquals(event.buttonId, decoded.buttonId);
+            Assertions.assertEquals(event.buttonState, decoded.buttonState);
+            Assertions.assertEquals(event.inputSeq, decoded.inputSeq);
+        }
+    }
+}
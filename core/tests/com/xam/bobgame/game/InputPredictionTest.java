@@ -0,0 +1,34 @@
+package com.xam.bobgame.game;
+
+import com.xam.bobgame.net.NetDriver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InputPredictionTest {
+
+    @Test
+    public void testAcknowledge() {
+        InputPrediction prediction = new InputPrediction();
+        for (int i = 0; i < 10; ++i) Assertions.assertEquals(i, prediction.nextInput());
+        prediction.acknowledge(3);
+        Assertions.assertEquals(6, prediction.getPendingCount());
+        // stale acks are ignored
+        prediction.acknowledge(1);
+        Assertions.assertEquals(6, prediction.getPendingCount());
+        prediction.acknowledge(9);
+        Assertions.assertEquals(0, prediction.getPendingCount());
+    }
+
+    @Test
+    public void testWrap() {
+        InputPrediction prediction = new InputPrediction();
+        for (int i = 0; i < NetDriver.INPUT_SEQ_LIMIT - 2; ++i) prediction.nextInput();
+        Assertions.assertEquals(InputPrediction.HISTORY_SIZE, prediction.getPendingCount());
+        prediction.acknowledge(NetDriver.INPUT_SEQ_LIMIT - 4);
+        Assertions.assertEquals(1, prediction.getPendingCount());
+        for (int i = 0; i < 4; ++i) prediction.nextInput();
+        Assertions.assertTrue(InputPrediction.isNewer(1, NetDriver.INPUT_SEQ_LIMIT - 1));
+        prediction.acknowledge(0);
+        Assertions.assertEquals(1, prediction.getPendingCount());
+    }
+}
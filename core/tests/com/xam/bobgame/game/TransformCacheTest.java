@@ -0,0 +1,58 @@
+package com.xam.bobgame.game;
+
+import com.xam.bobgame.utils.GenerationalIdMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TransformCacheTest {
+
+    @Test
+    public void testFrameAndGeneration() {
+        GenerationalIdMap<String> entityMap = new GenerationalIdMap<>(4, 2);
+        TransformCache cache = new TransformCache(entityMap);
+        int a = entityMap.allocate();
+        entityMap.put(a, "a");
+        int b = entityMap.allocate();
+        entityMap.put(b, "b");
+
+        cache.begin(10);
+        int slot = cache.set(a);
+        cache.x[slot] = 1;
+        Assertions.assertEquals(slot, cache.indexOf(a));
+        Assertions.assertEquals(1, cache.x[cache.indexOf(a, 10)]);
+        // not copied in this step
+        Assertions.assertEquals(-1, cache.indexOf(b));
+        // stale frame
+        Assertions.assertEquals(-1, cache.indexOf(a, 9));
+
+        // a new step invalidates entries that aren't set again
+        cache.begin(11);
+        Assertions.assertEquals(-1, cache.indexOf(a));
+        Assertions.assertEquals(-1, cache.indexOf(a, 10));
+
+        // an entity reusing the slot doesn't find the old entity's values, and the other way around
+        cache.set(a);
+        entityMap.remove(a);
+        int c = entityMap.allocate();
+        entityMap.put(c, "c");
+        Assertions.assertEquals(entityMap.getSlot(a), entityMap.getSlot(c));
+        Assertions.assertEquals(-1, cache.indexOf(c));
+        Assertions.assertEquals(-1, cache.indexOf(-1));
+    }
+
+    @Test
+    public void testGrow() {
+        GenerationalIdMap<String> entityMap = new GenerationalIdMap<>(8, 2);
+        TransformCache cache = new TransformCache(entityMap);
+        cache.begin(0);
+
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = entityMap.allocate();
+            entityMap.put(ids[i], "" + i);
+        }
+        cache.begin(1);
+        for (int i = 0; i < ids.length; ++i) cache.angle[cache.set(ids[i])] = i;
+        for (int i = 0; i < ids.length; ++i) Assertions.assertEquals(i, cache.angle[cache.indexOf(ids[i])]);
+    }
+}
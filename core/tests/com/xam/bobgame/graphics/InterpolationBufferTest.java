@@ -0,0 +1,50 @@
+package com.xam.bobgame.graphics;
+
+import com.badlogic.gdx.math.Vector3;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InterpolationBufferTest {
+
+    @Test
+    public void testInterpolate() {
+        InterpolationBuffer buffer = new InterpolationBuffer(4, 0.5f);
+        Vector3 out = new Vector3();
+        Assertions.assertFalse(buffer.sample(0, out));
+
+        buffer.add(1, 0, 0, 0, 10, 0, 0);
+        buffer.add(2, 10, 20, 0, 10, 0, 0);
+        Assertions.assertTrue(buffer.sample(1.5f, out));
+        Assertions.assertEquals(5, out.x, 1e-4f);
+        Assertions.assertEquals(10, out.y, 1e-4f);
+
+        // clamped before the oldest sample
+        buffer.sample(0, out);
+        Assertions.assertEquals(0, out.x, 1e-4f);
+    }
+
+    @Test
+    public void testExtrapolate() {
+        InterpolationBuffer buffer = new InterpolationBuffer(4, 0.5f);
+        Vector3 out = new Vector3();
+        buffer.add(1, 0, 0, 0, 0, 0, 0);
+        buffer.add(2, 10, 0, 1, 10, -4, 2);
+
+        // past the newest sample, e.g. while the entity is left out of updates
+        buffer.sample(2.25f, out);
+        Assertions.assertEquals(12.5f, out.x, 1e-4f);
+        Assertions.assertEquals(-1, out.y, 1e-4f);
+        Assertions.assertEquals(1.5f, out.z, 1e-4f);
+
+        // held after the extrapolation limit
+        buffer.sample(10, out);
+        Assertions.assertEquals(15, out.x, 1e-4f);
+        Assertions.assertEquals(-2, out.y, 1e-4f);
+
+        // a single sample is extrapolated too
+        buffer.clear();
+        buffer.add(0, 1, 1, 0, 2, 0, 0);
+        buffer.sample(0.1f, out);
+        Assertions.assertEquals(1.2f, out.x, 1e-4f);
+    }
+}
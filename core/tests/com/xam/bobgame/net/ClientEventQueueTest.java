@@ -0,0 +1,96 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.events.classes.PlayerScoreEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ClientEventQueueTest {
+
+    private static NetDriver.ClientEvent queueEvent(ClientEventQueue queue, int... clientIds) {
+        NetDriver.ClientEvent clientEvent = new NetDriver.ClientEvent();
+        clientEvent.event = new PlayerScoreEvent();
+        clientEvent.frameNum = 0;
+        clientEvent.serializedBits = 16;
+        for (int clientId : clientIds) clientEvent.clientMask.set(clientId);
+        queue.add(clientEvent);
+        return clientEvent;
+    }
+
+    private static ConnectionManager.ConnectionSlot createSlot(int clientId) {
+        ConnectionManager.ConnectionSlot slot = new ConnectionManager.ConnectionSlot();
+        slot.clientId = clientId;
+        return slot;
+    }
+
+    @Test
+    public void testAckRemovesEvents() {
+        ClientEventQueue queue = new ClientEventQueue();
+        ConnectionManager.ConnectionSlot slot = createSlot(0);
+        queueEvent(queue, 0);
+        queueEvent(queue, 0);
+
+        Assertions.assertEquals(2, queue.nextBatch(slot, 0, queue.size(), 0, 0));
+        Assertions.assertEquals(2, slot.eventBatch.size);
+        queue.sent(slot, 7, 1);
+
+        queue.ack(0, 6);
+        Assertions.assertEquals(2, queue.size());
+        queue.ack(0, 7);
+        Assertions.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testResendAndExpire() {
+        ClientEventQueue queue = new ClientEventQueue();
+        ConnectionManager.ConnectionSlot slot = createSlot(0);
+        NetDriver.ClientEvent clientEvent = queueEvent(queue, 0);
+
+        queue.nextBatch(slot, 0, queue.size(), 0, 0);
+        queue.sent(slot, 0, 1);
+        Assertions.assertEquals(0, clientEvent.eventSeqs[0]);
+
+        // waiting for the ack
+        queue.nextBatch(slot, 0, queue.size(), 0, 0.5f);
+        Assertions.assertEquals(0, slot.eventBatch.size);
+
+        // resent with the same sequence number
+        queue.nextBatch(slot, 0, queue.size(), 0, 1);
+        Assertions.assertEquals(1, slot.eventBatch.size);
+        Assertions.assertEquals(0, clientEvent.eventSeqs[0]);
+        queue.sent(slot, 1, 2);
+        Assertions.assertEquals(0, queue.expire(slot, 2));
+
+        // too old to resend
+        slot.eventSeqCounter += NetDriver.EVENT_RESEND_LIMIT;
+        queue.nextBatch(slot, 0, queue.size(), 0, 2);
+        Assertions.assertEquals(0, slot.eventBatch.size);
+        Assertions.assertEquals(1, queue.expire(slot, 2));
+        Assertions.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testOrderAfterAck() {
+        ClientEventQueue queue = new ClientEventQueue();
+        ConnectionManager.ConnectionSlot slot0 = createSlot(0);
+        ConnectionManager.ConnectionSlot slot1 = createSlot(1);
+        NetDriver.ClientEvent a = queueEvent(queue, 0, 1);
+        queueEvent(queue, 0);
+        NetDriver.ClientEvent c = queueEvent(queue, 1);
+        NetDriver.ClientEvent d = queueEvent(queue, 1);
+
+        // the second event is acknowledged by its only client before client 1 is sent anything
+        queue.nextBatch(slot0, 0, queue.size(), 0, 0);
+        queue.sent(slot0, 0, 1);
+        queue.ack(0, 0);
+        Assertions.assertEquals(3, queue.size());
+
+        NetDriver.ClientEvent e = queueEvent(queue, 1);
+        queue.nextBatch(slot1, 0, queue.size(), 0, 0);
+        Assertions.assertEquals(4, slot1.eventBatch.size);
+        NetDriver.ClientEvent[] expected = {a, c, d, e};
+        for (int i = 0; i < expected.length; ++i) {
+            Assertions.assertSame(expected[i], queue.get(slot1.eventBatch.get(i)));
+            Assertions.assertEquals(i, expected[i].eventSeqs[1]);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EntityEncodeCacheTest {
+
+    private static int put(EntityEncodeCache cache, ByteBuffer buffer, BitPacker packer, int index, int sourceStateId, int value) {
+        buffer.clear();
+        packer.setBuffer(buffer);
+        packer.setWriteMode();
+        packer.packInt(value, 0, 1023);
+        int bits = packer.getTotalBits();
+        packer.flush(false);
+        return cache.put(index, sourceStateId, buffer, bits);
+    }
+
+    private static int read(EntityEncodeCache cache, int entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+        BitPacker packer = new BitPacker(buffer);
+        packer.setWriteMode();
+        cache.copyTo(entry, packer);
+        packer.flush(true);
+        packer.setReadMode();
+        return packer.unpackInt(0, 1023);
+    }
+
+    @Test
+    public void testFirstEntryKept() {
+        EntityEncodeCache cache = new EntityEncodeCache();
+        ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+        BitPacker packer = new BitPacker();
+        cache.reset(1, 4);
+
+        Assertions.assertEquals(-1, cache.find(2, 0));
+        int entry = put(cache, buffer, packer, 2, 0, 100);
+        Assertions.assertEquals(entry, cache.find(2, 0));
+        // a reader that encoded the same entity at the same time gets the existing entry
+        Assertions.assertEquals(entry, put(cache, buffer, packer, 2, 0, 200));
+        Assertions.assertEquals(100, read(cache, entry));
+
+        int other = put(cache, buffer, packer, 2, -1, 300);
+        Assertions.assertNotEquals(entry, other);
+        Assertions.assertEquals(300, read(cache, other));
+
+        // same state keeps the entries, a new state clears them
+        cache.reset(1, 4);
+        Assertions.assertEquals(entry, cache.find(2, 0));
+        cache.reset(2, 4);
+        Assertions.assertEquals(-1, cache.find(2, 0));
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws InterruptedException {
+        final EntityEncodeCache cache = new EntityEncodeCache();
+        final int entityCount = 512;
+        final int threadCount = 4;
+        cache.reset(1, entityCount);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+                    BitPacker packer = new BitPacker();
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < entityCount; ++i) {
+                        int entry = cache.find(i, 0);
+                        if (entry == -1) entry = put(cache, buffer, packer, i, 0, i);
+                        if (read(cache, entry) != i) failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals(0, failures.get());
+        for (int i = 0; i < entityCount; ++i) {
+            Assertions.assertEquals(i, read(cache, cache.find(i, 0)));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.xam.bobgame.utils.BitPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FragmentTest {
+
+    @Test
+    public void testResendLost() {
+        ConnectionManager.ConnectionSlot slot = new ConnectionManager.ConnectionSlot();
+        slot.initialize(null);
+
+        Message message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+        int length = NetDriver.FRAGMENT_DATA_SIZE * 4 + 100;
+        for (int i = 0; i < length; ++i) message.getByteBuffer().put((byte) i);
+        message.getByteBuffer().flip();
+        message.setLength(length);
+        message.setType(Message.MessageType.Snapshot);
+        message.frameNum = 10;
+
+        FragmentSender sender = new FragmentSender();
+        FragmentReceiver receiver = new FragmentReceiver();
+        BitPacker packer = new BitPacker();
+        Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+
+        Assertions.assertTrue(sender.send(message, true, -1));
+        Assertions.assertTrue(sender.isSending(Message.MessageType.Snapshot));
+
+        Message reassembled = null;
+        int lostMessageId = -1;
+        for (int t = 0; t < 3; ++t) {
+            packet.clear();
+            sender.addFragments(slot, packet, t);
+            for (int i = 0; i < packet.getMessageCount(); ++i) {
+                Message fragment = packet.getMessage(i);
+                if (lostMessageId == -1) {
+                    lostMessageId = fragment.messageId;
+                    continue;
+                }
+                packer.setBuffer(fragment.getByteBuffer());
+                packer.setReadMode();
+                Message m = receiver.receive(fragment, packer);
+                if (m != null) reassembled = m;
+                sender.ack(fragment.messageId, slot.updateStream);
+            }
+        }
+        Assertions.assertNull(reassembled);
+        Assertions.assertTrue(sender.isSending(Message.MessageType.Snapshot));
+
+        sender.lost(lostMessageId);
+        packet.clear();
+        Assertions.assertEquals(1, sender.addFragments(slot, packet, 3));
+        Message fragment = packet.getMessage(0);
+        packer.setBuffer(fragment.getByteBuffer());
+        packer.setReadMode();
+        reassembled = receiver.receive(fragment, packer);
+        sender.ack(fragment.messageId, slot.updateStream);
+
+        Assertions.assertNotNull(reassembled);
+        Assertions.assertFalse(sender.isSending(Message.MessageType.Snapshot));
+        Assertions.assertEquals(Message.MessageType.Snapshot, reassembled.getType());
+        Assertions.assertEquals(10, reassembled.frameNum);
+        Assertions.assertEquals(length, reassembled.getLength());
+        Assertions.assertTrue(reassembled.equals(message));
+    }
+
+    @Test
+    public void testUnreliableAck() {
+        ConnectionManager.ConnectionSlot slot = new ConnectionManager.ConnectionSlot();
+        slot.initialize(null);
+
+        Message message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+        int length = NetDriver.FRAGMENT_DATA_SIZE * 4 + 100;
+        for (int i = 0; i < length; ++i) message.getByteBuffer().put((byte) i);
+        message.getByteBuffer().flip();
+        message.setLength(length);
+        message.setType(Message.MessageType.Update);
+
+        FragmentSender sender = new FragmentSender();
+        Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+        IntArray messageIds = new IntArray();
+
+        // the state is acknowledged once every fragment is, and fragments are never re-sent
+        int stateId = slot.updateStream.obtain().getStateId();
+        Assertions.assertTrue(sender.send(message, false, stateId));
+        Assertions.assertFalse(sender.isSending(Message.MessageType.Update));
+        sendAll(sender, slot, packet, messageIds, 0);
+        Assertions.assertEquals(5, messageIds.size);
+        sender.update(10, 1);
+        packet.clear();
+        Assertions.assertEquals(0, sender.addFragments(slot, packet, 10));
+        for (int i = 0; i < messageIds.size; ++i) {
+            Assertions.assertEquals(-1, slot.updateStream.baselineStateId);
+            sender.ack(messageIds.get(i), slot.updateStream);
+        }
+        Assertions.assertEquals(stateId, slot.updateStream.baselineStateId);
+
+        // a message with a lost fragment is dropped
+        int lostStateId = slot.updateStream.obtain().getStateId();
+        Assertions.assertTrue(sender.send(message, false, lostStateId));
+        sendAll(sender, slot, packet, messageIds, 11);
+        sender.lost(messageIds.get(0));
+        for (int i = 1; i < messageIds.size; ++i) sender.ack(messageIds.get(i), slot.updateStream);
+        Assertions.assertEquals(stateId, slot.updateStream.baselineStateId);
+        sender.update(20, 1);
+        packet.clear();
+        Assertions.assertEquals(0, sender.addFragments(slot, packet, 20));
+
+        // acknowledging a newer message drops older ones
+        int olderStateId = slot.updateStream.obtain().getStateId();
+        Assertions.assertTrue(sender.send(message, false, olderStateId));
+        IntArray olderIds = new IntArray();
+        sendAll(sender, slot, packet, olderIds, 21);
+        int newerStateId = slot.updateStream.obtain().getStateId();
+        Assertions.assertTrue(sender.send(message, false, newerStateId));
+        sendAll(sender, slot, packet, messageIds, 22);
+        for (int i = 0; i < messageIds.size; ++i) sender.ack(messageIds.get(i), slot.updateStream);
+        Assertions.assertEquals(newerStateId, slot.updateStream.baselineStateId);
+        for (int i = 0; i < olderIds.size; ++i) sender.ack(olderIds.get(i), slot.updateStream);
+        Assertions.assertEquals(newerStateId, slot.updateStream.baselineStateId);
+
+        // waiting messages don't keep new ones from being sent
+        for (int i = 0; i < NetDriver.FRAGMENT_GROUP_LIMIT + 1; ++i) {
+            Assertions.assertTrue(sender.send(message, false, slot.updateStream.obtain().getStateId()));
+            sendAll(sender, slot, packet, messageIds, 30 + i);
+        }
+    }
+
+    private void sendAll(FragmentSender sender, ConnectionManager.ConnectionSlot slot, Packet packet, IntArray messageIds, float currentTime) {
+        messageIds.clear();
+        int count;
+        do {
+            packet.clear();
+            count = sender.addFragments(slot, packet, currentTime);
+            for (int i = 0; i < packet.getMessageCount(); ++i) messageIds.add(packet.getMessage(i).messageId);
+        } while (count > 0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class FrameEncoderTest {
+
+    @Test
+    public void testImageSections() {
+        WorldStateBuffer.WorldState state = new WorldStateBuffer(2).obtain(0);
+        for (int i = 0; i < 40; ++i) state.addEntity(i);
+        FrameImage image = new FrameImage();
+        image.clear(state);
+        Assertions.assertEquals(-1, image.buffBits[39]);
+
+        // enough sections to grow the image's buffer
+        BitPacker packer = new BitPacker();
+        int count = 64;
+        int[] offsets = new int[count];
+        int[] bits = new int[count];
+        for (int i = 0; i < count; ++i) {
+            offsets[i] = image.begin(packer);
+            for (int j = 0; j < NetDriver.DATA_MAX_SIZE / 8; ++j) packer.packInt(i * 1000 + j, 0, 0xFFFFF);
+            bits[i] = image.end(packer);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE * 2);
+        BitPacker out = new BitPacker(buffer);
+        for (int i = 0; i < count; ++i) {
+            buffer.clear();
+            out.setBuffer(buffer);
+            out.setWriteMode();
+            image.copyTo(offsets[i], bits[i], out);
+            Assertions.assertEquals(bits[i], out.getTotalBits());
+            out.flush(true);
+            out.setReadMode();
+            for (int j = 0; j < NetDriver.DATA_MAX_SIZE / 8; ++j) Assertions.assertEquals(i * 1000 + j, out.unpackInt(0, 0xFFFFF));
+        }
+    }
+
+    @Test
+    public void testJobsBelongToSlot() {
+        FrameEncoder encoder = new FrameEncoder(new NetDriver(0));
+        try {
+            ConnectionManager.ConnectionSlot slot = new ConnectionManager.ConnectionSlot();
+            slot.clientId = 3;
+            encoder.addJob(slot, 1000, -1, -1);
+            Assertions.assertNotNull(encoder.getMessage(slot));
+            Assertions.assertEquals(-1, encoder.getStateId(slot));
+
+            // a new connection reusing the client id doesn't get the old connection's update
+            ConnectionManager.ConnectionSlot reconnected = new ConnectionManager.ConnectionSlot();
+            reconnected.clientId = 3;
+            Assertions.assertNull(encoder.getMessage(reconnected));
+
+            encoder.clear();
+            Assertions.assertNull(encoder.getMessage(slot));
+            Assertions.assertEquals(-1, encoder.getEncodedFrame());
+        }
+        finally {
+            encoder.dispose();
+        }
+    }
+}
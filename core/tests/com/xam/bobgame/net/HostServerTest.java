@@ -0,0 +1,28 @@
+package com.xam.bobgame.net;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryonet.Connection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HostServerTest {
+
+    @Test
+    public void testLeastLoaded() {
+        Array<NetDriver> netDrivers = new Array<>();
+        for (int i = 0; i < 3; ++i) netDrivers.add(new NetDriver(0));
+
+        // new connections are spread evenly over the matches
+        Array<Connection> connections = new Array<>();
+        for (int i = 0; i < 6; ++i) {
+            HostServer.MatchConnection connection = new HostServer.MatchConnection();
+            connection.netDriver = HostServer.getLeastLoaded(netDrivers, connections.toArray(Connection.class));
+            Assertions.assertSame(netDrivers.get(i % 3), connection.netDriver);
+            connections.add(connection);
+        }
+
+        // a match that lost a client gets the next one
+        connections.removeIndex(4);
+        Assertions.assertSame(netDrivers.get(1), HostServer.getLeastLoaded(netDrivers, connections.toArray(Connection.class)));
+    }
+}
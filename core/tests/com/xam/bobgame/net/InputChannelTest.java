@@ -0,0 +1,77 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.events.classes.PlayerControlEvent;
+import com.xam.bobgame.utils.BitPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class InputChannelTest {
+
+    @Test
+    public void testWriteRead() {
+        InputChannel sender = new InputChannel();
+        PlayerControlEvent event = new PlayerControlEvent();
+        event.controlId = 3;
+        event.entityId = 42;
+        int inputCount = NetDriver.INPUT_REDUNDANCY + 3;
+        for (int i = 0; i < inputCount; ++i) {
+            // cursor moves every other input, button changes every third
+            event.x = 1 + (i / 2) * 0.5f;
+            event.y = 2;
+            event.buttonId = 0;
+            event.buttonState = (i / 3) % 2 == 1;
+            event.inputSeq = (NetDriver.INPUT_SEQ_LIMIT - 4 + i) % NetDriver.INPUT_SEQ_LIMIT;
+            sender.add(event);
+        }
+        Assertions.assertTrue(sender.hasPending());
+        Assertions.assertEquals(NetDriver.INPUT_REDUNDANCY, sender.count);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        BitPacker packer = new BitPacker(buffer);
+        packer.setWriteMode();
+        sender.write(packer);
+        packer.flush(true);
+        Assertions.assertFalse(sender.hasPending());
+
+        InputChannel receiver = new InputChannel();
+        packer.setBuffer(buffer);
+        packer.setReadMode();
+        receiver.read(packer);
+        Assertions.assertEquals(sender.count, receiver.count);
+
+        PlayerControlEvent expected = new PlayerControlEvent();
+        PlayerControlEvent actual = new PlayerControlEvent();
+        for (int age = 0; age < receiver.count; ++age) {
+            sender.get(age, expected);
+            receiver.get(age, actual);
+            Assertions.assertEquals(expected.controlId, actual.controlId);
+            Assertions.assertEquals(expected.entityId, actual.entityId);
+            Assertions.assertEquals(expected.x, actual.x);
+            Assertions.assertEquals(expected.y, actual.y);
+            Assertions.assertEquals(expected.buttonId, actual.buttonId);
+            Assertions.assertEquals(expected.buttonState, actual.buttonState);
+            Assertions.assertEquals(expected.inputSeq, actual.inputSeq);
+            Assertions.assertEquals((inputCount - 1 - age - 4 + NetDriver.INPUT_SEQ_LIMIT) % NetDriver.INPUT_SEQ_LIMIT, actual.inputSeq);
+        }
+    }
+
+    @Test
+    public void testGap() {
+        InputChannel channel = new InputChannel();
+        PlayerControlEvent event = new PlayerControlEvent();
+        event.controlId = 0;
+        event.entityId = 1;
+        event.inputSeq = 10;
+        channel.add(event);
+        event.inputSeq = 11;
+        channel.add(event);
+        Assertions.assertEquals(2, channel.count);
+
+        // inputs that can't be numbered from the newest one are dropped
+        event.inputSeq = 13;
+        channel.add(event);
+        Assertions.assertEquals(1, channel.count);
+    }
+}
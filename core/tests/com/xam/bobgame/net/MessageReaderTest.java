@@ -0,0 +1,84 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.GenerationalIdMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MessageReaderTest {
+
+    @Test
+    public void testUpdateFromThreads() throws InterruptedException {
+        WorldStateBuffer.WorldState state = new WorldStateBuffer(2).obtain(0);
+        for (int i = 0; i < 12; ++i) {
+            int index = state.addEntity(i);
+            for (int f = 0; f < WorldStateBuffer.FIELD_COUNT; ++f) {
+                state.setField(index, f, (index * 7 + f) & ((1 << WorldStateBuffer.FIELD_BITS[f]) - 1));
+            }
+        }
+        state.frameNum = 100;
+
+        final FrameImage image = new FrameImage();
+        image.clear(state);
+        image.entityMap = new GenerationalIdMap<>(NetDriver.ENTITY_INDEX_BITS, NetDriver.ENTITY_GENERATION_BITS);
+        BitPacker packer = new BitPacker();
+        image.systemOffset = image.begin(packer);
+        image.systemBits = image.end(packer);
+        image.playerInfoOffset = image.begin(packer);
+        image.playerInfoBits = image.end(packer);
+
+        // buffed entities, with their BuffableComponents encoded when the frame was captured
+        for (int i = 2; i < state.entityCount; i += 3) {
+            state.buffCounts[i] = 2;
+            image.buffOffsets[i] = image.begin(packer);
+            packer.packInt(2, 0, 15);
+            for (int j = 0; j < 2; ++j) packer.packInt(i * 100 + j, 0, 0xFFFF);
+            image.buffBits[i] = image.end(packer);
+        }
+
+        // the driver has no engine, so encoding fails if a task reads components
+        final NetDriver netDriver = new NetDriver(0);
+        final MessageReader base = new MessageReader(netDriver);
+        final Message expected = new Message(NetDriver.MESSAGE_MAX_SIZE);
+        base.serializeUpdate(expected, image, new UpdateStream(), Integer.MAX_VALUE, -1, -1);
+        Assertions.assertTrue(expected.getLength() > 0);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    MessageReader messageReader = new MessageReader(netDriver, base);
+                    Message message = new Message(NetDriver.MESSAGE_MAX_SIZE);
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 200; ++i) {
+                        message.clear();
+                        try {
+                            messageReader.serializeUpdate(message, image, new UpdateStream(), Integer.MAX_VALUE, -1, -1);
+                        }
+                        catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        if (message.getLength() != expected.getLength() || !message.equals(expected)) failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals(0, failures.get());
+    }
+}
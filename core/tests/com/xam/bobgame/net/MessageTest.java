@@ -0,0 +1,50 @@
+package com.xam.bobgame.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MessageTest {
+
+    @Test
+    public void testCopyFromThreads() throws InterruptedException {
+        final Message snapshot = new Message(NetDriver.MESSAGE_MAX_SIZE);
+        int length = NetDriver.DATA_MAX_SIZE * 2;
+        for (int i = 0; i < length; ++i) snapshot.getByteBuffer().put((byte) i);
+        snapshot.getByteBuffer().flip();
+        snapshot.setLength(length);
+        snapshot.setType(Message.MessageType.Snapshot);
+        final int position = snapshot.getByteBuffer().position();
+
+        // sync tasks copy the same snapshot for their clients at the same time
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Message copy = new Message(NetDriver.MESSAGE_MAX_SIZE);
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 200; ++i) {
+                        snapshot.copyTo(copy);
+                        if (!copy.equals(snapshot) || copy.getLength() != snapshot.getLength() || copy.getType() != Message.MessageType.Snapshot) failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals(0, failures.get());
+        Assertions.assertEquals(position, snapshot.getByteBuffer().position());
+    }
+}
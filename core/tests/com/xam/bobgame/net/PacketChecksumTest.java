@@ -0,0 +1,86 @@
+package com.xam.bobgame.net;
+
+import com.xam.bobgame.utils.BitPacker;
+import com.xam.bobgame.utils.Murmur3Hash;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class PacketChecksumTest {
+
+    @Test
+    public void testMurmur3() {
+        Assertions.assertEquals(0L, new Murmur3Hash(0).getValue());
+        Assertions.assertEquals(0x514E28B7L, new Murmur3Hash(1).getValue());
+        Assertions.assertEquals(0x81F16F39L, new Murmur3Hash(0xFFFFFFFF).getValue());
+
+        byte[] bytes = "Hello, world!".getBytes(Charset.forName("US-ASCII"));
+        Murmur3Hash hash = new Murmur3Hash(1234);
+        hash.update(bytes, 0, bytes.length);
+        Assertions.assertEquals(0xFAF6CDB3L, hash.getValue());
+
+        // same result when fed in uneven chunks
+        hash.reset();
+        hash.update(bytes, 0, 3);
+        hash.update(bytes[3]);
+        hash.update(bytes, 4, 6);
+        hash.update(bytes, 10, 3);
+        Assertions.assertEquals(0xFAF6CDB3L, hash.getValue());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (PacketChecksum checksum : PacketChecksum.values()) {
+            if (!checksum.isAvailable()) continue;
+            ByteBuffer buffer = encode(checksum);
+            Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+            Assertions.assertEquals(0, decode(packet, buffer), checksum.toString());
+            Assertions.assertEquals(checksum, packet.checksumType);
+            Assertions.assertEquals(2, packet.getMessageCount());
+            Assertions.assertEquals(45, packet.getMessage(1).getLength());
+            Assertions.assertEquals((byte) 44, packet.getMessage(1).getByteBuffer().get(44));
+
+            // flip a bit inside a message
+            buffer.put(40, (byte) (buffer.get(40) ^ 0x10));
+            Assertions.assertEquals(-1, decode(packet, buffer), checksum.toString());
+        }
+    }
+
+    private static ByteBuffer encode(PacketChecksum checksum) {
+        Packet packet = new Packet(NetDriver.DATA_MAX_SIZE);
+        packet.type = Packet.PacketType.Data;
+        packet.localSeqNum = 3;
+        packet.remoteSeqNum = 5;
+        packet.salt = 0x12345678;
+        packet.frameNum = 100;
+        packet.checksumType = checksum;
+
+        Message message = new Message(NetDriver.DATA_MAX_SIZE);
+        for (int m = 0; m < 2; ++m) {
+            message.clear();
+            int length = 30 + m * 15;
+            for (int i = 0; i < length; ++i) message.getByteBuffer().put((byte) i);
+            message.getByteBuffer().flip();
+            message.setLength(length);
+            message.setType(Message.MessageType.Update);
+            message.messageId = m;
+            packet.addMessage(message);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(NetDriver.DATA_MAX_SIZE);
+        BitPacker packer = new BitPacker(buffer);
+        packer.setWriteMode();
+        packet.encode(packer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int decode(Packet packet, ByteBuffer buffer) {
+        buffer.rewind();
+        BitPacker packer = new BitPacker(buffer);
+        packer.setReadMode();
+        return packet.decode(packer);
+    }
+}
@@ -0,0 +1,35 @@
+package com.xam.bobgame.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WorldStateBufferTest {
+
+    @Test
+    public void testRing() {
+        WorldStateBuffer buffer = new WorldStateBuffer(4);
+        for (int i = 0; i < 6; ++i) {
+            WorldStateBuffer.WorldState state = buffer.obtain(i);
+            for (int j = 0; j < 40; ++j) state.addEntity(j * 2);
+        }
+        Assertions.assertNull(buffer.get(1));
+        Assertions.assertNotNull(buffer.get(2));
+        Assertions.assertEquals(40, buffer.get(5).getEntityCount());
+
+        WorldStateBuffer.WorldState state = buffer.get(5);
+        Assertions.assertEquals(3, state.indexOf(6));
+        Assertions.assertEquals(-5, state.indexOf(7));
+    }
+
+    @Test
+    public void testQuantize() {
+        for (int f = 0; f < WorldStateBuffer.FIELD_COUNT; ++f) {
+            if (WorldStateBuffer.FIELD_ZERO_FLAG[f]) {
+                Assertions.assertEquals(0f, WorldStateBuffer.dequantize(f, WorldStateBuffer.quantize(f, 0f)));
+            }
+            float value = WorldStateBuffer.FIELD_MIN[f] + 0.75f;
+            float res = WorldStateBuffer.FIELD_RES[f];
+            Assertions.assertEquals(value, WorldStateBuffer.dequantize(f, WorldStateBuffer.quantize(f, value)), res);
+        }
+    }
+}
@@ -84,6 +84,30 @@ public class BitPackerTest {
         System.out.println("" + bitPacker.unpackInt(-1, 30));
 //        System.out.println("" + packetBuilder.unpackInt(0, 2));
     }
+    @Test
+    public void testVarInt() {
+        int[] testInts = {0, 1, 7, 8, 63, 64, 1000, Integer.MAX_VALUE, -1};
+        int[] groupBits = {3, 7};
+
+        for (int g : groupBits) {
+            Message message = new Message(testInts.length * 8);
+            BitPacker bitPacker = new BitPacker(message.getByteBuffer());
+            int totalBits = 0;
+            for (int i : testInts) {
+                int bits = bitPacker.packVarInt(i, g);
+                Assertions.assertEquals(BitPacker.varIntBits(i, g), bits);
+                totalBits += bits;
+            }
+            Assertions.assertEquals(totalBits, bitPacker.getTotalBits());
+            Assertions.assertEquals(g + 1, BitPacker.varIntBits(1, g));
+            bitPacker.flush(true);
+
+            for (int i : testInts) {
+                Assertions.assertEquals(i, bitPacker.unpackVarInt(g));
+            }
+        }
+    }
+
     @Test
     public void testNatural() {
         int count = 50;
@@ -191,6 +215,57 @@ public class BitPackerTest {
         }
     }
 
+    @Test
+    public void testPackBitsFromBuffer() {
+        ByteBuffer source = ByteBuffer.allocate(64);
+        BitPacker sourcePacker = new BitPacker(source);
+        int count = 9;
+        for (int i = 0; i < count; ++i) {
+            sourcePacker.packInt(i * 1000 + 7, 0, 16383);
+        }
+        int bits = sourcePacker.getTotalBits();
+        sourcePacker.flush(true);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        BitPacker bitPacker = new BitPacker(buffer);
+        bitPacker.packInt(5, 0, 7);
+        bitPacker.packBits(source, bits);
+        bitPacker.packInt(3, 0, 7);
+        bitPacker.flush(true);
+        bitPacker.setReadMode();
+
+        Assertions.assertEquals(5, bitPacker.unpackInt(0, 7));
+        for (int i = 0; i < count; ++i) {
+            Assertions.assertEquals(i * 1000 + 7, bitPacker.unpackInt(0, 16383));
+        }
+        Assertions.assertEquals(3, bitPacker.unpackInt(0, 7));
+    }
+
+    @Test
+    public void testBytesAfterWord() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        BitPacker bitPacker = new BitPacker(buffer);
+        bitPacker.setWriteMode();
+        bitPacker.packInt(5, 0, 7);
+        bitPacker.padToWord();
+        bitPacker.packBytes(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}), 6);
+        bitPacker.packInt(300, 0, 1023);
+        bitPacker.flush(true);
+
+        Assertions.assertEquals(0xA0, buffer.get(0) & 0xFF);
+        Assertions.assertEquals(1, buffer.get(4));
+        Assertions.assertEquals(6, buffer.get(9));
+
+        bitPacker.clear();
+        bitPacker.setReadMode();
+        Assertions.assertEquals(5, bitPacker.unpackInt(0, 7));
+        bitPacker.skipToWord();
+        ByteBuffer out = ByteBuffer.allocate(6);
+        bitPacker.unpackBytes(out, 6);
+        Assertions.assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, out.array());
+        Assertions.assertEquals(300, bitPacker.unpackInt(0, 1023));
+    }
+
     @Test
     public void testFloat() {
         int count = 29;
@@ -0,0 +1,92 @@
+package com.xam.bobgame.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GenerationalIdMapTest {
+
+    @Test
+    public void testReuse() {
+        GenerationalIdMap<String> map = new GenerationalIdMap<>(4, 2);
+
+        int a = map.allocate();
+        map.put(a, "a");
+        int b = map.allocate();
+        map.put(b, "b");
+        Assertions.assertEquals("a", map.get(a));
+        Assertions.assertEquals("b", map.get(b));
+        Assertions.assertEquals(2, map.size);
+
+        Assertions.assertEquals("a", map.remove(a));
+        Assertions.assertNull(map.get(a));
+        Assertions.assertNull(map.remove(a));
+
+        // freed slot is reused with the next generation
+        int c = map.allocate();
+        Assertions.assertEquals(map.getSlot(a), map.getSlot(c));
+        Assertions.assertEquals(map.getGeneration(a) + 1, map.getGeneration(c));
+        map.put(c, "c");
+        Assertions.assertNull(map.get(a));
+        Assertions.assertEquals("c", map.get(c));
+        Assertions.assertEquals(2, map.size);
+    }
+
+    @Test
+    public void testFreeOrder() {
+        GenerationalIdMap<String> map = new GenerationalIdMap<>(4, 2);
+        int[] ids = new int[4];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = map.allocate();
+            map.put(ids[i], "" + i);
+        }
+        map.remove(ids[2]);
+        map.remove(ids[0]);
+
+        Assertions.assertEquals(map.getSlot(ids[2]), map.getSlot(map.allocate()));
+        Assertions.assertEquals(map.getSlot(ids[0]), map.getSlot(map.allocate()));
+        Assertions.assertEquals(4, map.getSlot(map.allocate()));
+    }
+
+    @Test
+    public void testFull() {
+        GenerationalIdMap<String> map = new GenerationalIdMap<>(2, 2);
+        for (int i = 0; i < 4; ++i) {
+            Assertions.assertNotEquals(-1, map.allocate());
+        }
+        Assertions.assertEquals(-1, map.allocate());
+    }
+
+    @Test
+    public void testPutAndIterate() {
+        GenerationalIdMap<String> map = new GenerationalIdMap<>(4, 2);
+        int a = map.toId(5, 3);
+        int b = map.toId(2, 1);
+        map.put(a, "a");
+        map.put(b, "b");
+        Assertions.assertEquals(6, map.getSlotCount());
+
+        int prevId = -1, count = 0;
+        for (int slot = 0; slot < map.getSlotCount(); ++slot) {
+            int id = map.getIdAt(slot);
+            if (id == -1) continue;
+            Assertions.assertTrue(id > prevId);
+            prevId = id;
+            count++;
+        }
+        Assertions.assertEquals(2, count);
+
+        // newer generation replaces the value in the slot
+        int c = map.toId(5, 0);
+        Assertions.assertEquals("a", map.put(c, "c"));
+        Assertions.assertNull(map.get(a));
+        Assertions.assertEquals(2, map.size);
+
+        // skipped slots can still be allocated
+        int d = map.allocate();
+        Assertions.assertEquals(0, map.getSlot(d));
+
+        map.clear();
+        Assertions.assertEquals(0, map.size);
+        Assertions.assertNull(map.get(b));
+    }
+}
@@ -0,0 +1,42 @@
+package com.xam.bobgame.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long prevValue = -1;
+        for (int i = 0; i <= LatencyHistogram.bucketIndex((1L << 36) - 1); ++i) {
+            long value = LatencyHistogram.bucketValue(i);
+            Assertions.assertTrue(value > prevValue);
+            Assertions.assertEquals(i, LatencyHistogram.bucketIndex(value));
+            Assertions.assertEquals(i, LatencyHistogram.bucketIndex(prevValue + 1));
+            prevValue = value;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+
+        for (int i = 1; i <= 100000; ++i) histogram.record(i * 1000L);
+        Assertions.assertEquals(100000, histogram.getCount());
+        Assertions.assertEquals(100000000L, histogram.getMax());
+        Assertions.assertEquals(50000000L, histogram.getValueAtPercentile(50), 50000000L * 0.04);
+        Assertions.assertEquals(99000000L, histogram.getValueAtPercentile(99), 99000000L * 0.04);
+        Assertions.assertEquals(100000000L, histogram.getValueAtPercentile(100));
+
+        // values out of range are clamped to the last bucket, but the max is kept
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(Long.MAX_VALUE, histogram.getMax());
+
+        histogram.reset();
+        Assertions.assertEquals(0, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getMax());
+        histogram.record(7);
+        Assertions.assertEquals(7, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,28 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.xam.bobgame.net.NetDriver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MathUtils2Test {
+
+    /**
+     * PhysicsSystem only writes a body back when quantizing changes one of its values, so a quantized value must quantize
+     * to exactly itself.
+     */
+    @Test
+    public void testQuantizeStable() {
+        float[] resolutions = {NetDriver.RES_POSITION, NetDriver.RES_VELOCITY, NetDriver.RES_ORIENTATION, NetDriver.RES_MASS};
+        for (float res : resolutions) {
+            for (int i = 0; i < 10000; ++i) {
+                float value = MathUtils.random(-100f, 100f);
+                float quantized = MathUtils2.quantize(value, res);
+                Assertions.assertEquals(value, quantized, res / 2 + Math.ulp(value));
+                Assertions.assertEquals(quantized, MathUtils2.quantize(quantized, res));
+            }
+            Assertions.assertEquals(0f, MathUtils2.quantize(0f, res));
+            Assertions.assertEquals(-res, MathUtils2.quantize(-res, res));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.xam.bobgame.utils;
+
+import com.badlogic.gdx.utils.Pool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PoolsTest {
+
+    public static class SharedObject implements Pool.Poolable, Pools.Shared {
+        Pool<?> ownerPool;
+        int value;
+
+        @Override
+        public Pool<?> getOwnerPool() {
+            return ownerPool;
+        }
+
+        @Override
+        public void setOwnerPool(Pool<?> pool) {
+            ownerPool = pool;
+        }
+
+        @Override
+        public void reset() {
+            value = 0;
+        }
+    }
+
+    public static class LocalObject implements Pool.Poolable {
+        int value;
+
+        @Override
+        public void reset() {
+            value = 0;
+        }
+    }
+
+    private static <T> T obtainOnThread(final Class<T> type) throws InterruptedException {
+        final Object[] result = new Object[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = Pools.obtain(type);
+            }
+        });
+        thread.start();
+        thread.join();
+        return type.cast(result[0]);
+    }
+
+    @Test
+    public void testPerThreadPools() throws InterruptedException {
+        final Pool<?>[] otherPool = new Pool<?>[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                otherPool[0] = Pools.get(LocalObject.class);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assertions.assertNotSame(otherPool[0], Pools.get(LocalObject.class));
+        Assertions.assertSame(Pools.get(LocalObject.class), Pools.get(LocalObject.class));
+    }
+
+    @Test
+    public void testSharedReturnsToOwner() throws InterruptedException {
+        final SharedObject object = Pools.obtain(SharedObject.class);
+        Pool<?> localPool = Pools.get(SharedObject.class);
+        Assertions.assertSame(localPool, object.getOwnerPool());
+        object.value = 5;
+
+        // freed on another thread, back in this thread's pool
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Pools.free(object);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assertions.assertEquals(0, object.value);
+        Assertions.assertSame(object, Pools.obtain(SharedObject.class));
+
+        // obtained on another thread and freed here, not kept by this thread's pool
+        SharedObject other = obtainOnThread(SharedObject.class);
+        Assertions.assertNotSame(localPool, other.getOwnerPool());
+        int freeCount = localPool.getFree();
+        Pools.free(other);
+        Assertions.assertEquals(freeCount, localPool.getFree());
+        Assertions.assertNotSame(other, Pools.obtain(SharedObject.class));
+    }
+
+    @Test
+    public void testLocalFreedToFreeingThread() throws InterruptedException {
+        LocalObject object = obtainOnThread(LocalObject.class);
+        object.value = 5;
+        Pools.free(object);
+        Assertions.assertEquals(0, object.value);
+        Assertions.assertSame(object, Pools.obtain(LocalObject.class));
+    }
+}
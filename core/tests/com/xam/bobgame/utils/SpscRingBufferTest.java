@@ -0,0 +1,62 @@
+package com.xam.bobgame.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void testFull() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(3);
+        Assertions.assertEquals(4, queue.capacity());
+        for (int i = 0; i < 4; ++i) Assertions.assertTrue(queue.offer(i));
+        Assertions.assertFalse(queue.offer(4));
+        Assertions.assertEquals(0, (int) queue.poll());
+        Assertions.assertTrue(queue.offer(4));
+        for (int i = 1; i < 5; ++i) Assertions.assertEquals(i, (int) queue.poll());
+        Assertions.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testPreallocatedThreads() throws InterruptedException {
+        final int count = 100000;
+        int[][] slots = new int[8][];
+        for (int i = 0; i < slots.length; ++i) slots[i] = new int[2];
+        final SpscRingBuffer<int[]> queue = new SpscRingBuffer<>(slots);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = 0;
+                while (i < count) {
+                    int[] slot = queue.claim();
+                    if (slot == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    slot[0] = i;
+                    slot[1] = ~i;
+                    queue.publish();
+                    i++;
+                }
+            }
+        });
+        producer.setDaemon(true);
+        producer.start();
+
+        int expected = 0;
+        while (expected < count) {
+            int[] slot = queue.peek();
+            if (slot == null) {
+                Thread.yield();
+                continue;
+            }
+            Assertions.assertEquals(expected, slot[0]);
+            Assertions.assertEquals(~expected, slot[1]);
+            queue.release();
+            expected++;
+        }
+        producer.join();
+        Assertions.assertTrue(queue.isEmpty());
+    }
+}
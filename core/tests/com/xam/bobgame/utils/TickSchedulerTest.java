@@ -0,0 +1,52 @@
+package com.xam.bobgame.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TickSchedulerTest {
+    private static final long INTERVAL = 2000000L;
+
+    @Test
+    public void testFixedRate() {
+        long start = System.nanoTime();
+        TickScheduler scheduler = new TickScheduler(INTERVAL, 3);
+        long ticks = 0;
+        while (ticks < 20) ticks += scheduler.waitForTicks();
+        // the first tick is due immediately, and no tick runs before it is due
+        Assertions.assertTrue(System.nanoTime() - start >= (ticks + scheduler.getSkippedTicks() - 1) * INTERVAL);
+    }
+
+    @Test
+    public void testCatchUp() throws InterruptedException {
+        // long enough that the test thread isn't descheduled for a whole interval between calls
+        long interval = INTERVAL * 10;
+        TickScheduler scheduler = new TickScheduler(interval, 3);
+        Assertions.assertEquals(1, scheduler.waitForTicks());
+
+        // stalled for 10 intervals: only 3 ticks are caught up and the rest are skipped
+        Thread.sleep(interval * 10 / 1000000L);
+        Assertions.assertEquals(3, scheduler.waitForTicks());
+        Assertions.assertTrue(scheduler.getSkippedTicks() >= 7);
+
+        // back on schedule
+        Assertions.assertEquals(1, scheduler.waitForTicks());
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+        TickScheduler scheduler = new TickScheduler(INTERVAL, 3);
+        scheduler.tickStarted();
+        scheduler.tickEnded();
+        scheduler.tickStarted();
+        Thread.sleep(INTERVAL * 2 / 1000000L);
+        scheduler.tickEnded();
+
+        Assertions.assertEquals(2, scheduler.getTickCount());
+        Assertions.assertEquals(1, scheduler.getOverrunCount());
+        Assertions.assertTrue(scheduler.getMaxTickDuration() >= INTERVAL * 2 / 1e6f);
+
+        scheduler.resetMetrics();
+        Assertions.assertEquals(0, scheduler.getTickCount());
+        Assertions.assertEquals(0, scheduler.getOverrunCount());
+    }
+}
@@ -30,6 +30,9 @@ public class DesktopLauncher {
 				case "--noUDP":
 					runArgs.put("noUDP", "");
 					break;
+				case "--pipelined":
+					runArgs.put("pipelined", "");
+					break;
 				case "--devMode":
 					runArgs.put("devMode", "");
 					break;
@@ -39,6 +42,21 @@ public class DesktopLauncher {
 				case "--udpPort":
 					runArgs.put("udpPort", arg[++i]);
 					break;
+				case "--bandwidth":
+					runArgs.put("bandwidth", arg[++i]);
+					break;
+				case "--checksum":
+					runArgs.put("checksum", arg[++i]);
+					break;
+				case "--matches":
+					runArgs.put("matches", arg[++i]);
+					break;
+				case "--workers":
+					runArgs.put("workers", arg[++i]);
+					break;
+				case "--syncWorkers":
+					runArgs.put("syncWorkers", arg[++i]);
+					break;
 			}
 			i++;
 		}
@@ -0,0 +1,259 @@
+package com.xam.bobgame.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the codec classes of types annotated with com.xam.bobgame.codec.NetCodec. Annotations are matched by
+ * name, so the processor doesn't depend on core. The field annotations are claimed too, and are an error outside a
+ * NetCodec class.
+ */
+@SupportedAnnotationTypes({NetCodecProcessor.NET_CODEC, NetCodecProcessor.NET_INT, NetCodecProcessor.NET_FLOAT, NetCodecProcessor.NET_BOOLEAN})
+public class NetCodecProcessor extends AbstractProcessor {
+    static final String PACKAGE = "com.xam.bobgame.codec.";
+    static final String NET_CODEC = PACKAGE + "NetCodec";
+    static final String NET_INT = PACKAGE + "NetInt";
+    static final String NET_FLOAT = PACKAGE + "NetFloat";
+    static final String NET_BOOLEAN = PACKAGE + "NetBoolean";
+
+    private static final String BIT_PACKER = "com.xam.bobgame.utils.BitPacker";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            String name = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (!name.equals(NET_CODEC)) {
+                    // field encodings are read when their class is generated
+                    if (!hasAnnotation(element.getEnclosingElement(), NET_CODEC)) {
+                        error(element, "@" + name.substring(PACKAGE.length()) + " can only be used in classes annotated with @NetCodec");
+                    }
+                }
+                else if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@NetCodec can only be used on classes");
+                }
+                else {
+                    generate((TypeElement) element);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) return true;
+        }
+        return false;
+    }
+
+    private void generate(TypeElement type) {
+        List<Field> fields = new ArrayList<>();
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.FIELD) continue;
+            Field field = readField((VariableElement) element);
+            if (field != null) fields.add(field);
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        if (!packageName.isEmpty()) typeName = typeName.substring(packageName.length() + 1);
+        String codecName = typeName.replace('.', '_') + "Codec";
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) out.append("package ").append(packageName).append(";\n\n");
+        out.append("import ").append(BIT_PACKER).append(";\n\n");
+        out.append("/**\n * Generated from the annotations of {@link ").append(typeName).append("}. Do not edit.\n */\n");
+        out.append("final class ").append(codecName).append(" {\n");
+
+        StringBuilder totalBits = new StringBuilder();
+        for (Field field : fields) {
+            switch (field.kind) {
+                case INT:
+                    out.append("    static final int ").append(field.constant).append("_BITS = BitPacker.rangeBits(")
+                            .append(field.min).append(", ").append(field.max).append(");\n");
+                    break;
+                case FLOAT:
+                    out.append("    static final int ").append(field.constant).append("_STEPS = BitPacker.floatRange(")
+                            .append(field.min).append(", ").append(field.max).append(", ").append(field.res).append(");\n");
+                    out.append("    static final int ").append(field.constant).append("_BITS = BitPacker.rangeBits(0, ")
+                            .append(field.constant).append("_STEPS);\n");
+                    break;
+                case BOOLEAN:
+                    out.append("    static final int ").append(field.constant).append("_BITS = 1;\n");
+                    break;
+            }
+            if (totalBits.length() > 0) totalBits.append(" + ");
+            totalBits.append(field.constant).append("_BITS");
+        }
+        out.append("    /**\n     * Total bits of an encoded {@link ").append(typeName).append("}\n     */\n");
+        out.append("    static final int BITS = ").append(totalBits.length() > 0 ? totalBits : "0").append(";\n\n");
+
+        out.append("    private ").append(codecName).append("() {\n    }\n\n");
+
+        out.append("    static void encode(").append(typeName).append(" o, BitPacker packer) {\n");
+        for (Field field : fields) {
+            String bits = field.constant + "_BITS";
+            out.append("        packer.packIntBits(");
+            switch (field.kind) {
+                case INT:
+                    out.append("o.").append(field.name).append(", ").append(bits).append(", ").append(field.min);
+                    break;
+                case FLOAT:
+                    out.append("BitPacker.quantizeFloatSteps(o.").append(field.name).append(", ").append(field.min).append(", ")
+                            .append(field.max).append(", ").append(field.constant).append("_STEPS), ").append(bits).append(", 0");
+                    break;
+                case BOOLEAN:
+                    out.append("o.").append(field.name).append(" ? 1 : 0, ").append(bits).append(", 0");
+                    break;
+            }
+            out.append(");\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    static void decode(").append(typeName).append(" o, BitPacker packer) {\n");
+        for (Field field : fields) {
+            String bits = field.constant + "_BITS";
+            out.append("        o.").append(field.name).append(" = ");
+            switch (field.kind) {
+                case INT:
+                    out.append("packer.unpackIntBits(").append(bits).append(", ").append(field.min).append(")");
+                    break;
+                case FLOAT:
+                    out.append("BitPacker.dequantizeFloatSteps(packer.unpackIntBits(").append(bits).append(", 0), ")
+                            .append(field.min).append(", ").append(field.max).append(", ").append(field.constant).append("_STEPS)");
+                    break;
+                case BOOLEAN:
+                    out.append("packer.unpackIntBits(").append(bits).append(", 0) == 1");
+                    break;
+            }
+            out.append(";\n");
+        }
+        out.append("    }\n}\n");
+
+        String codecQualifiedName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(codecQualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(out.toString());
+            }
+        }
+        catch (IOException e) {
+            error(type, "Failed to write " + codecQualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The field's encoding, or null if it isn't annotated or is invalid
+     */
+    private Field readField(VariableElement element) {
+        Field field = null;
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            Field.Kind kind;
+            TypeKind expectedType;
+            if (name.equals(NET_INT)) {
+                kind = Field.Kind.INT;
+                expectedType = TypeKind.INT;
+            }
+            else if (name.equals(NET_FLOAT)) {
+                kind = Field.Kind.FLOAT;
+                expectedType = TypeKind.FLOAT;
+            }
+            else if (name.equals(NET_BOOLEAN)) {
+                kind = Field.Kind.BOOLEAN;
+                expectedType = TypeKind.BOOLEAN;
+            }
+            else {
+                continue;
+            }
+
+            if (field != null) {
+                error(element, "Field has more than one encoding");
+                return null;
+            }
+            if (element.asType().getKind() != expectedType) {
+                error(element, "@" + name.substring(PACKAGE.length()) + " requires a field of type " + expectedType.name().toLowerCase());
+                return null;
+            }
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                error(element, "Encoded fields must not be private, static or final");
+                return null;
+            }
+
+            field = new Field(kind, element.getSimpleName().toString());
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                String key = entry.getKey().getSimpleName().toString();
+                String literal = literal(entry.getValue().getValue());
+                if (key.equals("min")) field.min = literal;
+                else if (key.equals("max")) field.max = literal;
+                else if (key.equals("res")) field.res = literal;
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Java literal of an annotation value. Float.toString gives the shortest string that parses back to the same float.
+     */
+    private static String literal(Object value) {
+        if (value instanceof Float) {
+            float f = (Float) value;
+            if (Float.isNaN(f) || Float.isInfinite(f)) throw new IllegalArgumentException("Invalid float " + f);
+            return Float.toString(f) + "f";
+        }
+        return String.valueOf(value);
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static class Field {
+        enum Kind {
+            INT, FLOAT, BOOLEAN
+        }
+
+        final Kind kind;
+        final String name;
+        /**
+         * Name of the field in upper snake case, the prefix of its constants in the codec
+         */
+        final String constant;
+        String min, max, res;
+
+        Field(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+            constant = name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+        }
+    }
+}